@@ -87,7 +87,7 @@ public class HelperManager
 
         Class<?> helperClass = rule.getHelperClass();
 
-        Helper.verbose("HelperManager.install for helper class " + helperClass.getName());
+        Helper.verbose(Transformer.VERBOSE_HELPER, "HelperManager.install for helper class " + helperClass.getName());
 
         installed(rule, helperClass);
     }
@@ -107,7 +107,7 @@ public class HelperManager
             // now run the install for this class
             LifecycleDetails details = getDetails(helperClass, true, parentDetails);
             if (details.installCount == 0 && details.activated != null) {
-                Helper.verbose("calling activated() for helper class " + helperClass.getName());
+                Helper.verbose(Transformer.VERBOSE_HELPER, "calling activated() for helper class " + helperClass.getName());
 
                 try {
                     details.activated.invoke(null);
@@ -117,7 +117,7 @@ public class HelperManager
                 }
             }
             if (details.installed != null) {
-                Helper.verbose("calling installed(" + rule.getName() + ") for helper class" + helperClass.getName());
+                Helper.verbose(Transformer.VERBOSE_HELPER, "calling installed(" + rule.getName() + ") for helper class" + helperClass.getName());
 
                 try {
                     if (details.installedTakesRule) {
@@ -174,7 +174,7 @@ public class HelperManager
         }
         
         Class helperClass = rule.getHelperClass();
-        Helper.verbose("HelperManager.uninstall for helper class " + helperClass.getName());
+        Helper.verbose(Transformer.VERBOSE_HELPER, "HelperManager.uninstall for helper class " + helperClass.getName());
 
         uninstalled(rule, helperClass);
     }
@@ -193,7 +193,7 @@ public class HelperManager
             }
             details.installCount--;
             if (details.uninstalled != null) {
-                Helper.verbose("calling uninstalled(" + rule.getName() + ") for helper class " + helperClass.getName());
+                Helper.verbose(Transformer.VERBOSE_HELPER, "calling uninstalled(" + rule.getName() + ") for helper class " + helperClass.getName());
 
                 try {
                     if (details.uninstalledTakesRule) {
@@ -207,7 +207,7 @@ public class HelperManager
                 }
             }
             if (details.installCount == 0 && details.deactivated != null) {
-                Helper.verbose("calling deactivated() for helper class" + helperClass.getName());
+                Helper.verbose(Transformer.VERBOSE_HELPER, "calling deactivated() for helper class" + helperClass.getName());
 
                 try {
                     details.deactivated.invoke(null);
@@ -97,6 +97,17 @@ public abstract class Location
      */
     public abstract LocationType getLocationType();
 
+    /**
+     * identify whether the adapters for this location need to be notified when local vars go in and out
+     * of scope. a rule with such a location can only be batched with other rules targeting the same class
+     * if it is the first rule in the batch.
+     * @return true if the adapters need local var scope info otherwise false
+     */
+    public boolean requiresLocalScope()
+    {
+        return false;
+    }
+
     /**
      * flag indicating that a field access location refers to field READ operations
      */
@@ -470,6 +481,11 @@ public abstract class Location
             }
         }
 
+        public boolean requiresLocalScope()
+        {
+            return !isIndex;
+        }
+
         public LocationType getLocationType() {
             if ((flags & ACCESS_WRITE) != 0) {
                 if (whenComplete) {
@@ -25,15 +25,24 @@ package org.jboss.byteman.agent;
 
 import java.io.PrintWriter;
 import java.lang.instrument.Instrumentation;
+import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.jar.JarFile;
 
 import org.jboss.byteman.modules.ModuleSystem;
+import org.jboss.byteman.rule.Rule;
 import org.jboss.byteman.rule.helper.Helper;
+import org.jboss.byteman.rule.metrics.RuleGovernor;
 
 /**
  * byte code transformer used to introduce byteman events into JBoss code
@@ -75,6 +84,9 @@ public class Retransformer extends Transformer {
             toBeAdded.addAll(ruleScripts);
         }
 
+        // parse the rules now so that retransforming the affected classes does not need to
+        preparseScripts(toBeAdded);
+
         for (RuleScript ruleScript : toBeAdded) {
             String name = ruleScript.getName();
             String className = ruleScript.getTargetClass();
@@ -100,7 +112,7 @@ public class Retransformer extends Transformer {
 
         // list all class names for the to be added and to be removed scripts
 
-        List<String> deletedClassNames = new LinkedList<String>();
+        Set<String> deletedClassNames = new HashSet<String>();
 
         for (RuleScript ruleScript : toBeRemoved) {
             List<Transform> transforms = ruleScript.allTransforms();
@@ -109,10 +121,7 @@ public class Retransformer extends Transformer {
                 // so ignore transforms which include a throwable
                 Throwable throwable = transform.getThrowable();
                 if(throwable == null) {
-                    String className = transform.getInternalClassName();
-                    if(!deletedClassNames.contains(className)) {
-                        deletedClassNames.add(className);
-                    }
+                    deletedClassNames.add(transform.getInternalClassName());
                 }
             }
         }
@@ -126,35 +135,13 @@ public class Retransformer extends Transformer {
 
         // now look for loaded classes whose names are in the deleted list or which match added rules
 
-        List<Class<?>> transformed = new LinkedList<Class<?>>();
+        List<Class<?>> transformed = findLoadedClasses(deletedClassNames, tmpRepository);
 
-        for (Class clazz : inst.getAllLoadedClasses()) {
-            if (isSkipClass(clazz)) {
-                continue;
-            }
-            if (deletedClassNames.contains(clazz.getName())) {
-                transformed.add(clazz);
-            } else if (tmpRepository.matchClass(clazz)) {
-                    transformed.add(clazz);
-            }
-        }
         // retransform all classes whose rules have changed
 
         if (!transformed.isEmpty()) {
-            Class<?>[] transformedArray = new Class<?>[transformed.size()];
-            transformed.toArray(transformedArray);
-            for (int i = 0; i < transformed.size(); i++) {
-                Helper.verbose("retransforming " + transformedArray[i].getName());
-            }
             synchronized(this) {
-                try {
-                    inst.retransformClasses(transformedArray);
-                } catch(VerifyError ve) {
-                    Helper.err("Retransformer : VerifyError during retransformation : some rules may not have been correctly injected or uninjected!");
-                    Helper.errTraceException(ve);
-                    out.println("VerifyError during retransformation : some rules may not have been correctly injected or uninjected!");
-                    ve.printStackTrace(out);
-                }
+                retransform(transformed, out, "injected or uninjected");
             }
         }
 
@@ -242,6 +229,10 @@ public class Retransformer extends Transformer {
                         transform.writeTo(out);
                     }
                 }
+                RuleGovernor governor = ruleScript.peekGovernor();
+                if (governor != null) {
+                    governor.writeTo(out);
+                }
             }
         }
     }
@@ -295,8 +286,7 @@ public class Retransformer extends Transformer {
 
         // now look for loaded classes whose names are in the list
 
-        List<Class<?>> transformed = new LinkedList<Class<?>>();
-        List<String> deletedClassNames = new LinkedList<String>();
+        Set<String> deletedClassNames = new HashSet<String>();
 
         for (RuleScript ruleScript : toBeRemoved) {
             for (Transform transform : ruleScript.allTransforms()) {
@@ -304,40 +294,17 @@ public class Retransformer extends Transformer {
                 // so ignore transforms which include a throwable
                 Throwable throwable = transform.getThrowable();
                 if(throwable == null) {
-                    String className = transform.getInternalClassName();
-                    if(!deletedClassNames.contains(className)) {
-                        deletedClassNames.add(className);
-                    }
+                    deletedClassNames.add(transform.getInternalClassName());
                 }
             }
         }
 
-        for (Class clazz : inst.getAllLoadedClasses()) {
-            if (isSkipClass(clazz)) {
-                continue;
-            }
-
-            if (deletedClassNames.contains(clazz.getName())) {
-                transformed.add(clazz);
-            }
-        }
+        List<Class<?>> transformed = findLoadedClasses(deletedClassNames, null);
 
         // retransform all classes affected by the change
 
         if (!transformed.isEmpty()) {
-            Class<?>[] transformedArray = new Class<?>[transformed.size()];
-            transformed.toArray(transformedArray);
-            for (int i = 0; i < transformed.size(); i++) {
-                Helper.verbose("retransforming " + transformedArray[i].getName());
-            }
-            try {
-                inst.retransformClasses(transformedArray);
-            } catch(VerifyError ve) {
-                Helper.err("Retransformer : VerifyError during retransformation : some rules may not have been correctly uninjected!");
-                Helper.errTraceException(ve);
-                out.println("VerifyError during retransformation : some rules may not have been correctly uninjected!");
-                ve.printStackTrace(out);
-            }
+            retransform(transformed, out, "uninjected");
         }
 
         // now we can safely purge keys for all the deleted scripts -- we need to do this
@@ -383,6 +350,136 @@ public class Retransformer extends Transformer {
         }
     }
 
+    /**
+     * number of loaded classes handed to each thread when searching for classes which need to be
+     * retransformed. if there are fewer loaded classes than this then the search is done inline.
+     */
+    private static final int MATCH_CHUNK_SIZE = 2048;
+
+    /**
+     * find all loaded classes which need to be retransformed either because their name is in the
+     * supplied set or because they match a rule in the supplied repository. when there are a lot of
+     * loaded classes the search is split into chunks which are matched in parallel.
+     * @param classNames the names of classes which were transformed by rules which are being removed
+     * @param repository a repository containing rules which are being added or null if there are none
+     * @return a list of the classes which need to be retransformed
+     * @throws Exception if a class cannot be matched against the rules
+     */
+    private List<Class<?>> findLoadedClasses(final Set<String> classNames, final ScriptRepository repository)
+            throws Exception
+    {
+        final Class<?>[] classes = inst.getAllLoadedClasses();
+        int chunkCount = (classes.length + MATCH_CHUNK_SIZE - 1) / MATCH_CHUNK_SIZE;
+        int threadCount = Math.min(Runtime.getRuntime().availableProcessors(), chunkCount);
+
+        if (threadCount <= 1) {
+            return findLoadedClasses(classes, 0, classes.length, classNames, repository);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable, "Byteman Retransformer");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
+        try {
+            List<Future<List<Class<?>>>> futures = new ArrayList<Future<List<Class<?>>>>(chunkCount);
+            for (int i = 0; i < chunkCount; i++) {
+                final int from = i * MATCH_CHUNK_SIZE;
+                final int to = Math.min(from + MATCH_CHUNK_SIZE, classes.length);
+                futures.add(executor.submit(new Callable<List<Class<?>>>() {
+                    public List<Class<?>> call() throws Exception
+                    {
+                        // we don't want to see any triggers in the matching threads
+                        Rule.disableTriggersInternal();
+                        return findLoadedClasses(classes, from, to, classNames, repository);
+                    }
+                }));
+            }
+
+            List<Class<?>> result = new ArrayList<Class<?>>();
+            for (Future<List<Class<?>>> future : futures) {
+                try {
+                    result.addAll(future.get());
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception)cause;
+                    } else if (cause instanceof Error) {
+                        throw (Error)cause;
+                    }
+                    throw e;
+                }
+            }
+            return result;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<Class<?>> findLoadedClasses(Class<?>[] classes, int from, int to, Set<String> classNames, ScriptRepository repository)
+            throws Exception
+    {
+        List<Class<?>> result = new ArrayList<Class<?>>();
+
+        for (int i = from; i < to; i++) {
+            Class<?> clazz = classes[i];
+            if (isSkipClass(clazz)) {
+                continue;
+            }
+            if (classNames.contains(clazz.getName())) {
+                result.add(clazz);
+            } else if (repository != null && repository.matchClass(clazz)) {
+                result.add(clazz);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * retransform a list of classes, splitting the list into batches if a retransform batch size has been
+     * configured so that the JVM does not have to retransform all of them in one stop. progress is reported
+     * to the listener client after each batch.
+     * @param classes the classes to be retransformed
+     * @param out the writer used to report back to the listener client
+     * @param action a description of what the retransform is for used when reporting an error
+     * @throws Exception if the retransform fails
+     */
+    private void retransform(List<Class<?>> classes, PrintWriter out, String action) throws Exception
+    {
+        int total = classes.size();
+        int batchSize = getRetransformBatchSize();
+
+        if (batchSize <= 0 || batchSize > total) {
+            batchSize = total;
+        }
+
+        for (int start = 0; start < total; start += batchSize) {
+            int end = Math.min(start + batchSize, total);
+            Class<?>[] transformedArray = new Class<?>[end - start];
+            classes.subList(start, end).toArray(transformedArray);
+            for (int i = 0; i < transformedArray.length; i++) {
+                Helper.verbose(VERBOSE_TRANSFORM, "retransforming " + transformedArray[i].getName());
+            }
+            try {
+                inst.retransformClasses(transformedArray);
+            } catch(VerifyError ve) {
+                Helper.err("Retransformer : VerifyError during retransformation : some rules may not have been correctly " + action + "!");
+                Helper.errTraceException(ve);
+                out.println("VerifyError during retransformation : some rules may not have been correctly " + action + "!");
+                ve.printStackTrace(out);
+            }
+            if (batchSize < total) {
+                out.println("retransformed " + end + " of " + total + " classes");
+                out.flush();
+            }
+        }
+    }
+
     public void appendJarFile(PrintWriter out, JarFile jarfile, boolean isBoot) throws Exception
     {
         if (isBoot) {
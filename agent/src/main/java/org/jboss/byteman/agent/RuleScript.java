@@ -24,6 +24,10 @@
 package org.jboss.byteman.agent;
 
 import org.jboss.byteman.rule.Rule;
+import org.jboss.byteman.rule.exception.ParseException;
+import org.jboss.byteman.rule.grammar.ParseNode;
+import org.jboss.byteman.rule.metrics.RuleGovernor;
+import org.jboss.byteman.rule.metrics.RuleMetrics;
 import org.jboss.byteman.rule.type.TypeHelper;
 
 import java.util.ArrayList;
@@ -57,6 +61,15 @@ public class RuleScript
      * the name of the method of the target class or interface into which the rule should be injected
      */
     private String targetMethod;
+    /**
+     * the name of the target method extracted from the target method spec
+     */
+    private final String targetMethodName;
+    /**
+     * the descriptor extracted from the target method spec in internal format or the empty String
+     * if the spec does not include a parameter type list
+     */
+    private final String targetDescriptor;
     /**
      * true if the rule should be injected into overriding implementations of the target method false
      * if it should only be injected into the implementation defined by the target class or, in the
@@ -116,6 +129,23 @@ public class RuleScript
      */
     private List<TransformSet> transformSets;
 
+    /**
+     * execution metrics for this rule created when it first fires with metrics enabled
+     */
+    private volatile RuleMetrics metrics;
+
+    /**
+     * governor enforcing the overhead budget for this rule created when it first fires with a
+     * budget configured
+     */
+    private volatile RuleGovernor governor;
+
+    /**
+     * the parse tree for the rule text cached once it has been parsed successfully so that rules
+     * created for each trigger class and method do not have to parse the text again
+     */
+    private volatile ParseNode ruleTree;
+
     /**
      * standard constructor for a rule
      * @param name the name of the rule
@@ -138,6 +168,17 @@ public class RuleScript
         this.isInterface =  isInterface;
         this.isOverride = isOverride;
         this.targetMethod = targetMethod;
+        // the target method spec may just be a bare method name or it may optionally include a
+        // parameter type list and a return type. we split it once here rather than every time
+        // the script is matched against a candidate class or method
+        if (targetMethod != null) {
+            String mungedMethodSpec = mungeMethodSpecReturnType(targetMethod);
+            this.targetMethodName = TypeHelper.parseMethodName(mungedMethodSpec);
+            this.targetDescriptor = TypeHelper.parseMethodDescriptor(mungedMethodSpec);
+        } else {
+            this.targetMethodName = null;
+            this.targetDescriptor = null;
+        }
         this.targetHelper = targetHelper;
         this.imports = imports;
         this.targetLocation = (targetLocation != null ? targetLocation : Location.create(LocationType.ENTRY, ""));
@@ -172,6 +213,51 @@ public class RuleScript
         return targetMethod;
     }
 
+    /**
+     * return the name of the target method with any return type and parameter type list removed
+     * @return the target method name
+     */
+    public String getTargetMethodName() {
+        return targetMethodName;
+    }
+
+    /**
+     * return the descriptor derived from the parameter type list and return type of the target
+     * method spec
+     * @return the target method descriptor or the empty String if the spec only names the method
+     */
+    public String getTargetDescriptor() {
+        return targetDescriptor;
+    }
+
+    /**
+     * pattern used to identify target method specs which include a return type preceding the
+     * method name and parameter type list. note that we can only handle a return type in
+     * cases where the parameter type list is also specified.
+     */
+    private static final String JAVA_METHOD_SPEC_PATTERN = "[A-Za-z0-9$.]+ +[A-Za-z0-9$]+\\(.*\\)";
+
+    /**
+     * detect a method specification which includes a return type preceding the method name and transform
+     * it so that the return type is at the end. With Java syntax the return type appears before the
+     * method name. if so we modify the target method spec so that the return type appears after the
+     * argument list which means we also accept a spec supplied in this format.
+     * @param targetMethodSpec
+     * @return the method spec in the desired format
+     */
+    private static String mungeMethodSpecReturnType(String targetMethodSpec)
+    {
+        // remove any leading or trailing spaces
+        targetMethodSpec = targetMethodSpec.trim();
+        if (targetMethodSpec.matches(JAVA_METHOD_SPEC_PATTERN)) {
+            // put the return type at the end
+            int spaceIdx = targetMethodSpec.indexOf(' ');
+            String returnType = targetMethodSpec.substring(0, spaceIdx);
+            targetMethodSpec = targetMethodSpec.substring(spaceIdx).trim() + returnType;
+        }
+        return targetMethodSpec;
+    }
+
     public boolean isOverride() {
         return isOverride;
     }
@@ -196,6 +282,90 @@ public class RuleScript
 
     public boolean isCompileToBytecode() { return compileToBytecode; }
 
+    /**
+     * return the parse tree for the rule text, parsing it if it has not already been parsed. n.b.
+     * a parse failure is not cached, ensuring that it gets reported each time a rule is created.
+     * @return the parse tree for the rule text
+     * @throws ParseException if the rule text cannot be parsed
+     */
+    public ParseNode getRuleTree() throws ParseException
+    {
+        ParseNode result = ruleTree;
+        if (result == null) {
+            // a racing thread may also parse the text but the trees will be equivalent
+            result = Rule.parse(this);
+            ruleTree = result;
+        }
+        return result;
+    }
+
+    /**
+     * parse the rule text ahead of any attempt to inject the rule. errors are ignored at this stage
+     * and are reported when the rule is injected
+     */
+    public void preparse()
+    {
+        try {
+            getRuleTree();
+        } catch (ParseException pe) {
+            // ignore
+        }
+    }
+
+    /**
+     * return the execution metrics for this rule, creating them if they have not already
+     * been created
+     * @return the execution metrics for this rule
+     */
+    public RuleMetrics getMetrics()
+    {
+        RuleMetrics result = metrics;
+        if (result == null) {
+            synchronized (this) {
+                result = metrics;
+                if (result == null) {
+                    result = metrics = new RuleMetrics();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the execution metrics for this rule or null if none have been gathered
+     */
+    public RuleMetrics peekMetrics()
+    {
+        return metrics;
+    }
+
+    /**
+     * return the governor which enforces the overhead budget for this rule, creating it if it
+     * has not already been created
+     * @return the governor for this rule
+     */
+    public RuleGovernor getGovernor()
+    {
+        RuleGovernor result = governor;
+        if (result == null) {
+            synchronized (this) {
+                result = governor;
+                if (result == null) {
+                    result = governor = new RuleGovernor();
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the governor for this rule or null if no budget has been applied to it
+     */
+    public RuleGovernor peekGovernor()
+    {
+        return governor;
+    }
+
     /**
      * getter for list of transforms applied for this script. must be called synchronized on the script.
      * @return the list of transforms
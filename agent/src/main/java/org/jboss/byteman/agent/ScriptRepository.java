@@ -27,6 +27,7 @@ package org.jboss.byteman.agent;
 import org.jboss.byteman.rule.helper.Helper;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.lang.reflect.Method;
 
 /**
@@ -36,8 +37,10 @@ public class ScriptRepository
 {
     public ScriptRepository(boolean skipOverrideRules)
     {
-        targetClassIndex = new HashMap<String, List<RuleScript>>();
-        targetInterfaceIndex = new HashMap<String, List<RuleScript>>();
+        // the target indexes are read without locking. updates lock the index and always
+        // install a new list so readers see either the old or the new list, never a partial one
+        targetClassIndex = new ConcurrentHashMap<String, List<RuleScript>>();
+        targetInterfaceIndex = new ConcurrentHashMap<String, List<RuleScript>>();
         ruleNameIndex = new HashMap<String, RuleScript>();
         this.skipOverrideRules = skipOverrideRules;
     }
@@ -57,7 +60,7 @@ public class ScriptRepository
             // split rules into separate lines
             String[] lines = scriptText.split("\n");
             List<String> rules = new ArrayList<String>();
-            String nextRule = "";
+            StringBuilder nextRule = new StringBuilder();
             String sepr = "";
             String name = null;
             String targetClass = null;
@@ -85,7 +88,7 @@ public class ScriptRepository
                     if (inRule) {
                         // add a blank line in place of the comment so the line numbers
                         // are reported consistently during parsing
-                        nextRule += sepr;
+                        nextRule.append(sepr);
                         sepr = "\n";
                     } // else { // just drop comment line }
                 } else if (line.startsWith("RULE ")) {
@@ -189,7 +192,7 @@ public class ScriptRepository
                         if (targetImports == null) {
                             targetImports = (defaultImports != null) ? defaultImports : new String[0];
                         }
-                        RuleScript ruleScript = new RuleScript(name, targetClass, isInterface, isOverride, targetMethod, targetHelper, targetImports, targetLocation, nextRule, startNumber, scriptFile, ruleCompileToBytecode);
+                        RuleScript ruleScript = new RuleScript(name, targetClass, isInterface, isOverride, targetMethod, targetHelper, targetImports, targetLocation, nextRule.toString(), startNumber, scriptFile, ruleCompileToBytecode);
                         ruleScripts.add(ruleScript);
                     }
                     name = null;
@@ -200,20 +203,20 @@ public class ScriptRepository
                     targetImports = null;
                     // reset rule level compilation to script level setting
                     ruleCompileToBytecode = scriptCompileToBytecode;
-                    nextRule = "";
+                    nextRule.setLength(0);
                     sepr = "";
                     inRule = false;
                     isInterface = false;
                     // reset start number so we pick up the next rule text line
                     startNumber = -1;
-                } else if (lineNumber == maxLines && !nextRule.trim().equals("")) {
+                } else if (lineNumber == maxLines && !nextRule.toString().trim().equals("")) {
                     throw new Exception("org.jboss.byteman.agent.Transformer : no matching ENDRULE for RULE " + name + " in script " + scriptFile);
                 } else {
                     // this is a line of rule text - see if it is the first one
                     if (startNumber < 0) {
                         startNumber = lineNumber;
                     }
-                    nextRule += sepr + line;
+                    nextRule.append(sepr).append(line);
                     sepr = "\n";
                 }
             }
@@ -242,6 +245,7 @@ public class ScriptRepository
         // insert the script by name, invalidating any old script
 
         synchronized (ruleNameIndex) {
+            updateCount++;
             previous = ruleNameIndex.put(name, script);
             if (previous != null) {
                 boolean isDeleted = previous.setDeleted();
@@ -314,6 +318,7 @@ public class ScriptRepository
         synchronized (ruleNameIndex) {
             current = ruleNameIndex.get(name);
             if (current == script) {
+                updateCount++;
                 ruleNameIndex.remove(current.getName());
                 boolean isDeleted = current.setDeleted();
                 if (isDeleted) {
@@ -362,6 +367,15 @@ public class ScriptRepository
         return current;
     }
 
+    /**
+     * retrieve a count which changes whenever a script is added to or removed from the repository
+     * @return the update count
+     */
+    public int getUpdateCount()
+    {
+        return updateCount;
+    }
+
     /**
      * locate a rule script with a given name
      * @param name the name of the rule script
@@ -386,9 +400,7 @@ public class ScriptRepository
 
     public List<RuleScript> scriptsForClassName(String name)
     {
-        synchronized (targetClassIndex) {
-            return targetClassIndex.get(name);
-        }
+        return targetClassIndex.get(name);
     }
 
     /**
@@ -403,9 +415,7 @@ public class ScriptRepository
 
     public List<RuleScript> scriptsForInterfaceName(String name)
     {
-        synchronized (targetInterfaceIndex) {
-            return targetInterfaceIndex.get(name);
-        }
+        return targetInterfaceIndex.get(name);
     }
 
     /**
@@ -422,7 +432,7 @@ public class ScriptRepository
         boolean isOverride = false;
         // we create these lazily to avoid unnecessary work
 
-        LinkedList<Class> visited = null;
+        HashSet<Class> visited = null;
         LinkedList<Class> toVisit = null;
 
         while (nextClazz != null) {
@@ -448,7 +458,7 @@ public class ScriptRepository
                 if (l > 0) {
                     // ok, so we have to create the lists here
                     if (visited == null) {
-                        visited = new LinkedList<Class>();
+                        visited = new HashSet<Class>();
                         toVisit = new LinkedList<Class>();
                     }
                     // add the implements list of this class as interfaces to consider
@@ -518,51 +528,68 @@ public class ScriptRepository
      */
     private boolean matchTarget(String name, Class<?> clazz, boolean isInterface, boolean isOverride) {
         Map<String, List<RuleScript>> index = (isInterface ? targetInterfaceIndex : targetClassIndex);
-        synchronized (index) {
-            List<RuleScript> ruleScripts = index.get(name);
-            if (ruleScripts != null) {
-                for (RuleScript ruleScript: ruleScripts) {
-                    if (isOverride && !ruleScript.isOverride()) {
-                        continue;
-                    }
-                    String methodName = ruleScript.getTargetMethod();
-                    int signaturePos = methodName.indexOf("(");
-                    if (signaturePos > 0) {
-                        methodName = methodName.substring(0, signaturePos).trim();
-                    }
-                    int wsPos = methodName.indexOf(' ');
-                    if (wsPos < 0) {
-                       wsPos = methodName.indexOf('\t');
-                    }
-                    if (wsPos > 0) {
-                        // ok, so METHOD spec must be in format "type methodname"
-                        methodName = methodName.substring(wsPos).trim();
-                    }
-                    if ("<init>".equals(methodName) || "<clinit>".equals(methodName)) {
-                        // every class has some sort of constructor so accept it
-                        return true;
-                    }
-                    // this filters out cases where the class does not have a method with the correct name
-                    try {
-                        Method[] declaredMethods = clazz.getDeclaredMethods();
-                        for (int i = 0; i < declaredMethods.length; i++) {
-                            Method method = declaredMethods[i];
-                            if (method.getName().equals(methodName)) {
-                                return true;
-                            }
-                        }
-                    } catch (NoClassDefFoundError e) {
-                        // we cam sometimes get an Error thrown if the class we are lookingb up has unresolved
-                        // refernces ot a non-existent class. don't really know why such classes turn up
-                        // in the inst allLoaddedClasses list but they do.
-                        // ignore
-                    }
+        // index entries are replaced rather than updated in place so we can iterate the list without locking
+        List<RuleScript> ruleScripts = index.get(name);
+        if (ruleScripts != null) {
+            Set<String> methodNames = null;
+            for (RuleScript ruleScript: ruleScripts) {
+                if (isOverride && !ruleScript.isOverride()) {
+                    continue;
+                }
+                String methodName = ruleScript.getTargetMethodName();
+                if ("<init>".equals(methodName) || "<clinit>".equals(methodName)) {
+                    // every class has some sort of constructor so accept it
+                    return true;
+                }
+                // this filters out cases where the class does not have a method with the correct name
+                if (methodNames == null) {
+                    methodNames = declaredMethodNames(clazz);
+                }
+                if (methodNames.contains(methodName)) {
+                    return true;
                 }
             }
         }
         return false;
     }
 
+    /**
+     * return the names of the methods declared by a class. the names are computed once per class
+     * and cached so that matching many rules against the same class, or matching the same class on
+     * every rule upload, only pays for reflective method lookup once.
+     * @param clazz the class whose declared method names are required
+     * @return the set of declared method names
+     */
+    private Set<String> declaredMethodNames(Class<?> clazz)
+    {
+        Set<String> methodNames;
+        synchronized (declaredMethodNamesCache) {
+            methodNames = declaredMethodNamesCache.get(clazz);
+        }
+        if (methodNames != null) {
+            return methodNames;
+        }
+        try {
+            Method[] declaredMethods = clazz.getDeclaredMethods();
+            methodNames = new HashSet<String>(declaredMethods.length * 2);
+            for (int i = 0; i < declaredMethods.length; i++) {
+                methodNames.add(declaredMethods[i].getName());
+            }
+        } catch (NoClassDefFoundError e) {
+            // we cam sometimes get an Error thrown if the class we are lookingb up has unresolved
+            // refernces ot a non-existent class. don't really know why such classes turn up
+            // in the inst allLoaddedClasses list but they do.
+            // ignore
+            methodNames = Collections.emptySet();
+        }
+        // a racing thread may have computed the same set but it will be identical so it does
+        // not matter which one ends up in the cache
+        synchronized (declaredMethodNamesCache) {
+            declaredMethodNamesCache.put(clazz, methodNames);
+        }
+        return methodNames;
+    }
+
     /**
      * insert a script into the index using the script target class name as the index key.
      * @param script
@@ -604,14 +631,14 @@ public class ScriptRepository
             // check it has not been deleted by another thread
             if (entry != null && entry.contains(script)) {
                 if (entry.size() == 1) {
-                    // removing the last one so reset entry to null
-                    entry = null;
+                    // removing the last one so drop the entry
+                    index.remove(key);
                 } else {
                     // always create a new list so that we don't affect any in progress iteration of the previous value
                     entry = new ArrayList<RuleScript>(entry);
                     entry.remove(script);
+                    index.put(key, entry);
                 }
-                index.put(key, entry);
             }
         }
 
@@ -643,7 +670,7 @@ public class ScriptRepository
                             // some other thread must have deleted the old one so just insert the new one
 
                             // always create a new list so that we don't affect any in progress iteration of the previous value
-                            entry = new ArrayList<RuleScript>(entry);
+                            entry = (entry == null ? new ArrayList<RuleScript>() : new ArrayList<RuleScript>(entry));
                             add(entry, script);
                         } else {
                             // always create a new list so that we don't affect any in progress iteration of the previous value
@@ -658,14 +685,14 @@ public class ScriptRepository
                         if (entry != null && entry.contains(previous)) {
                             // unindex the previous script
                             if (entry.size() == 1) {
-                                // removing the last one so reset entry to null
-                                entry = null;
+                                // removing the last one so drop the entry
+                                index.remove(oldKey);
                             } else {
                                 // always create a new list so that we don't affect any in progress iteration of the previous value
                                 entry = new ArrayList<RuleScript>(entry);
                                 entry.remove(previous);
+                                index.put(oldKey, entry);
                             }
-                            index.put(oldKey, entry);
                         }
                         // now index the new one
                         entry = index.get(key);
@@ -721,6 +748,14 @@ public class ScriptRepository
 
     private final Map<String, RuleScript> ruleNameIndex;
 
+    /**
+     * a cache of the names of the methods declared by classes which have been checked by matchTarget.
+     * weak keys ensure the cache does not retain classes or their loaders. access must be synchronized
+     * on the map.
+     */
+
+    private final Map<Class<?>, Set<String>> declaredMethodNamesCache = new WeakHashMap<Class<?>, Set<String>>();
+
     /**
      * a flag derived from the transformer which enables us to avoid testing superclass rules for
      * matches if it is set
@@ -733,6 +768,11 @@ public class ScriptRepository
      */
     private int overrideRuleCount = 0;
 
+    /**
+     * a count of updates to the rule name index. written while holding the lock on the index
+     */
+    private volatile int updateCount = 0;
+
     /**
      * see if we need to do any transformation of interfaces
      * @return true if there are any interface rules false if there are none
@@ -744,12 +784,10 @@ public class ScriptRepository
         // but this is a grey area given that there is no way of knowing exactly when a transform
         // request will be sent to the Transformer and the repsonse is not to ransform anything. if
         // an uupdate affects a loaded class then it will get retransformed anyway so the risk here
-        // si that the rule gets applied alittle late. we still synchornize here anyway to ensure
-        // the isEmpty check does not get a partial view of the index.
+        // si that the rule gets applied alittle late. the index is a concurrent map so the isEmpty
+        // check cannot get a partial view of the index.
 
-        synchronized (targetInterfaceIndex) {
-            return !targetInterfaceIndex.isEmpty();
-        }
+        return !targetInterfaceIndex.isEmpty();
     }
 
     /**
@@ -0,0 +1,944 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2026 Red Hat and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.byteman.agent;
+
+import org.jboss.byteman.agent.check.BytecodeChecker;
+import org.jboss.byteman.agent.check.ClassChecker;
+import org.jboss.byteman.rule.Rule;
+import org.jboss.byteman.rule.binding.Binding;
+import org.jboss.byteman.rule.binding.Bindings;
+import org.jboss.byteman.rule.helper.Helper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A persistent cache of transformed class bytecode which allows the agent to avoid regenerating
+ * the same transforms every time a JVM is started with the same rules. Each entry is saved in a
+ * file in the cache directory whose name is a digest of the original class bytes, the class name
+ * and loader, the names and bytecode of the supers and interfaces in the class hierarchy, the installed rule
+ * scripts, the agent version and the byteman configuration properties. Alongside the transformed bytecode the entry records, for every rule it injected,
+ * the trigger method details, the state of the rule bindings established during injection and
+ * the slot id planted in the trigger code.
+ *
+ * When a class matching one or more rules is transformed the cache is checked before any
+ * transform is attempted. If an entry is found then its rules are recreated from the current
+ * scripts, their binding state is restored and they are installed under the saved slot ids,
+ * after which the saved bytecode is returned without reading or writing it with ASM. Slot ids
+ * recorded in the cache are reserved when the cache is opened so that rules which are injected
+ * normally never allocate them. If an entry cannot be replayed, say because its slot ids are
+ * already in use, the class is transformed as normal.
+ */
+public class TransformCache
+{
+    /**
+     * create a cache which saves entries in the supplied directory
+     * @param directory the cache directory which must exist and be writable
+     * @param transformer the transformer used to resolve the supers and interfaces of cached classes
+     * @param scriptRepository the repository used to locate rule scripts
+     * @param helperManager the helper manager used when creating rules
+     * @param accessEnabler the access enabler used when creating rules
+     */
+    public TransformCache(File directory, Transformer transformer, ScriptRepository scriptRepository, HelperManager helperManager, AccessEnabler accessEnabler)
+    {
+        this.directory = directory;
+        this.transformer = transformer;
+        this.scriptRepository = scriptRepository;
+        this.helperManager = helperManager;
+        this.accessEnabler = accessEnabler;
+        this.scriptsDigest = null;
+        this.scriptsUpdateCount = 0;
+        // make sure ids employed by saved trigger code are not handed out to new rules
+        Rule.reserveKeyIds(readKeyIds());
+    }
+
+    /**
+     * the details of an attempt to transform a class which may be served from the cache or,
+     * failing that, used to save the outcome of a normal transform to the cache. a recording is
+     * associated with the thread performing the transform so that transform contexts can notify
+     * it of the rules they inject without needing a handle on the cache.
+     */
+    public static class Recording
+    {
+        private TransformCache cache;
+        private Recording previous;
+        private String className;
+        private ClassLoader originalLoader;
+        private ClassLoader loader;
+        private byte[] classBytes;
+        private boolean attempted;
+        private boolean failed;
+        private String key;
+        private byte[] replayedBytes;
+        private List<Injection> injections;
+
+        private Recording(TransformCache cache, Recording previous, String className, ClassLoader originalLoader, ClassLoader loader, byte[] classBytes)
+        {
+            this.cache = cache;
+            this.previous = previous;
+            this.className = className;
+            this.originalLoader = originalLoader;
+            this.loader = loader;
+            this.classBytes = classBytes;
+            this.attempted = false;
+            this.failed = false;
+            this.key = null;
+            this.replayedBytes = null;
+            this.injections = new ArrayList<Injection>();
+        }
+
+        /**
+         * try to serve the transform from the cache. this should be called before the first
+         * rule is applied to the class and only has an effect on the first call
+         * @return true if the transformed bytecode was found in the cache and its rules have
+         * been installed otherwise false
+         */
+        public boolean replay()
+        {
+            if (attempted) {
+                return false;
+            }
+
+            attempted = true;
+            key = cache.computeKey(className, originalLoader, classBytes);
+
+            if (key == null) {
+                failed = true;
+                return false;
+            }
+
+            replayedBytes = cache.replay(key, className, loader);
+
+            return replayedBytes != null;
+        }
+
+        /**
+         * @return true if the transform was served from the cache otherwise false
+         */
+        public boolean isReplayed()
+        {
+            return replayedBytes != null;
+        }
+
+        /**
+         * @return the transformed bytecode found in the cache or null if there was no cache hit
+         */
+        public byte[] getReplayedBytes()
+        {
+            return replayedBytes;
+        }
+
+        /**
+         * save the outcome of a normal transform to the cache if every rule applied to the
+         * class was injected without problems
+         * @param transformedBytes the transformed bytecode
+         */
+        public void save(byte[] transformedBytes)
+        {
+            if (key == null || failed || replayedBytes != null || injections.isEmpty()) {
+                return;
+            }
+
+            cache.save(key, className, injections, transformedBytes);
+        }
+
+        private void injected(RuleScript ruleScript, Rule rule)
+        {
+            injections.add(new Injection(ruleScript, rule));
+        }
+    }
+
+    /**
+     * start recording a transform of a class performed by the current thread
+     * @param className the name of the class being transformed
+     * @param originalLoader the defining loader of the class which may be null
+     * @param loader the loader used to resolve rules injected into the class
+     * @param classBytes the original bytecode of the class
+     * @return the recording
+     */
+    public Recording startRecording(String className, ClassLoader originalLoader, ClassLoader loader, byte[] classBytes)
+    {
+        Recording recording = new Recording(this, currentRecording.get(), className, originalLoader, loader, classBytes);
+        currentRecording.set(recording);
+        return recording;
+    }
+
+    /**
+     * stop recording a transform, reinstating any recording which was in progress when it started
+     * @param recording the recording to stop
+     */
+    public void stopRecording(Recording recording)
+    {
+        if (recording.previous != null) {
+            currentRecording.set(recording.previous);
+        } else {
+            currentRecording.remove();
+        }
+    }
+
+    /**
+     * @return the recording for the transform being performed by the current thread or null if
+     * no recording is in progress
+     */
+    public static Recording getRecording()
+    {
+        return currentRecording.get();
+    }
+
+    /**
+     * called when a rule has been successfully injected into the class being transformed
+     * @param ruleScript the script for the rule
+     * @param rule the rule which was injected
+     */
+    public static void notifyInjected(RuleScript ruleScript, Rule rule)
+    {
+        Recording recording = currentRecording.get();
+        if (recording != null) {
+            recording.injected(ruleScript, rule);
+        }
+    }
+
+    /**
+     * called when a rule fails to inject into the class being transformed, ensuring the outcome
+     * is not saved. this is not just an optimization. a saved entry cannot reproduce the warnings
+     * and errors recorded against the rule script.
+     */
+    public static void notifyFailed()
+    {
+        Recording recording = currentRecording.get();
+        if (recording != null) {
+            recording.failed = true;
+        }
+    }
+
+    /**
+     * @return the number of transforms which were served from the cache
+     */
+    public static long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of transforms which could not be served from the cache
+     */
+    public static long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of transforms which have been saved to the cache
+     */
+    public long getSaves()
+    {
+        return saves.get();
+    }
+
+    /**
+     * compute the key for a transform
+     * @param className the name of the class being transformed
+     * @param originalLoader the defining loader of the class which may be null
+     * @param classBytes the original bytecode of the class
+     * @return a hex string or null if no digest could be computed
+     */
+    private String computeKey(String className, ClassLoader originalLoader, byte[] classBytes)
+    {
+        try {
+            MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+            update(digest, Integer.toString(FORMAT_VERSION));
+            update(digest, getAgentVersion());
+            // include the configuration properties which affect injection so that changing
+            // them invalidates the cache
+            for (String name : KEY_PROPERTIES) {
+                String value = System.getProperty(name);
+                update(digest, name);
+                // distinguish a property which is set to the empty string from one which is unset
+                update(digest, (value == null ? null : "=" + value));
+            }
+            digest.update(getScriptsDigest());
+            update(digest, className);
+            update(digest, (originalLoader == null ? "" : originalLoader.getClass().getName()));
+            digest.update(classBytes);
+            // the transform also depends upon the class hierarchy, both when matching overriding
+            // and interface rules and when computing frames, so a change to a super or interface
+            // must invalidate the entry even if the bytes of this class are unchanged
+            updateHierarchy(digest, new BytecodeChecker(classBytes), originalLoader);
+            return toHex(digest.digest());
+        } catch (Exception e) {
+            Helper.verbose(Transformer.VERBOSE_TRANSFORM, "TransformCache.computeKey : unable to compute key for class " + className + " : " + e);
+            return null;
+        }
+    }
+
+    /**
+     * add the names and bytecode of all the supers and interfaces of a class and of the types they
+     * in turn extend or implement to a digest
+     * @param digest the digest to update
+     * @param checker a checker for the class being transformed
+     * @param loader the loader used to resolve the supers and interfaces
+     * @throws IOException if the digest cannot be updated
+     */
+    private void updateHierarchy(MessageDigest digest, ClassChecker checker, ClassLoader loader) throws IOException
+    {
+        Set<String> visited = new HashSet<String>();
+        LinkedList<ClassChecker> toVisit = new LinkedList<ClassChecker>();
+        toVisit.add(checker);
+        while (!toVisit.isEmpty()) {
+            ClassChecker next = toVisit.removeFirst();
+            List<String> names = new ArrayList<String>();
+            String superName = next.getSuper();
+            if (superName != null) {
+                names.add(superName);
+            }
+            int count = next.getInterfaceCount();
+            for (int i = 0; i < count; i++) {
+                names.add(next.getInterface(i));
+            }
+            update(digest, Integer.toString(names.size()));
+            for (String name : names) {
+                update(digest, name);
+                if (visited.add(name)) {
+                    updateBytecode(digest, name, loader);
+                    ClassChecker resolved = transformer.getClassChecker(name, loader);
+                    if (resolved != null) {
+                        toVisit.add(resolved);
+                    } else {
+                        // record that the type could not be resolved
+                        update(digest, "");
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * add the bytecode of a class to a digest, reading it as a resource from the supplied loader
+     * @param digest the digest to update
+     * @param name the name of the class
+     * @param loader the loader used to locate the class bytecode
+     * @throws IOException if the digest cannot be updated
+     */
+    private static void updateBytecode(MessageDigest digest, String name, ClassLoader loader) throws IOException
+    {
+        String resourceName = name.replace('.', '/') + ".class";
+        InputStream is;
+        if (loader != null) {
+            is = loader.getResourceAsStream(resourceName);
+        } else {
+            is = ClassLoader.getSystemClassLoader().getResourceAsStream(resourceName);
+        }
+        if (is == null) {
+            // record that no bytecode was available
+            update(digest, "");
+            return;
+        }
+        try {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = is.read(buffer)) > 0) {
+                digest.update(buffer, 0, read);
+            }
+            digest.update((byte)0);
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * obtain a digest of the installed rule scripts, recomputing it if the scripts have changed
+     * @return the digest
+     * @throws Exception if the digest cannot be computed
+     */
+    private synchronized byte[] getScriptsDigest() throws Exception
+    {
+        int updateCount = scriptRepository.getUpdateCount();
+
+        if (scriptsDigest != null && scriptsUpdateCount == updateCount) {
+            return scriptsDigest;
+        }
+
+        List<RuleScript> ruleScripts = scriptRepository.currentRules();
+        Collections.sort(ruleScripts, new Comparator<RuleScript>() {
+            public int compare(RuleScript s1, RuleScript s2)
+            {
+                return s1.getName().compareTo(s2.getName());
+            }
+        });
+
+        MessageDigest digest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        for (RuleScript ruleScript : ruleScripts) {
+            update(digest, ruleScript.getName());
+            update(digest, ruleScript.getTargetClass());
+            update(digest, Boolean.toString(ruleScript.isInterface()));
+            update(digest, Boolean.toString(ruleScript.isOverride()));
+            update(digest, ruleScript.getTargetMethod());
+            update(digest, ruleScript.getTargetHelper());
+            for (String imported : ruleScript.getImports()) {
+                update(digest, imported);
+            }
+            update(digest, ruleScript.getTargetLocation().toString());
+            update(digest, ruleScript.getRuleText());
+            update(digest, ruleScript.getFile());
+            update(digest, Integer.toString(ruleScript.getLine()));
+            update(digest, Boolean.toString(ruleScript.isCompileToBytecode()));
+        }
+
+        scriptsDigest = digest.digest();
+        scriptsUpdateCount = updateCount;
+
+        return scriptsDigest;
+    }
+
+    /**
+     * look for a saved transform and, if one is found, install the rules it injected
+     * @param key the key for the transform
+     * @param className the name of the class being transformed
+     * @param loader the loader used to resolve rules injected into the class
+     * @return the saved bytecode or null if there is no usable entry
+     */
+    private byte[] replay(String key, String className, ClassLoader loader)
+    {
+        File file = new File(directory, key + ENTRY_SUFFIX);
+        Entry entry = null;
+
+        if (file.isFile()) {
+            try {
+                entry = read(file);
+            } catch (Exception e) {
+                Helper.verbose(Transformer.VERBOSE_TRANSFORM, "TransformCache.replay : unable to read cache entry " + file + " : " + e);
+            }
+        }
+
+        if (entry == null || !install(entry, className, loader)) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        Helper.verbose(Transformer.VERBOSE_TRANSFORM, "TransformCache.replay : using cached transform of class " + className);
+
+        return entry.classBytes;
+    }
+
+    /**
+     * recreate and install the rules recorded in a cache entry
+     * @param entry the entry
+     * @param className the name of the class being transformed
+     * @param loader the loader used to resolve rules injected into the class
+     * @return true if all the rules were installed or false if the entry could not be used, in
+     * which case any rules which were installed will have been purged
+     */
+    private boolean install(Entry entry, String className, ClassLoader loader)
+    {
+        Set<RuleScript> purged = new HashSet<RuleScript>();
+        List<Rule> installed = new ArrayList<Rule>();
+
+        for (Injection injection : entry.injections) {
+            RuleScript ruleScript = scriptRepository.scriptForRuleName(injection.ruleName);
+            Rule rule = null;
+
+            if (ruleScript != null && !ruleScript.isDeleted()) {
+                if (purged.add(ruleScript)) {
+                    // clear out records of any previous transform as the transform context would
+                    ruleScript.purge(loader, className);
+                }
+                try {
+                    rule = Rule.create(ruleScript, loader, helperManager, accessEnabler);
+                } catch (Throwable th) {
+                    Helper.verbose(Transformer.VERBOSE_TRANSFORM, "TransformCache.install : unable to recreate rule " + injection.ruleName + " : " + th);
+                }
+            }
+
+            if (rule != null) {
+                rule.setTypeInfo(className, injection.triggerAccess, injection.triggerMethod, injection.triggerDescriptor, injection.triggerExceptions);
+                if (!injection.restoreBindings(rule) || !rule.restoreKey(injection.keyId)) {
+                    rule = null;
+                }
+            }
+
+            if (rule != null) {
+                installed.add(rule);
+                if (!ruleScript.recordTransform(loader, className, injection.triggerMethod, injection.triggerDescriptor, rule, null)) {
+                    rule = null;
+                }
+            }
+
+            if (rule == null) {
+                // back out and let the class be transformed from scratch
+                for (Rule installedRule : installed) {
+                    installedRule.purge();
+                }
+                for (RuleScript purgedScript : purged) {
+                    purgedScript.purge(loader, className);
+                }
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * save the outcome of a normal transform
+     * @param key the key for the transform
+     * @param className the name of the class which was transformed
+     * @param injections the rules injected by the transform
+     * @param classBytes the transformed bytecode
+     */
+    private void save(String key, String className, List<Injection> injections, byte[] classBytes)
+    {
+        File file = new File(directory, key + ENTRY_SUFFIX);
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(injections.size());
+            for (Injection injection : injections) {
+                injection.write(out);
+            }
+            out.writeInt(classBytes.length);
+            out.write(classBytes);
+            out.flush();
+            write(file, bytes.toByteArray());
+            saves.incrementAndGet();
+            Helper.verbose(Transformer.VERBOSE_TRANSFORM, "TransformCache.save : saved transform of class " + className);
+        } catch (IOException e) {
+            Helper.verbose(Transformer.VERBOSE_TRANSFORM, "TransformCache.save : unable to save transform of class " + className + " : " + e);
+        }
+    }
+
+    /**
+     * read a cache entry by mapping its file into memory
+     * @param file the entry file
+     * @return the entry or null if the file does not contain a valid entry
+     * @throws IOException if the file cannot be read
+     */
+    private Entry read(File file) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            List<Injection> injections = readInjections(buffer);
+            if (injections == null) {
+                return null;
+            }
+            byte[] classBytes = new byte[buffer.getInt()];
+            buffer.get(classBytes);
+            return new Entry(injections, classBytes);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * write a file atomically by writing a temporary file and renaming it
+     * @param file the file to write
+     * @param bytes the file contents
+     * @throws IOException if the file cannot be written
+     */
+    private void write(File file, byte[] bytes) throws IOException
+    {
+        File tmp = File.createTempFile(file.getName(), TMP_SUFFIX, directory);
+        FileOutputStream fos = new FileOutputStream(tmp);
+        try {
+            fos.write(bytes);
+        } finally {
+            fos.close();
+        }
+        if (!tmp.renameTo(file)) {
+            // some platforms will not rename over an existing file
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                tmp.delete();
+                throw new IOException("unable to rename " + tmp + " to " + file);
+            }
+        }
+    }
+
+    /**
+     * read the injection details at the start of a mapped cache entry
+     * @param buffer the mapped entry
+     * @return the injections or null if the buffer does not contain a valid entry
+     */
+    private static List<Injection> readInjections(ByteBuffer buffer)
+    {
+        if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+            return null;
+        }
+        int count = buffer.getInt();
+        List<Injection> injections = new ArrayList<Injection>(count);
+        for (int i = 0; i < count; i++) {
+            injections.add(new Injection(buffer));
+        }
+        return injections;
+    }
+
+    /**
+     * collect the slot ids employed by the trigger code saved in the cache entries
+     * @return the ids
+     */
+    private List<Integer> readKeyIds()
+    {
+        List<Integer> ids = new ArrayList<Integer>();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return ids;
+        }
+        for (File file : files) {
+            if (!file.getName().endsWith(ENTRY_SUFFIX)) {
+                continue;
+            }
+            try {
+                RandomAccessFile raf = new RandomAccessFile(file, "r");
+                try {
+                    FileChannel channel = raf.getChannel();
+                    List<Injection> injections = readInjections(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+                    if (injections != null) {
+                        for (Injection injection : injections) {
+                            ids.add(injection.keyId);
+                        }
+                    }
+                } finally {
+                    raf.close();
+                }
+            } catch (Exception e) {
+                Helper.verbose(Transformer.VERBOSE_TRANSFORM, "TransformCache : unable to read cache entry " + file + " : " + e);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * the details of a rule injected by a saved transform
+     */
+    private static class Injection
+    {
+        private String ruleName;
+        private String triggerMethod;
+        private String triggerDescriptor;
+        private int triggerAccess;
+        private String[] triggerExceptions;
+        private int keyId;
+        private List<SavedBinding> bindings;
+
+        /**
+         * capture the details of a rule which has just been injected
+         */
+        private Injection(RuleScript ruleScript, Rule rule)
+        {
+            this.ruleName = ruleScript.getName();
+            this.triggerMethod = rule.getTriggerMethod();
+            this.triggerDescriptor = rule.getTriggerDescriptor();
+            this.triggerAccess = rule.getTriggerAccess();
+            this.triggerExceptions = rule.getTriggerExceptions();
+            this.keyId = rule.getKeyId();
+            this.bindings = new ArrayList<SavedBinding>();
+            Iterator<Binding> iterator = rule.getBindings().iterator();
+            while (iterator.hasNext()) {
+                bindings.add(new SavedBinding(iterator.next()));
+            }
+        }
+
+        /**
+         * read the details of an injected rule from a cache entry
+         */
+        private Injection(ByteBuffer buffer)
+        {
+            this.ruleName = readString(buffer);
+            this.triggerMethod = readString(buffer);
+            this.triggerDescriptor = readString(buffer);
+            this.triggerAccess = buffer.getInt();
+            int exceptionCount = buffer.getInt();
+            if (exceptionCount < 0) {
+                this.triggerExceptions = null;
+            } else {
+                this.triggerExceptions = new String[exceptionCount];
+                for (int i = 0; i < exceptionCount; i++) {
+                    triggerExceptions[i] = readString(buffer);
+                }
+            }
+            this.keyId = buffer.getInt();
+            int bindingCount = buffer.getInt();
+            this.bindings = new ArrayList<SavedBinding>(bindingCount);
+            for (int i = 0; i < bindingCount; i++) {
+                bindings.add(new SavedBinding(buffer));
+            }
+        }
+
+        private void write(DataOutputStream out) throws IOException
+        {
+            writeString(out, ruleName);
+            writeString(out, triggerMethod);
+            writeString(out, triggerDescriptor);
+            out.writeInt(triggerAccess);
+            if (triggerExceptions == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(triggerExceptions.length);
+                for (String exception : triggerExceptions) {
+                    writeString(out, exception);
+                }
+            }
+            out.writeInt(keyId);
+            out.writeInt(bindings.size());
+            for (SavedBinding binding : bindings) {
+                binding.write(out);
+            }
+        }
+
+        /**
+         * reinstate the binding state which was established when the rule was injected
+         * @param rule a newly created rule for the same script
+         * @return true if the bindings were restored or false if the rule's bindings do not
+         * match those which were saved
+         */
+        private boolean restoreBindings(Rule rule)
+        {
+            Bindings ruleBindings = rule.getBindings();
+            List<Binding> restored = new ArrayList<Binding>(bindings.size());
+
+            for (SavedBinding saved : bindings) {
+                Binding binding = ruleBindings.lookup(saved.name);
+                if (binding == null) {
+                    // injection adds aliases for local vars which name method parameters
+                    binding = new Binding(rule, saved.name);
+                }
+                if (saved.descriptor != null) {
+                    binding.setDescriptor(saved.descriptor);
+                }
+                binding.setLocalIndex(saved.localIndex);
+                binding.setCallArrayIndex(saved.callArrayIndex);
+                restored.add(binding);
+            }
+
+            for (int i = 0; i < bindings.size(); i++) {
+                String aliasName = bindings.get(i).aliasName;
+                if (aliasName != null) {
+                    Binding alias = null;
+                    for (Binding binding : restored) {
+                        if (binding.getName().equals(aliasName)) {
+                            alias = binding;
+                            break;
+                        }
+                    }
+                    if (alias == null) {
+                        return false;
+                    }
+                    restored.get(i).aliasTo(alias);
+                }
+            }
+
+            // every binding created by parsing the rule must have been saved
+            Iterator<Binding> iterator = ruleBindings.iterator();
+            while (iterator.hasNext()) {
+                if (!restored.contains(iterator.next())) {
+                    return false;
+                }
+            }
+
+            ruleBindings.setBindings(restored);
+
+            return true;
+        }
+    }
+
+    /**
+     * the state of a rule binding established when the rule was injected
+     */
+    private static class SavedBinding
+    {
+        private String name;
+        private String descriptor;
+        private int localIndex;
+        private int callArrayIndex;
+        private String aliasName;
+
+        private SavedBinding(Binding binding)
+        {
+            Binding alias = binding.getAlias();
+            this.name = binding.getName();
+            this.descriptor = binding.getDescriptor();
+            this.localIndex = binding.getLocalIndex();
+            this.callArrayIndex = binding.getCallArrayIndex();
+            this.aliasName = (alias == null ? null : alias.getName());
+        }
+
+        private SavedBinding(ByteBuffer buffer)
+        {
+            this.name = readString(buffer);
+            this.descriptor = readString(buffer);
+            this.localIndex = buffer.getInt();
+            this.callArrayIndex = buffer.getInt();
+            this.aliasName = readString(buffer);
+        }
+
+        private void write(DataOutputStream out) throws IOException
+        {
+            writeString(out, name);
+            writeString(out, descriptor);
+            out.writeInt(localIndex);
+            out.writeInt(callArrayIndex);
+            writeString(out, aliasName);
+        }
+    }
+
+    /**
+     * a saved transform
+     */
+    private static class Entry
+    {
+        private List<Injection> injections;
+        private byte[] classBytes;
+
+        private Entry(List<Injection> injections, byte[] classBytes)
+        {
+            this.injections = injections;
+            this.classBytes = classBytes;
+        }
+    }
+
+    /**
+     * write a possibly null string as a length followed by its UTF-8 encoding
+     */
+    private static void writeString(DataOutputStream out, String string) throws IOException
+    {
+        if (string == null) {
+            out.writeInt(-1);
+        } else {
+            byte[] bytes = string.getBytes(UTF8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * read a possibly null string written by writeString
+     */
+    private static String readString(ByteBuffer buffer)
+    {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        try {
+            return new String(bytes, UTF8);
+        } catch (IOException e) {
+            // UTF-8 is always supported
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void update(MessageDigest digest, String string) throws IOException
+    {
+        if (string != null) {
+            digest.update(string.getBytes(UTF8));
+        }
+        // separate successive values so that adjacent strings cannot run together
+        digest.update((byte)0);
+    }
+
+    private static String toHex(byte[] bytes)
+    {
+        StringBuilder builder = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+            builder.append(Character.forDigit(b & 0xf, 16));
+        }
+        return builder.toString();
+    }
+
+    private static String getAgentVersion()
+    {
+        String version = TransformCache.class.getPackage().getImplementationVersion();
+        return (version == null ? "0" : version);
+    }
+
+    private static final ThreadLocal<Recording> currentRecording = new ThreadLocal<Recording>();
+
+    private static final int MAGIC = 0x424d5443;
+
+    /**
+     * must be incremented whenever the entry format or the injected trigger code changes
+     */
+    private static final int FORMAT_VERSION = 1;
+
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+
+    private static final String UTF8 = "UTF-8";
+
+    private static final String ENTRY_SUFFIX = ".transform";
+
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * the configuration properties which affect the outcome of a transform
+     */
+    private static final String[] KEY_PROPERTIES = {
+        Transformer.COMPILE_TO_BYTECODE,
+        Transformer.COMPILE_TO_BYTECODE_COMPATIBILITY,
+        Transformer.TRANSFORM_ALL,
+        Transformer.TRANSFORM_ALL_COMPATIBILITY,
+        Transformer.TRANSFORM_ALL_METHODS,
+        Transformer.SKIP_OVERRIDE_RULES,
+        Transformer.DISALLOW_DOWNCAST,
+        Transformer.DUMP_CFG,
+        Transformer.DUMP_CFG_PARTIAL,
+        Transformer.DUMP_GENERATED_CLASSES,
+        Transformer.DUMP_GENERATED_CLASSES_INTERMEDIATE,
+        Transformer.DUMP_GENERATED_CLASSES_DIR
+    };
+
+    private File directory;
+    private Transformer transformer;
+    private ScriptRepository scriptRepository;
+    private HelperManager helperManager;
+    private AccessEnabler accessEnabler;
+    private byte[] scriptsDigest;
+    private int scriptsUpdateCount;
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private final AtomicLong saves = new AtomicLong();
+}
@@ -29,6 +29,8 @@ import org.jboss.byteman.agent.adapter.BMLocalScopeAdapter;
 import org.jboss.byteman.agent.adapter.RuleCheckAdapter;
 import org.jboss.byteman.agent.adapter.RuleTriggerAdapter;
 import org.jboss.byteman.agent.check.ClassChecker;
+import org.jboss.byteman.agent.check.CommonSuperCache;
+import org.jboss.byteman.agent.check.CommonSuperCache.AncestorList;
 import org.jboss.byteman.rule.exception.ParseException;
 import org.jboss.byteman.rule.exception.TypeException;
 import org.jboss.byteman.rule.exception.TypeWarningException;
@@ -36,11 +38,17 @@ import org.jboss.byteman.rule.helper.Helper;
 import org.jboss.byteman.rule.type.TypeHelper;
 import org.jboss.byteman.rule.Rule;
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
 
 /**
  * Class used to localise the context information employed when creating a rule from a rule script and
@@ -50,18 +58,12 @@ public class TransformContext
 {
     public TransformContext(Transformer transformer, RuleScript ruleScript, String triggerClassName, ClassLoader loader, HelperManager helperManager, AccessEnabler accessEnabler)
     {
-        // the target method spec may just be a bare method name or it may optionally include a
-        // parameter type list and a return type. With Java syntax the return type appears before
-        // the method name. if so we modify the target method spec so that the return type appears
-        // after the argument list which means we also accept a spec supplied in this format. The
-        // parseMethodDescriptor call below will eat specs in this latter format.
-        final String targetMethodSpec = ruleScript.getTargetMethod();
-        String mungedMethodSpec = mungeMethodSpecReturnType(targetMethodSpec);
         this.transformer = transformer;
         this.ruleScript =  ruleScript;
         this.triggerClassName = triggerClassName;
-        this.targetMethodName = TypeHelper.parseMethodName(mungedMethodSpec);
-        this.targetDescriptor = TypeHelper.parseMethodDescriptor(mungedMethodSpec);
+        // the rule script has already split the target method spec into a name and descriptor
+        this.targetMethodName = ruleScript.getTargetMethodName();
+        this.targetDescriptor = ruleScript.getTargetDescriptor();
         this.loader = loader;
         this.helperManager = helperManager;
         this.ruleMap = new HashMap<String, Rule>();
@@ -74,8 +76,6 @@ public class TransformContext
     {
         final Location handlerLocation = ruleScript.getTargetLocation();
 
-        String ruleName = ruleScript.getName();
-
         // we are about to try to retransform the rule
         // in the context of a given class and loader
         // so we can clear any existing transforms
@@ -84,17 +84,7 @@ public class TransformContext
 
         ruleScript.purge(loader, triggerClassName);
 
-        try {
-            parseRule();
-        } catch (ParseException pe) {
-            Helper.verbose("org.jboss.byteman.agent.Transformer : error parsing rule " + ruleName + "\n" + pe);
-            Helper.verboseTraceException(pe);
-            recordFailedTransform(pe);
-            return targetClassBytes;
-        } catch (Throwable th) {
-            Helper.verbose("org.jboss.byteman.agent.Transformer : unexpected error parsing rule " + ruleName + "\n" + th);
-            Helper.verboseTraceException(th);
-            recordFailedTransform(th);
+        if (!tryParseRule()) {
             return targetClassBytes;
         }
 
@@ -128,7 +118,7 @@ public class TransformContext
             return targetClassBytes;
         } catch (Throwable th) {
             // hmm, unexpected error
-            Helper.verbose("org.jboss.byteman.agent.Transformer : unexpected error applying rule " + ruleScript.getName() + " to class " + triggerClassName + "\n" + th);
+            Helper.verbose(Transformer.VERBOSE_TRANSFORM, "org.jboss.byteman.agent.Transformer : unexpected error applying rule " + ruleScript.getName() + " to class " + triggerClassName + "\n" + th);
             Helper.verboseTraceException(th);
 
             recordFailedTransform(th);
@@ -140,38 +130,243 @@ public class TransformContext
             return targetClassBytes;
         }
 
-        Helper.verbose("org.jboss.byteman.agent.Transformer : possible trigger for rule " + ruleScript.getName() + " in class " + triggerClassName);
+        Helper.verbose(Transformer.VERBOSE_TRANSFORM, "org.jboss.byteman.agent.Transformer : possible trigger for rule " + ruleScript.getName() + " in class " + triggerClassName);
+
+        byte[] newBytes = injectTriggers(targetClassBytes, true, new HashSet<String>());
+
+        if (newBytes == null) {
+            return targetClassBytes;
+        }
+
+        // hand back the transformed byte code
+        Helper.verbose(Transformer.VERBOSE_TRANSFORM, "org.jboss.byteman.agent.Transformer : inserted trigger for " + ruleScript.getName() + " in class " + triggerClassName);
+
+
+        // record all successfully transformed rules
+
+        if (!notifyRules()) {
+            // rule must have been deleted so forget the transform
+            return targetClassBytes;
+        } else {
+            return newBytes;
+        }
+    }
+
+    /**
+     * transform the bytecode for a class by injecting the rules associated with a list of contexts which
+     * all share the same trigger class and loader. this has the same effect as applying each context's
+     * transform in turn but it is a lot cheaper when many rules target the same class. all the rules are
+     * checked against the class in a single read pass. the triggers for rules which match are then injected
+     * one rule at a time but stack frames only get computed when the last trigger is injected rather than
+     * on every pass.
+     *
+     * the check pass chains the check adapters for all the rules, relying on the fact that they pass the
+     * code through unchanged. the trigger adapters cannot be chained because the control flow analysis
+     * they perform expects all try catch blocks to be declared before the code they cover, which only
+     * holds when the code comes straight from a class reader.
+     *
+     * if the check pass throws an exception then all the rules created for the batch are purged and
+     * null is returned. in that case the caller must retry the transform one context at a time for each
+     * context which has not failed.
+     * @param contexts the contexts for the rules to be injected in the order they would be applied. only the
+     * first of them may employ a location which requires local variable scope info
+     * @param targetClassBytes the bytecode for the trigger class
+     * @return the transformed bytecode, the original bytecode if no rule applies or null if the
+     * transform needs to be retried one rule at a time
+     */
+    public static byte[] transform(List<TransformContext> contexts, byte[] targetClassBytes)
+    {
+        List<TransformContext> parsed = new ArrayList<TransformContext>(contexts.size());
+
+        for (TransformContext context : contexts) {
+            context.ruleScript.purge(context.loader, context.triggerClassName);
+            if (context.tryParseRule()) {
+                parsed.add(context);
+            }
+        }
+
+        if (parsed.isEmpty()) {
+            return targetClassBytes;
+        }
+
+        TransformContext first = parsed.get(0);
+
+        // chain the check adapters so that each one sees the output of its predecessor. the adapters
+        // do not buffer method code so the labels they see are resolved by the writer at the end of
+        // the chain. only the first adapter is fed local var scope info by the local scope adapter
+        // at the head of the chain
 
-        cr = new ClassReader(targetClassBytes);
-        ClassWriter cw = getNonLoadingClassWriter(ClassWriter.COMPUTE_MAXS|ClassWriter.COMPUTE_FRAMES);
+        int count = parsed.size();
+        RuleCheckAdapter[] checkAdapters = new RuleCheckAdapter[count];
+        ClassVisitor visitor = first.getNonLoadingClassWriter(0);
+
+        for (int i = count - 1; i >= 0; i--) {
+            TransformContext context = parsed.get(i);
+            checkAdapters[i] = context.ruleScript.getTargetLocation().getRuleCheckAdapter(visitor, context);
+            visitor = checkAdapters[i];
+        }
+
+        ClassReader cr = new ClassReader(targetClassBytes);
+        try {
+            cr.accept(new BMLocalScopeAdapter(visitor), ClassReader.EXPAND_FRAMES);
+        } catch (Throwable th) {
+            // a failing rule will already have been notified but we cannot tell how far
+            // the other rules got so they all need to be retried one at a time
+            if (!(th instanceof TransformFailure)) {
+                Helper.verbose(Transformer.VERBOSE_TRANSFORM, "org.jboss.byteman.agent.Transformer : unexpected error checking batched rules against class " + first.triggerClassName + "\n" + th);
+                Helper.verboseTraceException(th);
+            }
+            purgeRules(parsed);
+            return null;
+        }
+
+        List<TransformContext> visited = new ArrayList<TransformContext>(count);
+
+        for (int i = 0; i < count; i++) {
+            // only insert the rule trigger call if there is a suitable location in the target method
+            if (checkAdapters[i].isVisited()) {
+                TransformContext context = parsed.get(i);
+                Helper.verbose(Transformer.VERBOSE_TRANSFORM, "org.jboss.byteman.agent.Transformer : possible trigger for rule " + context.ruleScript.getName() + " in class " + context.triggerClassName);
+                visited.add(context);
+            }
+        }
+
+        // now inject each rule in turn. intermediate versions of the class only need to be good
+        // enough to be read by the next pass so we only compute frames on the last one
+
+        // methods rewritten by an earlier pass may contain stale frames so we accumulate their names
+        // and descriptors to ensure the pass which computes frames rewrites them rather than copying them
+
+        byte[] currentBytes = targetClassBytes;
+        boolean hasFrames = true;
+        int last = visited.size() - 1;
+        Set<String> rewritten = new HashSet<String>();
+
+        for (int i = 0; i <= last; i++) {
+            TransformContext context = visited.get(i);
+            byte[] newBytes = context.injectTriggers(currentBytes, i == last, rewritten);
+            if (newBytes != null) {
+                Helper.verbose(Transformer.VERBOSE_TRANSFORM, "org.jboss.byteman.agent.Transformer : inserted trigger for " + context.ruleScript.getName() + " in class " + context.triggerClassName);
+                // record all successfully transformed rules
+                if (context.notifyRules()) {
+                    currentBytes = newBytes;
+                    hasFrames = (i == last);
+                }
+            }
+        }
+
+        if (!hasFrames) {
+            // the last rule was not injected so we still need to compute frames
+            cr = new ClassReader(currentBytes);
+            if (Transformer.isTransformAllMethods()) {
+                ClassWriter cw = first.getNonLoadingClassWriter(null, ClassWriter.COMPUTE_MAXS|ClassWriter.COMPUTE_FRAMES);
+                cr.accept(cw, ClassReader.SKIP_FRAMES);
+                currentBytes = cw.toByteArray();
+            } else {
+                ClassWriter cw = first.getNonLoadingClassWriter(cr, ClassWriter.COMPUTE_MAXS|ClassWriter.COMPUTE_FRAMES);
+                cr.accept(new MethodRewriteFilter(cw, rewritten), ClassReader.SKIP_FRAMES);
+                currentBytes = cw.toByteArray();
+            }
+        }
+
+        return currentBytes;
+    }
+
+    /**
+     * check whether this context has recorded a failure for its rule
+     * @return true if the rule failed to parse or to transform the trigger class otherwise false
+     */
+    public boolean isFailed()
+    {
+        return failed;
+    }
+
+    /**
+     * @return the rule script whose rule this context is used to inject
+     */
+    public RuleScript getRuleScript()
+    {
+        return ruleScript;
+    }
+
+    /**
+     * inject trigger calls for this context's rule into the bytecode for the trigger class. unless
+     * the transformer is configured to rewrite all methods, methods which neither receive a trigger
+     * nor appear in the rewritten set are copied unchanged from the input bytecode, saving the cost
+     * of recomputing their stack frames.
+     * @param targetClassBytes the bytecode for the trigger class
+     * @param computeFrames true if stack frames should be computed for the transformed class or false
+     * if it is only going to be fed through another transform
+     * @param rewritten a set of keys identifying methods which have been rewritten by a previous
+     * pass. keys for methods rewritten by this pass are added to the set.
+     * @return the transformed bytecode or null if the injection failed
+     */
+    private byte[] injectTriggers(byte[] targetClassBytes, boolean computeFrames, final Set<String> rewritten)
+    {
+        final Location handlerLocation = ruleScript.getTargetLocation();
+        final boolean copyMethods = !Transformer.isTransformAllMethods();
+        ClassReader cr = new ClassReader(targetClassBytes);
+        ClassWriter cw = getNonLoadingClassWriter((copyMethods ? cr : null), computeFrames ? ClassWriter.COMPUTE_MAXS|ClassWriter.COMPUTE_FRAMES : ClassWriter.COMPUTE_MAXS);
         RuleTriggerAdapter adapter = handlerLocation.getRuleAdapter(cw, this);
         // insert a JSR inliner between the reader and the adapter so we don't see JSR/RET sequences
         // we use a specialised version which provides us with info about vars going in and out of scope
-        BMJSRInliner jsrInliner = new BMJSRInliner(adapter);
+        BMJSRInliner jsrInliner;
+        if (copyMethods) {
+            // only methods which we inject into or which an earlier pass rewrote are passed
+            // through the inliner. the writer copies all other methods as is
+            jsrInliner = new BMJSRInliner(adapter) {
+                protected boolean rewriteMethod(int access, String name, String desc)
+                {
+                    String key = getMethodKey(name, desc);
+                    if (injectIntoMethod(name, desc)) {
+                        rewritten.add(key);
+                        return true;
+                    }
+                    return rewritten.contains(key);
+                }
+            };
+        } else {
+            jsrInliner = new BMJSRInliner(adapter);
+        }
         try {
             cr.accept(jsrInliner, ClassReader.EXPAND_FRAMES);
         } catch (TransformFailure te) {
             // will already be notified
-            return targetClassBytes;
+            return null;
         } catch (Throwable th) {
-            Helper.verbose("org.jboss.byteman.agent.Transformer : unexpected error injecting trigger for rule " + ruleScript.getName() + " into class " + triggerClassName + "\n" +  th);
+            Helper.verbose(Transformer.VERBOSE_TRANSFORM, "org.jboss.byteman.agent.Transformer : unexpected error injecting trigger for rule " + ruleScript.getName() + " into class " + triggerClassName + "\n" +  th);
             Helper.verboseTraceException(th);
 
             recordFailedTransform(th);
-            return targetClassBytes;
+            return null;
         }
-        // hand back the transformed byte code
-        Helper.verbose("org.jboss.byteman.agent.Transformer : inserted trigger for " + ruleScript.getName() + " in class " + triggerClassName);
 
+        return cw.toByteArray();
+    }
 
-        // record all successfully transformed rules
+    /**
+     * parse the rule, recording a failed transform if it cannot be parsed
+     * @return true if the rule was parsed otherwise false
+     */
+    private boolean tryParseRule()
+    {
+        String ruleName = ruleScript.getName();
 
-        if (!notifyRules()) {
-            // rule must have been deleted so forget the transform
-            return targetClassBytes;
-        } else {
-            return cw.toByteArray();
+        try {
+            parseRule();
+        } catch (ParseException pe) {
+            Helper.verbose(Transformer.VERBOSE_TRANSFORM, "org.jboss.byteman.agent.Transformer : error parsing rule " + ruleName + "\n" + pe);
+            Helper.verboseTraceException(pe);
+            recordFailedTransform(pe);
+            return false;
+        } catch (Throwable th) {
+            Helper.verbose(Transformer.VERBOSE_TRANSFORM, "org.jboss.byteman.agent.Transformer : unexpected error parsing rule " + ruleName + "\n" + th);
+            Helper.verboseTraceException(th);
+            recordFailedTransform(th);
+            return false;
         }
+
+        return true;
     }
 
     public void parseRule() throws Exception {
@@ -242,6 +437,7 @@ public class TransformContext
         String message = warningMessage + " for method " + triggerMethodName + TypeHelper.internalizeDescriptor(triggerMethodDescriptor);
         TypeWarningException tw = new TypeWarningException(message);
         ruleScript.recordTransform(loader, triggerClassName, triggerMethodName, triggerMethodDescriptor, rule, tw);
+        TransformCache.notifyFailed();
     }
 
     /**
@@ -258,6 +454,7 @@ public class TransformContext
         String message = failMessage + " for method " + triggerMethodName + TypeHelper.internalizeDescriptor(triggerMethodDescriptor);
         TypeException te = new TypeException(message);
         ruleScript.recordTransform(loader, triggerClassName, triggerMethodName, triggerMethodDescriptor, rule, te);
+        TransformCache.notifyFailed();
 
         failed = true;
 
@@ -267,6 +464,7 @@ public class TransformContext
     public void recordFailedTransform(Throwable th)
     {
         ruleScript.recordFailedTransform(loader, triggerClassName, th);
+        TransformCache.notifyFailed();
 
         failed = true;
     }
@@ -313,6 +511,33 @@ public class TransformContext
         }
     }
 
+    /**
+     * class visitor used when recomputing frames for a class whose methods have been rewritten by an
+     * earlier pass. methods identified in the rewritten set are passed through a plain method visitor
+     * so that the writer regenerates them. all other methods are handed straight to the writer so
+     * that it copies them unchanged.
+     */
+    private static class MethodRewriteFilter extends ClassVisitor
+    {
+        private Set<String> rewritten;
+
+        MethodRewriteFilter(ClassVisitor cv, Set<String> rewritten)
+        {
+            super(Opcodes.ASM5, cv);
+            this.rewritten = rewritten;
+        }
+
+        @Override
+        public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions)
+        {
+            MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
+            if (mv != null && rewritten.contains(getMethodKey(name, desc))) {
+                return new MethodVisitor(Opcodes.ASM5, mv) {};
+            }
+            return mv;
+        }
+    }
+
     /**
      *  this gets called when a transform attempt completes without any exceptions. if there are rules left
      *  in the rule map then they will belong successful injections.
@@ -326,6 +551,7 @@ public class TransformContext
             // we parsed the rule but failed ever to inject it
             TypeWarningException twe = new TypeWarningException("failed to find any matching trigger method in class " + TypeHelper.internalizeClass(triggerClassName));
             ruleScript.recordTransform(loader, triggerClassName, null, null, firstRule, twe);
+            TransformCache.notifyFailed();
             return false;
         }
 
@@ -344,9 +570,11 @@ public class TransformContext
                 if(!ruleScript.recordTransform(loader, triggerClassName, triggerMethodName, triggerMethodDescriptor, rule, null)) {
                     // rule script must have been deleted so purge rules and avoid installing the transformed code
                     purgeRules();
+                    TransformCache.notifyFailed();
 
                     return false;
                 }
+                TransformCache.notifyInjected(ruleScript, rule);
             }
         }
 
@@ -365,6 +593,13 @@ public class TransformContext
         }
     }
 
+    private static void purgeRules(List<TransformContext> contexts)
+    {
+        for (TransformContext context : contexts) {
+            context.purgeRules();
+        }
+    }
+
     /**
      * return a unique string key identifying a specific rule compiled against some class and method/signature in the
      * context of a specific class loader
@@ -375,6 +610,17 @@ public class TransformContext
             return triggerClassName + "#" + triggerMethodName + "#" + triggerMethodDescriptor;
     }
 
+    /**
+     * return a string key identifying a method of the class being transformed by its name and descriptor
+     * @param methodName the name of the method
+     * @param methodDescriptor the descriptor of the method
+     * @return a key for the method
+     */
+    private static String getMethodKey(String methodName, String methodDescriptor)
+    {
+        return methodName + methodDescriptor;
+    }
+
     /**
      * return the trigger method name used to construct the supplied rule key
      * @param key
@@ -397,32 +643,6 @@ public class TransformContext
         int secondHash = key.lastIndexOf('#');
         return key.substring(secondHash + 1);
     }
-    /**
-     * pattern used to identify target method specs which include a return type preceding the
-     * method name and parameter type list. note that we can only handle a return type in
-     * cases where the parameter type list is also specified.
-     */
-    private static final String JAVA_METHOD_SPEC_PATTERN = "[A-Za-z0-9$.]+ +[A-Za-z0-9$]+\\(.*\\)";
-
-    /**
-     * detect a method specification which includes a return type preceding the method name and transform
-     * it so that the return type is at the end.
-     * @param targetMethodSpec
-     * @return the method spec in the desired format
-     */
-    private String mungeMethodSpecReturnType(String targetMethodSpec)
-    {
-        // remove any leading or trailing spaces
-        targetMethodSpec = targetMethodSpec.trim();
-        if (targetMethodSpec.matches(JAVA_METHOD_SPEC_PATTERN)) {
-            // put the return type at the end
-            int spaceIdx = targetMethodSpec.indexOf(' ');
-            String returnType = targetMethodSpec.substring(0, spaceIdx);
-            targetMethodSpec = targetMethodSpec.substring(spaceIdx).trim() + returnType;
-        }
-        return targetMethodSpec;
-    }
-
     /**
      * get a class writer which will not attempt to load classes. The default classwriter tries this when a
      * reference type local var frame slot aligns with a slot of reference type in a successor block's
@@ -435,9 +655,23 @@ public class TransformContext
      * @return a non-loading class writer
      */
     private ClassWriter getNonLoadingClassWriter(int flags)
+    {
+        return getNonLoadingClassWriter(null, flags);
+    }
+
+    /**
+     * get a non-loading class writer which, when a class reader is supplied, copies the constant pool
+     * and any method which is passed through without being transformed directly from the reader's
+     * bytecode.
+     *
+     * @param cr the reader which will feed the writer or null if nothing should be copied
+     * @param flags
+     * @return a non-loading class writer
+     */
+    private ClassWriter getNonLoadingClassWriter(ClassReader cr, int flags)
     {
         final TransformContext finalContext = this;
-        return new ClassWriter(flags) {
+        return new ClassWriter(cr, flags) {
         TransformContext context = finalContext;
             protected String getCommonSuperClass(final String type1, final String type2) {
                 // if we always return Object we cannot go wrong
@@ -458,40 +692,70 @@ public class TransformContext
         if (t1.equals(t2)) {
             return t2;
         }
+
+        // ASM asks about the same pairs of types at every merge point where they meet
+        // so see if we have already computed a result for this loader
+
+        CommonSuperCache cache = transformer.getCommonSuperCache();
+        String result = cache.lookupCommonSuper(t1, t2, loader);
+
+        if (result == null) {
+            result = computeLeastCommonSuper(t1, t2, cache);
+            if (result == null) {
+                // one of the types could not be resolved so fall back on Object but don't
+                // remember it as a later lookup may be able to resolve the type
+                return TOFU;
+            }
+            cache.installCommonSuper(t1, t2, loader, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * compute the least common super of two types
+     * @param t1 the internal name of the first type
+     * @param t2 the internal name of the second type
+     * @param cache the cache used to retrieve and save the ancestors of each type
+     * @return the internal name of the least common super or null if either type could not be resolved
+     */
+
+    private String computeLeastCommonSuper(final String t1, final String t2, CommonSuperCache cache)
+    {
         // switch to canonical names containing "." instead of "/" when
         // checking against names found in bytecode but ensure the returned
         // name contains "/"
 
-        String type1 = t1.replaceAll("/", ".");
-        String type2 = t2.replaceAll("/", ".");
+        String type1 = t1.replace('/', '.');
+        String type2 = t2.replace('/', '.');
         ClassChecker checker1 = transformer.getClassChecker(type1, loader);
 
         if (checker1 == null) {
-            return TOFU;
+            return null;
         }
 
         ClassChecker checker2 = transformer.getClassChecker(type2, loader);
 
         if (checker2 == null) {
-            return TOFU;
+            return null;
         }
 
         if (checker1.isInterface()) {
             if (checker2.isInterface()) {
                 // both are interfaces so find the first common parent interface
                 // (including the original interfaces) or return Object
-                LinkedList<String> interfaces2 = listInterfaces(checker2);
+                AncestorList interfaces2 = listInterfaces(type2, checker2, cache);
                 if (interfaces2.contains(type1)) {
                     return t1;
                 } else {
-                    LinkedList<String> interfaces1 = listInterfaces(checker1);
-                    while (!interfaces1.isEmpty()) {
-                        String next = interfaces1.pop();
+                    AncestorList interfaces1 = listInterfaces(type1, checker1, cache);
+                    for (int i = 0; i < interfaces1.size(); i++) {
+                        String next = interfaces1.get(i);
                         if (next.equals(type2)) {
                             return t2;
                         }
                         if (interfaces2.contains(next)) {
-                            return next.replaceAll("\\.", "/");
+                            return next.replace('.', '/');
                         }
                     }
                     return TOFU;
@@ -500,16 +764,16 @@ public class TransformContext
                 // type1 is an interface but type2 is a class so return the
                 // first parent interface of type2 which implements either type1 or
                 // one of type1's parent interfaces or return Object
-                LinkedList<String> interfaces2 = listInterfaces(checker2);
+                AncestorList interfaces2 = listInterfaces(type2, checker2, cache);
                 if (interfaces2.contains(type1)) {
                     // type1 is an interface of type2
                     return t1;
                 } else {
-                    LinkedList<String> interfaces1 = listInterfaces(checker1);
-                    while (!interfaces1.isEmpty()) {
-                        String next = interfaces1.pop();
+                    AncestorList interfaces1 = listInterfaces(type1, checker1, cache);
+                    for (int i = 0; i < interfaces1.size(); i++) {
+                        String next = interfaces1.get(i);
                         if (interfaces2.contains(next)) {
-                            return next.replaceAll("\\.", "/");
+                            return next.replace('.', '/');
                         }
                     }
                     return TOFU;
@@ -520,35 +784,35 @@ public class TransformContext
                 // type2 is an interface but type1 is a class so return the
                 // first parent interface of type1 which implements either type1 or
                 // one of type1's parent interfaces or return Object
-                LinkedList<String> interfaces1 = listInterfaces(checker1);
+                AncestorList interfaces1 = listInterfaces(type1, checker1, cache);
                 if (interfaces1.contains(type2)) {
                     // type2 is an interface of type1
                     return t2;
                 } else {
-                    LinkedList<String> interfaces2 = listInterfaces(checker2);
-                    while (!interfaces2.isEmpty()) {
-                        String next = interfaces2.pop();
+                    AncestorList interfaces2 = listInterfaces(type2, checker2, cache);
+                    for (int i = 0; i < interfaces2.size(); i++) {
+                        String next = interfaces2.get(i);
                         if (interfaces1.contains(next)) {
-                            return next.replaceAll("\\.", "/");
+                            return next.replace('.', '/');
                         }
                     }
                     return TOFU;
                 }
             } else {
                 // see if the classes have a common super class before Object
-                LinkedList<String> supers2 = listSupers(checker2);
+                AncestorList supers2 = listSupers(type2, checker2, cache);
                 if (supers2.contains(type1)) {
                     // type2 is a subclass of type1
                     return t1;
                 } else {
-                    LinkedList<String> supers1 = listSupers(checker1);
-                    while (!supers1.isEmpty()) {
-                        String next = supers1.pop();
+                    AncestorList supers1 = listSupers(type1, checker1, cache);
+                    for (int i = 0; i < supers1.size(); i++) {
+                        String next = supers1.get(i);
                         if (next.equals(type2)) {
                             return t2;
                         }
                         if (supers2.contains(next)) {
-                            return next.replaceAll("\\.", "/");
+                            return next.replace('.', '/');
                         }
                     }
                     return TOFU;
@@ -557,9 +821,14 @@ public class TransformContext
         }
     }
 
-    private LinkedList<String> listInterfaces(ClassChecker checker)
+    private AncestorList listInterfaces(String name, ClassChecker checker, CommonSuperCache cache)
     {
-        LinkedList<String> interfaces = new LinkedList<String>();
+        AncestorList cached = cache.lookupInterfaces(name, loader);
+        if (cached != null) {
+            return cached;
+        }
+        ArrayList<String> interfaces = new ArrayList<String>();
+        HashSet<String> seen = new HashSet<String>();
         ClassChecker current = checker;
         while (current != null) {
             LinkedList<String> toCheck = new LinkedList<String>();
@@ -572,7 +841,7 @@ public class TransformContext
             // in the toCheck list.
             while (!toCheck.isEmpty()) {
                 String next = toCheck.pop();
-                if (!interfaces.contains(next)) {
+                if (seen.add(next)) {
                     interfaces.add(next);
                     ClassChecker newChecker = transformer.getClassChecker(next, loader);
                     if (newChecker != null) {
@@ -592,12 +861,16 @@ public class TransformContext
             }
         }
 
-        return interfaces;
+        return cache.installInterfaces(name, loader, interfaces);
     }
 
-    private LinkedList<String> listSupers(ClassChecker checker)
+    private AncestorList listSupers(String name, ClassChecker checker, CommonSuperCache cache)
     {
-        LinkedList<String> supers = new LinkedList<String>();
+        AncestorList cached = cache.lookupSupers(name, loader);
+        if (cached != null) {
+            return cached;
+        }
+        ArrayList<String> supers = new ArrayList<String>();
         ClassChecker current = checker;
         while (current != null) {
             String superType = current.getSuper();
@@ -609,7 +882,7 @@ public class TransformContext
             }
         }
 
-        return supers;
+        return cache.installSupers(name, loader, supers);
     }
 
     private Transformer transformer;
@@ -32,21 +32,36 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarFile;
 
 import org.jboss.byteman.rule.Rule;
+import org.jboss.byteman.rule.compiler.HelperAdapterCache;
 import org.jboss.byteman.rule.helper.Helper;
 
 /**
- * a socket based listener class which reads scripts from stdin and installs them in the current runtime
+ * a socket based listener class which reads scripts from stdin and installs them in the current runtime.
+ * connections are accepted by the listener thread and handed to a bounded pool of handler threads so that
+ * a slow request does not hold up other clients. commands which only report on the state of the agent run
+ * concurrently and have their response buffered so that they never write to a socket while holding agent
+ * locks. commands which update the state of the agent are serialized and stream their output as they go
+ * via a per-connection writer thread so that a slow client cannot stall an update holding the lock.
  */
 public class TransformListener extends Thread
 {
@@ -56,10 +71,75 @@ public class TransformListener extends Thread
     private static ServerSocket theServerSocket;
     private Retransformer retransformer;
 
+    /**
+     * the maximum number of connections which may be handled concurrently
+     */
+    private static final int MAX_HANDLER_THREADS = 8;
+
+    /**
+     * the maximum number of accepted connections which may wait for a handler thread. further
+     * connections are rejected with an error
+     */
+    private static final int MAX_QUEUED_CONNECTIONS = 32;
+
+    /**
+     * how long a handler waits for a client to send the next line of a request before dropping it
+     */
+    private static final int READ_TIMEOUT_MILLIS = 30000;
+
+    /**
+     * the maximum number of chunks of output from an update command which may wait to be written
+     * to the client. output produced while the queue is full is held back and coalesced
+     */
+    private static final int MAX_QUEUED_CHUNKS = 64;
+
+    /**
+     * commands which only report on the state of the agent and hence have their response buffered
+     */
+    private static final Set<String> READ_ONLY_COMMANDS = new HashSet<String>();
+
+    static {
+        READ_ONLY_COMMANDS.add("LIST");
+        READ_ONLY_COMMANDS.add("VERSION");
+        READ_ONLY_COMMANDS.add("LISTBOOT");
+        READ_ONLY_COMMANDS.add("LISTSYS");
+        READ_ONLY_COMMANDS.add("LISTSYSPROPS");
+        READ_ONLY_COMMANDS.add("STATS");
+        READ_ONLY_COMMANDS.add("METRICS");
+    }
+
+    /**
+     * pool of threads used to handle accepted connections
+     */
+    private ThreadPoolExecutor handlers;
+
+    /**
+     * lock held while a command updates the state of the agent
+     */
+    private final Object updateLock = new Object();
+
     private TransformListener(Retransformer retransformer)
     {
         this.retransformer = retransformer;
         setDaemon(true);
+        ThreadFactory threadFactory = new ThreadFactory() {
+            private AtomicInteger count = new AtomicInteger(0);
+
+            public Thread newThread(final Runnable runnable) {
+                Thread thread = new Thread(new Runnable() {
+                    public void run() {
+                        // we don't want to see any triggers in the handler threads
+                        Rule.disableTriggersInternal();
+                        runnable.run();
+                    }
+                }, "Byteman Listener Handler " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        handlers = new ThreadPoolExecutor(MAX_HANDLER_THREADS, MAX_HANDLER_THREADS, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(MAX_QUEUED_CONNECTIONS), threadFactory);
+        handlers.allowCoreThreadTimeOut(true);
     }
 
     public static synchronized boolean initialize(Retransformer retransformer)
@@ -135,33 +215,73 @@ public class TransformListener extends Thread
 
         Rule.disableTriggersInternal();
 
-        while (true) {
-            if (theServerSocket.isClosed()) {
-                return;
-            }
-            Socket socket = null;
-            try {
-                socket = theServerSocket.accept();
-            } catch (IOException e) {
-                if (!theServerSocket.isClosed()) {
-                    Helper.err("TransformListener.run : exception from server socket accept " + e);
-                    Helper.errTraceException(e);
+        try {
+            while (true) {
+                if (theServerSocket.isClosed()) {
+                    return;
+                }
+                Socket socket = null;
+                try {
+                    socket = theServerSocket.accept();
+                } catch (IOException e) {
+                    if (!theServerSocket.isClosed()) {
+                        Helper.err("TransformListener.run : exception from server socket accept " + e);
+                        Helper.errTraceException(e);
+                    }
+                    return;
                 }
-                return;
-            }
 
-            Helper.verbose("TransformListener() : handling connection on port " + socket.getLocalPort());
+                Helper.verbose("TransformListener() : handling connection on port " + socket.getLocalPort());
 
-            try {
-                handleConnection(socket);
-            } catch (Exception e) {
-                Helper.err("TransformListener() : error handling connection on port " + socket.getLocalPort());
+                final Socket finalSocket = socket;
                 try {
-                    socket.close();
-                } catch (IOException e1) {
-                    // do nothing
+                    // ensure a client which stops sending cannot tie up a handler indefinitely
+                    socket.setSoTimeout(READ_TIMEOUT_MILLIS);
+                    handlers.execute(new Runnable() {
+                        public void run() {
+                            try {
+                                handleConnection(finalSocket);
+                            } catch (Exception e) {
+                                Helper.err("TransformListener() : error handling connection on port " + finalSocket.getLocalPort());
+                                closeSocket(finalSocket);
+                            }
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    rejectConnection(socket);
+                } catch (Exception e) {
+                    Helper.err("TransformListener() : error handling connection on port " + socket.getLocalPort());
+                    closeSocket(socket);
                 }
             }
+        } finally {
+            // let any in progress requests complete but don't accept any more
+            handlers.shutdown();
+        }
+    }
+
+    private void rejectConnection(Socket socket)
+    {
+        Helper.err("TransformListener.run : rejecting connection on port " + socket.getLocalPort() + " : too many concurrent connections");
+        try {
+            // the response is small enough to fit in the socket buffer so this will not block
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()));
+            out.println("ERROR");
+            out.println("Too many concurrent connections");
+            out.println("OK");
+            out.flush();
+        } catch (IOException e) {
+            // ignore
+        }
+        closeSocket(socket);
+    }
+
+    private void closeSocket(Socket socket)
+    {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // do nothing
         }
     }
 
@@ -213,38 +333,29 @@ public class TransformListener extends Thread
         }
 
         try {
-            if (line == null) {
-                out.println("ERROR");
-                out.println("Expecting input command");
-                out.println("OK");
-                out.flush();
-            } else if (line.equals("BOOT")) {
-                loadJars(in, out, true);
-            } else if (line.equals("SYS")) {
-                loadJars(in, out, false);
-            } else if (line.equals("LOAD")) {
-                loadScripts(in, out);
-            } else if (line.equals("DELETE")) {
-                deleteScripts(in, out);
-            } else if (line.equals("LIST")) {
-                listScripts(in, out);
-            } else if (line.equals("DELETEALL")) {
-                purgeScripts(in, out);
-            } else if (line.equals("VERSION")) {
-                getVersion(in, out);
-            } else if (line.equals("LISTBOOT")) {
-                listBootJars(in, out);
-            } else if (line.equals("LISTSYS")) {
-                listSystemJars(in, out);
-            } else if (line.equals("LISTSYSPROPS")) {
-                listSystemProperties(in, out);
-            } else if (line.equals("SETSYSPROPS")) {
-                setSystemProperties(in, out);
+            if (line != null && READ_ONLY_COMMANDS.contains(line)) {
+                // build the response before writing any of it so we do not hold
+                // agent state while waiting for the client to read it
+                StringWriter buffer = new StringWriter();
+                PrintWriter bufferOut = new PrintWriter(buffer);
+                try {
+                    handleCommand(line, in, bufferOut);
+                } finally {
+                    bufferOut.flush();
+                    out.write(buffer.toString());
+                    out.flush();
+                }
             } else {
-                out.println("ERROR");
-                out.println("Unexpected command " + line);
-                out.println("OK");
-                out.flush();
+                // stream progress via a separate writer thread so that we never wait
+                // for the client to read it while holding the update lock
+                StreamingWriter streamingWriter = new StreamingWriter(out);
+                PrintWriter streamingOut = new PrintWriter(streamingWriter);
+                try {
+                    handleCommand(line, in, streamingOut);
+                } finally {
+                    streamingOut.flush();
+                    streamingWriter.close();
+                }
             }
         } catch (Exception e) {
             Helper.err("TransformListener.run : exception " + e + " processing command " + line);
@@ -259,6 +370,49 @@ public class TransformListener extends Thread
         }
     }
 
+    private void handleCommand(String line, BufferedReader in, PrintWriter out) throws Exception
+    {
+        if (line == null) {
+            out.println("ERROR");
+            out.println("Expecting input command");
+            out.println("OK");
+            out.flush();
+        } else if (line.equals("BOOT")) {
+            loadJars(in, out, true);
+        } else if (line.equals("SYS")) {
+            loadJars(in, out, false);
+        } else if (line.equals("LOAD")) {
+            loadScripts(in, out);
+        } else if (line.equals("DELETE")) {
+            deleteScripts(in, out);
+        } else if (line.equals("LIST")) {
+            listScripts(in, out);
+        } else if (line.equals("DELETEALL")) {
+            purgeScripts(in, out);
+        } else if (line.equals("VERSION")) {
+            getVersion(in, out);
+        } else if (line.equals("LISTBOOT")) {
+            listBootJars(in, out);
+        } else if (line.equals("LISTSYS")) {
+            listSystemJars(in, out);
+        } else if (line.equals("LISTSYSPROPS")) {
+            listSystemProperties(in, out);
+        } else if (line.equals("SETSYSPROPS")) {
+            setSystemProperties(in, out);
+        } else if (line.equals("STATS")) {
+            listStatistics(in, out);
+        } else if (line.equals("METRICS")) {
+            listMetrics(in, out);
+        } else if (line.equals("RESETMETRICS")) {
+            resetMetrics(in, out);
+        } else {
+            out.println("ERROR");
+            out.println("Unexpected command " + line);
+            out.println("OK");
+            out.flush();
+        }
+    }
+
     private void getVersion(BufferedReader in, PrintWriter out) {
         String version = this.getClass().getPackage().getImplementationVersion();
         if (version == null) {
@@ -281,7 +435,9 @@ public class TransformListener extends Thread
         while (line != null && !line.equals(endMarker)) {
             try {
                 JarFile jarfile = new JarFile(new File(line));
-                retransformer.appendJarFile(out, jarfile, isBoot);
+                synchronized (updateLock) {
+                    retransformer.appendJarFile(out, jarfile, isBoot);
+                }
             } catch (Exception e) {
                 out.append("EXCEPTION ");
                 out.append("Unable to add jar file " + line + "\n");
@@ -345,10 +501,13 @@ public class TransformListener extends Thread
         }
 
         try {
-            if (doDelete) {
-                retransformer.removeScripts(scripts, out);
-            } else {
-                retransformer.installScript(scripts, scriptNames, out);
+            // the scripts have all been read so we only hold the lock while we apply them
+            synchronized (updateLock) {
+                if (doDelete) {
+                    retransformer.removeScripts(scripts, out);
+                } else {
+                    retransformer.installScript(scripts, scriptNames, out);
+                }
             }
         } catch (Exception e) {
             out.append("EXCEPTION ");
@@ -362,7 +521,9 @@ public class TransformListener extends Thread
 
     private void purgeScripts(BufferedReader in, PrintWriter out) throws Exception
     {
-        retransformer.removeScripts(null, out);
+        synchronized (updateLock) {
+            retransformer.removeScripts(null, out);
+        }
         out.println("OK");
         out.flush();
     }
@@ -413,6 +574,37 @@ public class TransformListener extends Thread
         out.flush();
     }
 
+    private void listStatistics(BufferedReader in, PrintWriter out) throws Exception
+    {
+        out.println("helper.adapter.cache.hits=" + HelperAdapterCache.getHits());
+        out.println("helper.adapter.cache.misses=" + HelperAdapterCache.getMisses());
+        out.println("helper.adapter.cache.size=" + HelperAdapterCache.size());
+        TransformCache transformCache = retransformer.getTransformCache();
+        if (transformCache != null) {
+            out.println("transform.cache.hits=" + TransformCache.getHits());
+            out.println("transform.cache.misses=" + TransformCache.getMisses());
+            out.println("transform.cache.saves=" + transformCache.getSaves());
+        }
+        out.println("OK");
+        out.flush();
+    }
+
+    private void listMetrics(BufferedReader in, PrintWriter out) throws Exception
+    {
+        retransformer.writeMetrics(out, null);
+        out.println("OK");
+        out.flush();
+    }
+
+    private void resetMetrics(BufferedReader in, PrintWriter out) throws Exception
+    {
+        synchronized (updateLock) {
+            retransformer.resetMetrics();
+        }
+        out.println("OK");
+        out.flush();
+    }
+
     private void setSystemProperties(BufferedReader in, PrintWriter out) throws Exception
     {
         boolean strictMode = false;
@@ -439,16 +631,18 @@ public class TransformListener extends Thread
                 }
 
                 // everything looks good and we are allowed to set the system property now
-                if (value.length() > 0) {
-                	// "some.sys.prop=" means the client wants to delete the system property
-                	System.setProperty(name, value);
-                	out.append("Set system property [" + name + "] to value [" + value + "]\n");
-                } else {
-                	System.clearProperty(name);
-                	out.append("Deleted system property [" + name + "]\n");
+                synchronized (updateLock) {
+                    if (value.length() > 0) {
+                        // "some.sys.prop=" means the client wants to delete the system property
+                        System.setProperty(name, value);
+                        out.append("Set system property [" + name + "] to value [" + value + "]\n");
+                    } else {
+                        System.clearProperty(name);
+                        out.append("Deleted system property [" + name + "]\n");
+                    }
+                    // ok, now tell the transformer a property has changed
+                    retransformer.updateConfiguration(name);
                 }
-                // ok, now tell the transformer a property has changed
-                retransformer.updateConfiguration(name);
             } catch (Exception e) {
                 out.append("EXCEPTION ");
                 out.append("Unable to set system property [" + line + "]\n");
@@ -465,4 +659,82 @@ public class TransformListener extends Thread
         out.println("OK");
         out.flush();
     }
+
+    /**
+     * a writer which streams the output of a command which updates the state of the agent. output
+     * is handed to a separate thread via a bounded queue each time the command flushes so that the
+     * command never blocks on the socket while it holds the update lock. if the client falls behind
+     * then output is held back and handed over in one chunk once there is room in the queue.
+     */
+    private class StreamingWriter extends Writer
+    {
+        private final PrintWriter out;
+        private final ArrayBlockingQueue<String> chunks = new ArrayBlockingQueue<String>(MAX_QUEUED_CHUNKS);
+        private final StringBuilder pending = new StringBuilder();
+        private final Thread writerThread;
+
+        StreamingWriter(PrintWriter out)
+        {
+            this.out = out;
+            writerThread = handlers.getThreadFactory().newThread(new Runnable() {
+                public void run() {
+                    drain();
+                }
+            });
+            writerThread.start();
+        }
+
+        @Override
+        public synchronized void write(char[] cbuf, int off, int len)
+        {
+            pending.append(cbuf, off, len);
+        }
+
+        @Override
+        public synchronized void flush()
+        {
+            // never wait for the writer thread here as the caller may hold the update lock
+            if (pending.length() > 0 && chunks.offer(pending.toString())) {
+                pending.setLength(0);
+            }
+        }
+
+        /**
+         * hand over any remaining output and wait until it has all been written. this must
+         * only be called once the command has completed and released the update lock
+         */
+        @Override
+        public void close()
+        {
+            String rest;
+            synchronized (this) {
+                rest = pending.toString();
+                pending.setLength(0);
+            }
+            try {
+                if (rest.length() > 0) {
+                    chunks.put(rest);
+                }
+                // an empty chunk marks the end of the output
+                chunks.put("");
+                writerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void drain()
+        {
+            try {
+                String chunk = chunks.take();
+                while (chunk.length() > 0) {
+                    out.write(chunk);
+                    out.flush();
+                    chunk = chunks.take();
+                }
+            } catch (InterruptedException e) {
+                // give up on the client
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -24,10 +24,16 @@
 package org.jboss.byteman.agent;
 
 import org.jboss.byteman.agent.check.ClassChecker;
+import org.jboss.byteman.agent.check.ClassHierarchyCache;
+import org.jboss.byteman.agent.check.CommonSuperCache;
 import org.jboss.byteman.agent.check.LoadCache;
 import org.jboss.byteman.modules.ModuleSystem;
 import org.jboss.byteman.rule.Rule;
+import org.jboss.byteman.rule.helper.AsyncTraceWriter;
 import org.jboss.byteman.rule.helper.Helper;
+import org.jboss.byteman.rule.metrics.MetricsControl;
+import org.jboss.byteman.rule.metrics.RuleGovernor;
+import org.jboss.byteman.rule.metrics.RuleMetrics;
 import org.jboss.byteman.rule.type.TypeHelper;
 
 import java.io.InputStream;
@@ -37,8 +43,10 @@ import java.lang.instrument.Instrumentation;
 import java.security.Policy;
 import java.security.ProtectionDomain;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.io.File;
 
 /**
@@ -64,14 +72,18 @@ public class Transformer implements ClassFileTransformer {
         this.isRedefine = isRedefine;
         scriptRepository = new ScriptRepository(skipOverrideRules);
         loadCache = new LoadCache(inst);
+        hierarchyCache = new ClassHierarchyCache();
+        commonSuperCache = new CommonSuperCache();
         helperManager = new HelperManager(inst, moduleSystem);
 
         Iterator<String> scriptsIter = scriptTexts.iterator();
         Iterator<String> filesIter = scriptPaths.iterator();
+        List<RuleScript> allScripts = new ArrayList<RuleScript>();
         while (scriptsIter.hasNext()) {
             String scriptText = scriptsIter.next();
             String file = filesIter.next();
             List<RuleScript> ruleScripts = scriptRepository.processScripts(scriptText, file);
+            allScripts.addAll(ruleScripts);
             for (RuleScript ruleScript : ruleScripts) {
                 String name = ruleScript.getName();
                 RuleScript previous = scriptRepository.scriptForRuleName(name);
@@ -95,7 +107,21 @@ public class Transformer implements ClassFileTransformer {
             }
         }
 
+        // parse the rules now so that injecting them does not need to
+        preparseScripts(allScripts);
+
         accessEnabler = AccessManager.init(inst);
+
+        File transformCacheDir = computeTransformCacheDir();
+        if (transformCacheDir != null) {
+            transformCache = new TransformCache(transformCacheDir, this, scriptRepository, helperManager, accessEnabler);
+        } else {
+            transformCache = null;
+        }
+
+        if (isRuleMetrics()) {
+            MetricsControl.register(this);
+        }
     }
 
     /**
@@ -131,7 +157,7 @@ public class Transformer implements ClassFileTransformer {
             Class<?>[] transformedArray = new Class<?>[transformed.size()];
             transformed.toArray(transformedArray);
             for (int i = 0; i < transformed.size(); i++) {
-                Helper.verbose("retransforming " + transformedArray[i].getName());
+                Helper.verbose(VERBOSE_TRANSFORM, "retransforming " + transformedArray[i].getName());
             }
 
             inst.retransformClasses(transformedArray);
@@ -209,6 +235,7 @@ public class Transformer implements ClassFileTransformer {
     {
         boolean enabled = true;
         ClassLoader loader = originalLoader;
+        TransformCache.Recording recording = null;
         try {
             enabled = Rule.disableTriggersInternal();
 
@@ -217,6 +244,11 @@ public class Transformer implements ClassFileTransformer {
             // but we exclude byteman classes and java.lang classes
             String internalName = TypeHelper.internalizeClass(className);
 
+            if (classBeingRedefined == null) {
+                // a new class is being defined so any cached failure to find it is now stale
+                loadCache.classLoaded(internalName);
+            }
+
             if (isBytemanClass(internalName) || !isTransformable(internalName)) {
                 return null;
             }
@@ -225,6 +257,10 @@ public class Transformer implements ClassFileTransformer {
 
             ClassChecker checker = getClassChecker(newBuffer);// new ClassChecker(newBuffer);
 
+            // remember the details so that checks on subclasses loaded before this class is defined
+            // do not need to parse the bytecode again
+            checker = hierarchyCache.install(internalName, originalLoader, checker);
+
             if (checker == null || checker.isInterface()) {
                 return null;
             }
@@ -243,6 +279,12 @@ public class Transformer implements ClassFileTransformer {
                 loader = ClassLoader.getSystemClassLoader();
             }
 
+            // if caching is enabled the first attempt to apply a rule will check for a saved transform
+
+            if (transformCache != null) {
+                recording = transformCache.startRecording(internalName, originalLoader, loader, classfileBuffer);
+            }
+
             // if we need to traverse the interfaces then we have a DAG to deal with so
             // we had better find a way to avoid doing things twice
 
@@ -375,15 +417,27 @@ public class Transformer implements ClassFileTransformer {
                 }
             }
 
+            if (recording != null && recording.isReplayed()) {
+                // the rules have been installed and the transformed bytecode was found in the cache
+                newBuffer = recording.getReplayedBytes();
+            }
+
             if (newBuffer != classfileBuffer) {
                 // see if we need to dump the transformed bytecode for checking
                 maybeDumpClass(internalName, newBuffer);
                 newBuffer = maybeVerifyTransformedBytes(originalLoader, internalName, protectionDomain, newBuffer);
+                if (recording != null) {
+                    // a no-op if the bytecode came from the cache or any rule failed to inject
+                    recording.save(newBuffer);
+                }
                 return newBuffer;
             } else {
                 return null;
             }
         } finally {
+            if (recording != null) {
+                transformCache.stopRecording(recording);
+            }
             if (enabled) {
                 Rule.enableTriggersInternal();
             }
@@ -417,6 +471,45 @@ public class Transformer implements ClassFileTransformer {
      */
     public static final String VERBOSE = BYTEMAN_PACKAGE_PREFIX + "verbose";
 
+    /**
+     * system property which restricts verbose output to a comma separated list of categories drawn from
+     * transform, typecheck, compile, execute and helper. if unset then all categories are traced when
+     * verbose mode is enabled. messages which do not belong to a category are traced regardless.
+     */
+    public static final String VERBOSE_CATEGORIES = BYTEMAN_PACKAGE_PREFIX + "verbose.categories";
+
+    /**
+     * verbose category for messages relating to transformation of trigger classes and trigger injection
+     */
+    public static final int VERBOSE_TRANSFORM = 0x01;
+
+    /**
+     * verbose category for messages relating to type checking of rules
+     */
+    public static final int VERBOSE_TYPECHECK = 0x02;
+
+    /**
+     * verbose category for messages relating to compilation of rules
+     */
+    public static final int VERBOSE_COMPILE = 0x04;
+
+    /**
+     * verbose category for messages relating to execution of rules
+     */
+    public static final int VERBOSE_EXECUTE = 0x08;
+
+    /**
+     * verbose category for messages relating to helper lifecycle events
+     */
+    public static final int VERBOSE_HELPER = 0x10;
+
+    /**
+     * bit set whenever verbose mode is enabled so that uncategorised messages are traced
+     */
+    private static final int VERBOSE_ENABLED = 0x100;
+
+    private static final int VERBOSE_ALL = VERBOSE_TRANSFORM | VERBOSE_TYPECHECK | VERBOSE_COMPILE | VERBOSE_EXECUTE | VERBOSE_HELPER;
+
     /**
      * system property set (to any value) in order to switch on dumping of control flow graph for
      * trigger method at each stage of construction
@@ -499,6 +592,92 @@ public class Transformer implements ClassFileTransformer {
      */
     public static final String DISALLOW_DOWNCAST = BYTEMAN_PACKAGE_PREFIX + "disallow.downcast";
 
+    /**
+     * system property which enables reuse of a per-thread helper instance when executing
+     * interpreted rules which employ the default helper
+     */
+    public static final String REUSE_HELPERS = BYTEMAN_PACKAGE_PREFIX + "reuse.helpers";
+
+    /**
+     * system property which disables batching of transforms, forcing rules which target the same
+     * class to be injected one at a time
+     */
+    public static final String TRANSFORM_SEQUENTIAL = BYTEMAN_PACKAGE_PREFIX + "transform.sequential";
+
+    /**
+     * system property which forces every method of a transformed class to be rewritten with its
+     * stack frames recomputed, rather than only rewriting the methods into which triggers are injected
+     */
+    public static final String TRANSFORM_ALL_METHODS = BYTEMAN_PACKAGE_PREFIX + "transform.all.methods";
+
+    /**
+     * system property which sets the number of threads used to parse the rules in scripts loaded at
+     * startup or uploaded via the agent listener before they are injected. zero disables eager parsing,
+     * leaving each rule to be parsed when it is first injected. the default is the number of processors
+     */
+    public static final String PARSE_THREADS = BYTEMAN_PACKAGE_PREFIX + "parse.threads";
+
+    /**
+     * system property which limits the number of classes retransformed in each call to the JVM when
+     * rules are loaded or unloaded via the agent listener. zero or a negative value means no limit
+     */
+    public static final String RETRANSFORM_BATCH_SIZE = BYTEMAN_PACKAGE_PREFIX + "retransform.batch.size";
+
+    /**
+     * system property which enables tiered execution of rules marked for compilation to bytecode. the
+     * value is the number of times a rule must fire in the interpreter before it is compiled on a
+     * background thread. zero or a negative value means rules are compiled before they first fire
+     */
+    public static final String COMPILE_THRESHOLD = BYTEMAN_PACKAGE_PREFIX + "compile.threshold";
+
+    /**
+     * system property identifying a directory in which transformed bytecode is saved so that it
+     * can be reused when the JVM is restarted with the same rules. transform caching is disabled
+     * unless this is set. the directory is created if it does not exist
+     */
+    public static final String TRANSFORM_CACHE_DIR = BYTEMAN_PACKAGE_PREFIX + "transform.cache.directory";
+
+    /**
+     * system property which enables asynchronous trace output. trace messages are queued and written
+     * to their trace stream by a background thread rather than by the thread which triggered the rule
+     */
+    public static final String TRACE_ASYNC = BYTEMAN_PACKAGE_PREFIX + "trace.async";
+
+    /**
+     * system property which limits the number of messages which may be queued for each trace stream
+     * when asynchronous trace output is enabled
+     */
+    public static final String TRACE_BUFFER_SIZE = BYTEMAN_PACKAGE_PREFIX + "trace.buffer.size";
+
+    private static final int DEFAULT_TRACE_BUFFER_SIZE = 8192;
+
+    /**
+     * system property which determines what happens when a trace message is written to a full
+     * queue. the value may be "block", "drop" or "count"
+     */
+    public static final String TRACE_OVERFLOW = BYTEMAN_PACKAGE_PREFIX + "trace.overflow";
+
+    /**
+     * system property which enables gathering of per-rule execution metrics
+     */
+    public static final String RULE_METRICS = BYTEMAN_PACKAGE_PREFIX + "rule.metrics";
+
+    /**
+     * system property which limits the percentage of wall clock time each rule may spend executing
+     */
+    public static final String RULE_BUDGET_CPU = BYTEMAN_PACKAGE_PREFIX + "rule.budget.cpu";
+
+    /**
+     * system property which limits the number of times per second each rule may be executed
+     */
+    public static final String RULE_BUDGET_RATE = BYTEMAN_PACKAGE_PREFIX + "rule.budget.rate";
+
+    /**
+     * system property which determines what happens to a rule which exceeds its budget. the value
+     * may be "disable" or "sample"
+     */
+    public static final String RULE_BUDGET_ACTION = BYTEMAN_PACKAGE_PREFIX + "rule.budget.action";
+
     /**
      * disable triggering of rules inside the current thread
      * @param isUser true if this was called by rule code false if called internally by Byteman
@@ -555,12 +734,18 @@ public class Transformer implements ClassFileTransformer {
      */
     public static boolean isVerbose()
     {
-        if (allowConfigUpdate()) {
-            synchronized (configLock) {
-                return verbose;
-            }
-        }
-        return verbose;
+        // n.b. this is called on the trigger path so it reads a volatile rather than taking the config lock
+        return verboseCategories != 0;
+    }
+
+    /**
+     * check whether verbose output is enabled for a given category
+     * @param category one of the VERBOSE_XXX category values
+     * @return true if verbose mode is enabled for the category otherwise false
+     */
+    public static boolean isVerbose(int category)
+    {
+        return (verboseCategories & category) != 0;
     }
 
     /**
@@ -629,10 +814,10 @@ public class Transformer implements ClassFileTransformer {
     {
         if (allowConfigUpdate()) {
             synchronized (configLock) {
-                return debug || verbose;
+                return debug || isVerbose();
             }
         }
-        return debug || verbose;
+        return debug || isVerbose();
     }
 
     /**
@@ -663,6 +848,190 @@ public class Transformer implements ClassFileTransformer {
         return disallowDowncast;
     }
 
+    /**
+     * check whether interpreted rules may reuse a per-thread helper instance.
+     * @return true if helper instances may be reused otherwise false
+     */
+    public static boolean isReuseHelpers()
+    {
+        if (allowConfigUpdate()) {
+            synchronized (configLock) {
+                return reuseHelpers;
+            }
+        }
+        return reuseHelpers;
+    }
+
+    /**
+     * check whether rules which target the same class must be injected one at a time
+     * @return true if transforms are applied one rule at a time or false if they may be batched
+     */
+    public static boolean isTransformSequential()
+    {
+        if (allowConfigUpdate()) {
+            synchronized (configLock) {
+                return transformSequential;
+            }
+        }
+        return transformSequential;
+    }
+
+    /**
+     * check whether transforms must rewrite every method of the trigger class
+     * @return true if all methods are rewritten or false if methods without triggers are copied unchanged
+     */
+    public static boolean isTransformAllMethods()
+    {
+        if (allowConfigUpdate()) {
+            synchronized (configLock) {
+                return transformAllMethods;
+            }
+        }
+        return transformAllMethods;
+    }
+
+    /**
+     * return the number of threads which should be used to parse rules ahead of injection
+     * @return the thread count or zero if rules should only be parsed when they are injected
+     */
+    public static int getParseThreads()
+    {
+        if (allowConfigUpdate()) {
+            synchronized (configLock) {
+                return parseThreads;
+            }
+        }
+        return parseThreads;
+    }
+
+    /**
+     * return the maximum number of classes which should be retransformed in one call to the JVM
+     * @return the batch size or zero if all affected classes should be retransformed in one call
+     */
+    public static int getRetransformBatchSize()
+    {
+        if (allowConfigUpdate()) {
+            synchronized (configLock) {
+                return retransformBatchSize;
+            }
+        }
+        return retransformBatchSize;
+    }
+
+    /**
+     * return the number of times a rule marked for compilation must be interpreted before it is
+     * compiled to bytecode
+     * @return the threshold or zero if rules should be compiled before they first fire
+     */
+    public static int getCompileThreshold()
+    {
+        if (allowConfigUpdate()) {
+            synchronized (configLock) {
+                return compileThreshold;
+            }
+        }
+        return compileThreshold;
+    }
+
+    /**
+     * check whether trace output is written asynchronously
+     * @return true if trace streams opened from now on should be written by a background thread
+     * otherwise false
+     */
+    public static boolean isTraceAsync()
+    {
+        if (allowConfigUpdate()) {
+            synchronized (configLock) {
+                return traceAsync;
+            }
+        }
+        return traceAsync;
+    }
+
+    /**
+     * return the maximum number of messages which may be queued for an asynchronous trace stream
+     * @return the buffer size
+     */
+    public static int getTraceBufferSize()
+    {
+        if (allowConfigUpdate()) {
+            synchronized (configLock) {
+                return traceBufferSize;
+            }
+        }
+        return traceBufferSize;
+    }
+
+    /**
+     * return the policy applied when a message is written to a full asynchronous trace stream
+     * @return the overflow policy
+     */
+    public static AsyncTraceWriter.Overflow getTraceOverflow()
+    {
+        if (allowConfigUpdate()) {
+            synchronized (configLock) {
+                return traceOverflow;
+            }
+        }
+        return traceOverflow;
+    }
+
+    /**
+     * check whether per-rule execution metrics should be gathered
+     * @return true if metrics should be gathered otherwise false
+     */
+    public static boolean isRuleMetrics()
+    {
+        if (allowConfigUpdate()) {
+            synchronized (configLock) {
+                return ruleMetrics;
+            }
+        }
+        return ruleMetrics;
+    }
+
+    /**
+     * return the percentage of wall clock time each rule may spend executing
+     * @return the budget or 0 if execution time is not limited
+     */
+    public static double getRuleBudgetCpu()
+    {
+        if (allowConfigUpdate()) {
+            synchronized (configLock) {
+                return ruleBudgetCpu;
+            }
+        }
+        return ruleBudgetCpu;
+    }
+
+    /**
+     * return the number of times per second each rule may be executed
+     * @return the budget or 0 if the execution rate is not limited
+     */
+    public static long getRuleBudgetRate()
+    {
+        if (allowConfigUpdate()) {
+            synchronized (configLock) {
+                return ruleBudgetRate;
+            }
+        }
+        return ruleBudgetRate;
+    }
+
+    /**
+     * check whether a rule which exceeds its budget should be sampled rather than disabled
+     * @return true if the rule should be sampled otherwise false
+     */
+    public static boolean isRuleBudgetSample()
+    {
+        if (allowConfigUpdate()) {
+            synchronized (configLock) {
+                return ruleBudgetSample;
+            }
+        }
+        return ruleBudgetSample;
+    }
+
     /**
      * check whether compilation of rules is enabled or disabled
      * @return true if compilation of rules is enabled otherwise false
@@ -745,6 +1114,136 @@ public class Transformer implements ClassFileTransformer {
         return transformContext.transform(targetClassBytes);
     }
 
+    /**
+     * transform a class by injecting a list of rule scripts which all target it as a batch. if the batch
+     * cannot be checked as a unit then null is returned and the list is trimmed so that it only retains
+     * the scripts which still need to be applied one at a time.
+     * @param ruleScripts the scripts to inject in the order they would be applied
+     * @param loader the loader of the class being injected into
+     * @param className the name of the class being injected into
+     * @param targetClassBytes the current class bytecode
+     * @return the transformed bytecode or null if the scripts need to be applied one at a time
+     */
+    private byte[] transformBatch(List<RuleScript> ruleScripts, ClassLoader loader, String className, byte[] targetClassBytes)
+    {
+        // lock the scripts in a stable order so that batches injecting overlapping
+        // scripts into different classes cannot deadlock
+        List<RuleScript> lockOrder = new ArrayList<RuleScript>(ruleScripts);
+        Collections.sort(lockOrder, SCRIPT_LOCK_ORDER);
+
+        return transformBatchLocked(lockOrder, 0, ruleScripts, loader, className, targetClassBytes);
+    }
+
+    /**
+     * lock each script in lockOrder starting from index and then transform the class by injecting
+     * the scripts as a batch. holding the locks ensures that no script in the batch can be deleted
+     * while it is being injected, just as when the scripts are injected one at a time.
+     * @param lockOrder the scripts to inject sorted into lock order
+     * @param index the index of the next script to lock
+     * @param ruleScripts the scripts to inject in the order they would be applied
+     * @param loader the loader of the class being injected into
+     * @param className the name of the class being injected into
+     * @param targetClassBytes the current class bytecode
+     * @return the transformed bytecode or null if the scripts need to be applied one at a time
+     */
+    private byte[] transformBatchLocked(List<RuleScript> lockOrder, int index, List<RuleScript> ruleScripts,
+                                        ClassLoader loader, String className, byte[] targetClassBytes)
+    {
+        if (index < lockOrder.size()) {
+            synchronized (lockOrder.get(index)) {
+                return transformBatchLocked(lockOrder, index + 1, ruleScripts, loader, className, targetClassBytes);
+            }
+        }
+
+        List<TransformContext> transformContexts = new ArrayList<TransformContext>(ruleScripts.size());
+
+        for (RuleScript ruleScript : ruleScripts) {
+            // only do the transform if the script has not been deleted
+            if (!ruleScript.isDeleted()) {
+                transformContexts.add(new TransformContext(this, ruleScript, className, loader, helperManager, accessEnabler));
+            }
+        }
+
+        if (transformContexts.isEmpty()) {
+            return targetClassBytes;
+        }
+
+        byte[] newBuffer = TransformContext.transform(transformContexts, targetClassBytes);
+
+        if (newBuffer == null) {
+            ruleScripts.clear();
+            for (TransformContext transformContext : transformContexts) {
+                if (!transformContext.isFailed()) {
+                    ruleScripts.add(transformContext.getRuleScript());
+                }
+            }
+        }
+
+        return newBuffer;
+    }
+
+    /**
+     * @return the persistent cache of transformed bytecode or null if transform caching is not enabled
+     */
+    public TransformCache getTransformCache()
+    {
+        return transformCache;
+    }
+
+    /**
+     * print the execution metrics gathered for installed rules
+     * @param out the writer to print to
+     * @param ruleName the name of the rule whose metrics should be printed or null if metrics
+     * should be printed for all installed rules
+     */
+    public void writeMetrics(PrintWriter out, String ruleName)
+    {
+        for (RuleScript ruleScript : scriptRepository.currentRules()) {
+            if (ruleName != null && !ruleName.equals(ruleScript.getName())) {
+                continue;
+            }
+            RuleMetrics metrics = ruleScript.peekMetrics();
+            RuleGovernor governor = ruleScript.peekGovernor();
+            boolean restricted = (governor != null && governor.isRestricted());
+            if (metrics != null) {
+                metrics.writeTo(ruleScript.getName(), out);
+            } else if (restricted) {
+                out.println("RULE " + ruleScript.getName());
+            }
+            if (restricted) {
+                out.print("governor=");
+                governor.writeTo(out);
+            }
+        }
+    }
+
+    /**
+     * @return the names of the installed rules for which execution metrics have been gathered
+     */
+    public List<String> getMetricsRuleNames()
+    {
+        List<String> names = new ArrayList<String>();
+        for (RuleScript ruleScript : scriptRepository.currentRules()) {
+            if (ruleScript.peekMetrics() != null) {
+                names.add(ruleScript.getName());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * discard the execution metrics gathered for all installed rules
+     */
+    public void resetMetrics()
+    {
+        for (RuleScript ruleScript : scriptRepository.currentRules()) {
+            RuleMetrics metrics = ruleScript.peekMetrics();
+            if (metrics != null) {
+                metrics.reset();
+            }
+        }
+    }
+
     /**
      * check whether a class should not be considered for transformation
      * @param clazz the class to check
@@ -786,6 +1285,13 @@ public class Transformer implements ClassFileTransformer {
 
     private byte[] tryTransform(byte[] buffer, String name, ClassLoader loader, String key, boolean isInterface, boolean isOverride)
     {
+        TransformCache.Recording recording = TransformCache.getRecording();
+
+        if (recording != null && recording.isReplayed()) {
+            // the transform has already been served from the cache
+            return buffer;
+        }
+
         List<RuleScript> ruleScripts;
 
         if (isInterface) {
@@ -798,33 +1304,77 @@ public class Transformer implements ClassFileTransformer {
         if (ruleScripts != null) {
 //          Helper.verbose("tryTransform : " + name + " for " + key);
 
-            int counter = 0;
+            if (recording != null && recording.replay()) {
+                return buffer;
+            }
+
+            List<RuleScript> batch = new ArrayList<RuleScript>(ruleScripts.size());
 
             for (RuleScript ruleScript : ruleScripts) {
-                try {
-                    // we only transform via isOverride rules if isOverride is true
-                    // we transform via any matching rules if isOverride is false
-                    if (!isOverride || ruleScript.isOverride()) {
-                        // only do the transform if the script has not been deleted
-                        synchronized (ruleScript) {
-                            if (!ruleScript.isDeleted()) {
-                                maybeDumpClassIntermediate(name, newBuffer);
-                                newBuffer = transform(ruleScript, loader, name, newBuffer);
-                            }
-                        }
+                // we only transform via isOverride rules if isOverride is true
+                // we transform via any matching rules if isOverride is false
+                // and we skip any scripts which have been deleted
+                if ((isOverride && !ruleScript.isOverride()) || ruleScript.isDeleted()) {
+                    continue;
+                }
+                // a rule which needs local var scope info has to start a new batch
+                if (!batch.isEmpty() && ruleScript.getTargetLocation().requiresLocalScope()) {
+                    newBuffer = applyScripts(batch, name, loader, newBuffer);
+                    batch.clear();
+                }
+                batch.add(ruleScript);
+            }
+
+            if (!batch.isEmpty()) {
+                newBuffer = applyScripts(batch, name, loader, newBuffer);
+            }
+        }
+        return newBuffer;
+    }
+
+    private byte[] applyScripts(List<RuleScript> ruleScripts, String name, ClassLoader loader, byte[] buffer)
+    {
+        byte[] newBuffer = buffer;
+
+        if (ruleScripts.size() > 1 && !isTransformSequential()) {
+            // check all the rules in one pass and only compute frames once. if that
+            // fails we fall through with the list trimmed to the rules which need
+            // to be retried one by one
+            try {
+                maybeDumpClassIntermediate(name, newBuffer);
+                byte[] batchBuffer = transformBatch(ruleScripts, loader, name, newBuffer);
+                if (batchBuffer != null) {
+                    return batchBuffer;
+                }
+            } catch (Throwable th) {
+                Helper.err("Transformer.transform : caught throwable " + th);
+                Helper.errTraceException(th);
+                TransformCache.notifyFailed();
+            }
+        }
+
+        for (RuleScript ruleScript : ruleScripts) {
+            try {
+                // only do the transform if the script has not been deleted
+                synchronized (ruleScript) {
+                    if (!ruleScript.isDeleted()) {
+                        maybeDumpClassIntermediate(name, newBuffer);
+                        newBuffer = transform(ruleScript, loader, name, newBuffer);
                     }
-                } catch (Throwable th) {
-                    // yeeeurgh I know this looks ugly with no rethrow but it is appropriate
-                    // we do not want to pass on any errors or runtime exceptions
-                    // if a transform fails then we should still allow the load to continue
-                    // with whatever other transforms succeed. we tarce the throwable to
-                    // System.err just to ensure it can be seen.
-
-                    Helper.err("Transformer.transform : caught throwable " + th);
-                    Helper.errTraceException(th);
                 }
+            } catch (Throwable th) {
+                // yeeeurgh I know this looks ugly with no rethrow but it is appropriate
+                // we do not want to pass on any errors or runtime exceptions
+                // if a transform fails then we should still allow the load to continue
+                // with whatever other transforms succeed. we tarce the throwable to
+                // System.err just to ensure it can be seen.
+
+                Helper.err("Transformer.transform : caught throwable " + th);
+                Helper.errTraceException(th);
+                TransformCache.notifyFailed();
             }
         }
+
         return newBuffer;
     }
 
@@ -867,7 +1417,7 @@ public class Transformer implements ClassFileTransformer {
             for (RuleScript script : scripts) {
                 if (script.hasTransform(clazz)) {
                     found = true;
-                    Helper.verbose("Retransforming loaded bootstrap class " + clazz.getName());
+                    Helper.verbose(VERBOSE_TRANSFORM, "Retransforming loaded bootstrap class " + clazz.getName());
                     break;
                 }
             }
@@ -911,6 +1461,14 @@ public class Transformer implements ClassFileTransformer {
             return new org.jboss.byteman.agent.check.LoadedClassChecker(clazz);
         }
 
+        // see if we have already parsed the bytecode for this class
+
+        org.jboss.byteman.agent.check.ClassChecker cached = hierarchyCache.lookup(name, baseLoader);
+
+        if (cached != null) {
+            return cached;
+        }
+
         // ok, instead try loading the bytecode as a resource - user-defined loaders may not support this but
         // at least the JVM system and boot loaders should
 
@@ -933,10 +1491,10 @@ public class Transformer implements ClassFileTransformer {
                     }
                     count += read;
                 }
-                return new org.jboss.byteman.agent.check.BytecodeChecker(bytecode);
+                return hierarchyCache.install(name, baseLoader, new org.jboss.byteman.agent.check.BytecodeChecker(bytecode));
             } else {
                 // throw new IOException("unable to load bytecode for for class " + name);
-                Helper.verbose("Transformer.getClassChecker : unable to load bytecode for for class " + name);
+                Helper.verbose(VERBOSE_TRANSFORM, "Transformer.getClassChecker : unable to load bytecode for for class " + name);
 
                 return null;
             }
@@ -947,6 +1505,80 @@ public class Transformer implements ClassFileTransformer {
         }
     }
 
+    /**
+     * parse the rule text of a list of scripts ahead of injection so that the parse tree is cached
+     * in each script. the scripts are shared out between a pool of threads, the parse threads
+     * setting limiting its size. rules which fail to parse are ignored here and get reported
+     * when they are injected.
+     * @param ruleScripts the scripts to be parsed
+     */
+    protected void preparseScripts(List<RuleScript> ruleScripts)
+    {
+        int threadCount = Math.min(getParseThreads(), ruleScripts.size());
+
+        if (threadCount <= 0) {
+            return;
+        }
+
+        final RuleScript[] scripts = ruleScripts.toArray(new RuleScript[ruleScripts.size()]);
+
+        if (threadCount == 1) {
+            for (RuleScript script : scripts) {
+                script.preparse();
+            }
+            return;
+        }
+
+        // each thread claims the next unparsed script until they have all been claimed
+        final AtomicInteger next = new AtomicInteger(0);
+        final Runnable runnable = new Runnable() {
+            public void run() {
+                int idx;
+                while ((idx = next.getAndIncrement()) < scripts.length) {
+                    scripts[idx].preparse();
+                }
+            }
+        };
+        Runnable parserRunnable = new Runnable() {
+            public void run() {
+                // we don't want to see any triggers in the parser threads
+                Rule.disableTriggersInternal();
+                runnable.run();
+            }
+        };
+        Thread[] threads = new Thread[threadCount - 1];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(parserRunnable, "Byteman Rule Parser " + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+        // the calling thread lends a hand too
+        runnable.run();
+        boolean interrupted = false;
+        for (int i = 0; i < threads.length; i++) {
+            while (true) {
+                try {
+                    threads[i].join();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * return the cache used to memoize least common super computations during frame generation
+     * @return the common super cache
+     */
+    public CommonSuperCache getCommonSuperCache()
+    {
+        return commonSuperCache;
+    }
+
     /**
      * hash set naming blacklisted methods we refuse to inject into
      */
@@ -1090,17 +1722,37 @@ public class Transformer implements ClassFileTransformer {
 
     protected final LoadCache loadCache;
 
+    /**
+     * a cache of super and interface details obtained by parsing the bytecode of classes which
+     * have not yet been loaded
+     */
+
+    protected final ClassHierarchyCache hierarchyCache;
+
+    /**
+     * a cache of least common super results and of the ancestors of the types they were computed
+     * from, shared by all transforms of classes located by the same loader
+     */
+
+    protected final CommonSuperCache commonSuperCache;
+
     /**
      * a manager for helper lifecycle events which can be safely handed on to rules
      */
     protected final HelperManager helperManager;
 
+    /**
+     * a persistent cache of transformed bytecode or null if transform caching is not enabled
+     */
+    protected final TransformCache transformCache;
+
     /* configuration values defined via system property settings */
 
     /**
-     *  switch to control verbose output during rule processing
+     *  bit set identifying the categories of verbose output enabled during rule processing or zero
+     *  if verbose mode is disabled
      */
-    private static boolean verbose = computeVerbose();
+    private static volatile int verboseCategories = computeVerboseCategories();
 
     /**
      *  switch to control control flow graph output during rule processing
@@ -1158,6 +1810,88 @@ public class Transformer implements ClassFileTransformer {
      */
     private static boolean disallowDowncast = computeDisallowDowncast();
 
+    /**
+     * switch which determines whether interpreted rules may reuse a per-thread helper instance
+     */
+    private static boolean reuseHelpers = computeReuseHelpers();
+
+    /**
+     * switch which determines whether rules which target the same class are injected one at a time
+     */
+    private static boolean transformSequential = computeTransformSequential();
+
+    /**
+     * switch which determines whether methods which do not contain trigger points are rewritten
+     */
+    private static boolean transformAllMethods = computeTransformAllMethods();
+
+    /**
+     * the order in which the scripts in a batch are locked
+     */
+    private static final Comparator<RuleScript> SCRIPT_LOCK_ORDER = new Comparator<RuleScript>() {
+        public int compare(RuleScript script1, RuleScript script2)
+        {
+            int result = script1.getName().compareTo(script2.getName());
+            if (result == 0) {
+                // scripts with the same name should not coexist but order them anyway
+                int hash1 = System.identityHashCode(script1);
+                int hash2 = System.identityHashCode(script2);
+                result = (hash1 < hash2 ? -1 : (hash1 == hash2 ? 0 : 1));
+            }
+            return result;
+        }
+    };
+
+    /**
+     * the maximum number of classes retransformed in one call to the JVM or zero for no limit
+     */
+    private static int retransformBatchSize = computeRetransformBatchSize();
+
+    /**
+     * the number of threads used to parse rules ahead of injection or zero if they are parsed on injection
+     */
+    private static int parseThreads = computeParseThreads();
+
+    /**
+     * the number of interpreted firings after which a rule is compiled or zero to compile up front
+     */
+    private static int compileThreshold = computeCompileThreshold();
+
+    /**
+     * switch which determines whether trace streams are written by a background thread
+     */
+    private static boolean traceAsync = computeTraceAsync();
+
+    /**
+     * the maximum number of messages queued for each asynchronous trace stream
+     */
+    private static int traceBufferSize = computeTraceBufferSize();
+
+    /**
+     * the policy applied when a message is written to a full asynchronous trace stream
+     */
+    private static AsyncTraceWriter.Overflow traceOverflow = computeTraceOverflow();
+
+    /**
+     * switch which determines whether per-rule execution metrics are gathered
+     */
+    private static boolean ruleMetrics = computeRuleMetrics();
+
+    /**
+     * the percentage of wall clock time each rule may spend executing or 0 if unlimited
+     */
+    private static double ruleBudgetCpu = computeRuleBudgetCpu();
+
+    /**
+     * the number of times per second each rule may be executed or 0 if unlimited
+     */
+    private static long ruleBudgetRate = computeRuleBudgetRate();
+
+    /**
+     * switch which determines whether a rule which exceeds its budget is sampled rather than disabled
+     */
+    private static boolean ruleBudgetSample = computeRuleBudgetSample();
+
     /**
      * master switch which determines whether or not config values can be updated
      */
@@ -1176,6 +1910,33 @@ public class Transformer implements ClassFileTransformer {
         return System.getProperty(VERBOSE) != null;
     }
 
+    private static int computeVerboseCategories()
+    {
+        if (!computeVerbose()) {
+            return 0;
+        }
+        String value = System.getProperty(VERBOSE_CATEGORIES);
+        if (value == null) {
+            return VERBOSE_ENABLED | VERBOSE_ALL;
+        }
+        int categories = VERBOSE_ENABLED;
+        for (String name : value.split(",")) {
+            name = name.trim();
+            if ("transform".equals(name)) {
+                categories |= VERBOSE_TRANSFORM;
+            } else if ("typecheck".equals(name)) {
+                categories |= VERBOSE_TYPECHECK;
+            } else if ("compile".equals(name)) {
+                categories |= VERBOSE_COMPILE;
+            } else if ("execute".equals(name)) {
+                categories |= VERBOSE_EXECUTE;
+            } else if ("helper".equals(name)) {
+                categories |= VERBOSE_HELPER;
+            }
+        }
+        return categories;
+    }
+
     private static boolean computeDumpCFGPartial()
     {
         return System.getProperty(DUMP_CFG_PARTIAL) != null;
@@ -1241,14 +2002,170 @@ public class Transformer implements ClassFileTransformer {
         return (System.getProperty(DISALLOW_DOWNCAST) != null);
     }
 
+    private static boolean computeReuseHelpers() {
+        return (System.getProperty(REUSE_HELPERS) != null);
+    }
+
+    private static boolean computeTransformSequential() {
+        return (System.getProperty(TRANSFORM_SEQUENTIAL) != null);
+    }
+
+    private static boolean computeTransformAllMethods() {
+        return (System.getProperty(TRANSFORM_ALL_METHODS) != null);
+    }
+
+    private static int computeRetransformBatchSize() {
+        String value = System.getProperty(RETRANSFORM_BATCH_SIZE);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            int size = Integer.parseInt(value.trim());
+            return (size > 0 ? size : 0);
+        } catch (NumberFormatException e) {
+            Helper.err("Transformer : invalid value for " + RETRANSFORM_BATCH_SIZE + " : " + value);
+            return 0;
+        }
+    }
+
+    private static int computeParseThreads() {
+        String value = System.getProperty(PARSE_THREADS);
+        int defaultThreads = Runtime.getRuntime().availableProcessors();
+        if (value == null) {
+            return defaultThreads;
+        }
+        try {
+            int threads = Integer.parseInt(value.trim());
+            return (threads > 0 ? threads : 0);
+        } catch (NumberFormatException e) {
+            Helper.err("Transformer : invalid value for " + PARSE_THREADS + " : " + value);
+            return defaultThreads;
+        }
+    }
+
+    private static int computeCompileThreshold() {
+        String value = System.getProperty(COMPILE_THRESHOLD);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            int threshold = Integer.parseInt(value.trim());
+            return (threshold > 0 ? threshold : 0);
+        } catch (NumberFormatException e) {
+            Helper.err("Transformer : invalid value for " + COMPILE_THRESHOLD + " : " + value);
+            return 0;
+        }
+    }
+
+    private static boolean computeTraceAsync() {
+        return (System.getProperty(TRACE_ASYNC) != null);
+    }
+
+    private static int computeTraceBufferSize() {
+        String value = System.getProperty(TRACE_BUFFER_SIZE);
+        if (value == null) {
+            return DEFAULT_TRACE_BUFFER_SIZE;
+        }
+        try {
+            int size = Integer.parseInt(value.trim());
+            if (size > 0) {
+                return size;
+            }
+        } catch (NumberFormatException e) {
+            // drop through
+        }
+        Helper.err("Transformer : invalid value for " + TRACE_BUFFER_SIZE + " : " + value);
+        return DEFAULT_TRACE_BUFFER_SIZE;
+    }
+
+    private static AsyncTraceWriter.Overflow computeTraceOverflow() {
+        String value = System.getProperty(TRACE_OVERFLOW);
+        if (value == null) {
+            return AsyncTraceWriter.Overflow.BLOCK;
+        }
+        try {
+            return AsyncTraceWriter.Overflow.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            Helper.err("Transformer : invalid value for " + TRACE_OVERFLOW + " : " + value);
+            return AsyncTraceWriter.Overflow.BLOCK;
+        }
+    }
+
+    private static boolean computeRuleMetrics() {
+        return (System.getProperty(RULE_METRICS) != null);
+    }
+
+    private static double computeRuleBudgetCpu() {
+        String value = System.getProperty(RULE_BUDGET_CPU);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            double percent = Double.parseDouble(value.trim());
+            if (percent >= 0) {
+                return percent;
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        Helper.err("Transformer : invalid value for " + RULE_BUDGET_CPU + " : " + value);
+        return 0;
+    }
+
+    private static long computeRuleBudgetRate() {
+        String value = System.getProperty(RULE_BUDGET_RATE);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            long rate = Long.parseLong(value.trim());
+            if (rate >= 0) {
+                return rate;
+            }
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        Helper.err("Transformer : invalid value for " + RULE_BUDGET_RATE + " : " + value);
+        return 0;
+    }
+
+    private static boolean computeRuleBudgetSample() {
+        String value = System.getProperty(RULE_BUDGET_ACTION);
+        if (value == null || value.trim().equalsIgnoreCase("disable")) {
+            return false;
+        }
+        if (value.trim().equalsIgnoreCase("sample")) {
+            return true;
+        }
+        Helper.err("Transformer : invalid value for " + RULE_BUDGET_ACTION + " : " + value);
+        return false;
+    }
+
+    private static File computeTransformCacheDir()
+    {
+        String value = System.getProperty(TRANSFORM_CACHE_DIR);
+        if (value == null) {
+            return null;
+        }
+        File dir = new File(value);
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        if (dir.isDirectory() && dir.canWrite()) {
+            return dir;
+        }
+        Helper.err("Transformer : invalid value for " + TRANSFORM_CACHE_DIR + " : " + value);
+        return null;
+    }
+
     private void checkConfiguration(String property)
     {
         // n.b. this needs to be kept up to date with each new config setting that is added
 
-        if (VERBOSE.equals(property)) {
-            boolean value = computeVerbose();
+        if (VERBOSE.equals(property) || VERBOSE_CATEGORIES.equals(property)) {
+            int value = computeVerboseCategories();
             synchronized (configLock) {
-                verbose = value;
+                verboseCategories = value;
             }
             return;
         }
@@ -1338,6 +2255,99 @@ public class Transformer implements ClassFileTransformer {
                 disallowDowncast = value;
             }
         }
+
+        if (REUSE_HELPERS.equals(property)) {
+            boolean value = computeReuseHelpers();
+            synchronized (configLock) {
+                reuseHelpers = value;
+            }
+        }
+
+        if (TRANSFORM_SEQUENTIAL.equals(property)) {
+            boolean value = computeTransformSequential();
+            synchronized (configLock) {
+                transformSequential = value;
+            }
+        }
+
+        if (TRANSFORM_ALL_METHODS.equals(property)) {
+            boolean value = computeTransformAllMethods();
+            synchronized (configLock) {
+                transformAllMethods = value;
+            }
+        }
+
+        if (PARSE_THREADS.equals(property)) {
+            int value = computeParseThreads();
+            synchronized (configLock) {
+                parseThreads = value;
+            }
+        }
+
+        if (RETRANSFORM_BATCH_SIZE.equals(property)) {
+            int value = computeRetransformBatchSize();
+            synchronized (configLock) {
+                retransformBatchSize = value;
+            }
+        }
+
+        if (COMPILE_THRESHOLD.equals(property)) {
+            int value = computeCompileThreshold();
+            synchronized (configLock) {
+                compileThreshold = value;
+            }
+        }
+
+        if (TRACE_ASYNC.equals(property)) {
+            boolean value = computeTraceAsync();
+            synchronized (configLock) {
+                traceAsync = value;
+            }
+        }
+
+        if (TRACE_BUFFER_SIZE.equals(property)) {
+            int value = computeTraceBufferSize();
+            synchronized (configLock) {
+                traceBufferSize = value;
+            }
+        }
+
+        if (TRACE_OVERFLOW.equals(property)) {
+            AsyncTraceWriter.Overflow value = computeTraceOverflow();
+            synchronized (configLock) {
+                traceOverflow = value;
+            }
+        }
+
+        if (RULE_METRICS.equals(property)) {
+            boolean value = computeRuleMetrics();
+            synchronized (configLock) {
+                ruleMetrics = value;
+            }
+            RuleMetrics.setEnabled(value);
+            if (value) {
+                MetricsControl.register(this);
+            }
+        }
+
+        if (RULE_BUDGET_CPU.equals(property) || RULE_BUDGET_RATE.equals(property) || RULE_BUDGET_ACTION.equals(property)) {
+            double cpu = computeRuleBudgetCpu();
+            long rate = computeRuleBudgetRate();
+            boolean sample = computeRuleBudgetSample();
+            synchronized (configLock) {
+                ruleBudgetCpu = cpu;
+                ruleBudgetRate = rate;
+                ruleBudgetSample = sample;
+            }
+            RuleGovernor.configure(cpu, rate, sample);
+            // give every rule a fresh start against the new budget
+            for (RuleScript ruleScript : scriptRepository.currentRules()) {
+                RuleGovernor governor = ruleScript.peekGovernor();
+                if (governor != null) {
+                    governor.reset();
+                }
+            }
+        }
     }
 
     /* helper methods to dump class files */
@@ -42,6 +42,25 @@ public class BMJSRInliner extends ClassVisitor
     public MethodVisitor visitMethod(int access, String name, String desc, String signature, String[] exceptions)
     {
         MethodVisitor mv = super.visitMethod(access, name, desc, signature, exceptions);
+        if (!rewriteMethod(access, name, desc)) {
+            // hand back the downstream visitor unwrapped so that a class writer created
+            // from the class reader can copy the method bytes as is
+            return mv;
+        }
         return new BMJSRInlinerAdapter(mv, access, name, desc, signature, exceptions);
     }
+
+    /**
+     * identify whether a method is going to be rewritten by the downstream visitor. methods which are
+     * not rewritten do not need their JSR/RET sequences inlining. subclasses may override this to allow
+     * untouched methods to be copied unchanged.
+     * @param access the method access flags
+     * @param name the method name
+     * @param desc the method descriptor
+     * @return true if the method is rewritten and hence needs inlining otherwise false
+     */
+    protected boolean rewriteMethod(int access, String name, String desc)
+    {
+        return true;
+    }
 }
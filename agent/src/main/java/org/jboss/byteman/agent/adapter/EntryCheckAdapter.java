@@ -75,6 +75,7 @@ public class EntryCheckAdapter extends RuleCheckAdapter
         }
 
         public void visitCode() {
+            super.visitCode();
             // any instruction counts as a trigger point
             setTriggerPoint();
         }
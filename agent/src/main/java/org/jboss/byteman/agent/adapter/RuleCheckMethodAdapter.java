@@ -83,7 +83,7 @@ public class RuleCheckMethodAdapter extends RuleMethodAdapter {
             Binding binding = bindingIter.next();
             if (binding.isRecipient()) {
                 if ((access & Opcodes.ACC_STATIC) != 0) {
-                    Helper.verbose("RuleCheckMethodAdapter.checkBindings : found invalid recipient binding " + binding + " checking static method " + name + descriptor);
+                    Helper.verbose(Transformer.VERBOSE_TRANSFORM, "RuleCheckMethodAdapter.checkBindings : found invalid recipient binding " + binding + " checking static method " + name + descriptor);
 
                     transformContext.warn(name, descriptor, "found invalid recipient binding " + binding + " injecting into static method");
                 }
@@ -91,7 +91,7 @@ public class RuleCheckMethodAdapter extends RuleMethodAdapter {
                 int idx = binding.getIndex();
                 if (idx > parameterCount) {
                     // parameter out of range
-                    Helper.verbose("RuleCheckMethodAdapter.checkBindings : found out of range parameter binding " + binding + " checking method " + name + descriptor);
+                    Helper.verbose(Transformer.VERBOSE_TRANSFORM, "RuleCheckMethodAdapter.checkBindings : found out of range parameter binding " + binding + " checking method " + name + descriptor);
 
                     transformContext.warn(name, descriptor, "found out of range parameter binding " + binding);
                 } else {
@@ -103,18 +103,18 @@ public class RuleCheckMethodAdapter extends RuleMethodAdapter {
                 LocationType locationType = rule.getTargetLocation().getLocationType();
                 if (locationType == LocationType.EXIT) {
                     if ("void".equals(getReturnBindingType())) {
-                        Helper.verbose("RuleCheckMethodAdapter.checkBindings : found return value binding " + binding + " checking void trigger method " + name + descriptor + " in AT EXIT rule " + rule);
+                        Helper.verbose(Transformer.VERBOSE_TRANSFORM, "RuleCheckMethodAdapter.checkBindings : found return value binding " + binding + " checking void trigger method " + name + descriptor + " in AT EXIT rule " + rule);
 
                         transformContext.warn(name, descriptor, "found return value binding " + binding + " checking void trigger method in AT EXIT rule");
                     }
                 } else if (locationType == LocationType.INVOKE_COMPLETED) {
                     if ("void".equals(getReturnBindingType())) {
-                        Helper.verbose("RuleCheckMethodAdapter.checkBindings : found return value binding " + binding + " checking void called method in AFTER INVOKE rule  " + rule.getName());
+                        Helper.verbose(Transformer.VERBOSE_TRANSFORM, "RuleCheckMethodAdapter.checkBindings : found return value binding " + binding + " checking void called method in AFTER INVOKE rule  " + rule.getName());
 
                         transformContext.warn(name, descriptor, "found return value binding " + binding + " checking void called method in AFTER INVOKE rule");
                     }
                 } else {
-                    Helper.verbose("RuleCheckMethodAdapter.checkBindings : found return value binding " + binding + " in rule which is neither AT EXIT nor AFTER INVOKE " + rule.getName());
+                    Helper.verbose(Transformer.VERBOSE_TRANSFORM, "RuleCheckMethodAdapter.checkBindings : found return value binding " + binding + " in rule which is neither AT EXIT nor AFTER INVOKE " + rule.getName());
 
                     transformContext.warn(name, descriptor, "found return value binding " + binding + " in rule which is neither AT EXIT nor AFTER INVOKE");
                 }
@@ -122,7 +122,7 @@ public class RuleCheckMethodAdapter extends RuleMethodAdapter {
                 // we can only allow reference to the current throwable in an AT THROW rule
                 LocationType locationType = rule.getTargetLocation().getLocationType();
                 if (locationType != LocationType.THROW && locationType != LocationType.EXCEPTION_EXIT) {
-                    Helper.verbose("RuleCheckMethodAdapter.checkBindings : found throwable value binding " + binding + " in rule which is neither AT THROW nor AT EXCEPTION EXIT" + rule.getName());
+                    Helper.verbose(Transformer.VERBOSE_TRANSFORM, "RuleCheckMethodAdapter.checkBindings : found throwable value binding " + binding + " in rule which is neither AT THROW nor AT EXCEPTION EXIT" + rule.getName());
 
                     transformContext.warn(name, descriptor, "found throwable value binding " + binding + " in rule which is not AT THROW");
                 }
@@ -134,7 +134,7 @@ public class RuleCheckMethodAdapter extends RuleMethodAdapter {
             } else if (binding.isInvokeParamArray()) {
                 // we can only allow reference to the invoked method parameters in an AT INVOKE rule
                 if (rule.getTargetLocation().getLocationType() != LocationType.INVOKE) {
-                    Helper.verbose("RuleCheckMethodAdapter.checkBindings : found invoke parameter array binding $@ in non-AT INVOKE rule " + rule.getName());
+                    Helper.verbose(Transformer.VERBOSE_TRANSFORM, "RuleCheckMethodAdapter.checkBindings : found invoke parameter array binding $@ in non-AT INVOKE rule " + rule.getName());
 
                     transformContext.warn(name, descriptor, "found invoke parameter array binding $@ in non-AT INVOKE rule ");
                 }
@@ -146,7 +146,7 @@ public class RuleCheckMethodAdapter extends RuleMethodAdapter {
                 List<LocalVar> localVars = lookup(localVarName);
 
                 if (localVars == null || localVars.isEmpty()) {
-                    Helper.verbose("RuleCheckMethodAdapter.checkBindings : unsatisfiable local variable binding " + binding + " checking method " + name + descriptor);
+                    Helper.verbose(Transformer.VERBOSE_TRANSFORM, "RuleCheckMethodAdapter.checkBindings : unsatisfiable local variable binding " + binding + " checking method " + name + descriptor);
 
                     transformContext.warn(name, descriptor, "unknown local variable " + binding);
                 } else {
@@ -176,7 +176,7 @@ public class RuleCheckMethodAdapter extends RuleMethodAdapter {
                         }
                         // if there was no variable for this trigger point then fail
                         if (!found) {
-                            Helper.verbose("RuleCheckMethodAdapter.checkBindings : invalid local variable binding " + binding + " checking method " + name + descriptor);
+                            Helper.verbose(Transformer.VERBOSE_TRANSFORM, "RuleCheckMethodAdapter.checkBindings : invalid local variable binding " + binding + " checking method " + name + descriptor);
 
                             transformContext.warn(name, descriptor, "invalid local variable binding " + binding);
                             // ok no point checking any further
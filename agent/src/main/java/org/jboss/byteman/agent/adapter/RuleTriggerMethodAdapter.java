@@ -1073,12 +1073,12 @@ public class RuleTriggerMethodAdapter extends RuleGeneratorAdapter
         // we need to set this here to avoid recursive re-entry into inject routine
 
         rule.setTypeInfo(getTriggerClassName(), access, name, descriptor, exceptions);
-        String key = rule.getKey();
+        int keyId = rule.getKeyId();
         Type ruleType = Type.getType(TypeHelper.externalizeType("org.jboss.byteman.rule.Rule"));
-        Method method = Method.getMethod("void execute(String, Object, Object[])");
+        Method method = Method.getMethod("void execute(int, Object, Object[])");
         // we are at the relevant line in the method -- so add a trigger call here
 
-        Helper.verbose("RuleTriggerMethodAdapter.injectTriggerPoint : inserting trigger into " + getTriggerClassName() + "." + getMethodName() + " for rule " + rule.getName());
+        Helper.verbose(Transformer.VERBOSE_TRANSFORM, "RuleTriggerMethodAdapter.injectTriggerPoint : inserting trigger into " + getTriggerClassName() + "." + getMethodName() + " for rule " + rule.getName());
 
         Label startLabel = newLabel();
         Label endLabel = newLabel();
@@ -1100,7 +1100,7 @@ public class RuleTriggerMethodAdapter extends RuleGeneratorAdapter
         } else {
             saveValueSlot = -1;
         }
-        push(key);
+        push(keyId);
         if ((access & Opcodes.ACC_STATIC) == 0) {
             loadThis();
         } else {
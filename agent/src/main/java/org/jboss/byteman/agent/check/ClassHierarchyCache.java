@@ -0,0 +1,176 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2026 Red Hat and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+package org.jboss.byteman.agent.check;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A bounded cache of the class hierarchy details obtained by parsing class bytecode. The transformer
+ * needs to know the super and interfaces of classes which have not yet been loaded when it checks
+ * whether a class is a target for overriding or interface rules and when it computes the least common
+ * super of two types during frame generation. Obtaining these details means reading and parsing the
+ * class file, something which would otherwise be repeated for the same common base classes many times
+ * over. The cache retains an immutable summary of each parsed class, keyed by the class loader used to
+ * locate it and the class name. Like LoadCache the outer map is a WeakHashMap so that it does not hold
+ * on to loaders once all references to them have been dropped. Each per-loader map is limited in size,
+ * discarding the least recently used entry once the limit is reached.
+ *
+ * n.b. it is safe to cache these details because redefinition of a class may not change its super or
+ * interfaces.
+ */
+public class ClassHierarchyCache
+{
+    /**
+     * maximum number of entries retained for any one loader
+     */
+    private static final int MAX_ENTRIES_PER_LOADER = 4096;
+
+    private WeakHashMap<ClassLoader, Map<String, ClassChecker>> loaderMaps = new WeakHashMap<ClassLoader, Map<String, ClassChecker>>();
+    private Map<String, ClassChecker> bootMap = createMap();
+
+    /**
+     * lookup the hierarchy details for a class. details installed by the transformer are keyed by the
+     * defining loader while a lookup is made via the loader of a referring class so the search proceeds
+     * up the parent chain of the supplied loader, much as delegation would when locating the class.
+     * @param name the name of the class in external format
+     * @param loader the loader used to locate the class bytecode
+     * @return a checker for the class or null if its details have not been cached
+     */
+    public ClassChecker lookup(String name, ClassLoader loader)
+    {
+        while (true) {
+            Map<String, ClassChecker> map = peekMap(loader);
+            if (map != null) {
+                ClassChecker checker;
+                synchronized (map) {
+                    checker = map.get(name);
+                }
+                if (checker != null) {
+                    return checker;
+                }
+            }
+            if (loader == null) {
+                // the bootstrap map is always the last one searched
+                return null;
+            }
+            loader = loader.getParent();
+        }
+    }
+
+    /**
+     * cache the hierarchy details presented by a checker, returning an immutable copy
+     * @param name the name of the class in external format
+     * @param loader the loader used to locate the class bytecode
+     * @param checker the checker obtained by parsing the class bytecode
+     * @return a checker which can be used in place of the supplied checker
+     */
+    public ClassChecker install(String name, ClassLoader loader, ClassChecker checker)
+    {
+        ClassChecker summary = new CachedClassChecker(checker);
+        Map<String, ClassChecker> map = getMap(loader);
+        synchronized (map) {
+            map.put(name, summary);
+        }
+        return summary;
+    }
+
+    private Map<String, ClassChecker> peekMap(ClassLoader loader)
+    {
+        if (loader == null) {
+            return bootMap;
+        }
+        synchronized (loaderMaps) {
+            return loaderMaps.get(loader);
+        }
+    }
+
+    private Map<String, ClassChecker> getMap(ClassLoader loader)
+    {
+        if (loader == null) {
+            return bootMap;
+        }
+        synchronized (loaderMaps) {
+            Map<String, ClassChecker> map = loaderMaps.get(loader);
+            if (map == null) {
+                map = createMap();
+                loaderMaps.put(loader, map);
+            }
+            return map;
+        }
+    }
+
+    private static Map<String, ClassChecker> createMap()
+    {
+        return new LinkedHashMap<String, ClassChecker>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, ClassChecker> eldest) {
+                return size() > MAX_ENTRIES_PER_LOADER;
+            }
+        };
+    }
+
+    /**
+     * an immutable summary of the details presented by a checker which, unlike a BytecodeChecker,
+     * does not retain the parsed class structure
+     */
+    private static class CachedClassChecker implements ClassChecker
+    {
+        private final boolean isInterface;
+        private final String superName;
+        private final boolean hasOuterClass;
+        private final String[] interfaces;
+
+        CachedClassChecker(ClassChecker checker)
+        {
+            isInterface = checker.isInterface();
+            superName = checker.getSuper();
+            hasOuterClass = checker.hasOuterClass();
+            int count = checker.getInterfaceCount();
+            interfaces = new String[count];
+            for (int i = 0; i < count; i++) {
+                interfaces[i] = checker.getInterface(i);
+            }
+        }
+
+        public boolean isInterface() {
+            return isInterface;
+        }
+
+        public String getSuper() {
+            return superName;
+        }
+
+        public boolean hasOuterClass() {
+            return hasOuterClass;
+        }
+
+        public int getInterfaceCount() {
+            return interfaces.length;
+        }
+
+        public String getInterface(int idx) {
+            return interfaces[idx];
+        }
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2026 Red Hat and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+
+
+package org.jboss.byteman.agent.check;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * A bounded cache of the results of least common super computations performed when generating stack
+ * frames for transformed classes. ASM asks for the least common super of a pair of types at every frame
+ * merge point where they meet so a large class with many exception handlers will ask for the same pair
+ * many times over, as will transforms of other classes located by the same loader. The cache also retains
+ * the ordered list of supers and the ordered list of interfaces for each type it has been asked about so
+ * that a miss for a new pair does not need to walk the hierarchy of types it has already seen. Like
+ * ClassHierarchyCache entries are keyed by the class loader used to locate the types and the outer map is
+ * a WeakHashMap so that it does not hold on to loaders once all references to them have been dropped.
+ * Each per-loader map is limited in size, discarding the least recently used entry once the limit is
+ * reached.
+ *
+ * n.b. it is safe to cache these details because redefinition of a class may not change its super or
+ * interfaces.
+ */
+public class CommonSuperCache
+{
+    /**
+     * maximum number of entries of each kind retained for any one loader
+     */
+    private static final int MAX_ENTRIES_PER_LOADER = 4096;
+
+    private WeakHashMap<ClassLoader, LoaderMaps> loaderMaps = new WeakHashMap<ClassLoader, LoaderMaps>();
+    private LoaderMaps bootMaps = new LoaderMaps();
+
+    /**
+     * lookup the least common super of two types
+     * @param type1 the first type in internal format
+     * @param type2 the second type in internal format
+     * @param loader the loader used to locate the types
+     * @return the least common super in internal format or null if it has not been cached
+     */
+    public String lookupCommonSuper(String type1, String type2, ClassLoader loader)
+    {
+        Map<String, String> map = getMaps(loader).commonSupers;
+        String key = type1 + ';' + type2;
+        synchronized (map) {
+            return map.get(key);
+        }
+    }
+
+    /**
+     * cache the least common super of two types
+     * @param type1 the first type in internal format
+     * @param type2 the second type in internal format
+     * @param loader the loader used to locate the types
+     * @param commonSuper the least common super in internal format
+     */
+    public void installCommonSuper(String type1, String type2, ClassLoader loader, String commonSuper)
+    {
+        Map<String, String> map = getMaps(loader).commonSupers;
+        String key = type1 + ';' + type2;
+        synchronized (map) {
+            map.put(key, commonSuper);
+        }
+    }
+
+    /**
+     * lookup the supers of a type
+     * @param name the name of the type in external format
+     * @param loader the loader used to locate the type
+     * @return the supers of the type or null if they have not been cached
+     */
+    public AncestorList lookupSupers(String name, ClassLoader loader)
+    {
+        Map<String, AncestorList> map = getMaps(loader).supers;
+        synchronized (map) {
+            return map.get(name);
+        }
+    }
+
+    /**
+     * cache the supers of a type
+     * @param name the name of the type in external format
+     * @param loader the loader used to locate the type
+     * @param supers the supers of the type in external format ordered from the direct super upwards
+     * @return an ancestor list which can be used to iterate over or search the supers
+     */
+    public AncestorList installSupers(String name, ClassLoader loader, List<String> supers)
+    {
+        AncestorList ancestors = new AncestorList(supers);
+        Map<String, AncestorList> map = getMaps(loader).supers;
+        synchronized (map) {
+            map.put(name, ancestors);
+        }
+        return ancestors;
+    }
+
+    /**
+     * lookup the interfaces implemented or extended by a type
+     * @param name the name of the type in external format
+     * @param loader the loader used to locate the type
+     * @return the interfaces of the type or null if they have not been cached
+     */
+    public AncestorList lookupInterfaces(String name, ClassLoader loader)
+    {
+        Map<String, AncestorList> map = getMaps(loader).interfaces;
+        synchronized (map) {
+            return map.get(name);
+        }
+    }
+
+    /**
+     * cache the interfaces implemented or extended by a type
+     * @param name the name of the type in external format
+     * @param loader the loader used to locate the type
+     * @param interfaces the interfaces of the type in external format in the order they are found
+     * @return an ancestor list which can be used to iterate over or search the interfaces
+     */
+    public AncestorList installInterfaces(String name, ClassLoader loader, List<String> interfaces)
+    {
+        AncestorList ancestors = new AncestorList(interfaces);
+        Map<String, AncestorList> map = getMaps(loader).interfaces;
+        synchronized (map) {
+            map.put(name, ancestors);
+        }
+        return ancestors;
+    }
+
+    private LoaderMaps getMaps(ClassLoader loader)
+    {
+        if (loader == null) {
+            return bootMaps;
+        }
+        synchronized (loaderMaps) {
+            LoaderMaps maps = loaderMaps.get(loader);
+            if (maps == null) {
+                maps = new LoaderMaps();
+                loaderMaps.put(loader, maps);
+            }
+            return maps;
+        }
+    }
+
+    private static <V> Map<String, V> createMap()
+    {
+        return new LinkedHashMap<String, V>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+                return size() > MAX_ENTRIES_PER_LOADER;
+            }
+        };
+    }
+
+    /**
+     * the maps used to cache results for a single loader
+     */
+    private static class LoaderMaps
+    {
+        final Map<String, String> commonSupers = CommonSuperCache.<String>createMap();
+        final Map<String, AncestorList> supers = CommonSuperCache.<AncestorList>createMap();
+        final Map<String, AncestorList> interfaces = CommonSuperCache.<AncestorList>createMap();
+    }
+
+    /**
+     * an immutable ordered list of the names of the supers or interfaces of a type which can be searched
+     * in constant time
+     */
+    public static class AncestorList
+    {
+        private final String[] names;
+        private final Set<String> nameSet;
+
+        AncestorList(List<String> names)
+        {
+            this.names = names.toArray(new String[names.size()]);
+            this.nameSet = new HashSet<String>(names);
+        }
+
+        public int size()
+        {
+            return names.length;
+        }
+
+        public String get(int idx)
+        {
+            return names[idx];
+        }
+
+        public boolean contains(String name)
+        {
+            return nameSet.contains(name);
+        }
+    }
+}
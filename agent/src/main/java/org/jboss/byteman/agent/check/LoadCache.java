@@ -26,8 +26,10 @@
 package org.jboss.byteman.agent.check;
 
 import java.lang.instrument.Instrumentation;
-import java.util.HashMap;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * A cache used to allow the association between a class name and the corresponding class in the context
@@ -36,8 +38,19 @@ import java.util.WeakHashMap;
  * if it is a target for rules which inject into overriding methods. the cache is a map keyed by classloader
  * whose value is itself a map. each nested map translates a fully qualified class name to an instance of
  * Class. The outer map is a WeakHashMap ensuring that it doe snot hold on to loaders once all references to
- * them have been dropped.
+ * them have been dropped. n.b. the nested maps only hold weak references to classes since a class strongly
+ * references its loader and would otherwise stop the loader's entry from ever being dropped.
  *
+ * when a loader's initiated classes have to be scanned all of them are entered into the nested map for
+ * that loader so that later lookups of any class loaded by then are satisfied without a further scan.
+ * a lookup which fails is also recorded in the nested map for the base loader so that repeated lookups of
+ * classes which have not (yet) been loaded do not rescan the loader hierarchy. these negative entries are
+ * discarded when the transformer is notified that a class with the same name is being loaded. the notification
+ * happens before the class is defined so a lookup made in the meantime, say while the class itself is being
+ * transformed, may install a fresh negative entry. so, once a name has been notified, the next lookup which
+ * hits a negative entry for it rescans the loader hierarchy and the name is then forgotten. a negative entry
+ * which still survives only means that the transformer falls back to the bytecode of the class, which is
+ * slower but still correct.
  */
 public class LoadCache
 {
@@ -48,8 +61,24 @@ public class LoadCache
     }
 
     private Instrumentation inst;
-    private WeakHashMap<ClassLoader, HashMap<String, Class>> loaderMaps = new WeakHashMap<ClassLoader, HashMap<String, Class>>();
-    private HashMap<String, Class> bootMap = new HashMap<String, Class>();
+    private WeakHashMap<ClassLoader, ConcurrentHashMap<String, Object>> loaderMaps = new WeakHashMap<ClassLoader, ConcurrentHashMap<String, Object>>();
+    private ConcurrentHashMap<String, Object> bootMap = new ConcurrentHashMap<String, Object>();
+
+    /**
+     * the names of all classes for which a negative entry has been installed in some loader map
+     */
+    private ConcurrentHashMap<String, Boolean> missingNames = new ConcurrentHashMap<String, Boolean>();
+
+    /**
+     * the names of classes which have been notified as loading after a lookup failed to find them and
+     * for which no lookup has yet rescanned the loader hierarchy
+     */
+    private ConcurrentHashMap<String, Boolean> loadedNames = new ConcurrentHashMap<String, Boolean>();
+
+    /**
+     * value stored in a loader map to record that a class could not be found via the associated loader
+     */
+    private static final Object MISSING = new Object();
 
     public Class lookupClass(String name, ClassLoader baseLoader)
     {
@@ -58,72 +87,126 @@ public class LoadCache
             return null;
         }
 
-        HashMap<String, Class> baseLoaderMap = null;
-        Class clazz;
+        // see if we have cached the class or its absence in the map associated with this loader
 
-        // see if we have cached the cahe in the map associated with this loader
+        ConcurrentHashMap<String, Object> baseLoaderMap = getLoaderMap(baseLoader);
+        Object cached = baseLoaderMap.get(name);
 
-        if (baseLoader == null) {
-            baseLoaderMap = bootMap;
-        } else {
-            synchronized (loaderMaps) {
-                baseLoaderMap = loaderMaps.get(baseLoader);
-                if (baseLoaderMap == null) {
-                    baseLoaderMap = new HashMap<String, Class>();
-                    loaderMaps.put(baseLoader, baseLoaderMap);
-                }
+        if (cached == MISSING) {
+            if (loadedNames.remove(name) == null) {
+                return null;
             }
-        }
-
-        synchronized (baseLoaderMap) {
-            clazz = baseLoaderMap.get(name);
-        }
-
-        if (clazz != null) {
-            return clazz;
+            // the class may have been defined since the miss was recorded so check again
+            // but only once, otherwise a name which stays missing would be rescanned forever
+        } else if (cached != null) {
+            Class clazz = (Class)((WeakReference)cached).get();
+            if (clazz != null) {
+                return clazz;
+            }
+            // the class has been unloaded
+            baseLoaderMap.remove(name, cached);
         }
 
         // ok, look it up the hard way
 
-        HashMap<String, Class> loaderMap = baseLoaderMap;
         ClassLoader loader = baseLoader;
 
         // use a do while loop so we don't omit to look in the bootstrap classpath
         do
         {
-            Class[] classes = inst.getInitiatedClasses(loader);
-            for (int i = 0; i < classes.length; i++) {
-                clazz = classes[i];
-                if (clazz.getName().equals(name)) {
-                    // ok, install this class in the base map and the map we found it in
-                    synchronized (loaderMap) {
-                        loaderMap.put(name, clazz);
-                        if (loader != baseLoader) {
-                            synchronized (baseLoaderMap) {
-                                baseLoaderMap.put(name, clazz);
-                            }
-                        }
-                        return clazz;
-                    }
+            ConcurrentHashMap<String, Object> loaderMap = (loader == baseLoader ? baseLoaderMap : getLoaderMap(loader));
+            Class clazz = null;
+            if (loader != baseLoader) {
+                // a parent may already know the class even though the base loader does not
+                cached = loaderMap.get(name);
+                if (cached != null && cached != MISSING) {
+                    clazz = (Class)((WeakReference)cached).get();
                 }
             }
+            if (clazz == null) {
+                clazz = indexLoader(loader, loaderMap, name);
+            }
+            if (clazz != null) {
+                // ok, install this class in the base map too
+                if (loader != baseLoader) {
+                    baseLoaderMap.put(name, new WeakReference<Class>(clazz));
+                }
+                return clazz;
+            }
 
             if (loader != null) {
                 loader = loader.getParent();
-                if (loader == null) {
-                    loaderMap = bootMap;
-                } else {
-                    synchronized (loaderMaps) {
-                        loaderMap = loaderMaps.get(loader);
-                        if (loaderMap == null) {
-                            loaderMap = new HashMap<String, Class>();
-                            loaderMaps.put(loader, loaderMap);
-                        }
-                    }
-                }
             }
         } while (loader != null);
 
+        // record the miss so we don't search again until a class with this name is loaded
+
+        missingNames.put(name, Boolean.TRUE);
+        baseLoaderMap.putIfAbsent(name, MISSING);
+
         return null;
     }
+
+    /**
+     * notify the cache that a class with the given name is being loaded, invalidating any negative
+     * entries which record that the name could not be found
+     * @param name the name of the class being loaded
+     */
+    public void classLoaded(String name)
+    {
+        if (missingNames.remove(name) == null) {
+            // the common case -- nobody has failed to find this class
+            return;
+        }
+
+        // negative entries installed from now on cannot be trusted without a recheck
+        loadedNames.put(name, Boolean.TRUE);
+
+        bootMap.remove(name, MISSING);
+
+        synchronized (loaderMaps) {
+            Iterator<ConcurrentHashMap<String, Object>> iterator = loaderMaps.values().iterator();
+            while (iterator.hasNext()) {
+                iterator.next().remove(name, MISSING);
+            }
+        }
+    }
+
+    /**
+     * scan the classes initiated by a loader entering each of them into the loader's map
+     * @param loader the loader whose classes are to be scanned
+     * @param loaderMap the map associated with the loader
+     * @param name the name of the class being looked up
+     * @return the class with the given name if the loader has initiated its loading otherwise null
+     */
+    private Class indexLoader(ClassLoader loader, ConcurrentHashMap<String, Object> loaderMap, String name)
+    {
+        Class found = null;
+        Class[] classes = inst.getInitiatedClasses(loader);
+        for (int i = 0; i < classes.length; i++) {
+            Class clazz = classes[i];
+            String className = clazz.getName();
+            // n.b. this overwrites any negative entry which has not yet been cleared
+            loaderMap.put(className, new WeakReference<Class>(clazz));
+            if (className.equals(name)) {
+                found = clazz;
+            }
+        }
+        return found;
+    }
+
+    private ConcurrentHashMap<String, Object> getLoaderMap(ClassLoader loader)
+    {
+        if (loader == null) {
+            return bootMap;
+        }
+        synchronized (loaderMaps) {
+            ConcurrentHashMap<String, Object> loaderMap = loaderMaps.get(loader);
+            if (loaderMap == null) {
+                loaderMap = new ConcurrentHashMap<String, Object>();
+                loaderMaps.put(loader, loaderMap);
+            }
+            return loaderMap;
+        }
+    }
 }
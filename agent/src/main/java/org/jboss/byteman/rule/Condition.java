@@ -25,6 +25,7 @@ package org.jboss.byteman.rule;
 
 import org.jboss.byteman.rule.compiler.CompileContext;
 import org.jboss.byteman.rule.type.Type;
+import org.jboss.byteman.rule.expression.BooleanLiteral;
 import org.jboss.byteman.rule.expression.ExpressionHelper;
 import org.jboss.byteman.rule.expression.Expression;
 import org.jboss.byteman.rule.grammar.ECATokenLexer;
@@ -36,6 +37,7 @@ import org.jboss.byteman.rule.exception.ExecuteException;
 import org.jboss.byteman.rule.exception.CompileException;
 import org.jboss.byteman.rule.helper.HelperAdapter;
 import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
 
 import java.io.StringWriter;
 import java.io.StringReader;
@@ -97,11 +99,17 @@ public class Condition extends RuleElement
 
     public void compile(MethodVisitor mv, CompileContext compileContext) throws CompileException {
         int currentStack = compileContext.getStackCount();
-        // get the condition to compile itself -- it adds 1 to stack height
-        condition.compile(mv, compileContext);
-        // unbox if necessary
-        if (condition.getType() == Type.BOOLEAN) {
-            compileContext.compileUnbox(Type.BOOLEAN, Type.Z);
+        if (rule.isGuarded()) {
+            // the guard has already passed by the time the helper is executed
+            mv.visitInsn(Opcodes.ICONST_1);
+            compileContext.addStackCount(1);
+        } else {
+            // get the condition to compile itself -- it adds 1 to stack height
+            condition.compile(mv, compileContext);
+            // unbox if necessary
+            if (condition.getType() == Type.BOOLEAN) {
+                compileContext.compileUnbox(Type.BOOLEAN, Type.Z);
+            }
         }
 
         // check stack heights
@@ -113,11 +121,41 @@ public class Condition extends RuleElement
     public Object interpret(HelperAdapter helper)
             throws ExecuteException
     {
+        if (rule.isGuarded()) {
+            // the guard has already passed by the time the helper is executed
+            return Boolean.TRUE;
+        }
+
         Boolean result = (Boolean)condition.interpret(helper);
 
         return result;
     }
 
+    /**
+     * evaluate the condition on behalf of the guard for a rule
+     * @param helper the guard helper whose frame holds the trigger method recipient and parameters
+     * @return the value of the condition
+     * @throws ExecuteException if an exception occurs during evaluation of the condition
+     */
+    public boolean testGuard(HelperAdapter helper)
+            throws ExecuteException
+    {
+        return (Boolean)condition.interpret(helper);
+    }
+
+    /**
+     * identify whether this condition can be tested ahead of rule dispatch
+     * @return true if the condition expression is guard safe otherwise false
+     */
+    public boolean isGuardSafe()
+    {
+        if (condition == null || condition instanceof BooleanLiteral) {
+            // a constant condition gains nothing from a guard
+            return false;
+        }
+        return condition.isGuardSafe();
+    }
+
     public void writeTo(StringWriter stringWriter)
     {
         if (condition == null) {
@@ -30,6 +30,7 @@ import org.jboss.byteman.agent.AccessibleConstructorInvoker;
 import org.jboss.byteman.agent.AccessibleFieldGetter;
 import org.jboss.byteman.agent.AccessibleFieldSetter;
 import org.jboss.byteman.agent.AccessibleMethodInvoker;
+import org.jboss.byteman.agent.DefaultAccessEnabler;
 import org.jboss.byteman.agent.HelperManager;
 import org.jboss.byteman.modules.ModuleSystem;
 import org.jboss.byteman.rule.type.TypeGroup;
@@ -43,6 +44,8 @@ import org.jboss.byteman.rule.grammar.ParseNode;
 import org.jboss.byteman.rule.helper.HelperAdapter;
 import org.jboss.byteman.rule.helper.Helper;
 import org.jboss.byteman.rule.helper.InterpretedHelper;
+import org.jboss.byteman.rule.metrics.RuleGovernor;
+import org.jboss.byteman.rule.metrics.RuleMetrics;
 import org.jboss.byteman.agent.Location;
 import org.jboss.byteman.agent.Transformer;
 import org.jboss.byteman.agent.RuleScript;
@@ -57,6 +60,11 @@ import java.lang.reflect.Modifier;
 import java.util.*;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import java_cup.runtime.Symbol;
 
@@ -214,31 +222,9 @@ public class Rule
         this.helperManager =  helperManager;
         this.accessEnabler = accessEnabler;
 
-        ECAGrammarParser parser = null;
-        try {
-            String file = getFile();
-            ECATokenLexer lexer = new ECATokenLexer(new StringReader(ruleScript.getRuleText()));
-            lexer.setStartLine(getLine());
-            lexer.setFile(file);
-            parser = new ECAGrammarParser(lexer);
-            parser.setFile(file);
-            Symbol parse = (debugParse ? parser.debug_parse() : parser.parse());
-            if (parser.getErrorCount() != 0) {
-                String message = "rule " + ruleScript.getName();
-                message += parser.getErrors();
-                throw new ParseException(message);
-            }
-            ruleTree = (ParseNode) parse.value;
-        } catch (ParseException pe) {
-            throw pe;
-        } catch (Throwable th) {
-            String message = "rule " + ruleScript.getName();
-            if (parser != null && parser.getErrorCount() != 0) {
-                message += parser.getErrors();
-            }
-            message += "\n" + th.getMessage();
-            throw new ParseException(message);
-        }
+        // the script only parses its rule text once so rules created for
+        // subsequent trigger methods or classes reuse the same parse tree
+        ruleTree = ruleScript.getRuleTree();
 
 
         // set up the TypeGroup, which needs to see the correct classes
@@ -273,6 +259,41 @@ public class Rule
         key = null;
     }
 
+    /**
+     * parse the rule text of a rule script
+     * @param ruleScript the script whose text is to be parsed
+     * @return the parse tree for the rule text
+     * @throws ParseException if the text contains syntax errors
+     */
+    public static ParseNode parse(RuleScript ruleScript) throws ParseException
+    {
+        ECAGrammarParser parser = null;
+        try {
+            String file = ruleScript.getFile();
+            ECATokenLexer lexer = new ECATokenLexer(new StringReader(ruleScript.getRuleText()));
+            lexer.setStartLine(ruleScript.getLine());
+            lexer.setFile(file);
+            parser = new ECAGrammarParser(lexer);
+            parser.setFile(file);
+            Symbol parse = (debugParse ? parser.debug_parse() : parser.parse());
+            if (parser.getErrorCount() != 0) {
+                String message = "rule " + ruleScript.getName();
+                message += parser.getErrors();
+                throw new ParseException(message);
+            }
+            return (ParseNode) parse.value;
+        } catch (ParseException pe) {
+            throw pe;
+        } catch (Throwable th) {
+            String message = "rule " + ruleScript.getName();
+            if (parser != null && parser.getErrorCount() != 0) {
+                message += parser.getErrors();
+            }
+            message += "\n" + th.getMessage();
+            throw new ParseException(message);
+        }
+    }
+
     public TypeGroup getTypeGroup()
     {
         return typeGroup;
@@ -327,6 +348,15 @@ public class Rule
         return ruleScript.getFile();
     }
 
+    /**
+     * retrieve the text of the rule
+     * @return the text of the rule
+     */
+    public String getRuleText()
+    {
+        return ruleScript.getRuleText();
+    }
+
     public Event getEvent()
     {
         return event;
@@ -352,6 +382,14 @@ public class Rule
         return triggerDescriptor;
     }
 
+    public int getTriggerAccess() {
+        return triggerAccess;
+    }
+
+    public String[] getTriggerExceptions() {
+        return triggerExceptions;
+    }
+
     public Type getReturnType()
     {
         return returnType;
@@ -511,6 +549,8 @@ public class Rule
             String detail = "";
             try {
                 typeCheck();
+                // the guard must be known before compiling as the helper relies on its verdict
+                guardHelpers = createGuard();
                 compile();
                 checked = true;
             } catch (TypeWarningException te) {
@@ -520,7 +560,7 @@ public class Rule
                 writer.println("Rule.ensureTypeCheckedCompiled : warning type checking rule " + getName());
                 te.printStackTrace(writer);
                 detail = stringWriter.toString();
-                Helper.verbose(detail);
+                Helper.verbose(Transformer.VERBOSE_TYPECHECK, detail);
             } catch (TypeException te) {
                 checkFailed = true;
                 StringWriter stringWriter = new StringWriter();
@@ -579,6 +619,9 @@ public class Rule
         event.typeCheck(Type.VOID);
         condition.typeCheck(Type.Z);
         action.typeCheck(Type.VOID);
+
+        // the bindings list is now complete so allocate helper frame slots for the bindings
+        bindings.assignSlots();
     }
 
     public ModuleSystem getModuleSystem()
@@ -598,19 +641,141 @@ public class Rule
             throws CompileException
     {
         boolean doCompileToBytecode = doCompileToBytecode();
+
+        if (doCompileToBytecode) {
+            int threshold = Transformer.getCompileThreshold();
+            if (threshold > 0) {
+                // start off interpreting the rule and only compile it once it has proved to be hot
+                installHelperImplementation(false);
+                compileThreshold = threshold;
+                firingCount = new AtomicInteger();
+                Helper.verbose(Transformer.VERBOSE_COMPILE, "Rule.compile : deferring compilation of rule " + getName() + " until it has fired " + threshold + " times");
+                return;
+            }
+        }
+
+        installHelperImplementation(doCompileToBytecode);
+    }
+
+    /**
+     * identify or generate the helper implementation class used to execute this rule and resolve
+     * its constructor, publishing the result for use by subsequent firings
+     * @param doCompileToBytecode true if the helper implementation should execute the rule using
+     * bytecode compiled from the rule parse tree
+     * @throws CompileException if the helper implementation cannot be generated
+     */
+    private void installHelperImplementation(boolean doCompileToBytecode)
+            throws CompileException
+    {
         String[] imports = ruleScript.getImports();
+        Class<?> implementationClass;
 
         if (helperClass == Helper.class && !doCompileToBytecode && imports.length == 0) {
             // we can use the builtin interpreted helper adapter for class Helper
-            helperImplementationClass = InterpretedHelper.class;
-            helperImplementationClassName  = Type.internalName(helperImplementationClass, true);
+            implementationClass = InterpretedHelper.class;
+            helperImplementationClassName  = Type.internalName(implementationClass, true);
         } else {
             // we need to generate a helper adapter class which either interprets or compiles
+            // n.b. the name must be set first as the compiler plants references to it
             helperImplementationClassName  = Compiler.getHelperAdapterName(helperClass, doCompileToBytecode);
-            helperImplementationClass = Compiler.getHelperAdapter(this, helperClass, helperImplementationClassName, doCompileToBytecode);
+            implementationClass = Compiler.getHelperAdapter(this, helperClass, helperImplementationClassName, doCompileToBytecode);
+            // the adapter may have been generated for an equivalent rule under a different name
+            helperImplementationClassName = implementationClass.getName().replace('.', '/');
+        }
+
+        // resolve the constructor once here rather than on every firing
+
+        Constructor constructor;
+        try {
+            constructor = implementationClass.getConstructor(Rule.class);
+        } catch (NoSuchMethodException e) {
+            throw new CompileException("Rule.compile : cannot find constructor " + implementationClass.getCanonicalName() + "(Rule) for helper class", e);
+        }
+
+        // the interpreted helper resets all of its state on entry to execute so it
+        // is safe to reuse an instance across firings if that has been requested
+
+        if (implementationClass == InterpretedHelper.class && Transformer.isReuseHelpers()) {
+            reusableHelpers = new ThreadLocal<ReusableHelper>() {
+                @Override
+                protected ReusableHelper initialValue() {
+                    return new ReusableHelper();
+                }
+            };
+        } else {
+            reusableHelpers = null;
+        }
+
+        // the constructor is written last so that a firing which sees it also sees the class
+
+        helperImplementationClass = implementationClass;
+        helperConstructor = constructor;
+    }
+
+    /**
+     * count a firing of a rule which is being interpreted pending compilation and schedule
+     * compilation on the background compiler thread once the firing count reaches the threshold
+     */
+    private void countFiring()
+    {
+        AtomicInteger count = firingCount;
+        if (count != null && count.incrementAndGet() == compileThreshold) {
+            firingCount = null;
+            getCompilerExecutor().execute(new Runnable() {
+                public void run()
+                {
+                    compileInBackground();
+                }
+            });
         }
     }
 
+    /**
+     * compile this rule to bytecode and switch subsequent firings over to the compiled helper
+     * implementation. if compilation fails the rule continues to be interpreted.
+     */
+    private void compileInBackground()
+    {
+        // don't trigger rules from code executed while generating the helper
+        Rule.disableTriggersInternal();
+        try {
+            synchronized (this) {
+                Helper.verbose(Transformer.VERBOSE_COMPILE, "Rule.compileInBackground : compiling rule " + getName() + " after " + compileThreshold + " interpreted firings");
+                installHelperImplementation(true);
+            }
+        } catch (Throwable th) {
+            StringWriter stringWriter = new StringWriter();
+            PrintWriter writer = new PrintWriter(stringWriter);
+            writer.println("Rule.compileInBackground : error compiling rule " + getName() + " continuing with interpreted execution");
+            th.printStackTrace(writer);
+            Helper.err(stringWriter.toString());
+        } finally {
+            Rule.enableTriggersInternal();
+        }
+    }
+
+    /**
+     * the background thread used to compile rules which have been promoted from the interpreter.
+     * the thread is created on demand and exits once it has been idle for a while.
+     */
+    private static ThreadPoolExecutor compilerExecutor = null;
+
+    private static synchronized ThreadPoolExecutor getCompilerExecutor()
+    {
+        if (compilerExecutor == null) {
+            compilerExecutor = new ThreadPoolExecutor(1, 1, 10, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                public Thread newThread(Runnable runnable)
+                {
+                    Thread thread = new Thread(runnable, "Byteman Rule Compiler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            compilerExecutor.allowCoreThreadTimeOut(true);
+        }
+        return compilerExecutor;
+    }
+
     /**
      * is this rule marked for compilation to bytecode
      * @return true if this rule is marked for compilation to bytecode otherwise false
@@ -740,6 +905,9 @@ public class Rule
      * triggered or null if it was a static method
      * @param args the arguments of the method from which execution of the rule was
      * triggered
+     *
+     * n.b. this version is retained for compatibility. trigger code injected by the agent
+     * employs the version which identifies the rule using an integer slot id.
      */
     public static void execute(String key, Object recipient, Object[] args) throws ExecuteException
     {
@@ -749,26 +917,220 @@ public class Rule
             return;
         }
 
-        // disable triggering until we get into actual rule code
-        
+        // disable triggering while we identify the rule
+
         disableTriggersInternal();
 
+        Rule rule;
         try {
-        Rule rule = ruleKeyMap.get(key);
-        Helper.verbose("Rule.execute called for " + key);
+            rule = lookupRule(key);
+            if (Transformer.isVerbose(Transformer.VERBOSE_EXECUTE)) {
+                Helper.verbose("Rule.execute called for " + key);
+            }
 
+            // if the key is no longer present it just means the rule has been decommissioned so return
+            if (rule == null) {
+                if (Transformer.isVerbose(Transformer.VERBOSE_EXECUTE)) {
+                    Helper.verbose("Rule.execute for decommissioned key " + key);
+                }
+                return;
+            }
+        } finally {
+            // restore the status quo -- we must have been enabled if we got to this method
+            enableTriggers();
+        }
 
-        // if the key is no longer present it just means the rule has been decommissioned so return
-        if (rule == null) {
-            Helper.verbose("Rule.execute for decommissioned key " + key);
+        // n.b. this adds a frame between the trigger method and the rule. the caller checks in
+        // Helper skip over all the Rule.execute frames to locate the trigger method frame
+        execute(rule.id, recipient, args);
+    }
+
+    /**
+     * forward an execute request a rule identified by its slot id in the rule index
+     * @param id the slot id identifying the rule instance to be fired
+     * @param recipient the recipient of the method from which execution of the rule was
+     * triggered or null if it was a static method
+     * @param args the arguments of the method from which execution of the rule was
+     * triggered
+     */
+    public static void execute(int id, Object recipient, Object[] args) throws ExecuteException
+    {
+        boolean enabled = isTriggeringEnabled();
+        if (!enabled) {
+            // we don't trigger code while we are doing rule housekeeping
             return;
         }
 
-        rule.execute(recipient, args);
+        // disable triggering until we get into actual rule code
+
+        disableTriggersInternal();
+
+        try {
+            // a single volatile read of the index followed by an array load
+            Rule rule = lookupRule(id);
+
+            // if the slot is empty it just means the rule has been decommissioned so return
+            if (rule == null) {
+                if (Transformer.isVerbose(Transformer.VERBOSE_EXECUTE)) {
+                    Helper.verbose("Rule.execute for decommissioned rule id " + id);
+                }
+                return;
+            }
+
+            if (Transformer.isVerbose(Transformer.VERBOSE_EXECUTE)) {
+                Helper.verbose("Rule.execute called for " + rule.key);
+            }
+
+            // a rule which has exceeded its budget may have been disabled or sampled down
+            RuleGovernor governor = rule.ruleScript.peekGovernor();
+            if (governor != null && !governor.admit()) {
+                return;
+            }
+
+            RuleMetrics metrics = (RuleMetrics.isEnabled() ? rule.ruleScript.getMetrics() : null);
+            if (governor == null && RuleGovernor.isEnabled()) {
+                governor = rule.ruleScript.getGovernor();
+            }
+
+            if (metrics == null && !RuleGovernor.isEnabled()) {
+                rule.execute(recipient, args);
+                return;
+            }
+
+            // n.b. the measurement is done inline rather than in a separate method because the
+            // caller checks in Helper rely on the trigger method frame sitting at a fixed depth
+            // below the instance execute frame
+            long start = System.nanoTime();
+            try {
+                rule.execute(recipient, args);
+            } catch (ThrowException e) {
+                if (metrics != null) {
+                    metrics.recordThrow();
+                }
+                throw e;
+            } catch (EarlyReturnException e) {
+                throw e;
+            } catch (ExecuteException e) {
+                if (metrics != null) {
+                    metrics.recordError();
+                }
+                throw e;
+            } finally {
+                rule.recordExecution(metrics, governor, start);
+            }
         } finally {
             // restore the status quo -- we must have been enabled if we got to this method
             enableTriggers();
-        }            
+        }
+    }
+
+    /**
+     * record the execution time of this rule in its metrics and account for it against its budget
+     * @param metrics the metrics for this rule or null if metrics are not enabled
+     * @param governor the governor for this rule or null if no budget applies
+     * @param start the time at which execution started as returned by System.nanoTime()
+     */
+    private void recordExecution(RuleMetrics metrics, RuleGovernor governor, long start)
+    {
+        long end = System.nanoTime();
+        if (metrics != null) {
+            metrics.recordTrigger(end - start);
+        }
+        if (governor != null && RuleGovernor.isEnabled()) {
+            governor.record(getName(), end - start, end);
+        }
+    }
+
+    /**
+     * record the outcome of evaluating this rule's condition. this is called by the helper
+     * adapter between testing the condition and firing the action
+     * @param passed the value of the condition
+     * @return the supplied value
+     */
+    public boolean recordCondition(boolean passed)
+    {
+        if (RuleMetrics.isEnabled()) {
+            ruleScript.getMetrics().recordCondition(passed);
+        }
+        return passed;
+    }
+
+    /**
+     * identify whether this rule's condition is tested by a guard before the rule is dispatched
+     * to a helper. the helper of a guarded rule does not test the condition again.
+     * @return true if the rule is guarded otherwise false
+     */
+    public boolean isGuarded()
+    {
+        return guardHelpers != null;
+    }
+
+    /**
+     * create per-thread guard helpers for this rule if its condition can be tested before the rule
+     * is dispatched. this is only possible when the rule uses the default helper, when the condition
+     * is guard safe and when the event introduces no BIND variables, since skipping evaluation of
+     * the event would otherwise drop any side effects of the binding expressions
+     * @return per-thread holders for the helpers used to interpret the condition or null if the
+     * rule cannot be guarded
+     */
+    private ThreadLocal<ReusableHelper> createGuard()
+    {
+        if (helperClass != Helper.class || !condition.isGuardSafe()) {
+            return null;
+        }
+        Iterator<Binding> iterator = bindings.iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isBindVar()) {
+                return null;
+            }
+        }
+        Helper.verbose(Transformer.VERBOSE_COMPILE, "Rule.createGuard : using condition as dispatch guard for rule " + getName());
+        return new ThreadLocal<ReusableHelper>() {
+            @Override
+            protected ReusableHelper initialValue() {
+                return new ReusableHelper();
+            }
+        };
+    }
+
+    /**
+     * evaluate the condition of this rule using a guard helper whose binding frame is
+     * installed from the trigger method recipient and arguments. the verdict is final
+     * as the helper which executes a guarded rule does not test the condition again
+     * @param guards the per-thread guard helpers for this rule
+     * @param recipient the recipient of the trigger method or null if it is static
+     * @param args the arguments of the trigger method
+     * @return the value of the rule condition
+     * @throws ExecuteException if the condition cannot be evaluated
+     */
+    private boolean testGuard(ThreadLocal<ReusableHelper> guards, Object recipient, Object[] args)
+            throws ExecuteException
+    {
+        ReusableHelper reusable = guards.get();
+        InterpretedHelper guard = null;
+        if (reusable.inUse) {
+            // recursive firing on this thread so it needs its own guard
+            reusable = null;
+        } else {
+            reusable.inUse = true;
+            guard = (InterpretedHelper)reusable.get();
+        }
+        try {
+            if (guard == null) {
+                guard = new InterpretedHelper(this);
+                if (reusable != null) {
+                    reusable.set(guard);
+                }
+            }
+            return guard.testGuard(recipient, args);
+        } catch (ExecuteException e) {
+            Helper.err(getName() + " : " + e);
+            throw e;
+        } finally {
+            if (reusable != null) {
+                reusable.inUse = false;
+            }
+        }
     }
 
     /**
@@ -785,36 +1147,63 @@ public class Rule
 
         if (ensureTypeCheckedCompiled()) {
 
+            // a rule with a guard safe condition can be rejected without creating a helper
+            ThreadLocal<ReusableHelper> guards = guardHelpers;
+            if (guards != null && !testGuard(guards, recipient, args)) {
+                recordCondition(false);
+                return;
+            }
+
+            if (firingCount != null) {
+                countFiring();
+            }
+
             // create a helper and get it to execute the rule
             // eventually we will create a subclass of helper for each rule and createHelperAdapter
             // an implementation of execute from the rule source. for now we create a generic
             // helper and call the generic execute method which interprets the rule
-            HelperAdapter helper;
+            HelperAdapter helper = null;
+            ReusableHelper reusable = null;
+            // read the constructor before the reusable helpers. if a background compile has
+            // installed a compiled helper implementation then helper reuse will be disabled
+            Constructor constructor = helperConstructor;
+            ThreadLocal<ReusableHelper> reusables = reusableHelpers;
             try {
-                Constructor constructor = helperImplementationClass.getConstructor(Rule.class);
-                helper = (HelperAdapter)constructor.newInstance(this);
-                //helper = (RuleHelper)helperClass.newInstance();
-                //helper.setRule(this);
+                if (reusables != null) {
+                    reusable = reusables.get();
+                    if (reusable.inUse) {
+                        // recursive firing on this thread so it needs its own helper
+                        reusable = null;
+                    } else {
+                        reusable.inUse = true;
+                        helper = reusable.get();
+                    }
+                }
+                if (helper == null) {
+                    helper = (HelperAdapter)constructor.newInstance(this);
+                    if (reusable != null) {
+                        reusable.set(helper);
+                    }
+                }
                 helper.execute(recipient, args);
-            } catch (NoSuchMethodException e) {
-                // should not happen!!!
-                Helper.err("cannot find constructor " + helperImplementationClass.getCanonicalName() + "(Rule) for helper class");
-                Helper.errTraceException(e);
-                return;
             } catch (InvocationTargetException e) {
+                recordError();
                 Helper.errTraceException(e);  //To change body of catch statement use File | Settings | File Templates.
             } catch (InstantiationException e) {
                 // should not happen
+                recordError();
                 Helper.err("cannot create instance of " + helperImplementationClass.getCanonicalName());
                 Helper.errTraceException(e);
                 return;
             } catch (IllegalAccessException e) {
                 // should not happen
+                recordError();
                 Helper.err("cannot access " + helperImplementationClass.getCanonicalName());
                 Helper.errTraceException(e);
                 return;
             } catch (ClassCastException e) {
                 // should not happen
+                recordError();
                 Helper.err("cast exception " + helperImplementationClass.getCanonicalName());
                 Helper.errTraceException(e);
                 return;
@@ -828,13 +1217,52 @@ public class Rule
             } catch (Throwable throwable) {
                 Helper.err(getName() + " : " + throwable);
                 throw new ExecuteException(getName() + "  : caught " + throwable, throwable);
+            } finally {
+                if (reusable != null) {
+                    reusable.inUse = false;
+                }
             }
         }
     }
 
+    /**
+     * record an error which was reported rather than propagated to the trigger method
+     */
+    private void recordError()
+    {
+        if (RuleMetrics.isEnabled()) {
+            ruleScript.getMetrics().recordError();
+        }
+    }
+
+    /**
+     * a per-thread holder for a reusable helper instance. the thread local which owns the
+     * holder is only reachable from the rule so a purged rule does not stay alive via the
+     * thread's entry for it
+     */
+    private static class ReusableHelper
+    {
+        private HelperAdapter helper = null;
+        /**
+         * true while the helper is executing a firing of the rule on the owning thread
+         */
+        boolean inUse = false;
+
+        HelperAdapter get()
+        {
+            return helper;
+        }
+
+        void set(HelperAdapter helper)
+        {
+            this.helper = helper;
+        }
+    }
+
     /**
      * called when a trigger is compiled for the rule to provide a String key which can be used
-     * at execution time to obtain a handle on the rule instance
+     * at execution time to obtain a handle on the rule instance. this also allocates the slot
+     * id under which the rule is installed in the rule index.
      *
      * @return a key which can be used later to obtain a reference to the rule
      */
@@ -844,13 +1272,42 @@ public class Rule
         if (key != null) {
             return key;
         }
-        
-        String key = getName() + "_" + nextId();
-        this.key = key;
-        ruleKeyMap.put(key, this);
+
+        // install sets the id and key before publishing the rule in the index
+        install(this);
         return key;
     }
 
+    /**
+     * called when a trigger is compiled for the rule to provide an integer slot id which can be used
+     * at execution time to obtain a handle on the rule instance
+     *
+     * @return a slot id which can be used later to obtain a reference to the rule
+     */
+    public int getKeyId()
+    {
+        getKey();
+        return id;
+    }
+
+    /**
+     * called when the trigger code for the rule is being restored from a previously saved
+     * transform to reinstate the key which that trigger code employs.
+     *
+     * @param id the slot id employed by the saved trigger code
+     * @return true if the rule was installed under the key or false if the slot id is not
+     * available for reuse, in which case the trigger code must be generated afresh
+     */
+    public boolean restoreKey(int id)
+    {
+        if (key != null) {
+            return false;
+        }
+
+        // installAt sets the id and key before publishing the rule in the index
+        return installAt(id, this);
+    }
+
     /**
      * return the key under which this rule has been indexed in the rule key map
      * @return the key
@@ -862,33 +1319,234 @@ public class Rule
 
 
     /**
-     * delete any reference to the rule from the rule map
+     * delete any reference to the rule from the rule index
      */
     public void purge()
     {
         // nothing to do unless we actually allocated a key
         if (key != null) {
-            ruleKeyMap.remove(key);
+            uninstall(id, this);
         }
     }
 
     /**
-     * a hash map used to identify rules from their keys
+     * the id under which this rule is indexed in the rule index or -1 if no key has been
+     * allocated. the low SLOT_BITS bits of the id identify the slot in the index and the
+     * remaining bits record the generation of the slot when the rule was installed
+     */
+    private int id = -1;
+
+    /**
+     * initial size of the rule index
      */
-    private static HashMap<String, Rule> ruleKeyMap = new HashMap<String, Rule>();
+    private static final int INITIAL_INDEX_SIZE = 256;
 
     /**
-     * a counter used to ensure rule identifiers are unique
+     * the number of bits of a rule id which identify its slot in the rule index
      */
-    private static int nextId = 0;
+    private static final int SLOT_BITS = 20;
 
     /**
-     * a method to return the next available counter for use in constructing a key for the rule
-     * @return the next id
+     * mask used to extract the slot from a rule id
      */
-    private synchronized static int nextId()
+    private static final int SLOT_MASK = (1 << SLOT_BITS) - 1;
+
+    /**
+     * mask used to wrap slot generations so that rule ids remain positive
+     */
+    private static final int GENERATION_MASK = (1 << (31 - SLOT_BITS)) - 1;
+
+    /**
+     * an array used to identify rules from their slot ids. readers perform a single volatile
+     * read of this field followed by a plain array load. writers hold ruleIndexLock and never
+     * modify a published array. instead they copy it, update the copy and publish the copy via
+     * the volatile field.
+     */
+    private static volatile Rule[] ruleIndex = new Rule[INITIAL_INDEX_SIZE];
+
+    /**
+     * lock used to serialize updates to the rule index
+     */
+    private static final Object ruleIndexLock = new Object();
+
+    /**
+     * the next slot which has never been allocated. guarded by ruleIndexLock
+     */
+    private static int nextSlot = 0;
+
+    /**
+     * slots below nextSlot which have been freed and may be allocated again, oldest first so
+     * that a freed slot is reused as late as possible. guarded by ruleIndexLock
+     */
+    private static LinkedList<Integer> freeSlots = new LinkedList<Integer>();
+
+    /**
+     * the current generation of each slot in the rule index. a slot's generation is bumped
+     * whenever it is freed so trigger code in a superseded version of a method, which may
+     * still be running after a retransform, cannot dispatch to a rule which has since been
+     * installed in the same slot. guarded by ruleIndexLock
+     */
+    private static int[] slotGenerations = new int[INITIAL_INDEX_SIZE];
+
+    /**
+     * slots which are never allocated by install and so may be claimed by restored trigger
+     * code. guarded by ruleIndexLock
+     */
+    private static BitSet reservedSlots = new BitSet();
+
+    /**
+     * ensure that the slots employed by a set of ids are not allocated to newly installed
+     * rules so that they remain available for use by restored trigger code. this must be
+     * called before any rule is installed. ids whose slot is already in use are ignored.
+     * @param ids the ids employed by the restored trigger code
+     */
+    public static void reserveKeyIds(Collection<Integer> ids)
+    {
+        synchronized (ruleIndexLock) {
+            for (int id : ids) {
+                int slot = id & SLOT_MASK;
+                if (id >= 0 && slot >= nextSlot) {
+                    reservedSlots.set(slot);
+                }
+            }
+        }
+    }
+
+    /**
+     * install a rule in the rule index, allocating it an id and key
+     * @param rule the rule to be installed
+     */
+    private static void install(Rule rule)
+    {
+        synchronized (ruleIndexLock) {
+            int slot;
+            if (!freeSlots.isEmpty()) {
+                slot = freeSlots.removeFirst();
+            } else {
+                Rule[] index = ruleIndex;
+                // skip slots held back for restored trigger code or already claimed by it
+                while (reservedSlots.get(nextSlot) || (nextSlot < index.length && index[nextSlot] != null)) {
+                    nextSlot++;
+                }
+                if (nextSlot > SLOT_MASK) {
+                    throw new IllegalStateException("Rule.install : too many rules installed");
+                }
+                slot = nextSlot++;
+            }
+            int generation = (slot < slotGenerations.length ? slotGenerations[slot] : 0);
+            publish(slot, rule, (generation << SLOT_BITS) | slot);
+        }
+    }
+
+    /**
+     * install a rule in the rule index under a reserved slot id, allocating it the
+     * corresponding key
+     * @param id the slot id to be claimed
+     * @param rule the rule to be installed
+     * @return true if the rule was installed or false if the id was not reserved or has
+     * already been claimed
+     */
+    private static boolean installAt(int id, Rule rule)
+    {
+        synchronized (ruleIndexLock) {
+            int slot = id & SLOT_MASK;
+            // each reserved slot can only be claimed once
+            if (id < 0 || !reservedSlots.get(slot)) {
+                return false;
+            }
+            reservedSlots.clear(slot);
+            publish(slot, rule, id);
+            return true;
+        }
+    }
+
+    /**
+     * publish a copy of the rule index in which a slot is occupied by a rule. must be called
+     * with ruleIndexLock held
+     * @param slot the slot to be occupied
+     * @param rule the rule to be installed
+     * @param id the id for the rule
+     */
+    private static void publish(int slot, Rule rule, int id)
     {
-        return nextId++;
+        Rule[] index = ruleIndex;
+        int length = index.length;
+        while (slot >= length) {
+            length *= 2;
+        }
+        if (length > slotGenerations.length) {
+            slotGenerations = Arrays.copyOf(slotGenerations, length);
+        }
+        slotGenerations[slot] = id >>> SLOT_BITS;
+        // the id and key must be set before the rule is published to readers of the index
+        rule.id = id;
+        rule.key = rule.getName() + "_" + id;
+        Rule[] newIndex = Arrays.copyOf(index, length);
+        newIndex[slot] = rule;
+        ruleIndex = newIndex;
+    }
+
+    /**
+     * remove a rule from the rule index, freeing its slot for reuse
+     * @param id the id allocated for the rule
+     * @param rule the rule to be removed
+     */
+    private static void uninstall(int id, Rule rule)
+    {
+        synchronized (ruleIndexLock) {
+            int slot = id & SLOT_MASK;
+            Rule[] index = ruleIndex;
+            if (slot < index.length && index[slot] == rule) {
+                Rule[] newIndex = index.clone();
+                newIndex[slot] = null;
+                ruleIndex = newIndex;
+                slotGenerations[slot] = (slotGenerations[slot] + 1) & GENERATION_MASK;
+                // a slot above nextSlot was claimed by restored trigger code and
+                // will be picked up by install when nextSlot reaches it
+                if (slot < nextSlot) {
+                    freeSlots.addLast(slot);
+                }
+            }
+        }
+    }
+
+    /**
+     * identify a rule from its id
+     * @param id an id returned by a call to getKeyId
+     * @return the rule installed under the id or null if it has been purged
+     */
+    private static Rule lookupRule(int id)
+    {
+        Rule[] index = ruleIndex;
+        int slot = id & SLOT_MASK;
+        Rule rule = (id >= 0 && slot < index.length ? index[slot] : null);
+        // guard against an id from an earlier generation of the slot
+        if (rule != null && rule.id == id) {
+            return rule;
+        }
+        return null;
+    }
+
+    /**
+     * identify a rule from its unique string key
+     * @param key a key of the form name_id returned by a call to getKey
+     * @return the rule installed under the key or null if it has been purged
+     */
+    private static Rule lookupRule(String key)
+    {
+        int idx = key.lastIndexOf('_');
+        int id;
+        try {
+            id = Integer.parseInt(key.substring(idx + 1));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        Rule rule = lookupRule(id);
+        // guard against a key which does not match the rule installed in the slot
+        if (rule != null && key.equals(rule.key)) {
+            return rule;
+        }
+        return null;
     }
 
     /**
@@ -967,7 +1625,7 @@ public class Rule
      * operation.
      */
 
-    private Class helperImplementationClass;
+    private volatile Class helperImplementationClass;
 
     /**
      * the name of the helper implementation class in internal format
@@ -975,6 +1633,39 @@ public class Rule
 
     private String helperImplementationClassName;
 
+    /**
+     * the constructor for the helper implementation class, resolved once when the rule is compiled
+     */
+
+    private volatile Constructor helperConstructor;
+
+    /**
+     * the number of interpreted firings after which this rule is compiled to bytecode. only
+     * meaningful while firingCount is non-null
+     */
+
+    private int compileThreshold;
+
+    /**
+     * a count of interpreted firings of a rule which is waiting to be compiled to bytecode or null
+     * if the rule is not waiting for compilation
+     */
+
+    private volatile AtomicInteger firingCount;
+
+    /**
+     * per-thread helpers used to test the rule condition before dispatch or null if the condition
+     * cannot be tested ahead of execution. this is only set once the rule has been type checked
+     */
+
+    private volatile ThreadLocal<ReusableHelper> guardHelpers;
+
+    /**
+     * per-thread reusable helper instances or null if a new helper must be created for each firing
+     */
+
+    private volatile ThreadLocal<ReusableHelper> reusableHelpers;
+
     /**
      * a getter allowing the helper class for the rule to be identified
      * 
@@ -1034,6 +1725,17 @@ public class Rule
         return accessEnabler.requiresAccess(method);
     }
 
+    /**
+     * should the interpreter access public members via the accessors supplied by the
+     * access enabler rather than via reflection? this is only worth doing when the
+     * enabler provides method handle based accessors i.e. on a Jigsaw runtime.
+     * @return true if interpreted member access should use the accessors
+     */
+    public boolean interpretViaAccessors()
+    {
+        return !(accessEnabler instanceof DefaultAccessEnabler);
+    }
+
     public int addAccessibleFieldGetter(Field field) {
         if (accessibleFieldGetters == null) {
             accessibleFieldGetters = new ArrayList<AccessibleFieldGetter>();
@@ -1104,13 +1806,13 @@ public class Rule
         }
     }
 
-    public void invokeAccessibleConstructor(Object[] args, int methodIndex)
+    public Object invokeAccessibleConstructor(Object[] args, int methodIndex)
     {
         try {
             AccessibleConstructorInvoker invoker = accessibleConstructorInvokers.get(methodIndex);
-            invoker.invoke(args);
+            return invoker.invoke(args);
         } catch (Exception e) {
-            throw new  ExecuteException("Rule.invokeAccessibleMethod : unexpected error invoking non-public method in rule " + getName(), e);
+            throw new  ExecuteException("Rule.invokeAccessibleConstructor : unexpected error invoking constructor in rule " + getName(), e);
         }
     }
 
@@ -316,7 +316,7 @@ public class Binding extends RuleElement
                     throw new ClassCastException("Cannot cast " + result + " to class " + type);
                 }
             }
-            helper.setBinding(getName(), result);
+            helper.setBinding(getSlot(), result);
             return result;
         }
         return null;
@@ -569,6 +569,24 @@ public class Binding extends RuleElement
         return alias;
     }
 
+    /**
+     * retrieve the index of the helper frame slot which holds the value of this binding. an alias
+     * shares the slot of the binding it refers to.
+     * @return the slot index
+     */
+    public int getSlot()
+    {
+        if (alias != null) {
+            return alias.getSlot();
+        }
+        return slot;
+    }
+
+    public void setSlot(int slot)
+    {
+        this.slot = slot;
+    }
+
     // special index values for non-positional parameters
 
     private final static int HELPER = -1;
@@ -591,6 +609,8 @@ public class Binding extends RuleElement
     private int callArrayIndex;
     // the offset into the stack at which a local var is located
     private int localIndex;
+    // the index of the helper frame slot allocated to this binding once the rule has been type checked
+    private int slot;
     private Binding alias; // aliases $x to $n where x is a method parameter name and n its index in the parameter list
     boolean updated; // records whether this binding occurs on the lhs of an assignment
     boolean doCheckCast;
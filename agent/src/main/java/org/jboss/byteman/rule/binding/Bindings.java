@@ -73,13 +73,57 @@ public class Bindings {
         bindings.add(binding);
     }
 
+    /**
+     * replace the current bindings list with a list containing the same bindings and possibly
+     * some additional ones, retaining the supplied order
+     * @param bindings the new list of bindings
+     */
+    public void setBindings(List<Binding> bindings)
+    {
+        this.bindings.clear();
+        this.bindings.addAll(bindings);
+    }
+
     public Iterator<Binding> iterator()
     {
         return bindings.iterator();
     }
 
+    /**
+     * allocate a helper frame slot to each binding which is not an alias. this must be called
+     * once the bindings list is complete i.e. after the rule has been type checked.
+     */
+    public void assignSlots()
+    {
+        int slot = 0;
+        Iterator<Binding> iterator = bindings.iterator();
+
+        while (iterator.hasNext()) {
+            Binding binding = iterator.next();
+            if (!binding.isAlias()) {
+                binding.setSlot(slot++);
+            }
+        }
+
+        slotCount = slot;
+    }
+
+    /**
+     * the number of slots required to hold the values of the bindings in this list
+     * @return the slot count
+     */
+    public int getSlotCount()
+    {
+        return slotCount;
+    }
+
     /**
      * the list of current bindings
      */
     private List<Binding> bindings = new ArrayList<Binding>();
+
+    /**
+     * the number of slots allocated by the last call to assignSlots
+     */
+    private int slotCount;
 }
@@ -29,6 +29,7 @@ import org.jboss.byteman.rule.binding.Binding;
 import org.jboss.byteman.rule.binding.Bindings;
 import org.jboss.byteman.rule.exception.CompileException;
 import org.jboss.byteman.agent.Transformer;
+import org.jboss.byteman.rule.helper.Helper;
 import org.jboss.byteman.rule.type.*;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.*;
@@ -56,6 +57,16 @@ public class Compiler implements Opcodes
 
     public static Class getHelperAdapter(Rule rule, Class helperClass, String compiledHelperName, boolean compileToBytecode) throws CompileException
     {
+        // see if an equivalent rule has already had an adapter generated which we can use
+
+        HelperAdapterCache.Key key = new HelperAdapterCache.Key(rule, helperClass, compileToBytecode);
+        Class cached = HelperAdapterCache.lookup(key);
+
+        if (cached != null) {
+            Helper.verbose(Transformer.VERBOSE_COMPILE, "Compiler.getHelperAdapter : reusing helper adapter " + cached.getName() + " for rule " + rule.getName());
+            return cached;
+        }
+
         // ok we have to create the adapter class
 
         // n.b. we don't bother synchronizing here -- if another rule is racing to create an adapter
@@ -71,7 +82,9 @@ public class Compiler implements Opcodes
             // ensure the class is loaded
             // think we need to load the generated helper using the class loader of the trigger class
             ClassLoader loader = rule.getHelperLoader();
-            return rule.getModuleSystem().loadHelperAdapter(loader, externalName, classBytes);
+            Class adapter = rule.getModuleSystem().loadHelperAdapter(loader, externalName, classBytes);
+            HelperAdapterCache.register(key, adapter, classBytes);
+            return adapter;
         } catch(CompileException ce) {
             throw ce;
         } catch (Throwable th) {
@@ -204,9 +217,10 @@ public class Compiler implements Opcodes
             cc = new CompileContext(mv);
             cc.addLocalCount(3);
             mv.visitCode();
-            // if (Transformer.isVerbose())
-            mv.visitMethodInsn(INVOKESTATIC, "org/jboss/byteman/agent/Transformer", "isVerbose", "()Z");
+            // if (Transformer.isVerbose(Transformer.VERBOSE_EXECUTE))
+            mv.visitLdcInsn(Transformer.VERBOSE_EXECUTE);
             cc.addStackCount(1);
+            mv.visitMethodInsn(INVOKESTATIC, "org/jboss/byteman/agent/Transformer", "isVerbose", "(I)Z");
             Label l0 = new Label();
             mv.visitJumpInsn(IFEQ, l0);
             cc.addStackCount(-1);
@@ -345,56 +359,142 @@ public class Compiler implements Opcodes
             mv.visitEnd();
         }
         {
-        // create the setBinding method
-        //
-        // public void setBinding(String name, Object value)
+            // create the setBinding method
+            //
+            // public void setBinding(String name, Object value)
+            // {
+            //   Binding binding = rule.getBindings().lookup(name);
+            //   if (binding != null) {
+            //     setBinding(binding.getSlot(), value);
+            //   }
+            // }
             mv = cw.visitMethod(ACC_PUBLIC, "setBinding", "(Ljava/lang/String;Ljava/lang/Object;)V", null, null);
             cc = new CompileContext(mv);
+            cc.addLocalCount(4);
+            mv.visitCode();
+            compileBindingLookup(mv, cc, compiledHelperName, 3);
+            Label skip = new Label();
+            mv.visitVarInsn(ALOAD, 3);
+            cc.addStackCount(1);
+            mv.visitJumpInsn(IFNULL, skip);
+            cc.addStackCount(-1);
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ALOAD, 3);
+            cc.addStackCount(2);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "org/jboss/byteman/rule/binding/Binding", "getSlot", "()I", false);
+            mv.visitVarInsn(ALOAD, 2);
+            cc.addStackCount(1);
+            mv.visitMethodInsn(INVOKEVIRTUAL, compiledHelperName, "setBinding", "(ILjava/lang/Object;)V", false);
+            cc.addStackCount(-3);
+            mv.visitLabel(skip);
+            if (cc.getStackCount() != 0) {
+                throw new RuntimeException("Compiler.compileBytes: unexpected stack count " + cc.getStackCount());
+            }
+            // return
+            mv.visitInsn(RETURN);
+            mv.visitMaxs(cc.getStackMax(), cc.getLocalMax());
+            mv.visitEnd();
+        }
+        {
+            // create the getBinding method
+            //
+            // public Object getBinding(String name)
+            // {
+            //   Binding binding = rule.getBindings().lookup(name);
+            //   if (binding != null) {
+            //     return getBinding(binding.getSlot());
+            //   }
+            //   return null;
+            // }
+            mv = cw.visitMethod(ACC_PUBLIC, "getBinding", "(Ljava/lang/String;)Ljava/lang/Object;", null, null);
+            cc = new CompileContext(mv);
+            cc.addLocalCount(3);
+            mv.visitCode();
+            compileBindingLookup(mv, cc, compiledHelperName, 2);
+            Label skip = new Label();
+            mv.visitVarInsn(ALOAD, 2);
+            cc.addStackCount(1);
+            mv.visitJumpInsn(IFNULL, skip);
+            cc.addStackCount(-1);
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ALOAD, 2);
+            cc.addStackCount(2);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "org/jboss/byteman/rule/binding/Binding", "getSlot", "()I", false);
+            mv.visitMethodInsn(INVOKEVIRTUAL, compiledHelperName, "getBinding", "(I)Ljava/lang/Object;", false);
+            cc.addStackCount(-1);
+            mv.visitInsn(ARETURN);
+            cc.addStackCount(-1);
+            mv.visitLabel(skip);
+            // return
+            mv.visitInsn(ACONST_NULL);
+            cc.addStackCount(1);
+            mv.visitInsn(ARETURN);
+            cc.addStackCount(-1);
+            if (cc.getStackCount() != 0) {
+                throw new RuntimeException("Compiler.compileBytes: unexpected stack count " + cc.getStackCount());
+            }
+            mv.visitMaxs(cc.getStackMax(), cc.getLocalMax());
+            mv.visitEnd();
+        }
+        {
+            // create the slot indexed setBinding method
+            //
+            // public void setBinding(int slot, Object value)
+            mv = cw.visitMethod(ACC_PUBLIC, "setBinding", "(ILjava/lang/Object;)V", null, null);
+            cc = new CompileContext(mv);
             cc.addLocalCount(3);
             mv.visitCode();
 
             Bindings bindings = rule.getBindings();
-            Iterator<Binding> iterator = bindings.iterator();
-
-            while (iterator.hasNext()) {
-                Binding binding = iterator.next();
-                if (binding.isAlias()) {
-                    continue;
+            int slotCount = bindings.getSlotCount();
+            if (slotCount > 0) {
+                Label done = new Label();
+                Label[] cases = new Label[slotCount];
+                for (int i = 0; i < slotCount; i++) {
+                    cases[i] = new Label();
                 }
-                String name = binding.getName();
-                String ivarname = binding.getIVarName();
-                if(binding.isHelper() || binding.isAlias()) {
-                    // nothing to do
-                } else {
-                    Label skip = new Label();
-                    mv.visitLdcInsn(name);
-                    mv.visitVarInsn(ALOAD, 1);
-                    cc.addStackCount(2);
-                    mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "equals", "(Ljava/lang/Object;)Z", false);
-                    cc.addStackCount(-1);
-                    mv.visitJumpInsn(IFEQ, skip);
-                    cc.addStackCount(-1);
-                    mv.visitVarInsn(ALOAD, 0);
-                    mv.visitVarInsn(ALOAD, 2);
-                    cc.addStackCount(2);
-                    org.jboss.byteman.rule.type.Type type = binding.getType();
-                    if (rule.requiresAccess(type)) {
-                        // treat inaccessible classes generically
-                        type = org.jboss.byteman.rule.type.Type.OBJECT;
-                    } else {
-                        cc.compileTypeConversion(org.jboss.byteman.rule.type.Type.OBJECT, type);
+                mv.visitVarInsn(ILOAD, 1);
+                cc.addStackCount(1);
+                mv.visitTableSwitchInsn(0, slotCount - 1, done, cases);
+                cc.addStackCount(-1);
+
+                Iterator<Binding> iterator = bindings.iterator();
+
+                while (iterator.hasNext()) {
+                    Binding binding = iterator.next();
+                    if (binding.isAlias()) {
+                        // updates will use the aliased slot
+                        continue;
                     }
-                    mv.visitFieldInsn(PUTFIELD, compiledHelperName, ivarname, type.getInternalName(true, true));
-                    if (type.getNBytes() > 4) {
-                        cc.addStackCount(-3);
+                    mv.visitLabel(cases[binding.getSlot()]);
+                    if (binding.isHelper()) {
+                        // nothing to do
+                        mv.visitJumpInsn(GOTO, done);
                     } else {
-                        cc.addStackCount(-2);
+                        String ivarname = binding.getIVarName();
+                        mv.visitVarInsn(ALOAD, 0);
+                        mv.visitVarInsn(ALOAD, 2);
+                        cc.addStackCount(2);
+                        org.jboss.byteman.rule.type.Type type = binding.getType();
+                        if (rule.requiresAccess(type)) {
+                            // treat inaccessible classes generically
+                            type = org.jboss.byteman.rule.type.Type.OBJECT;
+                        } else {
+                            cc.compileTypeConversion(org.jboss.byteman.rule.type.Type.OBJECT, type);
+                        }
+                        mv.visitFieldInsn(PUTFIELD, compiledHelperName, ivarname, type.getInternalName(true, true));
+                        if (type.getNBytes() > 4) {
+                            cc.addStackCount(-3);
+                        } else {
+                            cc.addStackCount(-2);
+                        }
+                        mv.visitInsn(RETURN);
+                    }
+                    if (cc.getStackCount() != 0) {
+                        throw new RuntimeException("Compiler.compileBytes: unexpected stack count " + cc.getStackCount());
                     }
-                    mv.visitLabel(skip);
-                }
-                if (cc.getStackCount() != 0) {
-                    throw new RuntimeException("Compiler.compileBytes: unexpected stack count " + cc.getStackCount());
                 }
+                mv.visitLabel(done);
             }
             // return
             mv.visitInsn(RETURN);
@@ -402,66 +502,58 @@ public class Compiler implements Opcodes
             mv.visitEnd();
         }
         {
-            // create the getBinding method
+            // create the slot indexed getBinding method
             //
-            // public Object getBinding(String name)
-            mv = cw.visitMethod(ACC_PUBLIC, "getBinding", "(Ljava/lang/String;)Ljava/lang/Object;", null, null);
+            // public Object getBinding(int slot)
+            mv = cw.visitMethod(ACC_PUBLIC, "getBinding", "(I)Ljava/lang/Object;", null, null);
             cc = new CompileContext(mv);
             cc.addLocalCount(2);
             mv.visitCode();
-            Bindings bindings = rule.getBindings();
-            Iterator<Binding> iterator = bindings.iterator();
 
-            while (iterator.hasNext()) {
-                Binding binding = iterator.next();
-                String name = binding.getName();
-                String ivarname = binding.getIVarName();
-                if(binding.isAlias()) {
-                    // lookups and updates will use the aliased name
-                    continue;
+            Bindings bindings = rule.getBindings();
+            int slotCount = bindings.getSlotCount();
+            if (slotCount > 0) {
+                Label done = new Label();
+                Label[] cases = new Label[slotCount];
+                for (int i = 0; i < slotCount; i++) {
+                    cases[i] = new Label();
                 }
-                if(binding.isHelper()) {
-                    Label skip = new Label();
-                    mv.visitLdcInsn(name);
-                    mv.visitVarInsn(ALOAD, 1);
-                    cc.addStackCount(2);
-                    mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "equals", "(Ljava/lang/Object;)Z", false);
-                    cc.addStackCount(-1);
-                    mv.visitJumpInsn(IFEQ, skip);
-                    cc.addStackCount(-1);
-                    mv.visitVarInsn(ALOAD, 0);
-                    cc.addStackCount(1);
-                    mv.visitInsn(ARETURN);
-                    cc.addStackCount(-1);
-                    mv.visitLabel(skip);
-                } else {
-                    Label skip = new Label();
-                    mv.visitLdcInsn(name);
-                    mv.visitVarInsn(ALOAD, 1);
-                    cc.addStackCount(2);
-                    mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/String", "equals", "(Ljava/lang/Object;)Z", false);
-                    cc.addStackCount(-1);
-                    mv.visitJumpInsn(IFEQ, skip);
-                    cc.addStackCount(-1);
+                mv.visitVarInsn(ILOAD, 1);
+                cc.addStackCount(1);
+                mv.visitTableSwitchInsn(0, slotCount - 1, done, cases);
+                cc.addStackCount(-1);
+
+                Iterator<Binding> iterator = bindings.iterator();
+
+                while (iterator.hasNext()) {
+                    Binding binding = iterator.next();
+                    if (binding.isAlias()) {
+                        // lookups will use the aliased slot
+                        continue;
+                    }
+                    mv.visitLabel(cases[binding.getSlot()]);
                     mv.visitVarInsn(ALOAD, 0);
                     cc.addStackCount(1);
-                    org.jboss.byteman.rule.type.Type type =  binding.getType();
-                    if (rule.requiresAccess(type)) {
-                        // treat inaccessible classes generically
-                        type = org.jboss.byteman.rule.type.Type.OBJECT;
-                    }
-                    mv.visitFieldInsn(GETFIELD, compiledHelperName, ivarname, type.getInternalName(true, true));
-                    if (type.getNBytes() > 4) {
-                        cc.addStackCount(1);
+                    if (!binding.isHelper()) {
+                        String ivarname = binding.getIVarName();
+                        org.jboss.byteman.rule.type.Type type =  binding.getType();
+                        if (rule.requiresAccess(type)) {
+                            // treat inaccessible classes generically
+                            type = org.jboss.byteman.rule.type.Type.OBJECT;
+                        }
+                        mv.visitFieldInsn(GETFIELD, compiledHelperName, ivarname, type.getInternalName(true, true));
+                        if (type.getNBytes() > 4) {
+                            cc.addStackCount(1);
+                        }
+                        cc.compileTypeConversion(type, org.jboss.byteman.rule.type.Type.OBJECT);
                     }
-                    cc.compileTypeConversion(type, org.jboss.byteman.rule.type.Type.OBJECT);
                     mv.visitInsn(ARETURN);
                     cc.addStackCount(-1);
-                    mv.visitLabel(skip);
-                }
-                if (cc.getStackCount() != 0) {
-                    throw new RuntimeException("Compiler.compileBytes: unexpected stack count " + cc.getStackCount());
+                    if (cc.getStackCount() != 0) {
+                        throw new RuntimeException("Compiler.compileBytes: unexpected stack count " + cc.getStackCount());
+                    }
                 }
+                mv.visitLabel(done);
             }
             // return
             mv.visitInsn(ACONST_NULL);
@@ -563,8 +655,12 @@ public class Compiler implements Opcodes
             cc.addLocalCount(3); // for this and 2 object args
             // bind();
             rule.getEvent().compile(mv, cc);
-            // if (test())
+            // if (rule.recordCondition(test()))
             rule.getCondition().compile(mv, cc);
+            compileRecordCondition(mv, compiledHelperName);
+            // the rule is pushed above the condition value and then consumed by the call
+            cc.addStackCount(1);
+            cc.addStackCount(-1);
             Label l0 = new Label();
             mv.visitJumpInsn(IFEQ, l0);
             cc.addStackCount(-1);
@@ -592,9 +688,10 @@ public class Compiler implements Opcodes
             // bind();
             mv.visitVarInsn(ALOAD, 0);
             mv.visitMethodInsn(INVOKESPECIAL, compiledHelperName, "bind", "()V");
-            // if (test())
+            // if (rule.recordCondition(test()))
             mv.visitVarInsn(ALOAD, 0);
             mv.visitMethodInsn(INVOKESPECIAL, compiledHelperName, "test", "()Z");
+            compileRecordCondition(mv, compiledHelperName);
             Label l0 = new Label();
             mv.visitJumpInsn(IFEQ, l0);
             // then
@@ -605,7 +702,7 @@ public class Compiler implements Opcodes
             mv.visitLabel(l0);
             // return
             mv.visitInsn(RETURN);
-            mv.visitMaxs(1, 1);
+            mv.visitMaxs(2, 1);
             mv.visitEnd();
             }
             {
@@ -668,6 +765,44 @@ public class Compiler implements Opcodes
         return cw.toByteArray();
     }
 
+    /**
+     * generate code which passes the condition value on top of the stack to
+     * rule.recordCondition(boolean), leaving the returned copy of the value on the stack
+     * @param mv the visitor for the execute0 method
+     * @param compiledHelperName the internal name of the helper adapter class
+     */
+    private static void compileRecordCondition(MethodVisitor mv, String compiledHelperName)
+    {
+        // {TOS} <== rule.recordCondition({TOS})
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, compiledHelperName, "rule", "Lorg/jboss/byteman/rule/Rule;");
+        mv.visitInsn(SWAP);
+        mv.visitMethodInsn(INVOKEVIRTUAL, "org/jboss/byteman/rule/Rule", "recordCondition", "(Z)Z");
+    }
+
+    /**
+     * generate code which looks up the binding whose name is held in local 1 and stores
+     * it, or null if there is no such binding, in the supplied local
+     * @param mv the visitor for the name based accessor method
+     * @param cc the compile context for the accessor method
+     * @param compiledHelperName the internal name of the helper adapter class
+     * @param local the index of the local which receives the binding
+     */
+    private static void compileBindingLookup(MethodVisitor mv, CompileContext cc, String compiledHelperName, int local)
+    {
+        // local <== rule.getBindings().lookup(name)
+        mv.visitVarInsn(ALOAD, 0);
+        cc.addStackCount(1);
+        mv.visitFieldInsn(GETFIELD, compiledHelperName, "rule", "Lorg/jboss/byteman/rule/Rule;");
+        mv.visitMethodInsn(INVOKEVIRTUAL, "org/jboss/byteman/rule/Rule", "getBindings", "()Lorg/jboss/byteman/rule/binding/Bindings;", false);
+        mv.visitVarInsn(ALOAD, 1);
+        cc.addStackCount(1);
+        mv.visitMethodInsn(INVOKEVIRTUAL, "org/jboss/byteman/rule/binding/Bindings", "lookup", "(Ljava/lang/String;)Lorg/jboss/byteman/rule/binding/Binding;", false);
+        cc.addStackCount(-1);
+        mv.visitVarInsn(ASTORE, local);
+        cc.addStackCount(-1);
+    }
+
     private static int nextId = 0;
 
     private static synchronized int nextId()
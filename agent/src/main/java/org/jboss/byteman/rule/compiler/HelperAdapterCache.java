@@ -0,0 +1,344 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2026 Red Hat and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.byteman.rule.compiler;
+
+import org.jboss.byteman.rule.Rule;
+import org.jboss.byteman.rule.binding.Binding;
+import org.jboss.byteman.rule.type.Type;
+import org.objectweb.asm.ClassReader;
+
+import java.io.UnsupportedEncodingException;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of generated helper adapter classes shared by all rules. Rules whose text, trigger
+ * method, bindings and helper class are the same and whose types resolve to exactly the same
+ * classes wherever the adapter bytecode refers to them can execute using the same adapter class
+ * so there is no need to compile and define a new one each time such a rule is injected.
+ * Entries only hold weak references to the adapter class and the classes it depends on so
+ * caching an adapter does not prevent any class loader from being unloaded.
+ */
+public class HelperAdapterCache
+{
+    /**
+     * the details which must match for a rule to be able to employ a previously generated adapter
+     */
+    public static class Key
+    {
+        /**
+         * a signature for the rule content, the helper and the shape of the rule's bindings
+         */
+        private String signature;
+        /**
+         * the helper class for the rule
+         */
+        private Class helperClass;
+        /**
+         * the classes to which the rule's types were resolved indexed by type name
+         */
+        private Map<String, Class> resolved;
+
+        public Key(Rule rule, Class helperClass, boolean compileToBytecode)
+        {
+            StringBuilder builder = new StringBuilder();
+
+            builder.append(compileToBytecode ? "compiled" : "interpreted");
+            builder.append('\n');
+            // the adapter for a guarded rule omits the condition
+            builder.append(rule.isGuarded() ? "guarded" : "unguarded");
+            builder.append('\n');
+            builder.append(helperClass.getName());
+            builder.append('\n');
+            builder.append(rule.getFile());
+            builder.append(':');
+            builder.append(rule.getLine());
+            builder.append('\n');
+            builder.append(rule.getTriggerClass());
+            builder.append('.');
+            builder.append(rule.getTriggerMethod());
+            builder.append(rule.getTriggerDescriptor());
+            builder.append('\n');
+            builder.append(rule.getRuleText());
+            builder.append('\n');
+
+            Iterator<Binding> iterator = rule.getBindings().iterator();
+            while (iterator.hasNext()) {
+                Binding binding = iterator.next();
+                Type type = binding.getType();
+                Binding alias = binding.getAlias();
+                builder.append(binding.getName());
+                builder.append(':');
+                builder.append(type == null ? "" : type.getName());
+                builder.append(':');
+                builder.append(binding.getIndex());
+                builder.append(':');
+                builder.append(binding.getCallArrayIndex());
+                builder.append(':');
+                builder.append(binding.getLocalIndex());
+                builder.append(':');
+                builder.append(binding.getSlot());
+                builder.append(':');
+                builder.append(binding.isUpdated());
+                builder.append(':');
+                builder.append(alias == null ? "" : alias.getName());
+                builder.append('\n');
+            }
+
+            this.signature = builder.toString();
+            this.helperClass = helperClass;
+            this.resolved = rule.getTypeGroup().getResolvedClasses();
+        }
+    }
+
+    /**
+     * a previously generated adapter along with the classes its bytecode was linked against
+     */
+    private static class Entry
+    {
+        private WeakReference<Class> adapter;
+        private WeakReference<Class> helperClass;
+        private Map<String, WeakReference<Class>> linked;
+
+        private Entry(Class adapter, Key key, byte[] classBytes)
+        {
+            this.adapter = new WeakReference<Class>(adapter);
+            this.helperClass = new WeakReference<Class>(key.helperClass);
+            this.linked = new HashMap<String, WeakReference<Class>>();
+            // only the resolved classes which the adapter bytecode mentions need to be the same
+            // for another rule to use it. in particular, a rule which does not refer to its
+            // trigger class can share an adapter with a copy of the rule injected into a
+            // different copy of that class
+            Set<String> references = getReferences(classBytes);
+            for (Map.Entry<String, Class> entry : key.resolved.entrySet()) {
+                Class clazz = entry.getValue();
+                if (references.contains(clazz.getName().replace('.', '/'))) {
+                    linked.put(entry.getKey(), new WeakReference<Class>(clazz));
+                }
+            }
+        }
+
+        /**
+         * check whether this entry's adapter can be used by a rule with the supplied key
+         * @param key the key computed for the rule
+         * @return the adapter class if the helper class and every resolved class the adapter
+         * is linked against are identical or null if they differ or the adapter has been unloaded
+         */
+        private Class match(Key key)
+        {
+            if (helperClass.get() != key.helperClass) {
+                return null;
+            }
+            for (Map.Entry<String, WeakReference<Class>> entry : linked.entrySet()) {
+                if (entry.getValue().get() != key.resolved.get(entry.getKey())) {
+                    return null;
+                }
+            }
+            return adapter.get();
+        }
+
+        private boolean isCleared()
+        {
+            return adapter.get() == null;
+        }
+    }
+
+    /**
+     * identify the internal names of all classes mentioned in a class file constant pool either
+     * as a class constant or in a field or method descriptor
+     * @param classBytes the class file bytes
+     * @return the set of internal class names
+     */
+    private static Set<String> getReferences(byte[] classBytes)
+    {
+        Set<String> references = new HashSet<String>();
+        ClassReader reader = new ClassReader(classBytes);
+        char[] buf = new char[reader.getMaxStringLength()];
+        int count = reader.getItemCount();
+
+        for (int i = 1; i < count; i++) {
+            int offset = reader.getItem(i);
+            // n.b. the second slot of a long or double constant has no item
+            if (offset == 0) {
+                continue;
+            }
+            int tag = reader.readByte(offset - 1);
+            if (tag == CONSTANT_CLASS) {
+                addReferences(reader.readUTF8(offset, buf), references);
+            } else if (tag == CONSTANT_UTF8) {
+                // descriptors may mention classes which do not appear as class constants
+                int length = reader.readUnsignedShort(offset);
+                String utf8;
+                try {
+                    utf8 = new String(reader.b, offset + 2, length, "UTF-8");
+                } catch (UnsupportedEncodingException e) {
+                    continue;
+                }
+                if (utf8.length() > 0 && "(L[".indexOf(utf8.charAt(0)) >= 0) {
+                    addDescriptorReferences(utf8, references);
+                }
+            }
+        }
+
+        return references;
+    }
+
+    /**
+     * add the internal names of all the classes mentioned in a field or method descriptor to a
+     * reference set
+     * @param descriptor the descriptor
+     * @param references the set to which the names should be added
+     */
+    private static void addDescriptorReferences(String descriptor, Set<String> references)
+    {
+        int idx = descriptor.indexOf('L');
+        while (idx >= 0) {
+            int end = descriptor.indexOf(';', idx);
+            if (end < 0) {
+                return;
+            }
+            references.add(descriptor.substring(idx + 1, end));
+            idx = descriptor.indexOf('L', end);
+        }
+    }
+
+    /**
+     * add the internal name for a class constant to a reference set stripping any array brackets
+     * @param name the name found in the class constant
+     * @param references the set to which the name should be added
+     */
+    private static void addReferences(String name, Set<String> references)
+    {
+        int idx = 0;
+        while (idx < name.length() && name.charAt(idx) == '[') {
+            idx++;
+        }
+        if (idx == 0) {
+            references.add(name);
+        } else if (name.charAt(idx) == 'L') {
+            references.add(name.substring(idx + 1, name.length() - 1));
+        }
+    }
+
+    private static final int CONSTANT_UTF8 = 1;
+
+    private static final int CONSTANT_CLASS = 7;
+
+    /**
+     * the cached adapters indexed by signature. there may be more than one entry for a given
+     * signature where the rule has been injected into classes whose types resolve differently
+     */
+    private static final HashMap<String, List<Entry>> cache = new HashMap<String, List<Entry>>();
+
+    private static final AtomicLong hits = new AtomicLong();
+
+    private static final AtomicLong misses = new AtomicLong();
+
+    /**
+     * lookup a previously generated adapter which can be employed by a rule
+     * @param key the key computed for the rule
+     * @return the adapter class or null if none is available
+     */
+    public static Class lookup(Key key)
+    {
+        synchronized (cache) {
+            List<Entry> entries = cache.get(key.signature);
+            if (entries != null) {
+                Iterator<Entry> iterator = entries.iterator();
+                while (iterator.hasNext()) {
+                    Entry entry = iterator.next();
+                    if (entry.isCleared()) {
+                        // the adapter has been unloaded along with its loader
+                        iterator.remove();
+                        continue;
+                    }
+                    Class adapter = entry.match(key);
+                    if (adapter != null) {
+                        hits.incrementAndGet();
+                        return adapter;
+                    }
+                }
+                if (entries.isEmpty()) {
+                    cache.remove(key.signature);
+                }
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * record a newly generated adapter so that it can be employed by equivalent rules
+     * @param key the key computed for the rule for which the adapter was generated
+     * @param adapter the adapter class
+     * @param classBytes the bytecode from which the adapter class was defined
+     */
+    public static void register(Key key, Class adapter, byte[] classBytes)
+    {
+        synchronized (cache) {
+            List<Entry> entries = cache.get(key.signature);
+            if (entries == null) {
+                entries = new ArrayList<Entry>();
+                cache.put(key.signature, entries);
+            }
+            entries.add(new Entry(adapter, key, classBytes));
+        }
+    }
+
+    /**
+     * @return the number of times a rule was able to employ a previously generated adapter
+     */
+    public static long getHits()
+    {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of times a rule needed a new adapter to be generated
+     */
+    public static long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * @return the number of adapters currently held in the cache, including any which have been
+     * unloaded but not yet pruned
+     */
+    public static int size()
+    {
+        int size = 0;
+        synchronized (cache) {
+            for (List<Entry> entries : cache.values()) {
+                size += entries.size();
+            }
+        }
+        return size;
+    }
+}
@@ -86,6 +86,12 @@ public class AssignExpression extends BinaryOperExpression
         return value;
     }
 
+    public boolean isGuardSafe()
+    {
+        // an assignment updates a binding so it can never be used as a guard
+        return false;
+    }
+
     public void compile(MethodVisitor mv, CompileContext compileContext) throws CompileException
     {
         // make sure we are at the right source line
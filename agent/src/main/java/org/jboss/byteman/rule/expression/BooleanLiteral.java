@@ -70,6 +70,11 @@ public class BooleanLiteral extends Expression
         return value;
     }
 
+    public boolean isGuardSafe()
+    {
+        return true;
+    }
+
     public void compile(MethodVisitor mv, CompileContext compileContext) throws CompileException {
         // make sure we are at the right source line
         compileContext.notifySourceLine(line);
@@ -200,7 +200,17 @@ public class DollarExpression extends AssignableExpression
 
     public Object interpret(HelperAdapter helper) throws ExecuteException
     {
-        return helper.getBinding(binding.getName());
+        return helper.getBinding(binding.getSlot());
+    }
+
+    /**
+     * a reference to the trigger method recipient or one of its parameters is guard safe
+     * since the guard frame is installed from the trigger method arguments
+     * @return true if this expression is guard safe otherwise false
+     */
+    public boolean isGuardSafe()
+    {
+        return binding.isRecipient() || binding.isParam();
     }
 
     public void compile(MethodVisitor mv, CompileContext compileContext) throws CompileException
@@ -241,7 +251,7 @@ public class DollarExpression extends AssignableExpression
     @Override
     public Object interpretAssign(HelperAdapter helperAdapter, Object value) throws ExecuteException
     {
-        helperAdapter.setBinding(binding.getName(), value);
+        helperAdapter.setBinding(binding.getSlot(), value);
         return value;
     }
 
@@ -103,6 +103,19 @@ public abstract class Expression extends RuleElement
      */
     public abstract Object interpret(HelperAdapter helper) throws ExecuteException;
 
+    /**
+     * identify whether this expression can be evaluated as a guard before the rule is dispatched.
+     * a guard safe expression refers to no rule bindings other than the trigger method recipient and
+     * parameters and its evaluation has no side effects visible to the rule. the guard verdict is
+     * final so a guarded condition is only evaluated once per firing. by default expressions are
+     * not guard safe.
+     * @return true if this expression is guard safe otherwise false
+     */
+    public boolean isGuardSafe()
+    {
+        return false;
+    }
+
     public abstract void writeTo(StringWriter stringWriter);
 
     protected Rule  rule;
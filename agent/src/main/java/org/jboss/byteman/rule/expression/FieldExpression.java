@@ -235,7 +235,7 @@ public class FieldExpression extends AssignableExpression
                     throw new ExecuteException("FieldExpression.interpret : attempted field indirection through null value " + owner + getPos());
                 }
 
-                if (isPublicField) {
+                if (isPublicField && fieldIndex < 0) {
                     return field.get(value);
                 } else {
                     return rule.getAccessibleField(value, fieldIndex);
@@ -250,6 +250,16 @@ public class FieldExpression extends AssignableExpression
         }
     }
 
+    /**
+     * reading an instance field has no side effects so a field reference is guard safe
+     * if its owner expression is guard safe
+     * @return true if this expression is guard safe otherwise false
+     */
+    public boolean isGuardSafe()
+    {
+        return (indirectStatic == null && owner != null && owner.isGuardSafe());
+    }
+
     public void compile(MethodVisitor mv, CompileContext compileContext) throws CompileException
     {
         // make sure we are at the right source line
@@ -396,7 +406,7 @@ public class FieldExpression extends AssignableExpression
                     throw new ExecuteException("FieldExpression.interpret : attempted field indirection through null value " + owner + getPos());
                 }
 
-                if (isPublicField) {
+                if (isPublicField && fieldIndex < 0) {
                     field.set(ownerInstance, value);
                 } else {
                     rule.setAccessibleField(ownerInstance, value, fieldIndex);
@@ -526,6 +536,15 @@ public class FieldExpression extends AssignableExpression
             // ask rule to check whether we need access
             if (!rule.requiresAccess(ownerType) && !rule.requiresAccess(field)) {
                 isPublicField = true;
+                // the interpreter can use a method handle in place of reflection
+                // but a setter handle cannot be created for a final field
+                if (rule.interpretViaAccessors() && !(isAssign && (field.getModifiers() & Modifier.FINAL) != 0)) {
+                    if (!isAssign) {
+                        fieldIndex = rule.addAccessibleFieldGetter(field);
+                    } else {
+                        fieldIndex = rule.addAccessibleFieldSetter(field);
+                    }
+                }
                 return field;
             } else {
                 isPublicField = false;
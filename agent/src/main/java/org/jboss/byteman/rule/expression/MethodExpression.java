@@ -34,6 +34,7 @@ import org.jboss.byteman.rule.exception.ExecuteException;
 import org.jboss.byteman.rule.exception.CompileException;
 import org.jboss.byteman.rule.Rule;
 import org.jboss.byteman.rule.helper.HelperAdapter;
+import org.jboss.byteman.rule.helper.RegExpCache;
 import org.jboss.byteman.rule.grammar.ParseNode;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
@@ -42,6 +43,11 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Iterator;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.io.StringWriter;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
@@ -54,6 +60,8 @@ public class MethodExpression extends Expression
 {
     public static Method setTriggeringMethod;
 
+    private final static Object[] NO_ARGS = new Object[0];
+
     static {
         try {
             setTriggeringMethod = Helper.class.getMethod("setTriggering", boolean.class);
@@ -167,7 +175,7 @@ public class MethodExpression extends Expression
         // if we don't have a recipient and we didn't find a static class for the method then this is
         // a builtin
 
-        boolean isBuiltIn = false;
+        isBuiltIn = false;
 
         if (recipient == null) {
             if (rootType == null) {
@@ -202,9 +210,33 @@ public class MethodExpression extends Expression
             throw new TypeException("MethodExpression.typeCheck : invalid expected type " + expected.getName() + getPos());
         }
 
+        precompilePatterns();
+
         return type;
     }
 
+    /**
+     * compile any literal regular expressions passed to a stack matching builtin now so that
+     * firing the rule does not need to compile them
+     */
+    private void precompilePatterns()
+    {
+        if (!isBuiltIn || method.getDeclaringClass() != Helper.class) {
+            return;
+        }
+        Integer regExpCount = REGEXP_BUILTINS.get(name);
+        if (regExpCount == null) {
+            return;
+        }
+        Class<?>[] paramClasses = method.getParameterTypes();
+        for (int i = 0; i < regExpCount && i < arguments.size(); i++) {
+            Expression argument = arguments.get(i);
+            if (paramClasses[i] == String.class && argument instanceof StringLiteral) {
+                RegExpCache.precompile(((StringLiteral) argument).getText());
+            }
+        }
+    }
+
     /**
      * find a method to resolve this method call expression.
      * @param publicOnly true if only public methods should be considered
@@ -314,8 +346,13 @@ public class MethodExpression extends Expression
                         methodIndex = rule.addAccessibleMethodInvoker(method);
                     } else {
                         isPublicMethod =  true;
+                        if (rule.interpretViaAccessors()) {
+                            // the interpreter can use a method handle in place of reflection
+                            methodIndex = rule.addAccessibleMethodInvoker(method);
+                        }
                     }
                     this.method = method;
+                    this.isSetTriggering = method.equals(setTriggeringMethod);
                     return;
                 } else  if (candidates.size() > 1) {
                     // ambiguous method so throw up here
@@ -342,14 +379,15 @@ public class MethodExpression extends Expression
             }
             int argCount = arguments.size();
 
-            Object[] argValues = new Object[argCount];
+            // calls with no arguments are common enough to be worth sharing an empty array
+            Object[] argValues = (argCount == 0 ? NO_ARGS : new Object[argCount]);
             for (int i = 0; i < argCount; i++) {
                 argValues[i] = arguments.get(i).interpret(helper);
             }
             // execute setTriggering directly rather than via reflection
             // that way rule code switch off triggering for a rule injected
             // into code used by Method.invoke()
-            if (method.equals(setTriggeringMethod)) {
+            if (isSetTriggering) {
                 boolean setting = (Boolean)argValues[0];
                 if (setting) {
                     Rule.enableTriggers();
@@ -362,10 +400,17 @@ public class MethodExpression extends Expression
             // TODO - do we do this if the method is a built-in? i.e. if the target is an instance of the helper class
             // TODO - this breaks the user disable option so fix it!
             Rule.enableTriggersInternal();
-            if (isPublicMethod) {
+            if (!isPublicMethod) {
+                return rule.invokeAccessibleMethod(recipientValue, argValues, methodIndex);
+            } else if (methodIndex < 0) {
                 return method.invoke(recipientValue, argValues);
             } else {
-                return rule.invokeAccessibleMethod(recipientValue, argValues, methodIndex);
+                try {
+                    return rule.invokeAccessibleMethod(recipientValue, argValues, methodIndex);
+                } catch (ExecuteException e) {
+                    // report whatever the method threw just as if it had been called via reflection
+                    throw new InvocationTargetException(invocationTarget(e));
+                }
             }
         } catch (InvocationTargetException e) {
             Throwable th = e.getCause();
@@ -384,6 +429,47 @@ public class MethodExpression extends Expression
         }
     }
 
+    /**
+     * locate the exception thrown by a method invoked via an accessor. the rule wraps the
+     * exception thrown by the accessor which in turn wraps the exception thrown by the
+     * method, possibly inside an InvocationTargetException if the accessor uses reflection.
+     * @param e the exception thrown by the rule
+     * @return the exception thrown by the method or e if it cannot be identified
+     */
+    private static Throwable invocationTarget(ExecuteException e)
+    {
+        Throwable th = e.getCause();
+        if (th != null && th.getCause() != null) {
+            th = th.getCause();
+        }
+        if (th instanceof InvocationTargetException && th.getCause() != null) {
+            th = th.getCause();
+        }
+        return (th != null ? th : e);
+    }
+
+    /**
+     * a method call is guard safe if it is a call to one of the read-only builtins of the
+     * default helper and its arguments are all guard safe
+     * @return true if this expression is guard safe otherwise false
+     */
+    public boolean isGuardSafe()
+    {
+        if (!isBuiltIn || method.getDeclaringClass() != Helper.class || !GUARD_BUILTINS.contains(name)) {
+            return false;
+        }
+        if (method.getParameterTypes().length != 1) {
+            // exclude variants such as readCounter(Object, boolean) which update state
+            return false;
+        }
+        for (Expression argument : arguments) {
+            if (!argument.isGuardSafe()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public void compile(MethodVisitor mv, CompileContext compileContext) throws CompileException
     {
         // make sure we are at the right source line
@@ -753,4 +839,32 @@ public class MethodExpression extends Expression
      */
     private int methodIndex;
     private boolean isPublicMethod;
+    /**
+     * true if the method is Helper.setTriggering which the interpreter executes directly
+     */
+    private boolean isSetTriggering;
+    /**
+     * true if this is a call to a builtin method of the rule's helper
+     */
+    private boolean isBuiltIn;
+
+    /**
+     * names of the builtins which only read helper state and so may be called from a rule guard
+     */
+    private final static Set<String> GUARD_BUILTINS = new HashSet<String>(Arrays.asList(
+            "flagged", "readCounter", "isCountDown", "getCountDown", "waiting"));
+
+    /**
+     * names of the builtins whose leading String arguments are regular expressions mapped to
+     * the number of such arguments
+     */
+    private final static Map<String, Integer> REGEXP_BUILTINS = new HashMap<String, Integer>();
+
+    static {
+        REGEXP_BUILTINS.put("callerMatches", 1);
+        REGEXP_BUILTINS.put("traceStackMatching", 1);
+        REGEXP_BUILTINS.put("formatStackMatching", 1);
+        REGEXP_BUILTINS.put("traceStackBetweenMatches", 2);
+        REGEXP_BUILTINS.put("formatStackBetweenMatches", 2);
+    }
 }
@@ -48,6 +48,8 @@ import java.util.List;
  */
 public class NewExpression extends Expression
 {
+    private final static Object[] NO_ARGS = new Object[0];
+
     private String typeName;
     private List<Expression> arguments;
     private List<Expression> arrayDims;
@@ -55,6 +57,8 @@ public class NewExpression extends Expression
     private List<Type> argumentTypes;
     private List<Type> paramTypes;
     private Constructor constructor;
+    // index of the accessor used to invoke the constructor from the interpreter or -1 if it uses reflection
+    private int constructorIndex;
     // if the new value is an array it will have this many dimensions
     private int arrayDimCount;
     // if the new value is an array this many of its dimensions are specified and are to be instantiated
@@ -74,6 +78,7 @@ public class NewExpression extends Expression
         this.arrayDimDefinedCount = 0;
         this.argumentTypes = null;
         this.constructor = null;
+        this.constructorIndex = -1;
     }
     /**
      * verify that variables mentioned in this expression are actually available in the supplied
@@ -187,6 +192,11 @@ public class NewExpression extends Expression
 
             constructor = candidates.get(0);
 
+            if (rule.interpretViaAccessors()) {
+                // the interpreter can use a method handle in place of reflection
+                constructorIndex = rule.addAccessibleConstructorInvoker(constructor);
+            }
+
             // make sure we know the formal parameter types and have included them in the typegroup
 
             paramTypes = new ArrayList<Type>();
@@ -298,10 +308,13 @@ public class NewExpression extends Expression
         if (arrayDimCount == 0) {
             int l = arguments.size();
             int i;
-            Object[] callArgs = new Object[l];
+            Object[] callArgs = (l == 0 ? NO_ARGS : new Object[l]);
             for (i = 0; i < l; i++) {
                 callArgs[i] = arguments.get(i).interpret(helper);
             }
+            if (constructorIndex >= 0) {
+                return rule.invokeAccessibleConstructor(callArgs, constructorIndex);
+            }
             try {
                 Object result = constructor.newInstance(callArgs);
                 return result;
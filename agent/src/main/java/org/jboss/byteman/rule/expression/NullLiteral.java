@@ -72,6 +72,11 @@ public class NullLiteral extends Expression
         return null;
     }
 
+    public boolean isGuardSafe()
+    {
+        return true;
+    }
+
     public void compile(MethodVisitor mv, CompileContext compileContext) throws CompileException
     {
         // make sure we are at the right source line
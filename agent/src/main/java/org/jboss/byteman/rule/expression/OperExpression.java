@@ -50,6 +50,23 @@ public abstract class OperExpression extends Expression
      */
     public abstract Expression getOperand(int index);
 
+    /**
+     * an operator expression is guard safe if all its operands are guard safe
+     * @return true if this expression is guard safe otherwise false
+     */
+    public boolean isGuardSafe()
+    {
+        int i = 0;
+        Expression operand = getOperand(i);
+        while (operand != null) {
+            if (!operand.isGuardSafe()) {
+                return false;
+            }
+            operand = getOperand(++i);
+        }
+        return true;
+    }
+
     public void writeTo(StringWriter stringWriter) {
         if ((oper & UNARY) != 0) {
             stringWriter.write(getOperandString());
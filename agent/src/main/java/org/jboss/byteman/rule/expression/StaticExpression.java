@@ -119,7 +119,7 @@ public class StaticExpression extends AssignableExpression
 
     public Object interpret(HelperAdapter helper) throws ExecuteException {
         try {
-            if (isPublicField) {
+            if (isPublicField && fieldIndex < 0) {
                 return field.get(null);
             } else {
                 return rule.getAccessibleField(null, fieldIndex);
@@ -193,7 +193,7 @@ public class StaticExpression extends AssignableExpression
     public Object interpretAssign(HelperAdapter helperAdapter, Object value) throws ExecuteException
     {
         try {
-            if (isPublicField) {
+            if (isPublicField && fieldIndex < 0) {
                 field.set(null, value);
             } else {
                 rule.setAccessibleField(null, value, fieldIndex);
@@ -276,6 +276,15 @@ public class StaticExpression extends AssignableExpression
             // the owner class has to be public for us to be able to use reflection
             if (!rule.requiresAccess(field)) {
                 isPublicField = true;
+                // the interpreter can use a method handle in place of reflection
+                // but a setter handle cannot be created for a final field
+                if (rule.interpretViaAccessors() && !(isAssign && (field.getModifiers() & Modifier.FINAL) != 0)) {
+                    if (isAssign) {
+                        fieldIndex = rule.addAccessibleFieldSetter(field);
+                    } else {
+                        fieldIndex = rule.addAccessibleFieldGetter(field);
+                    }
+                }
                 return field;
             } else {
                 isPublicField = false;
@@ -70,6 +70,11 @@ public class StringLiteral extends Expression
         return text;
     }
 
+    public boolean isGuardSafe()
+    {
+        return true;
+    }
+
     public void compile(MethodVisitor mv, CompileContext compileContext) throws CompileException
     {
         // make sure we are at the right source line
@@ -81,6 +86,14 @@ public class StringLiteral extends Expression
         compileContext.addStackCount(1);
     }
 
+    /**
+     * @return the text of the literal
+     */
+    public String getText()
+    {
+        return text;
+    }
+
     public void writeTo(StringWriter stringWriter) {
         stringWriter.write("\"");
         stringWriter.write(text);
@@ -136,7 +136,18 @@ public class Variable extends AssignableExpression
     }
 
     public Object interpret(HelperAdapter helper) throws ExecuteException {
-        return helper.getBinding(name);
+        return helper.getBinding(binding.getSlot());
+    }
+
+    /**
+     * a variable is guard safe if it names the trigger method recipient or one of its
+     * parameters, either directly or via an alias
+     * @return true if this expression is guard safe otherwise false
+     */
+    public boolean isGuardSafe()
+    {
+        Binding target = (binding.isAlias() ? binding.getAlias() : binding);
+        return target.isRecipient() || target.isParam();
     }
 
     public void compile(MethodVisitor mv, CompileContext compileContext) throws CompileException
@@ -159,7 +170,7 @@ public class Variable extends AssignableExpression
     @Override
     public Object interpretAssign(HelperAdapter helperAdapter, Object value) throws ExecuteException
     {
-        helperAdapter.setBinding(name, value);
+        helperAdapter.setBinding(binding.getSlot(), value);
         return value;
     }
 
@@ -0,0 +1,344 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2026 Red Hat and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.byteman.rule.helper;
+
+import org.jboss.byteman.rule.Rule;
+
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A trace writer which hands messages written by rule code over to a background thread so that
+ * the triggering thread does not have to wait for the output to be written. Messages are queued
+ * on a lock-free queue which may be written by any number of threads. The writer thread drains
+ * the queue in batches, writing each batch to the target stream with a single print and flush.
+ *
+ * The queue is bounded. What happens when it fills is determined by an overflow policy. Any
+ * messages still queued are written when the writer is flushed, when it is closed and when the
+ * JVM shuts down.
+ */
+public class AsyncTraceWriter implements Runnable
+{
+    /**
+     * policies for dealing with messages which are written when the queue is full
+     */
+    public enum Overflow {
+        /**
+         * the writing thread waits until there is space in the queue
+         */
+        BLOCK,
+        /**
+         * the message is discarded
+         */
+        DROP,
+        /**
+         * the message is discarded and a line reporting the number of discarded messages is
+         * written to the trace stream before the next batch of messages
+         */
+        COUNT
+    }
+
+    /**
+     * create a writer and start its writer thread
+     * @param identifier the identifier of the trace stream used to name the writer thread
+     * @param target the stream to which messages are written
+     * @param capacity the maximum number of messages which may be queued
+     * @param overflow the policy applied when the queue is full
+     */
+    public AsyncTraceWriter(Object identifier, PrintStream target, int capacity, Overflow overflow)
+    {
+        this.target = target;
+        this.capacity = (capacity > 0 ? capacity : 1);
+        this.overflow = overflow;
+        this.queue = new ConcurrentLinkedQueue<Object>();
+        this.pending = new AtomicInteger(0);
+        this.producers = new AtomicInteger(0);
+        this.dropped = new AtomicLong(0);
+        this.reported = 0;
+        this.closed = false;
+        this.closeRequest = null;
+        this.parked = false;
+        this.thread = new Thread(this, "Byteman Trace Writer " + identifier);
+        thread.setDaemon(true);
+        thread.start();
+        register(this);
+    }
+
+    /**
+     * queue a message for writing
+     * @param text the text to be written
+     * @return true if the message was queued or discarded according to the overflow policy or
+     * false if the writer has been closed, in which case the caller must write the text itself
+     */
+    public boolean write(String text)
+    {
+        // close waits for producers to leave before it queues its final flush
+        producers.incrementAndGet();
+        try {
+            if (closed) {
+                return false;
+            }
+            if (reserve()) {
+                queue.offer(text);
+                signal();
+            }
+            return true;
+        } finally {
+            producers.decrementAndGet();
+        }
+    }
+
+    /**
+     * wait until all messages queued before this call have been written to the target stream
+     */
+    public void flush()
+    {
+        awaitFlush(new CountDownLatch(1), 0);
+    }
+
+    /**
+     * write any queued messages then stop the writer thread. n.b. this does not close the target
+     * stream.
+     */
+    public void close()
+    {
+        closed = true;
+        // wait for any writes which saw the writer open to complete
+        while (producers.get() > 0) {
+            Thread.yield();
+        }
+        CountDownLatch latch = new CountDownLatch(1);
+        closeRequest = latch;
+        awaitFlush(latch, 0);
+        unregister(this);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return the number of messages which have been discarded because the queue was full
+     */
+    public long getDropped()
+    {
+        return dropped.get();
+    }
+
+    public void run()
+    {
+        // rules must not fire on the writer thread or they could trace recursively
+        Rule.disableTriggersInternal();
+
+        StringBuilder batch = new StringBuilder();
+
+        while (true) {
+            Object next = queue.poll();
+            if (next instanceof String) {
+                pending.decrementAndGet();
+                batch.append((String)next);
+                if (batch.length() < BATCH_SIZE) {
+                    continue;
+                }
+            }
+            writeBatch(batch);
+            if (next instanceof CountDownLatch) {
+                ((CountDownLatch)next).countDown();
+                if (next == closeRequest) {
+                    // no more messages can be queued
+                    return;
+                }
+            } else if (next == null) {
+                parked = true;
+                if (queue.isEmpty()) {
+                    LockSupport.parkNanos(this, PARK_NANOS);
+                }
+                parked = false;
+            }
+        }
+    }
+
+    /**
+     * claim space in the queue for a message, applying the overflow policy if it is full
+     * @return true if space was claimed or false if the message should be discarded
+     */
+    private boolean reserve()
+    {
+        while (true) {
+            int count = pending.get();
+            if (count < capacity) {
+                if (pending.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            } else if (overflow == Overflow.BLOCK) {
+                signal();
+                LockSupport.parkNanos(BLOCK_NANOS);
+            } else {
+                dropped.incrementAndGet();
+                return false;
+            }
+        }
+    }
+
+    private void signal()
+    {
+        if (parked) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private void writeBatch(StringBuilder batch)
+    {
+        if (overflow == Overflow.COUNT) {
+            long total = dropped.get();
+            if (total > reported) {
+                target.print("[" + (total - reported) + " trace messages dropped]" + LINE_SEPARATOR);
+                reported = total;
+            } else if (batch.length() == 0) {
+                return;
+            }
+        } else if (batch.length() == 0) {
+            return;
+        }
+        target.print(batch);
+        batch.setLength(0);
+        target.flush();
+    }
+
+    /**
+     * queue a flush request and wait for the writer thread to process it
+     * @param latch the latch used to signal that the request has been processed
+     * @param timeoutMillis the maximum time to wait or zero to wait until the request has been
+     * processed or the writer thread has exited
+     * @return true if the request was processed otherwise false
+     */
+    private boolean awaitFlush(CountDownLatch latch, long timeoutMillis)
+    {
+        queue.offer(latch);
+        LockSupport.unpark(thread);
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        try {
+            while (!latch.await(PARK_NANOS, TimeUnit.NANOSECONDS)) {
+                if (!thread.isAlive()) {
+                    return false;
+                }
+                if (timeoutMillis > 0 && System.currentTimeMillis() >= deadline) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static void register(AsyncTraceWriter writer)
+    {
+        synchronized (writers) {
+            if (shutdownHook == null) {
+                shutdownHook = new Thread("Byteman Trace Writer Shutdown") {
+                    public void run()
+                    {
+                        flushAll();
+                    }
+                };
+                Runtime.getRuntime().addShutdownHook(shutdownHook);
+            }
+        }
+        writers.add(writer);
+    }
+
+    private static void unregister(AsyncTraceWriter writer)
+    {
+        writers.remove(writer);
+    }
+
+    /**
+     * write all queued messages for every open writer. this is called when the JVM shuts down.
+     * each writer is only given a limited time to finish so a blocked target stream cannot
+     * prevent the JVM from exiting.
+     */
+    private static void flushAll()
+    {
+        for (AsyncTraceWriter writer : writers) {
+            writer.awaitFlush(new CountDownLatch(1), SHUTDOWN_FLUSH_MILLIS);
+        }
+    }
+
+    /**
+     * the writers which are currently open
+     */
+    private static final Set<AsyncTraceWriter> writers = Collections.newSetFromMap(new ConcurrentHashMap<AsyncTraceWriter, Boolean>());
+
+    /**
+     * hook registered when the first writer is created. guarded by the lock on writers
+     */
+    private static Thread shutdownHook = null;
+
+    /**
+     * the number of characters accumulated before a batch is written even if more messages are queued
+     */
+    private static final int BATCH_SIZE = 64 * 1024;
+
+    /**
+     * the maximum time the writer thread sleeps when it finds the queue empty
+     */
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * the time a writing thread sleeps before checking again for space in a full queue
+     */
+    private static final long BLOCK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private static final long SHUTDOWN_FLUSH_MILLIS = 5000;
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private final PrintStream target;
+    private final int capacity;
+    private final Overflow overflow;
+    private final ConcurrentLinkedQueue<Object> queue;
+    private final AtomicInteger pending;
+    private final AtomicInteger producers;
+    private final AtomicLong dropped;
+    private final Thread thread;
+    /**
+     * the dropped count last reported to the trace stream. only accessed by the writer thread
+     */
+    private long reported;
+    private volatile boolean closed;
+    /**
+     * the flush request queued by close. the writer thread exits once it has been processed
+     */
+    private volatile CountDownLatch closeRequest;
+    private volatile boolean parked;
+}
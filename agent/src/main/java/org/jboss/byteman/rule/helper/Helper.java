@@ -33,19 +33,21 @@ import org.jboss.byteman.synchronization.Rendezvous;
 import org.jboss.byteman.synchronization.Timer;
 import org.jboss.byteman.synchronization.Waiter;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.PrintStream;
+import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * This is the default helper class which is used to define builtin operations for rules.
@@ -235,6 +237,24 @@ public class Helper
         return true;
     }
 
+    /**
+     * punts to static call dotraceln("vrb", msg) to print msg to the "vrb"
+     * trace stream when the verbose log level is enabled for the given category.
+     * callers on the trigger path should test {@link Transformer#isVerbose(int)}
+     * before building the message so that no formatting is done when the
+     * category is disabled
+     * @param category one of the Transformer.VERBOSE_XXX category values
+     * @param msg the message to be traced
+     * @return true
+     */
+    public static boolean verbose(int category, String msg)
+    {
+        if (Transformer.isVerbose(category)) {
+            dotraceln("vrb", msg);
+        }
+        return true;
+    }
+
 
     /**
      * punts to static call dotraceln("nzy", msg) to print msg to the "nzy"
@@ -346,7 +366,14 @@ public class Helper
                 return false;
             }
 
-            PrintStream ps = new PrintStream(fos, true);
+            PrintStream ps;
+
+            if (Transformer.isTraceAsync()) {
+                // the trace writer thread flushes after each batch of messages
+                ps = new PrintStream(new BufferedOutputStream(fos, TRACE_FILE_BUFFER_SIZE), false);
+            } else {
+                ps = new PrintStream(fos, true);
+            }
 
             traceMap.put(identifier, ps);
 
@@ -373,6 +400,11 @@ public class Helper
             // proceed until we have flushed all changes to disk
             PrintStream ps = traceMap.get(identifier);
             if (ps != null) {
+                // write out anything still queued for the stream
+                AsyncTraceWriter writer = traceWriterMap.remove(identifier);
+                if (writer != null) {
+                    writer.close();
+                }
                 // make sure not to close System.out which we may see as the
                 // trace stream bound to "dbg", "vrb" or "nzy"
                 if (ps != System.out && ps != System.err) {
@@ -398,6 +430,9 @@ public class Helper
      */
     private static boolean dotrace(Object identifier, String message)
     {
+        if (doTraceAsync(identifier, message, false)) {
+            return true;
+        }
         synchronized(traceMap) {
             PrintStream ps = traceMap.get(identifier);
             if (ps == null) {
@@ -407,6 +442,9 @@ public class Helper
                     ps = System.out;
                 }
             }
+            if (doTraceAsync(identifier, ps, message, false)) {
+                return true;
+            }
             ps.print(message);
             ps.flush();
         }
@@ -425,6 +463,9 @@ public class Helper
      */
     private static boolean dotraceln(Object identifier, String message)
     {
+        if (doTraceAsync(identifier, message, true)) {
+            return true;
+        }
         synchronized(traceMap) {
             PrintStream ps = traceMap.get(identifier);
             if (ps == null) {
@@ -434,6 +475,9 @@ public class Helper
                     ps = System.out;
                 }
             }
+            if (doTraceAsync(identifier, ps, message, true)) {
+                return true;
+            }
             ps.println(message);
             ps.flush();
         }
@@ -447,6 +491,13 @@ public class Helper
      */
     private static void doTraceException(Object id, Throwable th)
     {
+        if (id != null && traceWriterMap.containsKey(id)) {
+            StringWriter stringWriter = new StringWriter();
+            th.printStackTrace(new PrintWriter(stringWriter));
+            if (doTraceAsync(id, stringWriter.toString(), false)) {
+                return;
+            }
+        }
         PrintStream ps;
         synchronized (traceMap) {
             ps = traceMap.get(id);
@@ -457,6 +508,51 @@ public class Helper
         th.printStackTrace(ps);
     }
 
+    /**
+     * hand the supplied text to the asynchronous writer for a trace stream if one has been started.
+     * this does not lock the trace map.
+     * @param identifier the identifier of the trace stream
+     * @param text the text to be written
+     * @param newline true if a line separator should be appended to the text
+     * @return true if the text was handed to a writer or false if it must be written synchronously
+     */
+    private static boolean doTraceAsync(Object identifier, String text, boolean newline)
+    {
+        if (identifier == null) {
+            return false;
+        }
+        AsyncTraceWriter writer = traceWriterMap.get(identifier);
+        // a writer refuses the text if it is closed by a racing traceClose
+        return (writer != null && writer.write(newline ? text + LINE_SEPARATOR : text));
+    }
+
+    /**
+     * hand the supplied text to the asynchronous writer for a trace stream, starting a writer for
+     * the stream if asynchronous trace output is enabled. the caller must hold the lock on the
+     * trace map.
+     * @param identifier the identifier of the trace stream
+     * @param ps the stream registered for the identifier
+     * @param text the text to be written
+     * @param newline true if a line separator should be appended to the text
+     * @return true if the text was handed to a writer or false if it must be written synchronously
+     */
+    private static boolean doTraceAsync(Object identifier, PrintStream ps, String text, boolean newline)
+    {
+        if (identifier == null || traceMap.get(identifier) != ps) {
+            // the text is going to the default stream in place of a stream which could not be opened
+            return false;
+        }
+        AsyncTraceWriter writer = traceWriterMap.get(identifier);
+        if (writer == null) {
+            if (!Transformer.isTraceAsync()) {
+                return false;
+            }
+            writer = new AsyncTraceWriter(identifier, ps, Transformer.getTraceBufferSize(), Transformer.getTraceOverflow());
+            traceWriterMap.put(identifier, writer);
+        }
+        return writer.write(newline ? text + LINE_SEPARATOR : text);
+    }
+
     // flag support
     /**
      * set a flag keyed by the supplied object if it is not already set
@@ -465,9 +561,7 @@ public class Helper
      */
     public boolean flag(Object identifier)
     {
-        synchronized (flagSet) {
-            return flagSet.add(identifier);
-        }
+        return flagSet.add(stateKey(identifier));
     }
 
     /**
@@ -477,9 +571,7 @@ public class Helper
      */
     public boolean flagged(Object identifier)
     {
-        synchronized (flagSet) {
-            return flagSet.contains(identifier);
-        }
+        return flagSet.contains(stateKey(identifier));
     }
 
     /**
@@ -489,9 +581,7 @@ public class Helper
      */
     public boolean clear(Object identifier)
     {
-        synchronized (flagSet) {
-            return flagSet.remove(identifier);
-        }
+        return flagSet.remove(stateKey(identifier));
     }
 
     // countdown support
@@ -512,9 +602,7 @@ public class Helper
      */
     public boolean isCountDown(Object identifier)
     {
-        synchronized (countDownMap) {
-            return (countDownMap.get(identifier) != null);
-        }
+        return countDownMap.containsKey(stateKey(identifier));
     }
 
     /**
@@ -544,14 +632,7 @@ public class Helper
      */
     public boolean createCountDown(Object identifier, int count)
     {
-        synchronized (countDownMap) {
-            if (countDownMap.get(identifier) == null) {
-                countDownMap.put(identifier, new CountDown(count));
-                return true;
-            }
-        }
-
-        return false;
+        return (countDownMap.putIfAbsent(stateKey(identifier), new CountDown(count)) == null);
     }
 
     /**
@@ -562,16 +643,16 @@ public class Helper
      */
     public boolean countDown(Object identifier)
     {
-        synchronized (countDownMap) {
-            CountDown countDown = countDownMap.get(identifier);
+        Object key = stateKey(identifier);
+        CountDown countDown = countDownMap.get(key);
 
-            if (countDown != null) {
-                boolean result = countDown.decrement();
-                if (result) {
-                    countDownMap.remove(identifier);
-                }
-                return result;
+        if (countDown != null) {
+            // the countdown only returns true once so only one thread gets to remove it
+            boolean result = countDown.decrement();
+            if (result) {
+                countDownMap.remove(key, countDown);
             }
+            return result;
         }
 
         // we must only fire a decrement event once for a given counter
@@ -677,37 +758,29 @@ public class Helper
 
             return false;
         } else {
-            Waiter waiter;
-            // may need to do test and insert atomically
-            synchronized (waitMap) {
+            Waiter waiter = null;
+            // need to do test and insert atomically so retry if some other thread inserts first
+            while (waiter == null) {
                 // see if we have a waiter
-                 waiter = removeWaiter(identifier);
+                waiter = removeWaiter(identifier);
 
                 if (waiter != null) {
                     return waiter.signalWake();
                 } else {
                     // insert a pre-signalled waiter
-                    waiter = new Waiter(identifier, true, false);
-                    waitMap.put(identifier, waiter);
+                    Waiter signalled = new Waiter(identifier, true, false);
+                    if (waitMap.putIfAbsent(stateKey(identifier), signalled) == null) {
+                        waiter = signalled;
+                    }
                 }
             }
 
             // ok, so we need to wait until a wait has happened
 
-            synchronized (waiter) {
-                while (!waiter.waiting()) {
-                    try {
-                        waiter.wait();
-                    } catch (InterruptedException e) {
-                        // do nothing
-                    }
-                }
-            }
+            waiter.awaitWaiting();
 
             // remove the association between the waiter and the wait map
-            synchronized (waitMap) {
-                removeWaiter(identifier);
-            }
+            waitMap.remove(stateKey(identifier), waiter);
             return true;
         }
     }
@@ -795,36 +868,29 @@ public class Helper
 
             return false;
         } else {
-            Waiter waiter;
-            // may need to do test and insert atomically
-            synchronized (waitMap) {
+            Waiter waiter = null;
+            // need to do test and insert atomically so retry if some other thread inserts first
+            while (waiter == null) {
                 // see if we have a waiter
-                 waiter = removeWaiter(identifier);
+                waiter = removeWaiter(identifier);
 
                 if (waiter != null) {
                     return waiter.signalThrow();
                 } else {
                     // insert a pre-signalled waiter
-                    waiter = new Waiter(identifier, true, false);
-                    waitMap.put(identifier, waiter);
+                    Waiter signalled = new Waiter(identifier, true, false);
+                    if (waitMap.putIfAbsent(stateKey(identifier), signalled) == null) {
+                        waiter = signalled;
+                    }
                 }
             }
 
             // ok, so we need to wait until a wait has happened
 
-            synchronized (waiter) {
-                while (!waiter.waiting()) {
-                    try {
-                        waiter.wait();
-                    } catch (InterruptedException e) {
-                        // do nothing
-                    }
-                }
-            }
+            waiter.awaitWaiting();
+
             // remove the association between the waiter and the wait map
-            synchronized (waitMap) {
-                removeWaiter(identifier);
-            }
+            waitMap.remove(stateKey(identifier), waiter);
             return true;
         }
     }
@@ -871,16 +937,9 @@ public class Helper
     public boolean createRendezvous(Object identifier, int expected, boolean restartable)
     {
         // need to do this atomically
-        synchronized (rendezvousMap) {
-            Rendezvous rendezvous = rendezvousMap.get(identifier);
-            if (rendezvous !=  null) {
-                return false;
-            }
-            rendezvous = new Rendezvous(expected, restartable);
-            rendezvousMap.put(identifier, rendezvous);
-        }
+        Rendezvous rendezvous = new Rendezvous(expected, restartable);
 
-        return true;
+        return (rendezvousMap.putIfAbsent(stateKey(identifier), rendezvous) == null);
     }
 
     /**
@@ -905,12 +964,15 @@ public class Helper
      */
     public int getRendezvous(Object identifier, int expected)
     {
-        Rendezvous rendezvous = rendezvousMap.get(identifier);
+        Rendezvous rendezvous = rendezvousMap.get(stateKey(identifier));
         if (rendezvous == null || rendezvous.getExpected() != expected) {
             return -1;
         }
-        synchronized (rendezvous) {
+        rendezvous.getLock().lock();
+        try {
             return rendezvous.getArrived();
+        } finally {
+            rendezvous.getLock().unlock();
         }
     }
 
@@ -938,20 +1000,23 @@ public class Helper
      */
     public int rendezvous(Object identifier, long millis)
     {
-        Rendezvous rendezvous = rendezvousMap.get(identifier);
+        Rendezvous rendezvous = rendezvousMap.get(stateKey(identifier));
 
         if (rendezvous !=  null) {
-            synchronized(rendezvous) {
+            rendezvous.getLock().lock();
+            try {
                 int result = rendezvous.rendezvous(millis);
                 // make sure the rendezvous is removed from the map if required
                 // n.b. this implementation makes sure the remove happens before any thread
                 // successfully passes the rendezvous call
                 if (rendezvous.needsRemove()) {
-                    rendezvousMap.remove(identifier);
+                    rendezvousMap.remove(stateKey(identifier), rendezvous);
                     rendezvous.setRemoved();
                 }
 
                 return result;
+            } finally {
+                rendezvous.getLock().unlock();
             }
         }
 
@@ -967,17 +1032,20 @@ public class Helper
     */
     public boolean deleteRendezvous(Object identifier, int expected)
     {
-        Rendezvous rendezvous = rendezvousMap.get(identifier);
+        Rendezvous rendezvous = rendezvousMap.get(stateKey(identifier));
         if (rendezvous == null || rendezvous.getExpected() != expected) {
             return false;
         }
-        synchronized (rendezvous) {
+        rendezvous.getLock().lock();
+        try {
             if (rendezvous.delete()) {
                 if (rendezvous.needsRemove()) {
-                    rendezvousMap.remove(identifier);
+                    rendezvousMap.remove(stateKey(identifier), rendezvous);
                 }
                 return true;
             }
+        } finally {
+            rendezvous.getLock().unlock();
         }
         // hmm, completed before we got there
         return false;
@@ -989,36 +1057,19 @@ public class Helper
             return false;
         }
 
-        synchronized(joinerMap) {
-            if (joinerMap.get(key) != null) {
-                return false;
-            }
-            joinerMap.put(key, new Joiner(max));
-        }
-
-        return true;
+        return (joinerMap.putIfAbsent(stateKey(key), new Joiner(max)) == null);
     }
 
     public boolean isJoin(Object key, int max)
     {
-        synchronized(joinerMap) {
-            Joiner joiner = joinerMap.get(key);
-
-            if (joiner == null || joiner.getMax() != max) {
-                return false;
-            }
-        }
+        Joiner joiner = joinerMap.get(stateKey(key));
 
-        return true;
+        return (joiner != null && joiner.getMax() == max);
     }
 
     public boolean joinEnlist(Object key)
     {
-        Joiner joiner;
-        synchronized (joinerMap)
-        {
-            joiner = joinerMap.get(key);
-        }
+        Joiner joiner = joinerMap.get(stateKey(key));
 
         if (joiner == null) {
             return false;
@@ -1043,9 +1094,7 @@ public class Helper
             default:
             {
                 // added child and parent was waiting so remove joiner from map now
-                synchronized (joinerMap) {
-                    joinerMap.remove(key);
-                }
+                joinerMap.remove(stateKey(key), joiner);
                 return true;
             }
         }
@@ -1057,11 +1106,7 @@ public class Helper
     }
     public boolean joinWait(Object key, int count, long millis)
     {
-        Joiner joiner;
-        synchronized (joinerMap)
-        {
-            joiner = joinerMap.get(key);
-        }
+        Joiner joiner = joinerMap.get(stateKey(key));
 
         if (joiner == null || joiner.getMax() != count) {
             return false;
@@ -1071,9 +1116,7 @@ public class Helper
 
         if (joiner.joinChildren(current, millis)) {
             // successfully joined all child threads so remove joiner form map
-            synchronized (joinerMap) {
-                joinerMap.remove(key);
-            }
+            joinerMap.remove(stateKey(key), joiner);
             return true;
         } else {
             // hmm, another thread must have done the join so leave it do the remove
@@ -1081,7 +1124,11 @@ public class Helper
         }
     }
 
-    private static HashMap<Object, Joiner> joinerMap = new HashMap<Object, Joiner>();
+    /**
+     * a hash map used to identify joiners from their identifying
+     * objects
+     */
+    private static ConcurrentHashMap<Object, Joiner> joinerMap = new ConcurrentHashMap<Object, Joiner>();
 
     // counter support
     /**
@@ -1102,15 +1149,7 @@ public class Helper
      */
     public boolean createCounter(Object o, int value)
     {
-        synchronized (counterMap) {
-            Counter counter = counterMap.get(o);
-            if  (counter != null) {
-                return false;
-            } else {
-                counterMap.put(o, new Counter(value));
-                return true;
-            }
-        }
+        return (counterMap.putIfAbsent(stateKey(o), new Counter(value)) == null);
     }
 
     /**
@@ -1120,15 +1159,7 @@ public class Helper
      */
     public boolean deleteCounter(Object o)
     {
-        synchronized (counterMap) {
-            Counter counter = counterMap.get(o);
-            if  (counter != null) {
-                counterMap.remove(o);
-                return true;
-            } else {
-                return false;
-            }
-        }
+        return (counterMap.remove(stateKey(o)) != null);
     }
 
     /**
@@ -1151,14 +1182,7 @@ public class Helper
      */
     public int readCounter(Object o, boolean zero)
     {
-        synchronized (counterMap) {
-            Counter counter = counterMap.get(o);
-            if (counter == null) {
-                counter = new Counter();
-                counterMap.put(o, counter);
-            }
-            return counter.count(zero);
-        }
+        return ensureCounter(o).count(zero);
     }
 
     /**
@@ -1192,14 +1216,27 @@ public class Helper
      */
     public int incrementCounter(Object o, int amount)
     {
-        synchronized (counterMap) {
-            Counter counter = counterMap.get(o);
+        return ensureCounter(o).increment(amount);
+    }
+
+    /**
+     * lookup the counter associated with given identifier, creating a new one with count zero
+     * if none exists
+     * @param o the identifier for the counter
+     * @return the counter
+     */
+    private static Counter ensureCounter(Object o)
+    {
+        Object key = stateKey(o);
+        Counter counter = counterMap.get(key);
+        if (counter == null) {
+            Counter newCounter = new Counter();
+            counter = counterMap.putIfAbsent(key, newCounter);
             if (counter == null) {
-                counter = new Counter();
-                counterMap.put(o, counter);
+                counter = newCounter;
             }
-            return counter.increment(amount);
         }
+        return counter;
     }
 
     // timer support
@@ -1210,15 +1247,7 @@ public class Helper
      */
     public boolean createTimer(Object o)
     {
-        synchronized (timerMap) {
-            Timer timer = timerMap.get(o);
-            if  (timer != null) {
-                return false;
-            } else {
-                timerMap.put(o, new Timer());
-                return true;
-            }
-        }
+        return (timerMap.putIfAbsent(stateKey(o), new Timer()) == null);
     }
 
     /**
@@ -1228,15 +1257,7 @@ public class Helper
      */
     public boolean deleteTimer(Object o)
     {
-        synchronized (timerMap) {
-            Timer timer = timerMap.get(o);
-            if  (timer != null) {
-                timerMap.remove(o);
-                return true;
-            } else {
-                return false;
-            }
-        }
+        return (timerMap.remove(stateKey(o)) != null);
     }
 
     /**
@@ -1247,14 +1268,7 @@ public class Helper
      */
     public long getElapsedTimeFromTimer(Object o)
     {
-        synchronized (timerMap) {
-            Timer timer = timerMap.get(o);
-            if (timer == null) {
-                timer = new Timer();
-                timerMap.put(o, timer);
-            }
-            return timer.getElapsedTime();
-        }
+        return ensureTimer(o).getElapsedTime();
     }
 
     /**
@@ -1265,14 +1279,26 @@ public class Helper
      */
     public long resetTimer(Object o)
     {
-        synchronized (timerMap) {
-            Timer timer = timerMap.get(o);
+        return ensureTimer(o).reset();
+    }
+
+    /**
+     * lookup the timer associated with given identifier, creating a new one if none exists
+     * @param o the identifier for the timer
+     * @return the timer
+     */
+    private static Timer ensureTimer(Object o)
+    {
+        Object key = stateKey(o);
+        Timer timer = timerMap.get(key);
+        if (timer == null) {
+            Timer newTimer = new Timer();
+            timer = timerMap.putIfAbsent(key, newTimer);
             if (timer == null) {
-                timer = new Timer();
-                timerMap.put(o, timer);
+                timer = newTimer;
             }
-            return timer.reset();
         }
+        return timer;
     }
 
     // link support
@@ -1284,13 +1310,7 @@ public class Helper
      */
     public boolean createLinkMap(Object mapName)
     {
-        synchronized(linkMaps) {
-            if (linkMaps.get(mapName) == null) {
-                linkMaps.put(mapName, new HashMap<Object, Object>());
-                return true;
-            }
-        }
-        return false;
+        return (linkMaps.putIfAbsent(stateKey(mapName), new HashMap<Object, Object>()) == null);
     }
 
     /**
@@ -1300,14 +1320,19 @@ public class Helper
      */
     public boolean deleteLinkMap(Object mapName)
     {
-        synchronized(linkMaps) {
-            HashMap<Object, Object> map = linkMaps.get(mapName);
-            if (map != null) {
-                linkMaps.remove(mapName);
-                return true;
-            } else {
+        Object key = stateKey(mapName);
+        while (true) {
+            HashMap<Object, Object> map = linkMaps.get(key);
+            if (map == null) {
                 return false;
             }
+            // remove the map while holding its lock so that a concurrent link either
+            // completes before the delete or sees that the map has gone
+            synchronized (map) {
+                if (linkMaps.remove(key, map)) {
+                    return true;
+                }
+            }
         }
     }
 
@@ -1322,13 +1347,22 @@ public class Helper
      */
     public Object link(Object mapName, Object name, Object value)
     {
-        synchronized(linkMaps) {
-            HashMap<Object, Object> map = linkMaps.get(mapName);
+        Object key = stateKey(mapName);
+        while (true) {
+            HashMap<Object, Object> map = linkMaps.get(key);
             if (map == null) {
-                linkMaps.put(mapName, new HashMap<Object, Object>());
-                map = linkMaps.get(mapName);
+                HashMap<Object, Object> newMap = new HashMap<Object, Object>();
+                map = linkMaps.putIfAbsent(key, newMap);
+                if (map == null) {
+                    map = newMap;
+                }
+            }
+            synchronized (map) {
+                // retry if the map was deleted after we looked it up
+                if (linkMaps.get(key) == map) {
+                    return map.put(name, value);
+                }
             }
-            return map.put(name, value);
         }
     }
 
@@ -1342,9 +1376,9 @@ public class Helper
      */
     public Object linked(Object mapName, Object name)
     {
-        synchronized(linkMaps) {
-            HashMap<Object, Object> map = linkMaps.get(mapName);
-            if (map != null) {
+        HashMap<Object, Object> map = linkMaps.get(stateKey(mapName));
+        if (map != null) {
+            synchronized (map) {
                 return map.get(name);
             }
         }
@@ -1361,9 +1395,9 @@ public class Helper
      */
     public Object unlink(Object mapName, Object name)
     {
-        synchronized(linkMaps) {
-            HashMap<Object, Object> map = linkMaps.get(mapName);
-            if (map != null) {
+        HashMap<Object, Object> map = linkMaps.get(stateKey(mapName));
+        if (map != null) {
+            synchronized (map) {
                 return map.remove(name);
             }
         }
@@ -1377,23 +1411,22 @@ public class Helper
      */
     public List<Object> linkNames(Object mapName)
     {
-        synchronized (linkMaps) {
-            HashMap<Object, Object> map = linkMaps.get(mapName);
-            if (map != null) {
-                Set<Object> keySet = map.keySet();
-                
-                int size = keySet.size();
-                if (size == 0) {
-                    return Collections.EMPTY_LIST;
-                } else {
-                    ArrayList<Object> list = new ArrayList<Object>(size);
-                    for (Object key : keySet) {
-                        list.add(key);
-                    }
-                    return list;
-                }
+        HashMap<Object, Object> map = linkMaps.get(stateKey(mapName));
+        if (map == null) {
+            return null;
+        }
+        synchronized (map) {
+            Set<Object> keySet = map.keySet();
+
+            int size = keySet.size();
+            if (size == 0) {
+                return Collections.EMPTY_LIST;
             } else {
-                return null;
+                ArrayList<Object> list = new ArrayList<Object>(size);
+                for (Object key : keySet) {
+                    list.add(key);
+                }
+                return list;
             }
         }
     }
@@ -1405,23 +1438,22 @@ public class Helper
      */
     public List<Object> linkValues(Object mapName)
     {
-        synchronized (linkMaps) {
-            HashMap<Object, Object> map = linkMaps.get(mapName);
-            if (map != null) {
-                Collection<Object> values = map.values();
+        HashMap<Object, Object> map = linkMaps.get(stateKey(mapName));
+        if (map == null) {
+            return null;
+        }
+        synchronized (map) {
+            Collection<Object> values = map.values();
 
-                int size = values.size();
-                if (size == 0) {
-                    return Collections.EMPTY_LIST;
-                } else {
-                    ArrayList<Object> list = new ArrayList<Object>(size);
-                    for (Object key : values) {
-                        list.add(key);
-                    }
-                    return list;
-                }
+            int size = values.size();
+            if (size == 0) {
+                return Collections.EMPTY_LIST;
             } else {
-                return null;
+                ArrayList<Object> list = new ArrayList<Object>(size);
+                for (Object key : values) {
+                    list.add(key);
+                }
+                return list;
             }
         }
     }
@@ -1433,15 +1465,15 @@ public class Helper
      */
     public boolean clearLinks(Object mapName)
     {
-        synchronized (linkMaps) {
-            HashMap<Object, Object> map = linkMaps.get(mapName);
-            if (map != null) {
-                boolean result = !map.isEmpty();
-                map.clear();
-                return result;
-            }
+        HashMap<Object, Object> map = linkMaps.get(stateKey(mapName));
+        if (map == null) {
             return false;
         }
+        synchronized (map) {
+            boolean result = !map.isEmpty();
+            map.clear();
+            return result;
+        }
     }
 
     // default link support
@@ -1844,17 +1876,24 @@ public class Helper
                                boolean includeClass, boolean includePackage,
                                int startFrame, int frameCount)
     {
-        StackTraceElement[] stack = getStack();
-        int triggerIndex = triggerIndex(stack);
         if (startFrame < 0) {
             return false;
         }
         int lastIndex;
-        if (frameCount <= 0) {
+        if (frameCount <= 0 || startFrame + frameCount < 0) {
             lastIndex = Integer.MAX_VALUE;
         } else {
             lastIndex = startFrame + frameCount;
         }
+        // only walk as far down the stack as the last frame we need to check
+        StackTraceElement[] stack = getStack(lastIndex == Integer.MAX_VALUE ? 0 : lastIndex);
+        int triggerIndex = triggerIndex(stack);
+        if (triggerIndex < 0) {
+            return false;
+        }
+        if (lastIndex > Integer.MAX_VALUE - triggerIndex) {
+            lastIndex = Integer.MAX_VALUE - triggerIndex;
+        }
         int matched = matchIndex(stack, match, isRegExp, includeClass, includePackage,
                 triggerIndex + startFrame, triggerIndex + lastIndex);
 
@@ -2849,7 +2888,9 @@ public class Helper
     public String formatStack(String prefix, int maxFrames)
     {
         StringBuffer buffer = new StringBuffer();
-        appendStack(buffer, prefix, maxFrames, Thread.currentThread(), getStack());
+        // walk one frame beyond the limit so we know whether to elide the rest
+        appendStack(buffer, prefix, maxFrames, Thread.currentThread(),
+                (maxFrames > 0 && maxFrames < Integer.MAX_VALUE) ? getStack(maxFrames + 1) : getStack());
         return buffer.toString();
     }
 
@@ -3141,7 +3182,7 @@ public class Helper
                 fullName = stack[i].getMethodName();
             }
 
-            if (fullName.matches(regExp)) {
+            if (RegExpCache.matches(fullName, regExp)) {
                 printlnFrame(buffer, stack[i]);
             }
         }
@@ -3639,6 +3680,12 @@ public class Helper
 
     private StackTraceElement[] stack = null;
 
+    /**
+     * the number of frames from the trigger method frame down which were requested when stack
+     * was captured or 0 if the whole stack was captured
+     */
+    private int stackFrameCount = 0;
+
     /**
      * access to the current stack frames
      *
@@ -3646,14 +3693,43 @@ public class Helper
      */
     protected StackTraceElement[] getStack()
     {
-        if (stack == null) {
+        return getStack(0);
+    }
+
+    /**
+     * access to the current stack frames from the top of the stack down to the trigger method
+     * frame and at least frameCount - 1 frames below it. frames further down may be omitted
+     * when the JVM allows the stack to be walked lazily. a stack captured earlier in the same
+     * firing is reused if it is deep enough.
+     *
+     * @param frameCount the number of frames starting from the trigger method frame which are
+     * needed or 0 if all frames are needed
+     * @return an array of stack trace elements for the current stack
+     */
+    protected StackTraceElement[] getStack(int frameCount)
+    {
+        if (frameCount < 0) {
+            frameCount = 0;
+        }
+        if (stack == null || (stackFrameCount > 0 && (frameCount <= 0 || frameCount > stackFrameCount))) {
             synchronized (this) {
-                stack = Thread.currentThread().getStackTrace();
+                stack = StackCapture.capture(frameCount);
+                stackFrameCount = (StackCapture.isLazy() ? frameCount : 0);
             }
         }
         return stack;
     }
 
+    /**
+     * discard any stack captured during a previous firing. this is needed when a
+     * helper instance is reused to execute more than one firing of a rule.
+     */
+    void resetStack()
+    {
+        stack = null;
+        stackFrameCount = 0;
+    }
+
     private static String RULE_CLASS_NAME = Rule.class.getCanonicalName();
     private static String RULE_EXECUTE_METHOD_NAME = "execute";
 
@@ -3671,7 +3747,7 @@ public class Helper
         int l= stack.length;
         int i;
         // find the trigger method frame above the rule engine entry point
-        // we should see two calls to rule.execute()
+        // we should see at least two calls to rule.execute()
         for (i = 0; i < l; i++) {
             if (RULE_CLASS_NAME.equals(stack[i].getClassName()) &&
                     RULE_EXECUTE_METHOD_NAME.equals(stack[i].getMethodName())) {
@@ -3687,7 +3763,15 @@ public class Helper
             return -1;
         }
 
-        return  i + 2;
+        // the trigger method frame is the first one below the last rule.execute() frame
+        i++;
+        while (i < l &&
+                RULE_CLASS_NAME.equals(stack[i].getClassName()) &&
+                RULE_EXECUTE_METHOD_NAME.equals(stack[i].getMethodName())) {
+            i++;
+        }
+
+        return  i;
     }
 
     /**
@@ -3695,7 +3779,7 @@ public class Helper
      * which matches pattern
      * @param stack array of stack trace elements
      * @param pattern a pattern to be matched against the concatenated
-     * frame method name using String.matches()
+     * frame method name as a regular expression
      * @param isRegExp true if the pattern should be matched as a
      * regular expression or false if it should be matched using a
      * String equals comparison
@@ -3721,7 +3805,7 @@ public class Helper
             limit = l;
         }
         // find the trigger method frame above the rule engine entry point
-        // we should see two calls to rule.execute()
+        // we should see at least two calls to rule.execute()
         for (; i < limit; i++) {
             String fullName;
             if (includeClass) {
@@ -3738,7 +3822,7 @@ public class Helper
             }
 
             if (isRegExp) {
-                if (fullName.matches(pattern)) {
+                if (RegExpCache.matches(fullName, pattern)) {
                     return i;
                 }
             } else {
@@ -3797,13 +3881,14 @@ public class Helper
      */
     private Waiter getWaiter(Object object, boolean createIfAbsent)
     {
-        Waiter waiter;
+        Object key = stateKey(object);
+        Waiter waiter = waitMap.get(key);
 
-        synchronized(waitMap) {
-            waiter = waitMap.get(object);
-            if (waiter == null && createIfAbsent) {
-                waiter = new Waiter(object);
-                waitMap.put(object, waiter);
+        if (waiter == null && createIfAbsent) {
+            Waiter newWaiter = new Waiter(object);
+            waiter = waitMap.putIfAbsent(key, newWaiter);
+            if (waiter == null) {
+                waiter = newWaiter;
             }
         }
 
@@ -3819,7 +3904,7 @@ public class Helper
      */
     private Waiter removeWaiter(Object object)
     {
-        return waitMap.remove(object);
+        return waitMap.remove(stateKey(object));
     }
 
     private static int nextFileIndex = 0;
@@ -3911,49 +3996,82 @@ public class Helper
      */
     private static HashMap<Object, PrintStream> traceMap = new HashMap<Object, PrintStream>();
 
+    /**
+     * a hash map used to identify the background writers for trace streams which are written
+     * asynchronously. entries are only added or removed while holding the lock on traceMap but
+     * lookups are made without locking.
+     */
+    private static ConcurrentHashMap<Object, AsyncTraceWriter> traceWriterMap = new ConcurrentHashMap<Object, AsyncTraceWriter>();
+
+    /**
+     * the size of the output buffer used for trace files which are written asynchronously
+     */
+    private static final int TRACE_FILE_BUFFER_SIZE = 64 * 1024;
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
     /**
      * a set used to identify settings for boolean flags associated
      * with arbitrary objects. if an object is in the set then the
      * flag associated with the object is set (true) otherwise it is
      * clear (false).
      */
-    private static Set<Object> flagSet = new HashSet<Object>();
+    private static Set<Object> flagSet = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
 
     /**
      * a hash map used to identify countdowns from their identifying
      * objects
      */
-    private static HashMap<Object, CountDown> countDownMap = new HashMap<Object, CountDown>();
+    private static ConcurrentHashMap<Object, CountDown> countDownMap = new ConcurrentHashMap<Object, CountDown>();
 
     /**
      * a hash map used to identify counters from their identifying
      * objects
      */
-    private static HashMap<Object, Counter> counterMap = new HashMap<Object, Counter>();
+    private static ConcurrentHashMap<Object, Counter> counterMap = new ConcurrentHashMap<Object, Counter>();
 
     /**
      * a hash map used to identify waiters from their identifying
      * objects
      */
-    private static HashMap<Object, Waiter> waitMap = new HashMap<Object, Waiter>();
+    private static ConcurrentHashMap<Object, Waiter> waitMap = new ConcurrentHashMap<Object, Waiter>();
 
     /**
      * a hash map used to identify rendezvous from their identifying
      * objects
      */
-    private static HashMap<Object, Rendezvous> rendezvousMap = new HashMap<Object, Rendezvous>();
+    private static ConcurrentHashMap<Object, Rendezvous> rendezvousMap = new ConcurrentHashMap<Object, Rendezvous>();
 
     /**
      * a hash map used to identify timer from their identifying
      * objects
      */
-    private static HashMap<Object, Timer> timerMap = new HashMap<Object, Timer>();
+    private static ConcurrentHashMap<Object, Timer> timerMap = new ConcurrentHashMap<Object, Timer>();
 
     /**
      * a hash map used to identify maps from their identifying
-     * objects
+     * objects. operations on an individual link map synchronize
+     * on that map.
+     */
+    private static ConcurrentHashMap<Object, HashMap<Object, Object>> linkMaps = new ConcurrentHashMap<Object, HashMap<Object, Object>>();
+
+    /**
+     * key used in place of null in the concurrent maps and sets above
+     * since they do not accept null keys
+     */
+    private static final Object NULL_KEY = new Object();
+
+    /**
+     * map an identifier supplied to a flag, counter, countdown, timer,
+     * link map, waiter, rendezvous or join builtin to the key used to
+     * index the relevant state
+     * @param identifier the identifier
+     * @return the identifier or NULL_KEY if the identifier is null
      */
-    private static HashMap<Object, HashMap<Object, Object>> linkMaps = new HashMap<Object, HashMap<Object, Object>>();
+    private static Object stateKey(Object identifier)
+    {
+        return (identifier == null ? NULL_KEY : identifier);
+    }
 
     // initialise the trace map so it contains the system output and
     // error keyed under "out" and "err"
@@ -42,6 +42,8 @@ public interface HelperAdapter
             throws ExecuteException;
     public void setBinding(String name, Object value);
     public Object getBinding(String name);
+    public void setBinding(int slot, Object value);
+    public Object getBinding(int slot);
     public String getName();
     public Object getAccessibleField(Object owner, int fieldIndex);
     public void setAccessibleField(Object owner, Object value, int fieldIndex);
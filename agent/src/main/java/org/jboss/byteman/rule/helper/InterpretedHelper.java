@@ -30,7 +30,6 @@ import org.jboss.byteman.rule.binding.Bindings;
 import org.jboss.byteman.rule.binding.Binding;
 import org.jboss.byteman.agent.Transformer;
 
-import java.util.HashMap;
 import java.util.Iterator;
 
 /**
@@ -54,16 +53,20 @@ import java.util.Iterator;
  */
 public class InterpretedHelper extends Helper implements HelperAdapter
 {
-    protected HashMap<String, Object> bindingMap;
+    /**
+     * the current values of the rule's bindings indexed by the slot allocated to each binding
+     * when the rule was type checked. aliases share the slot of the binding they refer to
+     */
+    protected Object[] frame;
 
     public InterpretedHelper(Rule rule)
     {
         super(rule);
-        bindingMap = new HashMap<String, Object>();
+        frame = new Object[rule.getBindings().getSlotCount()];
     }
 
     /**
-     * install values into the bindings map and then call the execute0 method
+     * install values into the binding frame and then call the execute0 method
      * to actually execute the rule
      * @param recipient target of trigger method or null if it is static
      * @param args array to pass current values and return new values
@@ -72,40 +75,26 @@ public class InterpretedHelper extends Helper implements HelperAdapter
     public void execute(Object recipient, Object[] args)
             throws ExecuteException
     {
-        Helper.verbose(rule.getName() + " execute");
-
-        Bindings bindings = rule.getBindings();
-        Iterator<Binding> iterator = bindings.iterator();
-        while (iterator.hasNext()) {
-            Binding binding = iterator.next();
-            String name = binding.getName();
-            if (binding.isAlias()) {
-                // this is a local var used to refer to a method recipient or parameter
-                // so use the value and type associated with the alias
-                binding = binding.getAlias();
-            }
-            if (binding.isHelper()) {
-                bindingMap.put(name, this);
-            } else if (binding.isRecipient()) {
-                bindingMap.put(name, recipient);
-            // } else if (!binding.isParam() || binding.isLocalVar() || binding.isReturn() ||
-            //         binding.isThrowable() || binding.isParamCount() || binding.isParamArray()) {
-            } else if (!binding.isBindVar()) {
-                bindingMap.put(name, args[binding.getCallArrayIndex()]);
-            }
+        if (Transformer.isVerbose(Transformer.VERBOSE_EXECUTE)) {
+            Helper.verbose(rule.getName() + " execute");
         }
 
+        // this instance may have been used for an earlier firing
+        resetStack();
+
+        install(recipient, args);
+
         // now do the actual execution
 
         execute0();
 
         // now restore update bindings
 
-        iterator = bindings.iterator();
+        Bindings bindings = rule.getBindings();
+        Iterator<Binding> iterator = bindings.iterator();
 
         while (iterator.hasNext()) {
             Binding binding = iterator.next();
-            String name = binding.getName();
             if (binding.isAlias()) {
                 continue;
             }
@@ -113,15 +102,63 @@ public class InterpretedHelper extends Helper implements HelperAdapter
             if (binding.isUpdated()) {
                 // if (binding.isParam() || binding.isLocalVar() || binding.isReturn()) {
                 if (!binding.isBindVar() && !binding.isAlias()) {
-                    Object value = bindingMap.get(name);
                     int idx = binding.getCallArrayIndex();
-                    args[idx] = value;
+                    args[idx] = frame[binding.getSlot()];
                 }
             }
         }
 
     }
 
+    /**
+     * install values into the binding frame and then evaluate the rule condition without
+     * running the rule event or action. this is used to guard dispatch of a rule whose
+     * condition only refers to the trigger method recipient and parameters
+     * @param recipient target of trigger method or null if it is static
+     * @param args array of values for data local to the trigger method
+     * @return the value of the rule condition
+     * @throws ExecuteException if an exception occurs during evaluation of the condition
+     */
+    public boolean testGuard(Object recipient, Object[] args)
+            throws ExecuteException
+    {
+        // this instance may have been used for an earlier guard test
+        resetStack();
+
+        install(recipient, args);
+
+        return rule.getCondition().testGuard(this);
+    }
+
+    /**
+     * install values into the binding frame from the trigger method recipient and arguments
+     * @param recipient target of trigger method or null if it is static
+     * @param args array of values for data local to the trigger method
+     */
+    private void install(Object recipient, Object[] args)
+    {
+        Bindings bindings = rule.getBindings();
+        Iterator<Binding> iterator = bindings.iterator();
+        while (iterator.hasNext()) {
+            Binding binding = iterator.next();
+            if (binding.isAlias()) {
+                // this is a local var used to refer to a method recipient or parameter
+                // it shares the slot of the alias so there is nothing to install
+                continue;
+            }
+            int slot = binding.getSlot();
+            if (binding.isHelper()) {
+                frame[slot] = this;
+            } else if (binding.isRecipient()) {
+                frame[slot] = recipient;
+            // } else if (!binding.isParam() || binding.isLocalVar() || binding.isReturn() ||
+            //         binding.isThrowable() || binding.isParamCount() || binding.isParamArray()) {
+            } else if (!binding.isBindVar()) {
+                frame[slot] = args[binding.getCallArrayIndex()];
+            }
+        }
+    }
+
     /**
      * basic implementation of rule execution
      *
@@ -134,19 +171,33 @@ public class InterpretedHelper extends Helper implements HelperAdapter
     {
         // System.out.println(rule.getName() + " execute0");
         bind();
-        if (test()) {
+        if (rule.recordCondition(test())) {
             fire();
         }
     }
 
     public void setBinding(String name, Object value)
     {
-        bindingMap.put(name, value);
+        Binding binding = rule.getBindings().lookup(name);
+        if (binding != null) {
+            frame[binding.getSlot()] = value;
+        }
     }
 
     public Object getBinding(String name)
     {
-        return bindingMap.get(name);
+        Binding binding = rule.getBindings().lookup(name);
+        return (binding != null ? frame[binding.getSlot()] : null);
+    }
+
+    public void setBinding(int slot, Object value)
+    {
+        frame[slot] = value;
+    }
+
+    public Object getBinding(int slot)
+    {
+        return frame[slot];
     }
 
     private void bind()
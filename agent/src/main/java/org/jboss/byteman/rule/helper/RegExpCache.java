@@ -0,0 +1,117 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2026 Red Hat and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.byteman.rule.helper;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Compiled regular expressions used by the stack matching builtins.
+ *
+ * Patterns supplied as string literals in rule text are compiled when the rule is type checked
+ * and retained for as long as the agent is running. Patterns computed at runtime are compiled on
+ * first use and retained in a bounded, least recently used cache so that a rule which builds a
+ * new pattern on every firing cannot grow the cache without limit.
+ */
+public final class RegExpCache
+{
+    /**
+     * the maximum number of runtime computed patterns retained by the cache
+     */
+    private static final int MAX_DYNAMIC_PATTERNS = 256;
+
+    /**
+     * patterns precompiled from string literals during type checking
+     */
+    private static final ConcurrentHashMap<String, Pattern> literalPatterns = new ConcurrentHashMap<String, Pattern>();
+
+    /**
+     * patterns compiled at runtime in least recently used order
+     */
+    private static final Map<String, Pattern> dynamicPatterns = new LinkedHashMap<String, Pattern>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest)
+        {
+            return size() > MAX_DYNAMIC_PATTERNS;
+        }
+    };
+
+    private RegExpCache()
+    {
+    }
+
+    /**
+     * compile and retain a pattern which appears as a literal argument to a builtin. a pattern
+     * which cannot be compiled is ignored here so that the builtin reports the error when it is
+     * executed, just as it would have done had the pattern not been precompiled.
+     * @param regExp the regular expression text
+     */
+    public static void precompile(String regExp)
+    {
+        if (regExp == null || literalPatterns.containsKey(regExp)) {
+            return;
+        }
+        try {
+            literalPatterns.putIfAbsent(regExp, Pattern.compile(regExp));
+        } catch (PatternSyntaxException e) {
+            // leave it to the builtin to throw the error at execution
+        }
+    }
+
+    /**
+     * lookup or compile the pattern for a regular expression
+     * @param regExp the regular expression text
+     * @return the compiled pattern
+     * @throws PatternSyntaxException if the expression is not a valid regular expression
+     */
+    public static Pattern lookup(String regExp)
+    {
+        Pattern pattern = literalPatterns.get(regExp);
+        if (pattern != null) {
+            return pattern;
+        }
+        synchronized (dynamicPatterns) {
+            pattern = dynamicPatterns.get(regExp);
+        }
+        if (pattern == null) {
+            pattern = Pattern.compile(regExp);
+            synchronized (dynamicPatterns) {
+                dynamicPatterns.put(regExp, pattern);
+            }
+        }
+        return pattern;
+    }
+
+    /**
+     * test whether the whole of a string matches a regular expression. this is equivalent to
+     * calling text.matches(regExp) but avoids recompiling the expression.
+     * @param text the text to be matched
+     * @param regExp the regular expression text
+     * @return true if text matches regExp otherwise false
+     */
+    public static boolean matches(String text, String regExp)
+    {
+        return lookup(regExp).matcher(text).matches();
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2026 Red Hat and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.byteman.rule.helper;
+
+import org.jboss.byteman.rule.Rule;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Captures the frames of the current thread's stack for the stack management builtins.
+ *
+ * Thread.getStackTrace() materializes every frame of the stack even when a builtin only needs
+ * to inspect the few frames just below the trigger method. When the JVM provides
+ * java.lang.StackWalker this class uses it to walk the stack lazily, stopping once the requested
+ * number of frames below the trigger method have been collected. The agent is compiled for
+ * releases which predate StackWalker so the walker is located and driven reflectively. When it
+ * is not available the full stack is captured using Thread.getStackTrace().
+ */
+final class StackCapture
+{
+    private static final String RULE_CLASS_NAME = Rule.class.getCanonicalName();
+    private static final String RULE_EXECUTE_METHOD_NAME = "execute";
+
+    private static Object walker;
+    private static Method walkMethod;
+    private static Method iteratorMethod;
+    private static Method toStackTraceElementMethod;
+    private static Method getClassNameMethod;
+    private static Method getMethodNameMethod;
+    private static Constructor<?> functionConstructor;
+
+    static {
+        try {
+            Class<?> walkerClass = Class.forName("java.lang.StackWalker");
+            Class<?> optionClass = Class.forName("java.lang.StackWalker$Option");
+            Class<?> frameClass = Class.forName("java.lang.StackWalker$StackFrame");
+            Class<?> streamClass = Class.forName("java.util.stream.BaseStream");
+            Class<?> functionClass = Class.forName("java.util.function.Function");
+            // show reflection frames so that frame indices agree with those of Thread.getStackTrace()
+            Object showReflectFrames = optionClass.getField("SHOW_REFLECT_FRAMES").get(null);
+            walker = walkerClass.getMethod("getInstance", optionClass).invoke(null, showReflectFrames);
+            walkMethod = walkerClass.getMethod("walk", functionClass);
+            iteratorMethod = streamClass.getMethod("iterator");
+            toStackTraceElementMethod = frameClass.getMethod("toStackTraceElement");
+            getClassNameMethod = frameClass.getMethod("getClassName");
+            getMethodNameMethod = frameClass.getMethod("getMethodName");
+            // look up the proxy constructor once rather than resolving the proxy class per capture
+            functionConstructor = Proxy.getProxyClass(StackCapture.class.getClassLoader(), functionClass)
+                    .getConstructor(InvocationHandler.class);
+        } catch (Throwable th) {
+            // pre-9 JVM or restricted runtime -- fall back to Thread.getStackTrace()
+            walker = null;
+        }
+    }
+
+    /**
+     * return true if stacks are captured lazily using StackWalker
+     * @return true if StackWalker is available otherwise false
+     */
+    static boolean isLazy()
+    {
+        return walker != null;
+    }
+
+    /**
+     * capture the frames of the current stack from the top down to the trigger method frame plus
+     * the supplied count of frames below it. if the rule engine entry point cannot be located or
+     * StackWalker is unavailable then all frames are returned.
+     *
+     * @param frameCount the number of frames starting from the trigger method frame which need to
+     * be included or a non-positive value if all frames are required
+     * @return an array of stack trace elements for the top of the current stack
+     */
+    static StackTraceElement[] capture(int frameCount)
+    {
+        if (walker == null || frameCount <= 0) {
+            return Thread.currentThread().getStackTrace();
+        }
+        Collector collector = new Collector(frameCount);
+        try {
+            Object function = functionConstructor.newInstance(collector);
+            walkMethod.invoke(walker, function);
+        } catch (Throwable th) {
+            // disable the walker rather than fail every subsequent capture
+            walker = null;
+            Helper.verbose("StackCapture : unable to walk stack " + th);
+            Helper.verboseTraceException(th);
+            return Thread.currentThread().getStackTrace();
+        }
+        return collector.frames.toArray(new StackTraceElement[collector.frames.size()]);
+    }
+
+    /**
+     * the function passed to StackWalker.walk. it consumes frames from the walk until it has
+     * collected frameCount frames starting from the trigger method frame.
+     */
+    private static class Collector implements InvocationHandler
+    {
+        private final int frameCount;
+        final List<StackTraceElement> frames;
+
+        Collector(int frameCount)
+        {
+            this.frameCount = frameCount;
+            this.frames = new ArrayList<StackTraceElement>();
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            if (!"apply".equals(method.getName()) || args == null || args.length != 1) {
+                // equals, hashCode or toString
+                return method.invoke(this, args);
+            }
+            try {
+                Iterator<?> iterator = (Iterator<?>) iteratorMethod.invoke(args[0]);
+                int limit = Integer.MAX_VALUE;
+                boolean inEntry = false;
+                while (iterator.hasNext() && frames.size() < limit) {
+                    Object stackFrame = iterator.next();
+                    StackTraceElement frame;
+                    if (limit == Integer.MAX_VALUE) {
+                        // frames above the rule engine entry point are only ever matched by name
+                        // so avoid the cost of resolving their file and line details
+                        String className = (String) getClassNameMethod.invoke(stackFrame);
+                        String methodName = (String) getMethodNameMethod.invoke(stackFrame);
+                        if (RULE_EXECUTE_METHOD_NAME.equals(methodName) && RULE_CLASS_NAME.equals(className)) {
+                            frame = (StackTraceElement) toStackTraceElementMethod.invoke(stackFrame);
+                        } else {
+                            frame = new StackTraceElement(className, methodName, null, -1);
+                        }
+                    } else {
+                        frame = (StackTraceElement) toStackTraceElementMethod.invoke(stackFrame);
+                    }
+                    if ((limit == Integer.MAX_VALUE || inEntry) &&
+                            RULE_EXECUTE_METHOD_NAME.equals(frame.getMethodName()) &&
+                            RULE_CLASS_NAME.equals(frame.getClassName())) {
+                        // the trigger frame is the first one below the run of Rule.execute frames
+                        inEntry = true;
+                        limit = frames.size() + 1 + frameCount;
+                        if (limit < 0) {
+                            limit = Integer.MAX_VALUE - 1;
+                        }
+                    } else {
+                        inEntry = false;
+                    }
+                    frames.add(frame);
+                }
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2026 Red Hat and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.byteman.rule.metrics;
+
+import org.jboss.byteman.agent.Transformer;
+import org.jboss.byteman.rule.helper.Helper;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * JMX access to rule metrics. The MBean is registered with the platform MBean server the first
+ * time metrics are enabled rather than at agent startup so that an agent which never gathers
+ * metrics does not initialise JMX ahead of the application.
+ */
+public class MetricsControl implements MetricsControlMBean
+{
+    public static final String OBJECT_NAME = "org.jboss.byteman:type=RuleMetrics";
+
+    private static boolean registered = false;
+
+    private final Transformer transformer;
+
+    private MetricsControl(Transformer transformer)
+    {
+        this.transformer = transformer;
+    }
+
+    /**
+     * register an MBean for the supplied transformer if one has not already been registered
+     * @param transformer the agent transformer which manages the installed rules
+     */
+    public static synchronized void register(Transformer transformer)
+    {
+        if (registered) {
+            return;
+        }
+        registered = true;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new MetricsControl(transformer), new ObjectName(OBJECT_NAME));
+        } catch (Throwable th) {
+            Helper.verbose("MetricsControl.register : unable to register " + OBJECT_NAME + " : " + th);
+            Helper.verboseTraceException(th);
+        }
+    }
+
+    public boolean isEnabled()
+    {
+        return RuleMetrics.isEnabled();
+    }
+
+    public void setEnabled(boolean enabled)
+    {
+        if (!Transformer.allowConfigUpdate()) {
+            throw new UnsupportedOperationException("rule metrics can only be enabled or disabled when " + Transformer.ALLOW_CONFIG_UPDATE + " is set");
+        }
+        if (enabled) {
+            System.setProperty(Transformer.RULE_METRICS, "true");
+        } else {
+            System.clearProperty(Transformer.RULE_METRICS);
+        }
+        transformer.updateConfiguration(Transformer.RULE_METRICS);
+    }
+
+    public String[] getRuleNames()
+    {
+        List<String> names = transformer.getMetricsRuleNames();
+        return names.toArray(new String[names.size()]);
+    }
+
+    public String report()
+    {
+        return report(null);
+    }
+
+    public String report(String ruleName)
+    {
+        StringWriter stringWriter = new StringWriter();
+        PrintWriter writer = new PrintWriter(stringWriter);
+        transformer.writeMetrics(writer, ruleName);
+        writer.flush();
+        return stringWriter.toString();
+    }
+
+    public void reset()
+    {
+        transformer.resetMetrics();
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2026 Red Hat and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.byteman.rule.metrics;
+
+/**
+ * Management interface registered as org.jboss.byteman:type=RuleMetrics which exposes the
+ * execution metrics of the currently installed rules.
+ */
+public interface MetricsControlMBean
+{
+    /**
+     * @return true if rule metrics are being gathered
+     */
+    public boolean isEnabled();
+
+    /**
+     * enable or disable gathering of rule metrics by updating system property
+     * org.jboss.byteman.rule.metrics. this is only possible when the agent allows its
+     * configuration to be updated.
+     * @param enabled true if metrics should be gathered
+     */
+    public void setEnabled(boolean enabled);
+
+    /**
+     * @return the names of the installed rules for which metrics have been gathered
+     */
+    public String[] getRuleNames();
+
+    /**
+     * @return the metrics for all installed rules in the format used by the agent listener
+     */
+    public String report();
+
+    /**
+     * @param ruleName the name of an installed rule
+     * @return the metrics for the named rule in the format used by the agent listener
+     */
+    public String report(String ruleName);
+
+    /**
+     * discard the metrics gathered so far for all installed rules
+     */
+    public void reset();
+}
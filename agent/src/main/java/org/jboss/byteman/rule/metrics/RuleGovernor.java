@@ -0,0 +1,240 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2026 Red Hat and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.byteman.rule.metrics;
+
+import org.jboss.byteman.agent.Transformer;
+import org.jboss.byteman.rule.helper.Helper;
+
+import java.io.PrintWriter;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Enforces an overhead budget on a single rule. When a budget is configured the time spent
+ * executing the rule and the number of times it is triggered are accumulated over short
+ * windows. At the end of a window in which the rule exceeded its budget the governor either
+ * disables the rule or samples it down, admitting only one in every N triggers and doubling N
+ * each time the budget is exceeded again. A sampled rule which falls back well within its
+ * budget has its sample interval halved until it is admitted on every trigger once more.
+ *
+ * Disabling or sampling a rule only requires the governor to update its admission state, which
+ * is checked by Rule.execute before the rule is dispatched, so it takes effect immediately
+ * without retransforming the trigger classes.
+ */
+public class RuleGovernor
+{
+    /**
+     * the length of a budget window in nanoseconds
+     */
+    private static final long WINDOW_NANOS = 100 * 1000 * 1000L;
+
+    /**
+     * the largest interval at which a sampled rule is admitted
+     */
+    private static final int MAX_SAMPLE_INTERVAL = 1 << 20;
+
+    /**
+     * the fraction of wall clock time which a rule may spend executing or 0 if time is not budgeted
+     */
+    private static volatile double cpuBudget;
+
+    /**
+     * the number of times per second a rule may be executed or 0 if the rate is not budgeted
+     */
+    private static volatile long rateBudget;
+
+    /**
+     * true if a rule which exceeds its budget should be sampled down rather than disabled
+     */
+    private static volatile boolean sampleOnOverrun;
+
+    /**
+     * true if either budget is configured
+     */
+    private static volatile boolean enabled;
+
+    static {
+        configure(Transformer.getRuleBudgetCpu(), Transformer.getRuleBudgetRate(), Transformer.isRuleBudgetSample());
+    }
+
+    /**
+     * reset the budget applied to all rules. this is called by the agent when the values of the
+     * org.jboss.byteman.rule.budget.* system properties are updated
+     * @param cpuPercent the percentage of wall clock time a rule may spend executing or 0
+     * @param rate the number of times per second a rule may be executed or 0
+     * @param sample true if a rule which exceeds its budget should be sampled down rather than disabled
+     */
+    public static void configure(double cpuPercent, long rate, boolean sample)
+    {
+        cpuBudget = (cpuPercent > 0 ? cpuPercent / 100 : 0);
+        rateBudget = (rate > 0 ? rate : 0);
+        sampleOnOverrun = sample;
+        enabled = (cpuBudget > 0 || rateBudget > 0);
+    }
+
+    public static boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * the interval at which the rule is admitted. 1 means every trigger is admitted, 0 means
+     * the rule is disabled
+     */
+    private volatile int sampleInterval = 1;
+
+    /**
+     * count of triggers seen while sampling. updates are not synchronized because an
+     * occasional lost update merely shifts which trigger is admitted
+     */
+    private int sampleCount = 0;
+
+    /**
+     * a description of the most recent budget overrun or null if the budget has not been exceeded
+     */
+    private volatile String overrun = null;
+
+    private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+    private final StripedCounter windowTime = new StripedCounter();
+    private final StripedCounter windowCount = new StripedCounter();
+
+    /**
+     * decide whether a trigger of the rule should execute the rule
+     * @return true if the rule should be executed otherwise false
+     */
+    public boolean admit()
+    {
+        int interval = sampleInterval;
+        if (interval == 1) {
+            return true;
+        }
+        if (interval == 0) {
+            return false;
+        }
+        return (sampleCount++ % interval) == 0;
+    }
+
+    /**
+     * account for an execution of the rule and, if the current window has ended, check
+     * whether the rule has kept within its budget
+     * @param ruleName the name of the governed rule
+     * @param elapsed the time taken to execute the rule in nanoseconds
+     * @param now the time at which execution completed in nanoseconds
+     */
+    public void record(String ruleName, long elapsed, long now)
+    {
+        windowTime.add(elapsed);
+        windowCount.increment();
+        long start = windowStart.get();
+        long windowNanos = now - start;
+        if (windowNanos >= WINDOW_NANOS && windowStart.compareAndSet(start, now)) {
+            long time = windowTime.sum();
+            long count = windowCount.sum();
+            windowTime.reset();
+            windowCount.reset();
+            check(ruleName, time, count, windowNanos);
+        }
+    }
+
+    private void check(String ruleName, long time, long count, long windowNanos)
+    {
+        double cpu = cpuBudget;
+        long rate = rateBudget;
+        double cpuUsed = (double) time / windowNanos;
+        double rateUsed = count * 1.0e9 / windowNanos;
+        boolean overCpu = (cpu > 0 && cpuUsed > cpu);
+        boolean overRate = (rate > 0 && rateUsed > rate);
+        int interval = sampleInterval;
+        if (interval == 0) {
+            // already disabled -- executions may still complete after the rule was disabled
+            return;
+        }
+        if (overCpu || overRate) {
+            String reason;
+            if (overCpu) {
+                reason = String.format("used %.3f%% of wall clock time against a budget of %.3f%%", cpuUsed * 100, cpu * 100);
+            } else {
+                reason = String.format("executed %.0f times per second against a budget of %d", rateUsed, rate);
+            }
+            overrun = reason;
+            if (!sampleOnOverrun) {
+                sampleInterval = 0;
+                Helper.err("RuleGovernor : disabled rule " + ruleName + " : " + reason);
+            } else if (interval < MAX_SAMPLE_INTERVAL) {
+                sampleInterval = interval * 2;
+                Helper.err("RuleGovernor : sampling rule " + ruleName + " once every " + (interval * 2) + " triggers : " + reason);
+            }
+        } else if (interval > 1 &&
+                (cpu <= 0 || cpuUsed * 2 < cpu) &&
+                (rate <= 0 || rateUsed * 2 < rate)) {
+            // comfortably within budget so admit more triggers
+            sampleInterval = interval / 2;
+            Helper.verbose("RuleGovernor : sampling rule " + ruleName + " once every " + (interval / 2) + " triggers");
+        }
+    }
+
+    /**
+     * re-enable the rule and discard any accumulated measurements. this is called when the
+     * budget configuration is updated
+     */
+    public void reset()
+    {
+        sampleInterval = 1;
+        sampleCount = 0;
+        overrun = null;
+        windowTime.reset();
+        windowCount.reset();
+        windowStart.set(System.nanoTime());
+    }
+
+    /**
+     * @return true if the governor has disabled or sampled down the rule
+     */
+    public boolean isRestricted()
+    {
+        return sampleInterval != 1;
+    }
+
+    /**
+     * print the governor's restriction on the rule, if any
+     * @param writer the writer to print to
+     */
+    public void writeTo(PrintWriter writer)
+    {
+        int interval = sampleInterval;
+        if (interval == 1) {
+            return;
+        }
+        if (interval == 0) {
+            writer.print("Disabled by governor");
+        } else {
+            writer.print("Sampled by governor once every ");
+            writer.print(interval);
+            writer.print(" triggers");
+        }
+        String reason = overrun;
+        if (reason != null) {
+            writer.print(" : ");
+            writer.print(reason);
+        }
+        writer.println();
+    }
+}
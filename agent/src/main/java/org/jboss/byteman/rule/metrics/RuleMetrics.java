@@ -0,0 +1,191 @@
+/*
+ * JBoss, Home of Professional Open Source
+ * Copyright 2026 Red Hat and individual contributors
+ * by the @authors tag. See the copyright.txt in the distribution for a
+ * full listing of individual contributors.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.jboss.byteman.rule.metrics;
+
+import org.jboss.byteman.agent.Transformer;
+
+import java.io.PrintWriter;
+
+/**
+ * Execution metrics for a single rule, accumulated across every trigger point at which the
+ * rule has been injected. Metrics are only gathered while they are enabled by setting system
+ * property org.jboss.byteman.rule.metrics. When disabled the trigger path pays for a single
+ * volatile read.
+ */
+public class RuleMetrics
+{
+    /**
+     * true if metrics are being gathered
+     */
+    private static volatile boolean enabled = Transformer.isRuleMetrics();
+
+    /**
+     * count of calls to Rule.execute which were dispatched to the rule
+     */
+    private final StripedCounter triggered = new StripedCounter();
+    /**
+     * count of firings whose condition was true and whose actions were therefore fired
+     */
+    private final StripedCounter fired = new StripedCounter();
+    /**
+     * count of firings whose condition was false
+     */
+    private final StripedCounter skipped = new StripedCounter();
+    /**
+     * count of firings whose action threw an exception back to the trigger method
+     */
+    private final StripedCounter thrown = new StripedCounter();
+    /**
+     * count of firings which failed with an error while executing the rule
+     */
+    private final StripedCounter errors = new StripedCounter();
+    /**
+     * total nanoseconds spent inside Rule.execute
+     */
+    private final StripedCounter totalTime = new StripedCounter();
+    /**
+     * distribution of nanoseconds spent inside Rule.execute
+     */
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    public static boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * enable or disable gathering of metrics. this is called by the agent when the value of
+     * system property org.jboss.byteman.rule.metrics is updated
+     * @param value true if metrics should be gathered
+     */
+    public static void setEnabled(boolean value)
+    {
+        enabled = value;
+    }
+
+    public void recordTrigger(long nanos)
+    {
+        triggered.increment();
+        totalTime.add(nanos);
+        latency.record(nanos);
+    }
+
+    public void recordCondition(boolean passed)
+    {
+        if (passed) {
+            fired.increment();
+        } else {
+            skipped.increment();
+        }
+    }
+
+    public void recordThrow()
+    {
+        thrown.increment();
+    }
+
+    public void recordError()
+    {
+        errors.increment();
+    }
+
+    public long getTriggered()
+    {
+        return triggered.sum();
+    }
+
+    public long getFired()
+    {
+        return fired.sum();
+    }
+
+    public long getSkipped()
+    {
+        return skipped.sum();
+    }
+
+    public long getThrown()
+    {
+        return thrown.sum();
+    }
+
+    public long getErrors()
+    {
+        return errors.sum();
+    }
+
+    public long getTotalTime()
+    {
+        return totalTime.sum();
+    }
+
+    /**
+     * return the latency in nanoseconds at or below which the supplied fraction of firings completed
+     * @param fraction a value between 0 and 1
+     * @return the latency at the supplied percentile
+     */
+    public long getLatency(double fraction)
+    {
+        return latency.percentile(fraction);
+    }
+
+    public long getMaxLatency()
+    {
+        return latency.getMax();
+    }
+
+    public void reset()
+    {
+        triggered.reset();
+        fired.reset();
+        skipped.reset();
+        thrown.reset();
+        errors.reset();
+        totalTime.reset();
+        latency.reset();
+    }
+
+    /**
+     * write the metrics for a rule as a RULE line followed by one name=value line per metric.
+     * latencies are in nanoseconds
+     * @param name the name of the rule
+     * @param writer the writer to print to
+     */
+    public void writeTo(String name, PrintWriter writer)
+    {
+        long count = getTriggered();
+        long total = getTotalTime();
+        writer.println("RULE " + name);
+        writer.println("triggered=" + count);
+        writer.println("fired=" + getFired());
+        writer.println("skipped=" + getSkipped());
+        writer.println("thrown=" + getThrown());
+        writer.println("errors=" + getErrors());
+        writer.println("latency.total=" + total);
+        writer.println("latency.mean=" + (count == 0 ? 0 : total / count));
+        writer.println("latency.p50=" + getLatency(0.5));
+        writer.println("latency.p90=" + getLatency(0.9));
+        writer.println("latency.p99=" + getLatency(0.99));
+        writer.println("latency.p999=" + getLatency(0.999));
+        writer.println("latency.max=" + getMaxLatency());
+    }
+}
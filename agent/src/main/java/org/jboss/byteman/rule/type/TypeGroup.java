@@ -24,8 +24,11 @@
 package org.jboss.byteman.rule.type;
 
 import java.util.HashMap;
+import java.util.Map;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.SortedMap;
+import java.util.TreeMap;
 
 /**
  * the collection of types associated with an ECA rule
@@ -228,6 +231,23 @@ public class TypeGroup {
         return true;
     }
 
+    /**
+     * retrieve the classes to which the non-primitive types in this group have been resolved
+     * @return a map from type name to resolved class sorted by type name
+     */
+    public SortedMap<String, Class> getResolvedClasses()
+    {
+        SortedMap<String, Class> resolved = new TreeMap<String, Class>();
+        for (Map.Entry<String, Type> entry : typeTable.entrySet()) {
+            Type type = entry.getValue();
+            Class clazz = type.getTargetClass();
+            if (clazz != null && !type.isPrimitive()) {
+                resolved.put(entry.getKey(), clazz);
+            }
+        }
+        return resolved;
+    }
+
     public Type createArray(Type baseType)
     {
         String arrayTypeName = baseType.getName() + "[]";
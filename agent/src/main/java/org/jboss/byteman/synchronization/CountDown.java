@@ -33,6 +33,11 @@ public class CountDown
         this.count = (count < 1 ? 1 : count);
     }
 
+    /**
+     * decrement the count if it is positive
+     * @return true only for the first decrement attempted after the count has reached zero
+     * otherwise false. this ensures that only one caller sees the countdown complete.
+     */
     public synchronized boolean decrement()
     {
         if (count > 0) {
@@ -40,7 +45,13 @@ public class CountDown
             return false;
         }
 
-        return true;
+        if (count == 0) {
+            // mark the countdown as completed
+            count = -1;
+            return true;
+        }
+
+        return false;
     }
 
     private int count;
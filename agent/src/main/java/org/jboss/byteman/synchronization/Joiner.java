@@ -27,9 +27,15 @@ import org.jboss.byteman.rule.exception.ExecuteException;
 
 import java.util.List;
 import java.util.LinkedList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * class used by default helper to implement join dependencies between threads
+ * class used by default helper to implement join dependencies between threads. n.b. the
+ * parent waits using a java.util.concurrent lock and parks while child threads exit rather
+ * than using monitors so that a virtual thread which joins does not pin its carrier thread
  */
 public class Joiner
 {
@@ -67,12 +73,19 @@ public class Joiner
     private List<Thread> children;
     private int max;
     private Thread parent;
+    private final ReentrantLock lock;
+    private final Condition filled;
+
+    private static final long MIN_EXIT_POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(10);
+    private static final long MAX_EXIT_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
 
     public Joiner(int max)
     {
         this.max = max;
         this.children = new LinkedList<Thread>();
         this.parent =  null;
+        this.lock = new ReentrantLock();
+        this.filled = lock.newCondition();
     }
 
     public int getMax()
@@ -80,36 +93,42 @@ public class Joiner
         return max;
     }
 
-    public synchronized Status addChild(Thread thread)
+    public Status addChild(Thread thread)
     {
-        if (children.contains(thread)) {
-            return Status.DUPLICATE;
-        }
+        lock.lock();
+        try {
+            if (children.contains(thread)) {
+                return Status.DUPLICATE;
+            }
 
-        int size = children.size();
+            int size = children.size();
 
-        if (size == max) {
-            return Status.EXCESS;
-        }
+            if (size == max) {
+                return Status.EXCESS;
+            }
 
-        children.add(thread);
-        size++;
+            children.add(thread);
+            size++;
 
-        if (size == max) {
-            if (parent ==  null) {
-                return Status.FILLED;
-            } else {
-                notifyAll();
-                return Status.DONE;
+            if (size == max) {
+                if (parent ==  null) {
+                    return Status.FILLED;
+                } else {
+                    filled.signalAll();
+                    return Status.DONE;
+                }
             }
+            return Status.ADDED;
+        } finally {
+            lock.unlock();
         }
-        return Status.ADDED;
     }
 
     public boolean joinChildren(Thread thread, long millis)
     {
         long target_time=System.currentTimeMillis() + millis;
-        synchronized (this) {
+        lock.lock();
+        try {
             if (parent != null) {
                 return false;
             }
@@ -117,11 +136,11 @@ public class Joiner
             while (children.size() < max) {
                 try {
                     if (millis <= 0) {
-                        this.wait();
+                        filled.await();
                     } else {
                         long wait_time=target_time - System.currentTimeMillis();
                         if(wait_time > 0) {
-                            this.wait(wait_time);
+                            filled.await(wait_time, TimeUnit.MILLISECONDS);
                         } else {
                             throw new ExecuteException("timeout occurred in joinWait");
                         }
@@ -130,28 +149,48 @@ public class Joiner
                     // do nothing
                 }
             }
+        } finally {
+            lock.unlock();
         }
 
-        // since we are the parent and the waiting is over we don't need to stay synchronized
+        // since we are the parent and the waiting is over we don't need to stay locked
         for (int i = 0; i < max;) {
             Thread child = children.get(i);
-            try {
-                if (millis <= 0) {
-                    child.join();
-                } else {
-                    long wait_time=target_time - System.currentTimeMillis();
-                    if(wait_time > 0) {
-                        child.join(wait_time);
-                    } else {
-                        throw new ExecuteException("timeout occurred in joinWait");
-                    }
-                }
-            } catch (InterruptedException e) {
-                // try again
+            if (!awaitExit(child, millis, target_time)) {
+                // interrupted
                 break;
             }
             i++;
         }
         return true;
     }
+
+    /**
+     * wait for a child thread to exit. n.b. Thread.join waits on the thread's monitor when the
+     * child is a platform thread so this parks and polls instead, backing off up to a small limit.
+     * @param child the thread to wait for
+     * @param millis how long to wait (wait forever if 0)
+     * @param target_time the time at which the wait times out if millis is not 0
+     * @return true if the child exited or the wait timed out or false if the calling thread was
+     * interrupted
+     */
+    private boolean awaitExit(Thread child, long millis, long target_time)
+    {
+        if (millis > 0 && target_time - System.currentTimeMillis() <= 0) {
+            throw new ExecuteException("timeout occurred in joinWait");
+        }
+        long pause = MIN_EXIT_POLL_NANOS;
+        while (child.isAlive()) {
+            if (millis > 0 && target_time - System.currentTimeMillis() <= 0) {
+                // as for a timed join the next child, if any, reports the timeout
+                return true;
+            }
+            LockSupport.parkNanos(this, pause);
+            if (Thread.interrupted()) {
+                return false;
+            }
+            pause = Math.min(pause * 2, MAX_EXIT_POLL_NANOS);
+        }
+        return true;
+    }
 }
@@ -25,8 +25,14 @@ package org.jboss.byteman.synchronization;
 
 import org.jboss.byteman.rule.exception.ExecuteException;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
- * class used to manage rule rendezvous operations
+ * class used to manage rule rendezvous operations. n.b. arriving threads wait using a
+ * java.util.concurrent lock rather than a monitor so that a virtual thread which waits
+ * does not pin its carrier thread
  */
 public class Rendezvous
 {
@@ -42,11 +48,21 @@ public class Rendezvous
         this.needsRemove = false;
         this.isDeleted = false;
         this.counter = new Counter();
+        this.lock = new ReentrantLock();
+        this.arrivals = lock.newCondition();
+    }
+
+    /**
+     * retrieve the lock which must be held when calling rendezvous or delete
+     * @return the lock
+     */
+    public ReentrantLock getLock()
+    {
+        return lock;
     }
 
     /**
-     * enter this rendezvous. n.b. this must be called synchronized on the rendezvous object
-     * in question
+     * enter this rendezvous. n.b. this must be called holding the lock returned by getLock
      * @param millis how long to wait (wait forever if 0)
      * @return the index in arrival order from 0 to expected of the calling thread or -1 if
      * either the rendezvous has completed and is not restartable or the rendezvous has been deleted
@@ -71,11 +87,11 @@ public class Rendezvous
             while (currentCounter.arrived < expected) {
                 try {
                     if(millis <= 0) {
-                        this.wait();
+                        arrivals.await();
                     } else {
                         long wait_time=target_time - System.currentTimeMillis();
                         if(wait_time > 0) {
-                            this.wait(wait_time);
+                            arrivals.await(wait_time, TimeUnit.MILLISECONDS);
                         } else {
                             throw new ExecuteException("timeout occurred in rendezvous");
                         }
@@ -102,7 +118,7 @@ public class Rendezvous
                 isDeleted = true;
                 needsRemove = true;
             }
-            this.notifyAll();
+            arrivals.signalAll();
         }
 
         return index;
@@ -112,7 +128,7 @@ public class Rendezvous
 
     /**
      * delete this rendezvous causing any waiting threads to return -1 form the rendezvous call. n.b. this
-     * must be called synchronized on the rendezvous object in question
+     * must be called holding the lock returned by getLock
      * @return false if a delete has already been requested otherwise true
      */
     public boolean delete()
@@ -126,7 +142,7 @@ public class Rendezvous
         // if any threads arrived then make sure they are *all* poisoned
         if (counter.arrived > 0 && counter.arrived < expected) {
             counter.isPoisoned = true;
-            this.notifyAll();
+            arrivals.signalAll();
         }
 
         return true;
@@ -160,6 +176,16 @@ public class Rendezvous
      */
     private boolean needsRemove;
 
+    /**
+     * lock guarding the rendezvous state
+     */
+    private final ReentrantLock lock;
+
+    /**
+     * condition signalled when the rendezvous completes or is deleted
+     */
+    private final Condition arrivals;
+
     /**
      * retrieve the number of threads waiting at the rendezvous or -1 if the rendezvous has
      * been deleted
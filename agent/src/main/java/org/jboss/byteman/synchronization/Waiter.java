@@ -25,8 +25,14 @@ package org.jboss.byteman.synchronization;
 
 import org.jboss.byteman.rule.exception.ExecuteException;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
 /**
- * class used to manage rule wait operations
+ * class used to manage rule wait operations. n.b. waits are implemented using a
+ * java.util.concurrent lock rather than a monitor so that a virtual thread which
+ * waits does not pin its carrier thread
  */
 public class Waiter
 {
@@ -41,20 +47,27 @@ public class Waiter
         this.signalled = signalled;
         this.killed = killed;
         this.waiting = false;
+        this.lock = new ReentrantLock();
+        this.changed = lock.newCondition();
     }
 
     public void waitFor(long millisecs)
     {
         long start = System.currentTimeMillis();
         long waitForMillis = millisecs;
-        synchronized(this) {
+        lock.lock();
+        try {
             waiting = true;
             while (!signalled && waitForMillis >= 0){
                 try {
                 	if (waitForMillis == 0 && millisecs > 0) {
                 		break;
                 	}
-                	this.wait(waitForMillis);
+                	if (waitForMillis == 0) {
+                	    changed.await();
+                	} else {
+                	    changed.await(waitForMillis, TimeUnit.MILLISECONDS);
+                	}
                 } catch (InterruptedException e) {
                     // ignore
                 }
@@ -66,8 +79,10 @@ public class Waiter
             }
             if (signalled) {
                // notify in case a signalling thread was waiting
-               this.notifyAll();
+               changed.signalAll();
             }
+        } finally {
+            lock.unlock();
         }
         
         // if a signalKill was used then we have to throw an exception otherwise we just return
@@ -80,12 +95,15 @@ public class Waiter
     {
         boolean result;
 
-        synchronized (this) {
+        lock.lock();
+        try {
             result = signalled;
             if (!signalled) {
                 signalled = true;
-                this.notifyAll();
+                changed.signalAll();
             }
+        } finally {
+            lock.unlock();
         }
 
         return result;
@@ -95,18 +113,41 @@ public class Waiter
     {
         boolean result;
 
-        synchronized (this) {
+        lock.lock();
+        try {
             result = signalled;
             if (!signalled) {
                 signalled = true;
                 killed = true;
-                this.notifyAll();
+                changed.signalAll();
             }
+        } finally {
+            lock.unlock();
         }
 
         return result;
     }
 
+    /**
+     * suspend the calling thread until some other thread has called waitFor. this is used
+     * by a thread which has installed a pre-signalled waiter and must meet a waiting thread
+     */
+    public void awaitWaiting()
+    {
+        lock.lock();
+        try {
+            while (!waiting) {
+                try {
+                    changed.await();
+                } catch (InterruptedException e) {
+                    // do nothing
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
     public boolean waiting()
     {
         return waiting;
@@ -122,19 +163,31 @@ public class Waiter
      * true if this waiter has been signalled by a call to signalKill
      */
 
-    private boolean signalled;
+    private volatile boolean signalled;
 
     /**
      * true if this waiter has been signalled by a call to signal or signalKill
      */
 
-    private boolean killed;
+    private volatile boolean killed;
 
     /**
      * true if waitFor has been called
      */
 
-    private boolean waiting;
+    private volatile boolean waiting;
+
+    /**
+     * lock guarding updates to the waiter state
+     */
+
+    private final ReentrantLock lock;
+
+    /**
+     * condition signalled when the waiter is signalled or a thread starts waiting
+     */
+
+    private final Condition changed;
 
     /**
      * getter for signalled flag
@@ -0,0 +1,76 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2026, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.byteman.tests.helpertests;
+
+import org.jboss.byteman.tests.Test;
+
+/**
+ * Test that caller checks and stack formatting only look as deep as they need to while
+ * still seeing the whole stack when no frame limit is supplied
+ */
+public class TestCallerDepth extends Test
+{
+    public TestCallerDepth()
+    {
+        super(TestCallerDepth.class.getCanonicalName());
+    }
+
+    public void test()
+    {
+        try {
+            log("calling TestCallerDepth.recurse");
+            recurse(20);
+            log("called TestCallerDepth.recurse");
+        } catch (Exception e) {
+            log(e);
+        }
+
+        checkOutput(true);
+    }
+
+    public void recurse(int depth)
+    {
+        if (depth > 0) {
+            recurse(depth - 1);
+        } else {
+            triggerMethod();
+        }
+    }
+
+    public void triggerMethod()
+    {
+        log("inside TestCallerDepth.triggerMethod");
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("calling TestCallerDepth.recurse");
+        logExpected("first caller true");
+        logExpected("all frames true");
+        logExpected("near frames false");
+        logExpected("elided frames true");
+        logExpected("inside TestCallerDepth.triggerMethod");
+        logExpected("called TestCallerDepth.recurse");
+
+        return super.getExpected();
+    }
+}
@@ -0,0 +1,107 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2026, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.byteman.tests.helpertests;
+
+import org.jboss.byteman.tests.Test;
+
+/**
+ * Test to ensure counters and countdowns behave correctly when rules fire concurrently
+ */
+public class TestCounters extends Test
+{
+    public TestCounters()
+    {
+        super(TestCounters.class.getCanonicalName());
+    }
+
+    private final static int THREAD_COUNT = 8;
+    private final static int ITERATIONS = 100;
+
+    public void test()
+    {
+        try {
+            log("calling TestCounters.createCountDown");
+            createCountDown();
+            runThreads();
+            readCount();
+            checkCountDown();
+            log("called TestCounters.checkCountDown");
+        } catch (Exception e) {
+            log(e);
+        }
+
+        checkOutput(true);
+    }
+
+    private void runThreads() throws InterruptedException
+    {
+        Thread[] threads = new Thread[THREAD_COUNT];
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < ITERATIONS; j++) {
+                        triggerCount();
+                        triggerCountDown();
+                    }
+                }
+            };
+        }
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            threads[i].start();
+        }
+        for (int i = 0; i < THREAD_COUNT; i++) {
+            threads[i].join();
+        }
+    }
+
+    public void createCountDown()
+    {
+    }
+
+    public void triggerCount()
+    {
+    }
+
+    public void triggerCountDown()
+    {
+    }
+
+    public void readCount()
+    {
+    }
+
+    public void checkCountDown()
+    {
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("calling TestCounters.createCountDown");
+        logExpected("createCountDown : created countdown");
+        logExpected("triggerCountDown : countdown completed");
+        logExpected("readCount : count == " + (THREAD_COUNT * ITERATIONS));
+        logExpected("checkCountDown : countdown removed");
+        logExpected("called TestCounters.checkCountDown");
+
+        return super.getExpected();
+    }
+}
@@ -0,0 +1,268 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2026, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.byteman.tests.helpertests;
+
+import org.jboss.byteman.tests.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Test to ensure the rendezvous, waitFor/signalWake and joinWait builtins work when rules fire
+ * on thousands of virtual threads. If a builtin blocked using a monitor the waiting threads would
+ * pin their carrier threads and the threads needed to complete each scenario would never run.
+ * When the JVM does not support virtual threads the scenarios are run on a smaller number of
+ * platform threads.
+ */
+public class TestVirtualThreadSync extends Test
+{
+    public TestVirtualThreadSync()
+    {
+        super(TestVirtualThreadSync.class.getCanonicalName());
+    }
+
+    private final static int VIRTUAL_THREAD_COUNT = 2000;
+    private final static int PLATFORM_THREAD_COUNT = 100;
+    private final static long TIMEOUT_MILLIS = 60000;
+
+    public void test()
+    {
+        try {
+            ThreadFactory factory = virtualThreadFactory();
+            int count = VIRTUAL_THREAD_COUNT;
+            if (factory == null) {
+                factory = platformThreadFactory();
+                count = PLATFORM_THREAD_COUNT;
+            }
+            log("rendezvous : " + runRendezvous(factory, count));
+            log("waitFor : " + runWaitFor(factory, count));
+            log("joinWait : " + runJoinWait(factory, count));
+        } catch (Exception e) {
+            log(e);
+        }
+
+        checkOutput(true);
+    }
+
+    private String runRendezvous(ThreadFactory factory, int count) throws InterruptedException
+    {
+        final String id = "TestVirtualThreadSync.rendezvous";
+        if (!makeRendezvous(id, count)) {
+            return "failed to create rendezvous";
+        }
+        final AtomicIntegerArray arrivals = new AtomicIntegerArray(count);
+        final AtomicInteger failures = new AtomicInteger(0);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < count; i++) {
+            threads.add(factory.newThread(new Runnable() {
+                public void run()
+                {
+                    int index = meet(id);
+                    if (index >= 0 && index < arrivals.length()) {
+                        arrivals.incrementAndGet(index);
+                    } else {
+                        failures.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        if (!runAll(threads)) {
+            return "timed out";
+        }
+        if (failures.get() > 0) {
+            return failures.get() + " threads failed to meet";
+        }
+        for (int i = 0; i < count; i++) {
+            if (arrivals.get(i) != 1) {
+                return "arrival index " + i + " returned " + arrivals.get(i) + " times";
+            }
+        }
+        return "ok";
+    }
+
+    private String runWaitFor(ThreadFactory factory, int count) throws InterruptedException
+    {
+        final AtomicInteger woken = new AtomicInteger(0);
+        List<Thread> threads = new ArrayList<Thread>();
+        int pairs = count / 2;
+        for (int i = 0; i < pairs; i++) {
+            final String id = "TestVirtualThreadSync.wait." + i;
+            threads.add(factory.newThread(new Runnable() {
+                public void run()
+                {
+                    await(id);
+                    woken.incrementAndGet();
+                }
+            }));
+            threads.add(factory.newThread(new Runnable() {
+                public void run()
+                {
+                    signal(id);
+                }
+            }));
+        }
+        if (!runAll(threads)) {
+            return "timed out";
+        }
+        if (woken.get() != pairs) {
+            return (pairs - woken.get()) + " waiting threads were not woken";
+        }
+        return "ok";
+    }
+
+    private String runJoinWait(ThreadFactory factory, int count) throws InterruptedException
+    {
+        final String id = "TestVirtualThreadSync.join";
+        if (!makeJoin(id, count)) {
+            return "failed to create join";
+        }
+        final AtomicInteger enlisted = new AtomicInteger(0);
+        final AtomicInteger joined = new AtomicInteger(0);
+        final int expected = count;
+        List<Thread> threads = new ArrayList<Thread>();
+        threads.add(factory.newThread(new Runnable() {
+            public void run()
+            {
+                if (join(id, expected)) {
+                    joined.incrementAndGet();
+                }
+            }
+        }));
+        for (int i = 0; i < count; i++) {
+            threads.add(factory.newThread(new Runnable() {
+                public void run()
+                {
+                    if (enlist(id)) {
+                        enlisted.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        if (!runAll(threads)) {
+            return "timed out";
+        }
+        if (enlisted.get() != count) {
+            return (count - enlisted.get()) + " threads failed to enlist";
+        }
+        if (joined.get() != 1) {
+            return "parent failed to join";
+        }
+        return "ok";
+    }
+
+    /**
+     * start all the supplied threads and wait for them to exit
+     * @return true if all the threads exited before the timeout expired otherwise false
+     */
+    private boolean runAll(List<Thread> threads) throws InterruptedException
+    {
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        for (Thread thread : threads) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining > 0) {
+                thread.join(remaining);
+            }
+            if (thread.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * obtain a factory for virtual threads via reflection so the test can be compiled and run
+     * on a JVM which does not support them
+     * @return the factory or null if virtual threads are not supported
+     */
+    private static ThreadFactory virtualThreadFactory()
+    {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            return (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory platformThreadFactory()
+    {
+        return new ThreadFactory() {
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread = new Thread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    // trigger methods whose results are supplied by the rules
+
+    public boolean makeRendezvous(String id, int count)
+    {
+        return false;
+    }
+
+    public int meet(String id)
+    {
+        return -1;
+    }
+
+    public void await(String id)
+    {
+    }
+
+    public void signal(String id)
+    {
+    }
+
+    public boolean makeJoin(String id, int count)
+    {
+        return false;
+    }
+
+    public boolean enlist(String id)
+    {
+        return false;
+    }
+
+    public boolean join(String id, int count)
+    {
+        return false;
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("rendezvous : ok");
+        logExpected("waitFor : ok");
+        logExpected("joinWait : ok");
+
+        return super.getExpected();
+    }
+}
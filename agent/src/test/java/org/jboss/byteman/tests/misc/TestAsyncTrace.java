@@ -0,0 +1,113 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2026, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.byteman.tests.misc;
+
+import org.jboss.byteman.tests.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Test to ensure that trace output written asynchronously is all written to the trace file,
+ * in order, by the time traceClose returns, even when the trace queue is too small to hold
+ * all the messages
+ */
+public class TestAsyncTrace extends Test
+{
+    public TestAsyncTrace()
+    {
+        super(TestAsyncTrace.class.getCanonicalName());
+    }
+
+    public void test()
+    {
+        try {
+            File file = File.createTempFile("TestAsyncTrace", ".txt");
+            file.delete();
+            file.deleteOnExit();
+            Target target = new Target();
+            log("opening trace file");
+            target.open(file.getPath());
+            for (int i = 0; i < MESSAGE_COUNT; i++) {
+                target.record("message " + i);
+            }
+            log("closing trace file");
+            target.close();
+            List<String> lines = readLines(file);
+            log("trace file contains " + lines.size() + " lines");
+            if (!lines.isEmpty()) {
+                log("first line : " + lines.get(0));
+                log("last line : " + lines.get(lines.size() - 1));
+            }
+        } catch (Exception e) {
+            log(e);
+        }
+
+        checkOutput(true);
+    }
+
+    private List<String> readLines(File file) throws Exception
+    {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+    private static final int MESSAGE_COUNT = 1000;
+
+    public static class Target
+    {
+        public void open(String fileName)
+        {
+        }
+
+        public void record(String message)
+        {
+        }
+
+        public void close()
+        {
+        }
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("opening trace file");
+        logExpected("closing trace file");
+        logExpected("trace file contains " + MESSAGE_COUNT + " lines");
+        logExpected("first line : message 0");
+        logExpected("last line : message " + (MESSAGE_COUNT - 1));
+
+        return super.getExpected();
+    }
+}
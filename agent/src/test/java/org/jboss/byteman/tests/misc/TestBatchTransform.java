@@ -0,0 +1,91 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2026, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.byteman.tests.misc;
+
+import org.jboss.byteman.tests.Test;
+
+/**
+ * Test to ensure that several rules targeting the same class all get injected
+ * when they are applied as a batch
+ */
+public class TestBatchTransform extends Test
+{
+    public TestBatchTransform()
+    {
+        super(TestBatchTransform.class.getCanonicalName());
+    }
+
+    public void test()
+    {
+        try {
+            log("calling TestBatchTransform.triggerMethod(1)");
+            int result = triggerMethod(1);
+            log("called TestBatchTransform.triggerMethod(1) : " + result);
+            log("calling TestBatchTransform.triggerMethod(-1)");
+            result = triggerMethod(-1);
+            log("called TestBatchTransform.triggerMethod(-1) : " + result);
+            log("calling TestBatchTransform.otherMethod");
+            otherMethod();
+            log("called TestBatchTransform.otherMethod");
+        } catch (Exception e) {
+            log(e);
+        }
+
+        checkOutput(true);
+    }
+
+    public int triggerMethod(int i)
+    {
+        log("inside TestBatchTransform.triggerMethod(" + i + ")");
+        return calledMethod(i) + 1;
+    }
+
+    public int calledMethod(int i)
+    {
+        return i * 2;
+    }
+
+    public void otherMethod()
+    {
+        log("inside TestBatchTransform.otherMethod");
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("calling TestBatchTransform.triggerMethod(1)");
+        logExpected("triggerMethod : entry 1");
+        logExpected("inside TestBatchTransform.triggerMethod(1)");
+        logExpected("triggerMethod : invoke calledMethod(1)");
+        logExpected("triggerMethod : exit 3");
+        logExpected("called TestBatchTransform.triggerMethod(1) : 3");
+        logExpected("calling TestBatchTransform.triggerMethod(-1)");
+        logExpected("triggerMethod : entry -1");
+        logExpected("triggerMethod : early return");
+        logExpected("called TestBatchTransform.triggerMethod(-1) : 0");
+        logExpected("calling TestBatchTransform.otherMethod");
+        logExpected("otherMethod : entry");
+        logExpected("inside TestBatchTransform.otherMethod");
+        logExpected("called TestBatchTransform.otherMethod");
+
+        return super.getExpected();
+    }
+}
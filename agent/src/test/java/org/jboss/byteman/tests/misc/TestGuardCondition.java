@@ -0,0 +1,119 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2026, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.byteman.tests.misc;
+
+import org.jboss.byteman.tests.Test;
+
+/**
+ * Test to ensure rules whose conditions are tested as a guard before dispatch
+ * fire exactly when their conditions hold
+ */
+public class TestGuardCondition extends Test
+{
+    public int guardCount;
+
+    public TestGuardCondition()
+    {
+        super(TestGuardCondition.class.getCanonicalName());
+    }
+
+    public void test()
+    {
+        try {
+            log("calling TestGuardCondition.triggerMethod1");
+            triggerMethod1();
+            triggerMethod1();
+            setFlag();
+            triggerMethod1();
+            clearFlag();
+            triggerMethod1();
+            log("called TestGuardCondition.triggerMethod1");
+            log("calling TestGuardCondition.triggerMethod2");
+            triggerMethod2();
+            countMethod();
+            triggerMethod2();
+            countMethod();
+            triggerMethod2();
+            log("called TestGuardCondition.triggerMethod2");
+            log("calling TestGuardCondition.triggerMethod3");
+            guardCount = 2;
+            triggerMethod3(1);
+            triggerMethod3(2);
+            log("called TestGuardCondition.triggerMethod3");
+        } catch (Exception e) {
+            log(e);
+        }
+
+        checkOutput(true);
+    }
+
+    public void triggerMethod1()
+    {
+        log("inside TestGuardCondition.triggerMethod1");
+    }
+
+    public void triggerMethod2()
+    {
+        log("inside TestGuardCondition.triggerMethod2");
+    }
+
+    public void triggerMethod3(int count)
+    {
+        log("inside TestGuardCondition.triggerMethod3 " + count);
+    }
+
+    public void setFlag()
+    {
+    }
+
+    public void clearFlag()
+    {
+    }
+
+    public void countMethod()
+    {
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("calling TestGuardCondition.triggerMethod1");
+        logExpected("inside TestGuardCondition.triggerMethod1");
+        logExpected("inside TestGuardCondition.triggerMethod1");
+        logExpected("triggerMethod1 : flag guard passed");
+        logExpected("inside TestGuardCondition.triggerMethod1");
+        logExpected("inside TestGuardCondition.triggerMethod1");
+        logExpected("called TestGuardCondition.triggerMethod1");
+        logExpected("calling TestGuardCondition.triggerMethod2");
+        logExpected("inside TestGuardCondition.triggerMethod2");
+        logExpected("triggerMethod2 : counter guard passed");
+        logExpected("inside TestGuardCondition.triggerMethod2");
+        logExpected("inside TestGuardCondition.triggerMethod2");
+        logExpected("called TestGuardCondition.triggerMethod2");
+        logExpected("calling TestGuardCondition.triggerMethod3");
+        logExpected("inside TestGuardCondition.triggerMethod3 1");
+        logExpected("triggerMethod3 : parameter guard passed for 2");
+        logExpected("inside TestGuardCondition.triggerMethod3 2");
+        logExpected("called TestGuardCondition.triggerMethod3");
+
+        return super.getExpected();
+    }
+}
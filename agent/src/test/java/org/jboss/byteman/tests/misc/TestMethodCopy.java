@@ -0,0 +1,211 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2026, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.byteman.tests.misc;
+
+import org.jboss.byteman.tests.Test;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Test to ensure that methods which are copied unchanged when two rules are injected into other
+ * methods of the same class still verify and run correctly. The test is run with the transformed
+ * class dumped to the build directory so that it can check the Code attribute of the untouched
+ * method is identical to the one in the original bytecode.
+ */
+public class TestMethodCopy extends Test
+{
+    public TestMethodCopy()
+    {
+        super(TestMethodCopy.class.getCanonicalName());
+    }
+
+    public void test()
+    {
+        Target target = new Target();
+        log("first " + target.first(3));
+        log("second " + target.second("abc"));
+        log("untouched " + target.untouched(4));
+        log("hits " + target.hits);
+
+        try {
+            String resourceName = Target.class.getName().replace('.', '/') + ".class";
+            byte[] original = readCode(Target.class.getClassLoader().getResourceAsStream(resourceName), "untouched");
+            String dumpDir = System.getProperty("org.jboss.byteman.dump.generated.classes.directory");
+            File dumped = new File(dumpDir, resourceName);
+            byte[] transformed = readCode(new FileInputStream(dumped), "untouched");
+            if (original != null && Arrays.equals(original, transformed)) {
+                log("untouched code copied");
+            } else {
+                log("untouched code rewritten");
+            }
+        } catch (Exception e) {
+            log(e);
+        }
+
+        checkOutput(true);
+    }
+
+    /**
+     * read the bytes of the Code attribute of a method from a class file
+     * @param is a stream from which the class file can be read
+     * @param methodName the name of the method
+     * @return the Code attribute bytes or null if the method was not found
+     * @throws IOException if the class file cannot be read
+     */
+    private static byte[] readCode(InputStream is, String methodName) throws IOException
+    {
+        DataInputStream in = new DataInputStream(is);
+        try {
+            in.readInt(); // magic
+            in.readUnsignedShort(); // minor version
+            in.readUnsignedShort(); // major version
+            int poolCount = in.readUnsignedShort();
+            String[] utf8 = new String[poolCount];
+            for (int i = 1; i < poolCount; i++) {
+                int tag = in.readUnsignedByte();
+                switch (tag) {
+                    case 1: // Utf8
+                        utf8[i] = in.readUTF();
+                        break;
+                    case 5: // Long
+                    case 6: // Double
+                        in.readLong();
+                        i++;
+                        break;
+                    case 7: // Class
+                    case 8: // String
+                    case 16: // MethodType
+                    case 19: // Module
+                    case 20: // Package
+                        in.readUnsignedShort();
+                        break;
+                    case 15: // MethodHandle
+                        in.readUnsignedByte();
+                        in.readUnsignedShort();
+                        break;
+                    default: // Integer, Float, member refs, NameAndType, Dynamic and InvokeDynamic
+                        in.readInt();
+                        break;
+                }
+            }
+            in.readUnsignedShort(); // access flags
+            in.readUnsignedShort(); // this class
+            in.readUnsignedShort(); // super class
+            int interfaceCount = in.readUnsignedShort();
+            for (int i = 0; i < interfaceCount; i++) {
+                in.readUnsignedShort();
+            }
+            int fieldCount = in.readUnsignedShort();
+            for (int i = 0; i < fieldCount; i++) {
+                readMember(in, utf8, null);
+            }
+            int methodCount = in.readUnsignedShort();
+            for (int i = 0; i < methodCount; i++) {
+                byte[] code = readMember(in, utf8, methodName);
+                if (code != null) {
+                    return code;
+                }
+            }
+            return null;
+        } finally {
+            in.close();
+        }
+    }
+
+    private static byte[] readMember(DataInputStream in, String[] utf8, String methodName) throws IOException
+    {
+        in.readUnsignedShort(); // access flags
+        String name = utf8[in.readUnsignedShort()];
+        in.readUnsignedShort(); // descriptor
+        byte[] code = null;
+        int attributeCount = in.readUnsignedShort();
+        for (int i = 0; i < attributeCount; i++) {
+            String attributeName = utf8[in.readUnsignedShort()];
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            if (name.equals(methodName) && attributeName.equals("Code")) {
+                code = bytes;
+            }
+        }
+        return code;
+    }
+
+    public static class Target
+    {
+        public int hits = 0;
+
+        public int first(int count)
+        {
+            int total = 0;
+            for (int i = 0; i < count; i++) {
+                total += i;
+            }
+            return total;
+        }
+
+        public String second(String text)
+        {
+            try {
+                return text.toUpperCase();
+            } catch (RuntimeException e) {
+                return null;
+            }
+        }
+
+        // merges values of different types so the method needs non-trivial stack frames
+        public String untouched(int count)
+        {
+            Object value;
+            if (count % 2 == 0) {
+                value = new StringBuilder("even");
+            } else {
+                value = "odd";
+            }
+            for (int i = 0; i < count; i++) {
+                try {
+                    if (i > count) {
+                        throw new IllegalStateException();
+                    }
+                } catch (IllegalStateException e) {
+                    value = e;
+                }
+            }
+            return value.toString();
+        }
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("first 3");
+        logExpected("second ABC");
+        logExpected("untouched even");
+        logExpected("hits 2");
+        logExpected("untouched code copied");
+
+        return super.getExpected();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2026, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.byteman.tests.misc;
+
+import org.jboss.byteman.tests.Test;
+
+/**
+ * Test to ensure that a rule which exceeds its trigger rate budget is disabled by the governor
+ */
+public class TestRuleGovernor extends Test
+{
+    public TestRuleGovernor()
+    {
+        super(TestRuleGovernor.class.getCanonicalName());
+    }
+
+    public void test()
+    {
+        Target target = new Target();
+        // the rule attached to called only fires when it is called from viaCaller
+        target.viaCaller();
+        target.called();
+        log("caller hits " + target.callerHits);
+        long calls = 0;
+        boolean disabled = false;
+        long deadline = System.currentTimeMillis() + 10000;
+        // the rule is allowed far fewer triggers per second than this loop generates
+        while (!disabled && System.currentTimeMillis() < deadline) {
+            int hits = target.hits;
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                target.check();
+            }
+            calls += BATCH_SIZE;
+            disabled = (calls > BATCH_SIZE && target.hits == hits);
+        }
+        log("rule disabled " + disabled);
+        log("hits below calls " + (target.hits < calls));
+
+        checkOutput(true);
+    }
+
+    private static final int BATCH_SIZE = 1000;
+
+    public static class Target
+    {
+        public int hits = 0;
+
+        public int callerHits = 0;
+
+        public void check()
+        {
+        }
+
+        public void viaCaller()
+        {
+            called();
+        }
+
+        public void called()
+        {
+        }
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("caller hits 1");
+        logExpected("rule disabled true");
+        logExpected("hits below calls true");
+
+        return super.getExpected();
+    }
+}
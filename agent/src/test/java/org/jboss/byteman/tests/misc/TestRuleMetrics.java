@@ -0,0 +1,110 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2026, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.byteman.tests.misc;
+
+import org.jboss.byteman.tests.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Test to ensure that rule metrics count triggers and condition outcomes and that they can
+ * be read via the rule metrics MBean
+ */
+public class TestRuleMetrics extends Test
+{
+    public TestRuleMetrics()
+    {
+        super(TestRuleMetrics.class.getCanonicalName());
+    }
+
+    public void test()
+    {
+        try {
+            Target target = new Target();
+            for (int i = 0; i < TRIGGER_COUNT; i++) {
+                target.check(i);
+            }
+            log("target hits " + target.hits);
+            // the rule attached to called only fires when it is called from viaCaller
+            target.viaCaller();
+            target.called();
+            log("caller hits " + target.callerHits);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            String report = (String) server.invoke(new ObjectName("org.jboss.byteman:type=RuleMetrics"),
+                    "report",
+                    new Object[] { "test rule metrics" },
+                    new String[] { String.class.getName() });
+            BufferedReader reader = new BufferedReader(new StringReader(report));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("RULE ") || line.startsWith("triggered=") ||
+                        line.startsWith("fired=") || line.startsWith("skipped=") ||
+                        line.startsWith("errors=")) {
+                    log(line);
+                }
+            }
+        } catch (Exception e) {
+            log(e);
+        }
+
+        checkOutput(true);
+    }
+
+    private static final int TRIGGER_COUNT = 10;
+
+    public static class Target
+    {
+        public int hits = 0;
+
+        public int callerHits = 0;
+
+        public void check(int value)
+        {
+        }
+
+        public void viaCaller()
+        {
+            called();
+        }
+
+        public void called()
+        {
+        }
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("target hits " + (TRIGGER_COUNT / 2));
+        logExpected("caller hits 1");
+        logExpected("RULE test rule metrics");
+        logExpected("triggered=" + TRIGGER_COUNT);
+        logExpected("fired=" + (TRIGGER_COUNT / 2));
+        logExpected("skipped=" + (TRIGGER_COUNT / 2));
+        logExpected("errors=0");
+
+        return super.getExpected();
+    }
+}
@@ -0,0 +1,151 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2026, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.byteman.tests.misc;
+
+import org.jboss.byteman.rule.compiler.HelperAdapterCache;
+import org.jboss.byteman.tests.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Method;
+
+/**
+ * Test to ensure that a rule injected into two copies of the same class loaded by different
+ * class loaders reuses the helper adapter generated for the first copy
+ */
+public class TestSharedHelperAdapter extends Test
+{
+    public TestSharedHelperAdapter()
+    {
+        super(TestSharedHelperAdapter.class.getCanonicalName());
+    }
+
+    public void test()
+    {
+        try {
+            long hits = HelperAdapterCache.getHits();
+            log("calling first copy of Target.greet(\"first\")");
+            String result = greetFromCopy("first");
+            log("called first copy of Target.greet(\"first\") : " + result);
+            log("calling second copy of Target.greet(\"second\")");
+            result = greetFromCopy("second");
+            log("called second copy of Target.greet(\"second\") : " + result);
+            if (HelperAdapterCache.getHits() > hits) {
+                log("helper adapter was shared");
+            } else {
+                log("helper adapter was not shared");
+            }
+        } catch (Exception e) {
+            log(e);
+        }
+
+        checkOutput(true);
+    }
+
+    private String greetFromCopy(String name) throws Exception
+    {
+        ClassLoader loader = new IsolatingLoader(TARGET_CLASS_NAME, getClass().getClassLoader());
+        Class<?> clazz = loader.loadClass(TARGET_CLASS_NAME);
+        Method method = clazz.getMethod("greet", String.class);
+        return (String)method.invoke(null, name);
+    }
+
+    // n.b. the name is spelled out so this test does not load its own copy of the class
+
+    private static final String TARGET_CLASS_NAME = "org.jboss.byteman.tests.misc.TestSharedHelperAdapter$Target";
+
+    public static class Target
+    {
+        public static String greet(String name)
+        {
+            return "hello " + name;
+        }
+    }
+
+    /**
+     * a loader which defines its own copy of one class and delegates everything else to its parent
+     */
+    private static class IsolatingLoader extends ClassLoader
+    {
+        private String isolatedName;
+
+        public IsolatingLoader(String isolatedName, ClassLoader parent)
+        {
+            super(parent);
+            this.isolatedName = isolatedName;
+        }
+
+        @Override
+        protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException
+        {
+            if (!name.equals(isolatedName)) {
+                return super.loadClass(name, resolve);
+            }
+            Class<?> clazz = findLoadedClass(name);
+            if (clazz == null) {
+                byte[] bytes = readBytes(name);
+                clazz = defineClass(name, bytes, 0, bytes.length);
+            }
+            if (resolve) {
+                resolveClass(clazz);
+            }
+            return clazz;
+        }
+
+        private byte[] readBytes(String name) throws ClassNotFoundException
+        {
+            InputStream is = getParent().getResourceAsStream(name.replace('.', '/') + ".class");
+            if (is == null) {
+                throw new ClassNotFoundException(name);
+            }
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buf = new byte[4096];
+                int count;
+                while ((count = is.read(buf)) > 0) {
+                    bytes.write(buf, 0, count);
+                }
+                return bytes.toByteArray();
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            } finally {
+                try {
+                    is.close();
+                } catch (IOException e) {
+                    // ignore
+                }
+            }
+        }
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("calling first copy of Target.greet(\"first\")");
+        logExpected("called first copy of Target.greet(\"first\") : hello shared first");
+        logExpected("calling second copy of Target.greet(\"second\")");
+        logExpected("called second copy of Target.greet(\"second\") : hello shared second");
+        logExpected("helper adapter was shared");
+
+        return super.getExpected();
+    }
+}
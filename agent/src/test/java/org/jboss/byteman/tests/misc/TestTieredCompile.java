@@ -0,0 +1,110 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2026, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.byteman.tests.misc;
+
+import org.jboss.byteman.tests.Test;
+
+/**
+ * Test to ensure that a rule marked for compilation is interpreted until it reaches the
+ * compile threshold and then switches over to a compiled helper without changing its behaviour
+ */
+public class TestTieredCompile extends Test
+{
+    public TestTieredCompile()
+    {
+        super(TestTieredCompile.class.getCanonicalName());
+    }
+
+    /**
+     * the compile threshold configured for this test
+     */
+    private final static int THRESHOLD = 3;
+
+    private final static int MAX_FIRINGS = 500;
+
+    private final static String COMPILED_HELPER = "_HelperAdapter_Compiled_";
+
+    private String lastHelper = null;
+
+    public void test()
+    {
+        try {
+            boolean firstInterpreted = false;
+            boolean resultsCorrect = true;
+            boolean demoted = false;
+            int interpretedCount = 0;
+            int compiledCount = 0;
+            int i;
+            for (i = 0; i < MAX_FIRINGS && compiledCount < THRESHOLD; i++) {
+                int result = triggerMethod(i);
+                if (result != i * 2) {
+                    resultsCorrect = false;
+                }
+                boolean compiled = lastHelper.contains(COMPILED_HELPER);
+                if (i == 0) {
+                    firstInterpreted = !compiled;
+                }
+                if (compiled) {
+                    compiledCount++;
+                } else if (compiledCount > 0) {
+                    demoted = true;
+                } else {
+                    interpretedCount++;
+                }
+                if (!compiled) {
+                    // give the background compiler a chance to run
+                    Thread.sleep(10);
+                }
+            }
+            log("first firing interpreted : " + firstInterpreted);
+            log("interpreted at least threshold times : " + (interpretedCount >= THRESHOLD));
+            log("promoted to compiled : " + (compiledCount > 0));
+            log("no return to interpreter : " + !demoted);
+            log("all results correct : " + resultsCorrect);
+        } catch (Exception e) {
+            log(e);
+        }
+
+        checkOutput(true);
+    }
+
+    public int triggerMethod(int i)
+    {
+        return i;
+    }
+
+    public void recordHelper(String helperName)
+    {
+        lastHelper = helperName;
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("first firing interpreted : true");
+        logExpected("interpreted at least threshold times : true");
+        logExpected("promoted to compiled : true");
+        logExpected("no return to interpreter : true");
+        logExpected("all results correct : true");
+
+        return super.getExpected();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+* JBoss, Home of Professional Open Source
+* Copyright 2026, Red Hat and individual contributors
+* by the @authors tag. See the copyright.txt in the distribution for a
+* full listing of individual contributors.
+*
+* This is free software; you can redistribute it and/or modify it
+* under the terms of the GNU Lesser General Public License as
+* published by the Free Software Foundation; either version 2.1 of
+* the License, or (at your option) any later version.
+*
+* This software is distributed in the hope that it will be useful,
+* but WITHOUT ANY WARRANTY; without even the implied warranty of
+* MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+* Lesser General Public License for more details.
+*
+* You should have received a copy of the GNU Lesser General Public
+* License along with this software; if not, write to the Free
+* Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+* 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+*/
+package org.jboss.byteman.tests.misc;
+
+import org.jboss.byteman.agent.TransformCache;
+import org.jboss.byteman.tests.Test;
+
+import java.io.File;
+import java.io.FilenameFilter;
+
+/**
+ * Test to ensure that a rule injected into a class whose transform is saved to or restored from
+ * the persistent transform cache fires with the correct bindings. The test is run twice against
+ * the same cache directory so that the second run serves the transform from the cache. The
+ * second run sets property {@link #EXPECT_HITS} so that it checks the transform really was
+ * served from the cache.
+ */
+public class TestTransformCache extends Test
+{
+    /**
+     * property set when the test is run against a cache populated by an earlier run
+     */
+    public static final String EXPECT_HITS = "org.jboss.byteman.tests.transform.cache.expect.hits";
+
+    public TestTransformCache()
+    {
+        super(TestTransformCache.class.getCanonicalName());
+    }
+
+    public void test()
+    {
+        try {
+            log("calling Target.greet(\"cache\", 2)");
+            String result = new Target().greet("cache", 2);
+            log("called Target.greet(\"cache\", 2) : " + result);
+            if (countEntries() > 0) {
+                log("transform cache has entries");
+            } else {
+                log("transform cache has no entries");
+            }
+            if (System.getProperty(EXPECT_HITS) != null) {
+                assertTrue("transform was not served from the cache", TransformCache.getHits() > 0);
+            }
+        } catch (Exception e) {
+            log(e);
+        }
+
+        checkOutput(true);
+    }
+
+    private int countEntries()
+    {
+        String dirName = System.getProperty("org.jboss.byteman.transform.cache.directory");
+        if (dirName == null) {
+            return 0;
+        }
+        File[] entries = new File(dirName).listFiles(new FilenameFilter() {
+            public boolean accept(File dir, String name)
+            {
+                return name.endsWith(".transform");
+            }
+        });
+        return (entries == null ? 0 : entries.length);
+    }
+
+    public static class Target
+    {
+        public String greet(String name, int count)
+        {
+            String greeting = "hello";
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < count; i++) {
+                builder.append(greeting).append(' ');
+            }
+            return builder.append(name).toString();
+        }
+    }
+
+    @Override
+    public String getExpected() {
+        logExpected("calling Target.greet(\"cache\", 2)");
+        logExpected("called Target.greet(\"cache\", 2) : hello hello cached cache");
+        logExpected("transform cache has entries");
+
+        return super.getExpected();
+    }
+}
@@ -1123,8 +1123,18 @@ public class JigsawAccessEnablerGenerator
             mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "asFixedArity", "()Ljava/lang/invoke/MethodHandle;", false);
             mv.visitVarInsn(ASTORE, 4);
             mv.visitLabel(l3);
+            mv.visitVarInsn(ALOAD, 4);
+            mv.visitLdcInsn(Type.getType("[Ljava/lang/Object;"));
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/reflect/Constructor", "getParameterCount", "()I", false);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "asSpreader", "(Ljava/lang/Class;I)Ljava/lang/invoke/MethodHandle;", false);
+            mv.visitVarInsn(ASTORE, 4);
             mv.visitVarInsn(ALOAD, 0);
             mv.visitVarInsn(ALOAD, 4);
+            mv.visitInsn(ICONST_0);
+            mv.visitInsn(ICONST_1);
+            mv.visitMethodInsn(INVOKESTATIC, "java/lang/invoke/MethodType", "genericMethodType", "(IZ)Ljava/lang/invoke/MethodType;", false);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "asType", "(Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/MethodHandle;", false);
             mv.visitFieldInsn(PUTFIELD, "org/jboss/byteman/jigsaw/JigsawAccessibleConstructorInvoker", "handle", "Ljava/lang/invoke/MethodHandle;");
             mv.visitLabel(l1);
             Label l4 = new Label();
@@ -1153,7 +1163,7 @@ public class JigsawAccessEnablerGenerator
             mv.visitVarInsn(ALOAD, 0);
             mv.visitFieldInsn(GETFIELD, "org/jboss/byteman/jigsaw/JigsawAccessibleConstructorInvoker", "handle", "Ljava/lang/invoke/MethodHandle;");
             mv.visitVarInsn(ALOAD, 1);
-            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "invokeWithArguments", "([Ljava/lang/Object;)Ljava/lang/Object;", false);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "invokeExact", "([Ljava/lang/Object;)Ljava/lang/Object;", false);
             mv.visitLabel(l1);
             mv.visitInsn(ARETURN);
             mv.visitLabel(l2);
@@ -1243,12 +1253,31 @@ public class JigsawAccessEnablerGenerator
             mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "asFixedArity", "()Ljava/lang/invoke/MethodHandle;", false);
             mv.visitVarInsn(ASTORE, 4);
             mv.visitLabel(l5);
+            mv.visitVarInsn(ALOAD, 4);
+            mv.visitLdcInsn(Type.getType("[Ljava/lang/Object;"));
+            mv.visitVarInsn(ALOAD, 2);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/reflect/Method", "getParameterCount", "()I", false);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "asSpreader", "(Ljava/lang/Class;I)Ljava/lang/invoke/MethodHandle;", false);
+            mv.visitVarInsn(ASTORE, 4);
             mv.visitVarInsn(ALOAD, 0);
             mv.visitVarInsn(ALOAD, 4);
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitFieldInsn(GETFIELD, "org/jboss/byteman/jigsaw/JigsawAccessibleMethodInvoker", "isStatic", "Z");
+            Label l6 = new Label();
+            mv.visitJumpInsn(IFEQ, l6);
+            mv.visitInsn(ICONST_0);
+            Label l7 = new Label();
+            mv.visitJumpInsn(GOTO, l7);
+            mv.visitLabel(l6);
+            mv.visitInsn(ICONST_1);
+            mv.visitLabel(l7);
+            mv.visitInsn(ICONST_1);
+            mv.visitMethodInsn(INVOKESTATIC, "java/lang/invoke/MethodType", "genericMethodType", "(IZ)Ljava/lang/invoke/MethodType;", false);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "asType", "(Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/MethodHandle;", false);
             mv.visitFieldInsn(PUTFIELD, "org/jboss/byteman/jigsaw/JigsawAccessibleMethodInvoker", "handle", "Ljava/lang/invoke/MethodHandle;");
             mv.visitLabel(l1);
-            Label l6 = new Label();
-            mv.visitJumpInsn(GOTO, l6);
+            Label l8 = new Label();
+            mv.visitJumpInsn(GOTO, l8);
             mv.visitLabel(l2);
             mv.visitVarInsn(ASTORE, 3);
             mv.visitTypeInsn(NEW, "java/lang/RuntimeException");
@@ -1257,7 +1286,7 @@ public class JigsawAccessEnablerGenerator
             mv.visitVarInsn(ALOAD, 3);
             mv.visitMethodInsn(INVOKESPECIAL, "java/lang/RuntimeException", "<init>", "(Ljava/lang/String;Ljava/lang/Throwable;)V", false);
             mv.visitInsn(ATHROW);
-            mv.visitLabel(l6);
+            mv.visitLabel(l8);
             mv.visitInsn(RETURN);
             mv.visitMaxs(4, 5);
             mv.visitEnd();
@@ -1279,16 +1308,15 @@ public class JigsawAccessEnablerGenerator
             mv.visitVarInsn(ALOAD, 0);
             mv.visitFieldInsn(GETFIELD, "org/jboss/byteman/jigsaw/JigsawAccessibleMethodInvoker", "handle", "Ljava/lang/invoke/MethodHandle;");
             mv.visitVarInsn(ALOAD, 2);
-            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "invokeWithArguments", "([Ljava/lang/Object;)Ljava/lang/Object;", false);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "invokeExact", "([Ljava/lang/Object;)Ljava/lang/Object;", false);
             mv.visitLabel(l1);
             mv.visitInsn(ARETURN);
             mv.visitLabel(l3);
             mv.visitVarInsn(ALOAD, 0);
             mv.visitFieldInsn(GETFIELD, "org/jboss/byteman/jigsaw/JigsawAccessibleMethodInvoker", "handle", "Ljava/lang/invoke/MethodHandle;");
             mv.visitVarInsn(ALOAD, 1);
-            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "bindTo", "(Ljava/lang/Object;)Ljava/lang/invoke/MethodHandle;", false);
             mv.visitVarInsn(ALOAD, 2);
-            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "invokeWithArguments", "([Ljava/lang/Object;)Ljava/lang/Object;", false);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "invokeExact", "(Ljava/lang/Object;[Ljava/lang/Object;)Ljava/lang/Object;", false);
             mv.visitLabel(l4);
             mv.visitInsn(ARETURN);
             mv.visitLabel(l2);
@@ -1344,7 +1372,6 @@ public class JigsawAccessEnablerGenerator
             mv.visitFieldInsn(GETFIELD, "org/jboss/byteman/jigsaw/JigsawAccessibleFieldGetter", "isStatic", "Z");
             Label l3 = new Label();
             mv.visitJumpInsn(IFEQ, l3);
-            mv.visitVarInsn(ALOAD, 0);
             mv.visitVarInsn(ALOAD, 1);
             mv.visitVarInsn(ALOAD, 2);
             mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/reflect/Field", "getDeclaringClass", "()Ljava/lang/Class;", false);
@@ -1353,10 +1380,10 @@ public class JigsawAccessEnablerGenerator
             mv.visitVarInsn(ALOAD, 2);
             mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/reflect/Field", "getType", "()Ljava/lang/Class;", false);
             mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandles$Lookup", "findStaticGetter", "(Ljava/lang/Class;Ljava/lang/String;Ljava/lang/Class;)Ljava/lang/invoke/MethodHandle;", false);
-            mv.visitFieldInsn(PUTFIELD, "org/jboss/byteman/jigsaw/JigsawAccessibleFieldGetter", "handle", "Ljava/lang/invoke/MethodHandle;");
-            mv.visitJumpInsn(GOTO, l1);
+            mv.visitVarInsn(ASTORE, 3);
+            Label l4 = new Label();
+            mv.visitJumpInsn(GOTO, l4);
             mv.visitLabel(l3);
-            mv.visitVarInsn(ALOAD, 0);
             mv.visitVarInsn(ALOAD, 1);
             mv.visitVarInsn(ALOAD, 2);
             mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/reflect/Field", "getDeclaringClass", "()Ljava/lang/Class;", false);
@@ -1365,10 +1392,26 @@ public class JigsawAccessEnablerGenerator
             mv.visitVarInsn(ALOAD, 2);
             mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/reflect/Field", "getType", "()Ljava/lang/Class;", false);
             mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandles$Lookup", "findGetter", "(Ljava/lang/Class;Ljava/lang/String;Ljava/lang/Class;)Ljava/lang/invoke/MethodHandle;", false);
+            mv.visitVarInsn(ASTORE, 3);
+            mv.visitLabel(l4);
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ALOAD, 3);
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitFieldInsn(GETFIELD, "org/jboss/byteman/jigsaw/JigsawAccessibleFieldGetter", "isStatic", "Z");
+            Label l5 = new Label();
+            mv.visitJumpInsn(IFEQ, l5);
+            mv.visitInsn(ICONST_0);
+            Label l6 = new Label();
+            mv.visitJumpInsn(GOTO, l6);
+            mv.visitLabel(l5);
+            mv.visitInsn(ICONST_1);
+            mv.visitLabel(l6);
+            mv.visitMethodInsn(INVOKESTATIC, "java/lang/invoke/MethodType", "genericMethodType", "(I)Ljava/lang/invoke/MethodType;", false);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "asType", "(Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/MethodHandle;", false);
             mv.visitFieldInsn(PUTFIELD, "org/jboss/byteman/jigsaw/JigsawAccessibleFieldGetter", "handle", "Ljava/lang/invoke/MethodHandle;");
             mv.visitLabel(l1);
-            Label l4 = new Label();
-            mv.visitJumpInsn(GOTO, l4);
+            Label l7 = new Label();
+            mv.visitJumpInsn(GOTO, l7);
             mv.visitLabel(l2);
             mv.visitVarInsn(ASTORE, 3);
             mv.visitTypeInsn(NEW, "java/lang/RuntimeException");
@@ -1377,9 +1420,9 @@ public class JigsawAccessEnablerGenerator
             mv.visitVarInsn(ALOAD, 3);
             mv.visitMethodInsn(INVOKESPECIAL, "java/lang/RuntimeException", "<init>", "(Ljava/lang/String;Ljava/lang/Throwable;)V", false);
             mv.visitInsn(ATHROW);
-            mv.visitLabel(l4);
+            mv.visitLabel(l7);
             mv.visitInsn(RETURN);
-            mv.visitMaxs(5, 4);
+            mv.visitMaxs(4, 4);
             mv.visitEnd();
         }
         {
@@ -1407,32 +1450,25 @@ public class JigsawAccessEnablerGenerator
             mv.visitLabel(l5);
             mv.visitVarInsn(ALOAD, 0);
             mv.visitFieldInsn(GETFIELD, "org/jboss/byteman/jigsaw/JigsawAccessibleFieldGetter", "handle", "Ljava/lang/invoke/MethodHandle;");
-            mv.visitInsn(ICONST_0);
-            mv.visitTypeInsn(ANEWARRAY, "java/lang/Object");
-            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "invokeWithArguments", "([Ljava/lang/Object;)Ljava/lang/Object;", false);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "invokeExact", "()Ljava/lang/Object;", false);
             mv.visitLabel(l1);
             mv.visitInsn(ARETURN);
             mv.visitLabel(l3);
             mv.visitVarInsn(ALOAD, 0);
             mv.visitFieldInsn(GETFIELD, "org/jboss/byteman/jigsaw/JigsawAccessibleFieldGetter", "handle", "Ljava/lang/invoke/MethodHandle;");
-            mv.visitInsn(ICONST_1);
-            mv.visitTypeInsn(ANEWARRAY, "java/lang/Object");
-            mv.visitInsn(DUP);
-            mv.visitInsn(ICONST_0);
             mv.visitVarInsn(ALOAD, 1);
-            mv.visitInsn(AASTORE);
-            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "invokeWithArguments", "([Ljava/lang/Object;)Ljava/lang/Object;", false);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "invokeExact", "(Ljava/lang/Object;)Ljava/lang/Object;", false);
             mv.visitLabel(l4);
             mv.visitInsn(ARETURN);
             mv.visitLabel(l2);
             mv.visitVarInsn(ASTORE, 2);
             mv.visitTypeInsn(NEW, "org/jboss/byteman/rule/exception/ExecuteException");
             mv.visitInsn(DUP);
-            mv.visitLdcInsn("JigsawAccessibleFieldGetter.invoke : exception invoking getter methodhandle ");
+            mv.visitLdcInsn("JigsawAccessibleFieldGetter.get : exception invoking getter methodhandle ");
             mv.visitVarInsn(ALOAD, 2);
             mv.visitMethodInsn(INVOKESPECIAL, "org/jboss/byteman/rule/exception/ExecuteException", "<init>", "(Ljava/lang/String;Ljava/lang/Throwable;)V", false);
             mv.visitInsn(ATHROW);
-            mv.visitMaxs(5, 3);
+            mv.visitMaxs(4, 3);
             mv.visitEnd();
         }
         cw.visitEnd();
@@ -1482,7 +1518,6 @@ public class JigsawAccessEnablerGenerator
             mv.visitFieldInsn(GETFIELD, "org/jboss/byteman/jigsaw/JigsawAccessibleFieldSetter", "isStatic", "Z");
             Label l3 = new Label();
             mv.visitJumpInsn(IFEQ, l3);
-            mv.visitVarInsn(ALOAD, 0);
             mv.visitVarInsn(ALOAD, 1);
             mv.visitVarInsn(ALOAD, 2);
             mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/reflect/Field", "getDeclaringClass", "()Ljava/lang/Class;", false);
@@ -1491,10 +1526,10 @@ public class JigsawAccessEnablerGenerator
             mv.visitVarInsn(ALOAD, 2);
             mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/reflect/Field", "getType", "()Ljava/lang/Class;", false);
             mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandles$Lookup", "findStaticSetter", "(Ljava/lang/Class;Ljava/lang/String;Ljava/lang/Class;)Ljava/lang/invoke/MethodHandle;", false);
-            mv.visitFieldInsn(PUTFIELD, "org/jboss/byteman/jigsaw/JigsawAccessibleFieldSetter", "handle", "Ljava/lang/invoke/MethodHandle;");
-            mv.visitJumpInsn(GOTO, l1);
+            mv.visitVarInsn(ASTORE, 3);
+            Label l4 = new Label();
+            mv.visitJumpInsn(GOTO, l4);
             mv.visitLabel(l3);
-            mv.visitVarInsn(ALOAD, 0);
             mv.visitVarInsn(ALOAD, 1);
             mv.visitVarInsn(ALOAD, 2);
             mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/reflect/Field", "getDeclaringClass", "()Ljava/lang/Class;", false);
@@ -1503,21 +1538,39 @@ public class JigsawAccessEnablerGenerator
             mv.visitVarInsn(ALOAD, 2);
             mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/reflect/Field", "getType", "()Ljava/lang/Class;", false);
             mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandles$Lookup", "findSetter", "(Ljava/lang/Class;Ljava/lang/String;Ljava/lang/Class;)Ljava/lang/invoke/MethodHandle;", false);
+            mv.visitVarInsn(ASTORE, 3);
+            mv.visitLabel(l4);
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitVarInsn(ALOAD, 3);
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitFieldInsn(GETFIELD, "org/jboss/byteman/jigsaw/JigsawAccessibleFieldSetter", "isStatic", "Z");
+            Label l5 = new Label();
+            mv.visitJumpInsn(IFEQ, l5);
+            mv.visitInsn(ICONST_1);
+            Label l6 = new Label();
+            mv.visitJumpInsn(GOTO, l6);
+            mv.visitLabel(l5);
+            mv.visitInsn(ICONST_2);
+            mv.visitLabel(l6);
+            mv.visitMethodInsn(INVOKESTATIC, "java/lang/invoke/MethodType", "genericMethodType", "(I)Ljava/lang/invoke/MethodType;", false);
+            mv.visitFieldInsn(GETSTATIC, "java/lang/Void", "TYPE", "Ljava/lang/Class;");
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodType", "changeReturnType", "(Ljava/lang/Class;)Ljava/lang/invoke/MethodType;", false);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "asType", "(Ljava/lang/invoke/MethodType;)Ljava/lang/invoke/MethodHandle;", false);
             mv.visitFieldInsn(PUTFIELD, "org/jboss/byteman/jigsaw/JigsawAccessibleFieldSetter", "handle", "Ljava/lang/invoke/MethodHandle;");
             mv.visitLabel(l1);
-            Label l4 = new Label();
-            mv.visitJumpInsn(GOTO, l4);
+            Label l7 = new Label();
+            mv.visitJumpInsn(GOTO, l7);
             mv.visitLabel(l2);
             mv.visitVarInsn(ASTORE, 3);
             mv.visitTypeInsn(NEW, "java/lang/RuntimeException");
             mv.visitInsn(DUP);
-            mv.visitLdcInsn("JigsawAccessibleFieldSetter : exception creating etter method handle for field ");
+            mv.visitLdcInsn("JigsawAccessibleFieldSetter : exception creating setter method handle for field ");
             mv.visitVarInsn(ALOAD, 3);
             mv.visitMethodInsn(INVOKESPECIAL, "java/lang/RuntimeException", "<init>", "(Ljava/lang/String;Ljava/lang/Throwable;)V", false);
             mv.visitInsn(ATHROW);
-            mv.visitLabel(l4);
+            mv.visitLabel(l7);
             mv.visitInsn(RETURN);
-            mv.visitMaxs(5, 4);
+            mv.visitMaxs(4, 4);
             mv.visitEnd();
         }
         {
@@ -1543,30 +1596,15 @@ public class JigsawAccessEnablerGenerator
             mv.visitLabel(l4);
             mv.visitVarInsn(ALOAD, 0);
             mv.visitFieldInsn(GETFIELD, "org/jboss/byteman/jigsaw/JigsawAccessibleFieldSetter", "handle", "Ljava/lang/invoke/MethodHandle;");
-            mv.visitInsn(ICONST_1);
-            mv.visitTypeInsn(ANEWARRAY, "java/lang/Object");
-            mv.visitInsn(DUP);
-            mv.visitInsn(ICONST_0);
             mv.visitVarInsn(ALOAD, 2);
-            mv.visitInsn(AASTORE);
-            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "invokeWithArguments", "([Ljava/lang/Object;)Ljava/lang/Object;", false);
-            mv.visitInsn(POP);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "invokeExact", "(Ljava/lang/Object;)V", false);
             mv.visitJumpInsn(GOTO, l1);
             mv.visitLabel(l3);
             mv.visitVarInsn(ALOAD, 0);
             mv.visitFieldInsn(GETFIELD, "org/jboss/byteman/jigsaw/JigsawAccessibleFieldSetter", "handle", "Ljava/lang/invoke/MethodHandle;");
-            mv.visitInsn(ICONST_2);
-            mv.visitTypeInsn(ANEWARRAY, "java/lang/Object");
-            mv.visitInsn(DUP);
-            mv.visitInsn(ICONST_0);
             mv.visitVarInsn(ALOAD, 1);
-            mv.visitInsn(AASTORE);
-            mv.visitInsn(DUP);
-            mv.visitInsn(ICONST_1);
             mv.visitVarInsn(ALOAD, 2);
-            mv.visitInsn(AASTORE);
-            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "invokeWithArguments", "([Ljava/lang/Object;)Ljava/lang/Object;", false);
-            mv.visitInsn(POP);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/invoke/MethodHandle", "invokeExact", "(Ljava/lang/Object;Ljava/lang/Object;)V", false);
             mv.visitLabel(l1);
             Label l5 = new Label();
             mv.visitJumpInsn(GOTO, l5);
@@ -1580,7 +1618,7 @@ public class JigsawAccessEnablerGenerator
             mv.visitInsn(ATHROW);
             mv.visitLabel(l5);
             mv.visitInsn(RETURN);
-            mv.visitMaxs(5, 4);
+            mv.visitMaxs(4, 4);
             mv.visitEnd();
         }
         cw.visitEnd();
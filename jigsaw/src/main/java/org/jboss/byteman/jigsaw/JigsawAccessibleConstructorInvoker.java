@@ -45,7 +45,9 @@ public class JigsawAccessibleConstructorInvoker implements AccessibleConstructor
             if (constructor.isVarArgs()) {
                 h = h.asFixedArity();
             }
-            this.handle = h;
+            // adapt the handle once so that invoke can use invokeExact
+            h = h.asSpreader(Object[].class, constructor.getParameterCount());
+            this.handle = h.asType(MethodType.genericMethodType(0, true));
         } catch (Exception e) {
             // throw new RuntimeException("JigsawAccessibleMethodInvoker.invoke : exception creating method handle for constructor " + constructor, e);
             throw new RuntimeException("JigsawAccessibleConstructorInvoker : exception creating method handle for constructor ", e);
@@ -55,7 +57,7 @@ public class JigsawAccessibleConstructorInvoker implements AccessibleConstructor
     public Object invoke(Object[] args)
     {
         try {
-            return handle.invokeWithArguments(args);
+            return (Object)handle.invokeExact(args);
         } catch (Throwable e) {
             // throw new ExecuteException("JigsawAccessibleMethodInvoker.invoke : exception invoking methodhandle " + handle, e);
             throw new ExecuteException("JigsawAccessibleConstructorInvoker.invoke : exception invoking methodhandle ", e);
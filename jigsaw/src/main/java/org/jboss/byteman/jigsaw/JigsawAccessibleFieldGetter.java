@@ -28,6 +28,7 @@ import org.jboss.byteman.rule.exception.ExecuteException;
 
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 /**
@@ -42,11 +43,14 @@ public class JigsawAccessibleFieldGetter implements AccessibleFieldGetter
     {
         isStatic = Modifier.isStatic(field.getModifiers());
         try {
+            MethodHandle h;
             if (isStatic) {
-                this.handle = theLookup.findStaticGetter(field.getDeclaringClass(), field.getName(), field.getType());
+                h = theLookup.findStaticGetter(field.getDeclaringClass(), field.getName(), field.getType());
             } else {
-                this.handle = theLookup.findGetter(field.getDeclaringClass(), field.getName(), field.getType());
+                h = theLookup.findGetter(field.getDeclaringClass(), field.getName(), field.getType());
             }
+            // adapt the handle once so that get can use invokeExact
+            this.handle = h.asType(MethodType.genericMethodType(isStatic ? 0 : 1));
         } catch (Exception e) {
             // throw new RuntimeException("JigsawAccessibleMethodInvoker.invoke : exception creating getter method handle for field " + field, e);
             throw new RuntimeException("JigsawAccessibleFieldGetter : exception creating getter method handle for field ", e);
@@ -60,9 +64,9 @@ public class JigsawAccessibleFieldGetter implements AccessibleFieldGetter
                 if (owner != null) {
                        throw new ExecuteException("JigsawAccessibleFieldGetter.get : expecting null owner for static get!");
                 }
-                return handle.invokeWithArguments();
+                return (Object)handle.invokeExact();
             } else {
-                return handle.invokeWithArguments(owner);
+                return (Object)handle.invokeExact(owner);
             }
         } catch (Throwable e) {
            // throw new ExecuteException("JigsawAccessibleFieldGetter.get : exception invoking getter methodhandle " + handle, e);
@@ -28,6 +28,7 @@ import org.jboss.byteman.rule.exception.ExecuteException;
 
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 /**
@@ -44,11 +45,14 @@ public class JigsawAccessibleFieldSetter implements AccessibleFieldSetter
     {
         isStatic = Modifier.isStatic(field.getModifiers());
         try {
+            MethodHandle h;
             if (isStatic) {
-                this.handle = theLookup.findStaticSetter(field.getDeclaringClass(), field.getName(), field.getType());
+                h = theLookup.findStaticSetter(field.getDeclaringClass(), field.getName(), field.getType());
             } else {
-                this.handle = theLookup.findSetter(field.getDeclaringClass(), field.getName(), field.getType());
+                h = theLookup.findSetter(field.getDeclaringClass(), field.getName(), field.getType());
             }
+            // adapt the handle once so that set can use invokeExact
+            this.handle = h.asType(MethodType.genericMethodType(isStatic ? 1 : 2).changeReturnType(void.class));
         } catch (Exception e) {
             throw new RuntimeException("JigsawAccessibleFieldSetter : exception creating setter method handle for field " + field, e);
         }
@@ -61,9 +65,9 @@ public class JigsawAccessibleFieldSetter implements AccessibleFieldSetter
                 if (owner != null) {
                        throw new ExecuteException("JigsawAccessibleFieldSetter.set : expecting null owner for static set!");
                 }
-                handle.invokeWithArguments(value);
+                handle.invokeExact(value);
             } else {
-                handle.invokeWithArguments(owner, value);
+                handle.invokeExact(owner, value);
             }
         } catch (Throwable e) {
             throw new ExecuteException("JigsawAccessibleFieldSetter.set : exception invoking getter methodhandle " + handle, e);
@@ -54,7 +54,10 @@ public class JigsawAccessibleMethodInvoker implements AccessibleMethodInvoker
             if (method.isVarArgs()) {
                 h = h.asFixedArity();
             }
-            this.handle = h;
+            // adapt the handle once so that invoke can use invokeExact rather than
+            // binding the receiver and boxing the arguments on every call
+            h = h.asSpreader(Object[].class, method.getParameterCount());
+            this.handle = h.asType(MethodType.genericMethodType((isStatic ? 0 : 1), true));
         } catch (Exception e) {
             // throw new RuntimeException("JigsawAccessibleMethodInvoker.invoke : exception creating methodhandle for method " + method, e);
             throw new RuntimeException("JigsawAccessibleMethodInvoker.invoke : exception creating methodhandle for method ", e);
@@ -66,10 +69,9 @@ public class JigsawAccessibleMethodInvoker implements AccessibleMethodInvoker
     {
         try {
             if (isStatic) {
-                return handle.invokeWithArguments(args);
+                return (Object)handle.invokeExact(args);
             } else {
-                // return handle.bindTo(receiver).invokeWithArguments(args);
-                return handle.bindTo(receiver).invokeWithArguments(args);
+                return (Object)handle.invokeExact(receiver, args);
             }
         } catch (Throwable e) {
             // throw new ExecuteException("JigsawAccessibleMethodInvoker.invoke : exception invoking methodhandle " + handle, e);
@@ -772,6 +772,58 @@ public class Submit
         return props;
     }
 
+    /**
+     * Returns the statistics gathered by the Byteman agent, such as the number of
+     * times a rule was able to reuse a previously generated helper adapter.
+     *
+     * @return statistics reported by the Byteman agent as name/value pairs
+     *
+     * @throws Exception
+     *             if the request failed
+     */
+    public Properties getAgentStatistics() throws Exception {
+        String results = submitRequest("STATS\n");
+        Properties stats = new Properties();
+        BufferedReader reader = new BufferedReader(new StringReader(results));
+        String line = reader.readLine();
+        while (line != null) {
+            String[] nameValuePair = line.split("=", 2);
+            if (nameValuePair.length != 2) {
+                throw new Exception("Invalid name/value pair in line [" + line + "]. Full response below:\n" + results);
+            }
+            stats.setProperty(nameValuePair[0], nameValuePair[1]);
+            line = reader.readLine();
+        }
+        return stats;
+    }
+
+    /**
+     * Returns the execution metrics gathered by the Byteman agent for the installed rules.
+     * Metrics are only gathered while system property org.jboss.byteman.rule.metrics is set
+     * in the agent's VM. The metrics for each rule are introduced by a line of the form
+     * "RULE name" followed by one name=value line per metric.
+     *
+     * @return the rule metrics reported by the Byteman agent
+     *
+     * @throws Exception
+     *             if the request failed
+     */
+    public String getRuleMetrics() throws Exception {
+        return submitRequest("METRICS\n");
+    }
+
+    /**
+     * Discards the execution metrics gathered by the Byteman agent so far.
+     *
+     * @return the results of the reset request to the Byteman agent
+     *
+     * @throws Exception
+     *             if the request failed
+     */
+    public String resetRuleMetrics() throws Exception {
+        return submitRequest("RESETMETRICS\n");
+    }
+
     /**
      * Submits the generic request string to the Byteman agent for processing.
      *
@@ -987,6 +1039,8 @@ public class Submit
         boolean showVersion = false;
         boolean showAddedClassloaderJars = false;
         boolean sysProps = false;
+        boolean showStats = false;
+        boolean showMetrics = false;
         int optionCount = 0;
         PrintStream out = System.out;
 
@@ -1059,6 +1113,14 @@ public class Submit
                 sysProps = true;
                 startIdx++;
                 optionCount++;
+            } else if (args[startIdx].equals("-t")) {
+                showStats = true;
+                startIdx++;
+                optionCount++;
+            } else if (args[startIdx].equals("-m")) {
+                showMetrics = true;
+                startIdx++;
+                optionCount++;
             } else {
                 break;
             }
@@ -1074,6 +1136,12 @@ public class Submit
             usage(out, 1);
         }
 
+        // statistics are only ever listed
+
+        if (startIdx < maxIdx && (showStats || showMetrics)) {
+            usage(out, 1);
+        }
+
         Submit client = new Submit(hostname, port, out);
         String results = null;
         List<String> argsList = null;
@@ -1083,6 +1151,15 @@ public class Submit
                 String agentVersion = client.getAgentVersion();
                 String clientVersion = client.getClientVersion();
                 results = "Agent Version: " + agentVersion + "\nClient Version: " + clientVersion;
+            } else if (showStats) {
+                Properties stats = client.getAgentStatistics();
+                StringBuilder str = new StringBuilder();
+                for (Map.Entry<Object, Object> stat : stats.entrySet()) {
+                    str.append(stat.getKey()).append('=').append(stat.getValue()).append('\n');
+                }
+                results = str.toString();
+            } else if (showMetrics) {
+                results = client.getRuleMetrics();
             } else if (showAddedClassloaderJars) {
                 List<String> bootJars = client.getLoadedBootClassloaderJars();
                 List<String> sysJars = client.getLoadedSystemClassloaderJars();
@@ -1175,6 +1252,8 @@ public class Submit
         out.println("        Submit [-o outfile] [-p port] [-h hostname] [-c]");
         out.println("        Submit [-o outfile] [-p port] [-h hostname] [-y] [prop1[=[value1]]. . .]");
         out.println("        Submit [-o outfile] [-p port] [-h hostname] [-v]");
+        out.println("        Submit [-o outfile] [-p port] [-h hostname] [-t]");
+        out.println("        Submit [-o outfile] [-p port] [-h hostname] [-m]");
         out.println("        -o redirects output from System.out to outfile");
         out.println("        -p specifies listener port");
         out.println("        -h specifies listener host");
@@ -1191,6 +1270,8 @@ public class Submit
         out.println("             prop= sets system property 'prop' to an empty string");
         out.println("             prop unsets system property 'prop'");
         out.println("        -v prints the version of the byteman agent and this client");
+        out.println("        -t prints statistics gathered by the byteman agent");
+        out.println("        -m prints execution metrics for installed rules");
         if (out != System.out) {
             out.close();
         }